@@ -2,6 +2,7 @@ plugins {
     `maven-publish`
     id("hytale-mod") version "0.+"
     id("com.gradleup.shadow") version "9.0.0-rc3"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "net.cfh.vault"
@@ -12,6 +13,7 @@ description = "VaultUnlocked is a Chat, Permissions & Economy API to allow plugi
         " hook into these systems without needing to hook each individual system themselves."
 val vuWebsite: String = "https://cfh.dev"
 val javaVersion = 25
+val hytaleServer = "com.hypixel.hytale:HytaleServer:2026.01.17-4b0f30090-20260119.081336-1"
 
 
 repositories {
@@ -30,8 +32,35 @@ repositories {
 dependencies {
     compileOnly(libs.jetbrains.annotations)
     compileOnly(libs.jspecify)
-    compileOnly("com.hypixel.hytale:HytaleServer:2026.01.17-4b0f30090-20260119.081336-1")
+    compileOnly(hytaleServer)
     shadow(libs.vault.unlocked.api)
+
+    jmh(libs.jetbrains.annotations)
+    jmh(libs.vault.unlocked.api)
+    jmh(hytaleServer)
+}
+
+// Benchmarks live in src/jmh/java. Run them with `./gradlew jmh`; results are written as JSON so
+// they can be compared between releases, e.g. with a JMH visualizer or `jq`. Pass -PjmhProfilers=gc to
+// also record the bytes allocated per operation.
+jmh {
+    resultFormat = "JSON"
+    resultsFile = layout.buildDirectory.file("reports/jmh/results-${version}.json")
+    fork = 1
+    warmupIterations = 3
+    iterations = 5
+    providers.gradleProperty("jmhIncludes").orNull?.let { includes.add(it) }
+    providers.gradleProperty("jmhProfilers").orNull?.let { profilers.addAll(it.split(",")) }
+}
+
+// The soak harness replays synthetic or journaled traffic against stub providers and fails when a
+// balance update was lost. Run it with `./gradlew soak -PsoakArgs="threads=32 failure-rate=0.01"`.
+tasks.register<JavaExec>("soak") {
+    group = "verification"
+    description = "Replays a traffic mix against stub providers and checks the economy for lost updates."
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass = "net.cfh.vault.soak.SoakHarness"
+    providers.gradleProperty("soakArgs").orNull?.let { args(it.trim().split(Regex("\\s+"))) }
 }
 
 java {
@@ -0,0 +1,94 @@
+package net.cfh.vault.benchmark;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.convert.ConversionJob;
+import net.cfh.vault.convert.ConversionManager;
+import net.milkbowl.vault2.economy.Economy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * ConversionBenchmark measures the time a full {@link ConversionJob} takes to move every account
+ * between two in-memory economies, so the throughput of the conversion pipeline itself can be
+ * tracked independently of any real provider's storage.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class ConversionBenchmark {
+
+  @Param({ "10000", "100000", "1000000" })
+  public int accounts;
+
+  @Param({ "DEFAULT", "ALL" })
+  public ConversionJob.Scope scope;
+
+  private Economy source;
+  private Path checkpoints;
+
+  @Setup(Level.Trial)
+  public void populate() throws IOException {
+
+    source = StubProviders.economy("Source", accounts);
+    checkpoints = Files.createTempDirectory("vault-convert-bench");
+  }
+
+  @TearDown(Level.Trial)
+  public void cleanup() throws IOException {
+
+    try(final Stream<Path> files = Files.walk(checkpoints)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path->path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public ConversionJob.State convert() {
+
+    final ConversionJob job = new ConversionJob(source, StubProviders.economy("Target", true), scope,
+                                                List.of("world"), checkpoints,
+                                                ConversionManager.DEFAULT_CHUNK_SIZE,
+                                                ConversionManager.DEFAULT_PARALLELISM,
+                                                ConversionManager.DEFAULT_REPORT_INTERVAL, message->{});
+    job.run();
+    return job.state();
+  }
+}
@@ -0,0 +1,105 @@
+package net.cfh.vault.benchmark;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.FastEconomy;
+import net.cfh.vault.economy.MoneyResult;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MoneyBenchmark compares the allocation and latency of a balance read and a deposit made through
+ * the regular {@link Economy} API with the same calls made through {@link FastEconomy}, both when it
+ * converts to {@link BigDecimal} at the provider boundary and when it reaches a
+ * {@link net.cfh.vault.economy.ScaledEconomy} directly. Run it with the GC profiler to see the bytes
+ * allocated per call: {@code ./gradlew jmh -PjmhIncludes=MoneyBenchmark -PjmhProfilers=gc}, then
+ * compare {@code gc.alloc.rate.norm} between the benchmarks.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MoneyBenchmark {
+
+  private static final String PLUGIN = "Benchmark";
+  private static final UUID ACCOUNT = new UUID(0x5EED, 42);
+  private static final BigDecimal AMOUNT = BigDecimal.valueOf(100, 2);
+
+  private Economy economy;
+  private FastEconomy converted;
+  private FastEconomy direct;
+  private final MoneyResult result = new MoneyResult();
+
+  @Setup(Level.Trial)
+  public void populate() {
+
+    economy = StubProviders.economy("Stub", 1000);
+    converted = new FastEconomy(economy, 2, Map.of());
+    direct = new FastEconomy(StubProviders.scaledEconomy(1000));
+  }
+
+  @Benchmark
+  public BigDecimal economyBalance() {
+    return economy.balance(PLUGIN, ACCOUNT);
+  }
+
+  @Benchmark
+  public long convertedBalance() {
+    return converted.balance(PLUGIN, ACCOUNT, null, null);
+  }
+
+  @Benchmark
+  public long directBalance() {
+    return direct.balance(PLUGIN, ACCOUNT, null, null);
+  }
+
+  @Benchmark
+  public EconomyResponse economyDeposit() {
+    return economy.deposit(PLUGIN, ACCOUNT, AMOUNT);
+  }
+
+  @Benchmark
+  public MoneyResult convertedDeposit() {
+    return converted.deposit(PLUGIN, ACCOUNT, null, null, 100, result);
+  }
+
+  @Benchmark
+  public MoneyResult directDeposit() {
+    return direct.deposit(PLUGIN, ACCOUNT, null, null, 100, result);
+  }
+
+  @Benchmark
+  public MoneyResult directDepositThreadResult() {
+    return direct.deposit(PLUGIN, ACCOUNT, null, null, 100);
+  }
+}
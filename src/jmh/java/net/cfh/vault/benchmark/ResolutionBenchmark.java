@@ -0,0 +1,139 @@
+package net.cfh.vault.benchmark;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.VaultUnlockedServicesManager;
+import net.milkbowl.vault2.chat.ChatUnlocked;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.permission.PermissionUnlocked;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ResolutionBenchmark measures how quickly {@link VaultUnlockedServicesManager} resolves the
+ * active provider while many threads resolve at once. Only the last registered provider is
+ * enabled, which is the worst case for resolution by registration order.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ResolutionBenchmark {
+
+  @Param({ "1", "5", "20" })
+  public int providers;
+
+  private final List<Economy> economies = new ArrayList<>();
+  private final List<PermissionUnlocked> permissions = new ArrayList<>();
+  private final List<ChatUnlocked> chats = new ArrayList<>();
+
+  @Setup(Level.Trial)
+  public void register() {
+
+    final VaultUnlockedServicesManager services = VaultUnlockedServicesManager.get();
+    for(int i = 0; i < providers; i++) {
+
+      final boolean enabled = i == providers - 1;
+      economies.add(StubProviders.economy("Economy" + i, enabled));
+      permissions.add(StubProviders.permission("Permission" + i, enabled));
+      chats.add(StubProviders.chat("Chat" + i, enabled));
+
+      services.economy(economies.get(i));
+      services.permission(permissions.get(i));
+      services.chat(chats.get(i));
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void unregister() {
+
+    final VaultUnlockedServicesManager services = VaultUnlockedServicesManager.get();
+    economies.forEach(services::unregister);
+    permissions.forEach(services::unregister);
+    chats.forEach(services::unregister);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public Economy economy1Thread() {
+    return VaultUnlockedServicesManager.get().economyObj();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public Economy economy4Threads() {
+    return VaultUnlockedServicesManager.get().economyObj();
+  }
+
+  @Benchmark
+  @Threads(16)
+  public Economy economy16Threads() {
+    return VaultUnlockedServicesManager.get().economyObj();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Economy economy64Threads() {
+    return VaultUnlockedServicesManager.get().economyObj();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public Object economyOptional64Threads() {
+    return VaultUnlockedServicesManager.get().economy();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public PermissionUnlocked permission1Thread() {
+    return VaultUnlockedServicesManager.get().permissionObj();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public PermissionUnlocked permission64Threads() {
+    return VaultUnlockedServicesManager.get().permissionObj();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public ChatUnlocked chat1Thread() {
+    return VaultUnlockedServicesManager.get().chatObj();
+  }
+
+  @Benchmark
+  @Threads(64)
+  public ChatUnlocked chat64Threads() {
+    return VaultUnlockedServicesManager.get().chatObj();
+  }
+}
@@ -0,0 +1,400 @@
+package net.cfh.vault.benchmark;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.economy.MoneyResult;
+import net.cfh.vault.economy.ScaledEconomy;
+import net.milkbowl.vault2.chat.ChatUnlocked;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import net.milkbowl.vault2.permission.PermissionUnlocked;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * StubProviders creates in-memory economy, permission and chat providers for benchmarks and soak
+ * tests, optionally with injected latency and failures. The stubs are dynamic proxies, so they keep
+ * working as methods are added to the VaultUnlocked API: calls they don't model return the type's
+ * default value.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class StubProviders {
+
+  private StubProviders() {
+  }
+
+  /**
+   * Creates an in-memory economy.
+   *
+   * @param name the provider name.
+   * @param enabled whether the provider reports itself as enabled.
+   * @return the stub economy.
+   */
+  public static Economy economy(final String name, final boolean enabled) {
+
+    return proxy(Economy.class, new EconomyHandler(name, enabled));
+  }
+
+  /**
+   * Creates an in-memory economy pre-populated with accounts.
+   *
+   * @param name the provider name.
+   * @param accounts the number of accounts to create.
+   * @return the stub economy.
+   */
+  public static Economy economy(final String name, final int accounts) {
+
+    final EconomyHandler handler = new EconomyHandler(name, true);
+    for(int i = 0; i < accounts; i++) {
+      handler.balances.put(new UUID(0x5EED, i), BigDecimal.valueOf(i % 10_000, 2));
+    }
+    return proxy(Economy.class, handler);
+  }
+
+  /**
+   * Creates an in-memory economy pre-populated with accounts that updates balances with a plain
+   * read followed by a write, the way providers without their own locking do, so that lost updates
+   * under concurrent mutations can be reproduced.
+   *
+   * @param name the provider name.
+   * @param accounts the number of accounts to create.
+   * @return the stub economy.
+   */
+  public static Economy unsafeEconomy(final String name, final int accounts) {
+
+    final EconomyHandler handler = new EconomyHandler(name, true, false);
+    for(int i = 0; i < accounts; i++) {
+      handler.balances.put(new UUID(0x5EED, i), BigDecimal.valueOf(i % 10_000, 2));
+    }
+    return proxy(Economy.class, handler);
+  }
+
+  /**
+   * Wraps a provider so that every call first waits for an artificial latency and then fails with
+   * the specified probability. Each thread draws from its own random stream, seeded from the fault
+   * seed and the thread's name, so runs with the same thread names see the same faults. Calls
+   * resolving the provider itself, such as {@code getName} and {@code isEnabled}, are never delayed
+   * or failed.
+   *
+   * @param type the provider interface.
+   * @param provider the provider to wrap.
+   * @param faults the faults to inject.
+   * @param <T> the provider type.
+   * @return the wrapped provider.
+   */
+  public static <T> T faulty(final Class<T> type, final T provider, final Faults faults) {
+
+    return proxy(type, new FaultHandler(provider, faults));
+  }
+
+  /**
+   * Creates an in-memory {@link ScaledEconomy} pre-populated with accounts. Unlike the other stubs it
+   * is a plain class, so calls to it allocate nothing themselves.
+   *
+   * @param accounts the number of accounts to create.
+   * @return the stub scaled economy.
+   */
+  public static ScaledEconomy scaledEconomy(final int accounts) {
+
+    final ScaledStub stub = new ScaledStub();
+    for(int i = 0; i < accounts; i++) {
+      stub.balances.put(new UUID(0x5EED, i), new AtomicLong(i % 10_000));
+    }
+    return stub;
+  }
+
+  /**
+   * Creates a permission provider that grants every permission.
+   *
+   * @param name the provider name.
+   * @param enabled whether the provider reports itself as enabled.
+   * @return the stub permission provider.
+   */
+  public static PermissionUnlocked permission(final String name, final boolean enabled) {
+
+    return proxy(PermissionUnlocked.class, new NamedHandler(name, enabled));
+  }
+
+  /**
+   * Creates a chat provider that returns empty prefixes, suffixes and meta.
+   *
+   * @param name the provider name.
+   * @param enabled whether the provider reports itself as enabled.
+   * @return the stub chat provider.
+   */
+  public static ChatUnlocked chat(final String name, final boolean enabled) {
+
+    return proxy(ChatUnlocked.class, new NamedHandler(name, enabled));
+  }
+
+  private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+  }
+
+  static Object defaultValue(final Class<?> type) {
+
+    if(type == boolean.class) {
+      return false;
+    }
+    if(type == int.class) {
+      return 0;
+    }
+    if(type == long.class) {
+      return 0L;
+    }
+    if(type == double.class) {
+      return 0.0;
+    }
+    if(type == String.class) {
+      return "";
+    }
+    if(type == Optional.class) {
+      return Optional.empty();
+    }
+    if(type == BigDecimal.class) {
+      return BigDecimal.ZERO;
+    }
+    return null;
+  }
+
+  /**
+   * The faults {@link #faulty(Class, Object, Faults)} injects into every call.
+   *
+   * @param latencyMicros the latency added to every call, in microseconds.
+   * @param jitterMicros the largest random latency added on top, in microseconds.
+   * @param failureRate the probability of a call failing, between 0 and 1.
+   * @param seed the seed of the random streams.
+   */
+  public record Faults(long latencyMicros, long jitterMicros, double failureRate, long seed) {
+
+    /**
+     * Determines if these faults would change any call at all.
+     *
+     * @return true if any latency or failures are injected.
+     */
+    public boolean any() {
+
+      return latencyMicros > 0 || jitterMicros > 0 || failureRate > 0;
+    }
+  }
+
+  private static final class FaultHandler implements InvocationHandler {
+
+    private final Object provider;
+    private final Faults faults;
+    private final ThreadLocal<SplittableRandom> random;
+
+    private FaultHandler(final Object provider, final Faults faults) {
+
+      this.provider = provider;
+      this.faults = faults;
+      this.random = ThreadLocal.withInitial(()->new SplittableRandom(faults.seed() * 31 + Thread.currentThread().getName().hashCode()));
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+      switch(method.getName()) {
+        case "getName", "isEnabled", "toString", "hashCode", "equals" -> {
+          return invoke(method, args);
+        }
+        default -> {
+        }
+      }
+
+      final SplittableRandom stream = random.get();
+      final long latency = faults.latencyMicros() + ((faults.jitterMicros() > 0)? stream.nextLong(faults.jitterMicros() + 1) : 0);
+      if(latency > 0) {
+        LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(latency));
+      }
+
+      if(faults.failureRate() > 0 && stream.nextDouble() < faults.failureRate()) {
+        throw new IllegalStateException("Injected failure of " + method.getName() + ".");
+      }
+      return invoke(method, args);
+    }
+
+    private Object invoke(final Method method, final Object[] args) throws Throwable {
+
+      try {
+        return method.invoke(provider, args);
+      } catch(final InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  private static class NamedHandler implements InvocationHandler {
+
+    private final String name;
+    private final boolean enabled;
+
+    private NamedHandler(final String name, final boolean enabled) {
+
+      this.name = name;
+      this.enabled = enabled;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+      return switch(method.getName()) {
+        case "getName", "toString" -> name;
+        case "isEnabled" -> enabled;
+        case "hashCode" -> System.identityHashCode(proxy);
+        case "equals" -> proxy == args[0];
+        case "has", "playerHas", "groupHas" -> (method.getReturnType() == boolean.class)? true : defaultValue(method.getReturnType());
+        default -> defaultValue(method.getReturnType());
+      };
+    }
+  }
+
+  private static final class ScaledStub implements ScaledEconomy {
+
+    private static final String INSUFFICIENT_FUNDS = "Insufficient funds.";
+
+    private final Map<UUID, AtomicLong> balances = new ConcurrentHashMap<>();
+
+    @Override
+    public int scale(final String currency) {
+
+      return 2;
+    }
+
+    @Override
+    public long balanceUnits(final String pluginName, final UUID account, final String world, final String currency) {
+
+      final AtomicLong balance = balances.get(account);
+      return (balance == null)? 0 : balance.get();
+    }
+
+    @Override
+    public void depositUnits(final String pluginName, final UUID account, final String world, final String currency,
+                             final long units, final MoneyResult result) {
+
+      result.succeed(units, balance(account).addAndGet(units));
+    }
+
+    @Override
+    public void withdrawUnits(final String pluginName, final UUID account, final String world, final String currency,
+                              final long units, final MoneyResult result) {
+
+      final AtomicLong balance = balance(account);
+      final long current = balance.get();
+      if(current < units || !balance.compareAndSet(current, current - units)) {
+        result.fail(units, INSUFFICIENT_FUNDS);
+        return;
+      }
+      result.succeed(units, current - units);
+    }
+
+    @Override
+    public void setUnits(final String pluginName, final UUID account, final String world, final String currency,
+                         final long units, final MoneyResult result) {
+
+      balance(account).set(units);
+      result.succeed(units, units);
+    }
+
+    private AtomicLong balance(final UUID account) {
+
+      final AtomicLong balance = balances.get(account);
+      return (balance != null)? balance : balances.computeIfAbsent(account, key->new AtomicLong());
+    }
+  }
+
+  private static final class EconomyHandler extends NamedHandler {
+
+    private final Map<UUID, BigDecimal> balances = new ConcurrentHashMap<>();
+    private final boolean atomic;
+
+    private EconomyHandler(final String name, final boolean enabled) {
+
+      this(name, enabled, true);
+    }
+
+    private EconomyHandler(final String name, final boolean enabled, final boolean atomic) {
+
+      super(name, enabled);
+      this.atomic = atomic;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+      final UUID account = (args != null && args.length > 1 && args[1] instanceof final UUID id)? id : null;
+      final BigDecimal amount = (args != null && args.length > 2 && args[args.length - 1] instanceof final BigDecimal value)? value : null;
+      return switch(method.getName()) {
+        case "balance", "getBalance" -> balances.getOrDefault(account, BigDecimal.ZERO);
+        case "has" -> balances.getOrDefault(account, BigDecimal.ZERO).compareTo(amount) >= 0;
+        case "set" -> success(amount, balances.merge(account, amount, (old, value)->value));
+        case "deposit" -> success(amount, add(account, amount));
+        case "withdraw" -> success(amount, add(account, amount.negate()));
+        case "hasAccount" -> balances.containsKey((UUID)args[0]);
+        case "createAccount" -> balances.putIfAbsent((UUID)args[0], BigDecimal.ZERO) == null;
+        case "getUUIDNameMap" -> names();
+        case "currencies" -> List.of();
+        default -> super.invoke(proxy, method, args);
+      };
+    }
+
+    private BigDecimal add(final UUID account, final BigDecimal amount) {
+
+      if(atomic) {
+        return balances.merge(account, amount, BigDecimal::add);
+      }
+
+      //read, give other threads a chance to interleave, then write back.
+      final BigDecimal updated = balances.getOrDefault(account, BigDecimal.ZERO).add(amount);
+      Thread.yield();
+      balances.put(account, updated);
+      return updated;
+    }
+
+    private Map<UUID, String> names() {
+
+      final Map<UUID, String> names = new HashMap<>(balances.size() * 2);
+      for(final UUID account : balances.keySet()) {
+        names.put(account, account.toString());
+      }
+      return names;
+    }
+
+    private static EconomyResponse success(final BigDecimal amount, final BigDecimal balance) {
+
+      return new EconomyResponse(amount, balance, EconomyResponse.ResponseType.SUCCESS, "");
+    }
+  }
+}
@@ -0,0 +1,514 @@
+package net.cfh.vault.soak;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.VaultUnlockedServicesManager;
+import net.cfh.vault.benchmark.StubProviders;
+import net.cfh.vault.chat.ChatCache;
+import net.cfh.vault.economy.AccountSerializer;
+import net.cfh.vault.economy.BalanceCache;
+import net.cfh.vault.economy.MutationLimiter;
+import net.cfh.vault.economy.WriteBehindBuffer;
+import net.cfh.vault.metrics.LatencyHistogram;
+import net.cfh.vault.metrics.MetricsRegistry;
+import net.cfh.vault.metrics.ServiceMetrics;
+import net.cfh.vault.permission.PermissionCache;
+import net.milkbowl.vault2.chat.ChatUnlocked;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import net.milkbowl.vault2.permission.PermissionUnlocked;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SoakHarness reproduces production load against VaultUnlocked without a live server. It boots the
+ * {@link VaultUnlockedServicesManager} with in-memory stub providers, optionally slowed down and made
+ * to fail by {@link StubProviders#faulty(Class, Object, StubProviders.Faults)}, installs the chosen
+ * layers in the order the plugin installs them, and replays {@link Traffic} across many threads.
+ *
+ * <p>Afterwards it reports the throughput and latency distribution of every kind of call and
+ * checks the economy for consistency: every worker keeps a model of the balance changes the
+ * economy confirmed, and the final balance of every account, read from the stub itself, has to
+ * match it. A mismatch means an update was lost or applied twice, and makes the harness exit with
+ * a non-zero status, so it can gate concurrency changes before they are deployed.</p>
+ *
+ * <p>Options are passed as {@code key=value} arguments, for example through
+ * {@code ./gradlew soak -PsoakArgs="threads=32 failure-rate=0.01 layers=balance-cache,account-serializer"}:</p>
+ * <ul>
+ *   <li>{@code threads}: the number of worker threads, 16 by default.</li>
+ *   <li>{@code operations}: the calls per worker and pass, 100000 by default.</li>
+ *   <li>{@code duration-seconds}: repeat passes until this much time has passed, 0 for a single pass.</li>
+ *   <li>{@code accounts}: the number of accounts synthetic traffic is spread over, 1000 by default.</li>
+ *   <li>{@code mix}: the weights of synthetic traffic, {@code balance:60,has:10,deposit:15,withdraw:5,permission:5,chat:5} by default.
+ *       The harness fails straight away if the API has no lookup it can make for a kind of call given a weight.</li>
+ *   <li>{@code journal}: replay the changes recorded in this journal directory instead of synthetic traffic.</li>
+ *   <li>{@code seed}: the seed of the generated traffic and injected faults, 42 by default.</li>
+ *   <li>{@code scale}: the scale of amounts, 2 by default.</li>
+ *   <li>{@code latency-micros}, {@code jitter-micros}: the latency added to every provider call.</li>
+ *   <li>{@code failure-rate}: the probability of a provider call failing, between 0 and 1.</li>
+ *   <li>{@code economy}: {@code atomic}, or {@code unsafe} for a provider without its own locking.</li>
+ *   <li>{@code layers}: a comma separated list of metrics, rate-limit, balance-cache,
+ *       account-serializer, write-behind, permission-cache and chat-cache.</li>
+ *   <li>{@code rate-per-second}, {@code rate-burst}, {@code rate-in-flight}: the limits of the rate-limit layer.</li>
+ * </ul>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class SoakHarness {
+
+  private static final String PLUGIN = "VaultUnlocked-Soak";
+  private static final String PROVIDER = "Soak";
+  private static final long NO_SET = Long.MIN_VALUE;
+  private static final int NODES = 16;
+  private static final int EXAMPLES = 5;
+  private static final int DRAIN_ATTEMPTS = 100;
+
+  private static final Set<String> OPTIONS = Set.of("threads", "operations", "duration-seconds", "accounts", "mix",
+                                                    "journal", "seed", "scale", "latency-micros", "jitter-micros",
+                                                    "failure-rate", "economy", "layers", "rate-per-second",
+                                                    "rate-burst", "rate-in-flight");
+  private static final List<String> LAYERS = List.of("metrics", "rate-limit", "balance-cache", "account-serializer",
+                                                     "write-behind", "permission-cache", "chat-cache");
+
+  private SoakHarness() {
+  }
+
+  public static void main(final String[] args) throws Exception {
+
+    final Map<String, String> options = new HashMap<>();
+    for(final String arg : args) {
+
+      final int split = arg.indexOf('=');
+      if(split <= 0 || !OPTIONS.contains(arg.substring(0, split))) {
+        throw new IllegalArgumentException("Unknown option " + arg + ", expected one of " + OPTIONS + " as key=value.");
+      }
+      options.put(arg.substring(0, split), arg.substring(split + 1));
+    }
+
+    final int threads = Integer.parseInt(options.getOrDefault("threads", "16"));
+    final int scale = Integer.parseInt(options.getOrDefault("scale", "2"));
+    final long seed = Long.parseLong(options.getOrDefault("seed", "42"));
+    final String journal = options.get("journal");
+    final int accounts = (journal == null)? Integer.parseInt(options.getOrDefault("accounts", "1000")) : 0;
+    final Map<Traffic.Kind, Integer> mix = (journal == null)?
+                                           Traffic.mix(options.getOrDefault("mix", "balance:60,has:10,deposit:15,withdraw:5,permission:5,chat:5"))
+                                           : Map.of();
+    final Traffic traffic = (journal == null)?
+                            Traffic.synthetic(mix, threads, Integer.parseInt(options.getOrDefault("operations", "100000")),
+                                              accounts, scale, seed)
+                            : Traffic.recorded(Path.of(journal), threads, scale);
+
+    final StubProviders.Faults faults = new StubProviders.Faults(Long.parseLong(options.getOrDefault("latency-micros", "0")),
+                                                                 Long.parseLong(options.getOrDefault("jitter-micros", "0")),
+                                                                 Double.parseDouble(options.getOrDefault("failure-rate", "0")),
+                                                                 seed);
+
+    final Set<String> layers = new LinkedHashSet<>();
+    for(final String layer : options.getOrDefault("layers", "").split(",")) {
+
+      if(layer.isBlank()) {
+        continue;
+      }
+      if(!LAYERS.contains(layer.trim())) {
+        throw new IllegalArgumentException("Unknown layer " + layer + ", expected any of " + LAYERS + ".");
+      }
+      layers.add(layer.trim());
+    }
+
+    final Lookup permissionLookup = Lookup.find(PermissionUnlocked.class, "has", "playerHas");
+    final Lookup chatLookup = Lookup.find(ChatUnlocked.class, "getPlayerPrefix", "get");
+    exercisable(mix, Traffic.Kind.PERMISSION, permissionLookup, PermissionUnlocked.class);
+    exercisable(mix, Traffic.Kind.CHAT, chatLookup, ChatUnlocked.class);
+
+    final VaultUnlockedServicesManager manager = VaultUnlockedServicesManager.get();
+    final WriteBehindBuffer writeBehind = install(manager, layers, options, threads, Math.max(accounts, traffic.accounts().size()));
+
+    final Economy economy = (options.getOrDefault("economy", "atomic").equals("unsafe"))?
+                            StubProviders.unsafeEconomy(PROVIDER, accounts) : StubProviders.economy(PROVIDER, accounts);
+    final PermissionUnlocked permission = StubProviders.permission(PROVIDER, true);
+    final ChatUnlocked chat = StubProviders.chat(PROVIDER, true);
+    manager.economy(faults.any()? StubProviders.faulty(Economy.class, economy, faults) : economy);
+    manager.permission(faults.any()? StubProviders.faulty(PermissionUnlocked.class, permission, faults) : permission);
+    manager.chat(faults.any()? StubProviders.faulty(ChatUnlocked.class, chat, faults) : chat);
+
+    final long[] initial = new long[traffic.accounts().size()];
+    for(int i = 0; i < initial.length; i++) {
+      initial[i] = units(economy.balance(PLUGIN, traffic.accounts().get(i)), scale);
+    }
+
+    final long duration = TimeUnit.SECONDS.toNanos(Long.parseLong(options.getOrDefault("duration-seconds", "0")));
+
+    System.out.printf("VaultUnlocked soak: threads=%d calls/pass=%d accounts=%d seed=%d layers=%s faults=%s economy=%s%n",
+                      threads, traffic.operations(), traffic.accounts().size(), seed, layers, faults,
+                      options.getOrDefault("economy", "atomic"));
+
+    final Worker[] workers = new Worker[threads];
+    final Thread[] running = new Thread[threads];
+    final CountDownLatch start = new CountDownLatch(1);
+    for(int i = 0; i < threads; i++) {
+
+      workers[i] = new Worker(traffic, traffic.workload(i), scale, duration, manager.economyObj(),
+                              manager.permissionObj(), permissionLookup, manager.chatObj(), chatLookup, start);
+      running[i] = Thread.ofPlatform().name("VaultUnlocked-Soak-" + i).start(workers[i]);
+    }
+
+    final long began = System.nanoTime();
+    start.countDown();
+    for(final Thread thread : running) {
+      thread.join();
+    }
+    final long elapsed = System.nanoTime() - began;
+
+    if(writeBehind != null) {
+
+      //injected failures leave deltas pending for the next flush, so keep flushing until they drain.
+      writeBehind.close();
+      for(int attempt = 0; attempt < DRAIN_ATTEMPTS && writeBehind.pending() > 0; attempt++) {
+        writeBehind.flush();
+      }
+      System.out.println("write-behind: " + writeBehind.stats().describe());
+    }
+
+    report(workers, elapsed);
+    final boolean consistent = check(traffic, workers, initial, economy, scale);
+    System.exit(consistent? 0 : 1);
+  }
+
+  /**
+   * Installs the requested layers in the order VaultUnlocked installs them.
+   *
+   * @return the write-behind buffer, which has to be flushed before balances are checked, or null.
+   */
+  @Nullable
+  private static WriteBehindBuffer install(final VaultUnlockedServicesManager manager, final Set<String> layers,
+                                           final Map<String, String> options, final int threads, final int accounts) {
+
+    if(layers.contains("metrics")) {
+
+      final MetricsRegistry metrics = new MetricsRegistry();
+      manager.economyLayer(ServiceMetrics.LAYER, metrics.economy());
+      manager.permissionLayer(ServiceMetrics.LAYER, metrics.permission());
+      manager.chatLayer(ServiceMetrics.LAYER, metrics.chat());
+    }
+
+    if(layers.contains("rate-limit")) {
+
+      final MutationLimiter.Limits limits = new MutationLimiter.Limits(Long.parseLong(options.getOrDefault("rate-per-second", "1000000")),
+                                                                       Integer.parseInt(options.getOrDefault("rate-burst", "1000000")),
+                                                                       Integer.parseInt(options.getOrDefault("rate-in-flight", String.valueOf(threads))));
+      manager.economyLayer(MutationLimiter.LAYER, new MutationLimiter(MutationLimiter.Mode.REJECT, limits, Map.of(), 0, 0));
+    }
+
+    if(layers.contains("balance-cache")) {
+      manager.economyLayer(BalanceCache.LAYER, new BalanceCache(Math.max(1, accounts), 1000));
+    }
+
+    if(layers.contains("account-serializer")) {
+      manager.economyLayer(AccountSerializer.LAYER, new AccountSerializer(256));
+    }
+
+    WriteBehindBuffer writeBehind = null;
+    if(layers.contains("write-behind")) {
+
+      writeBehind = new WriteBehindBuffer(1000, 1000);
+      manager.economyLayer(WriteBehindBuffer.LAYER, writeBehind);
+    }
+
+    if(layers.contains("permission-cache")) {
+      manager.permissionLayer(PermissionCache.LAYER, new PermissionCache(Math.max(1, accounts), 30000));
+    }
+
+    if(layers.contains("chat-cache")) {
+      manager.chatLayer(ChatCache.LAYER, new ChatCache(Math.max(1, accounts), 600000, 10000));
+    }
+    return writeBehind;
+  }
+
+  private static void report(final Worker[] workers, final long elapsedNanos) {
+
+    final double seconds = elapsedNanos / 1_000_000_000.0;
+    final LatencyHistogram all = new LatencyHistogram();
+    long errors = 0;
+    System.out.printf("%-10s %10s %8s %12s %10s %10s %10s %10s %10s%n", "call", "count", "errors", "calls/s",
+                      "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+    for(final Traffic.Kind kind : Traffic.Kind.values()) {
+
+      final LatencyHistogram histogram = new LatencyHistogram();
+      long kindErrors = 0;
+      for(final Worker worker : workers) {
+        histogram.add(worker.latencies[kind.ordinal()]);
+        kindErrors += worker.errors[kind.ordinal()];
+      }
+
+      final LatencyHistogram.Summary summary = histogram.summary();
+      if(summary.count() == 0) {
+        continue;
+      }
+
+      all.add(histogram);
+      errors += kindErrors;
+      row(kind.name().toLowerCase(), summary, kindErrors, seconds);
+    }
+    row("total", all.summary(), errors, seconds);
+  }
+
+  private static void row(final String name, final LatencyHistogram.Summary summary, final long errors, final double seconds) {
+
+    System.out.printf("%-10s %10d %8d %12.1f %10.3f %10.3f %10.3f %10.3f %10.3f%n", name, summary.count(), errors,
+                      summary.count() / seconds, summary.p50() / 1_000_000.0, summary.p90() / 1_000_000.0,
+                      summary.p99() / 1_000_000.0, summary.p999() / 1_000_000.0, summary.max() / 1_000_000.0);
+  }
+
+  /**
+   * Compares the balance of every account, read from the stub itself rather than through the
+   * layers, with the balance the workers' confirmed changes add up to.
+   *
+   * @return true if every balance and the total match.
+   */
+  private static boolean check(final Traffic traffic, final Worker[] workers, final long[] initial,
+                               final Economy economy, final int scale) {
+
+    long expectedTotal = 0;
+    long actualTotal = 0;
+    int mismatched = 0;
+    for(int account = 0; account < initial.length; account++) {
+
+      long set = NO_SET;
+      long delta = 0;
+      for(final Worker worker : workers) {
+
+        if(worker.sets[account] != NO_SET) {
+          set = worker.sets[account];
+        }
+        delta += worker.deltas[account];
+      }
+
+      final long expected = ((set == NO_SET)? initial[account] : set) + delta;
+      final UUID id = traffic.accounts().get(account);
+      final long actual = units(economy.balance(PLUGIN, id), scale);
+      expectedTotal += expected;
+      actualTotal += actual;
+      if(expected != actual && ++mismatched <= EXAMPLES) {
+        System.out.println("Account " + id + " expected " + BigDecimal.valueOf(expected, scale) + " but holds "
+                           + BigDecimal.valueOf(actual, scale) + ".");
+      }
+    }
+
+    final boolean consistent = mismatched == 0 && expectedTotal == actualTotal;
+    System.out.printf("consistency: accounts=%d mismatched=%d expectedTotal=%s actualTotal=%s %s%n", initial.length,
+                      mismatched, BigDecimal.valueOf(expectedTotal, scale), BigDecimal.valueOf(actualTotal, scale),
+                      consistent? "OK" : "FAILED");
+    return consistent;
+  }
+
+  private static long units(final BigDecimal amount, final int scale) {
+
+    return amount.setScale(scale, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+  }
+
+  /**
+   * Refuses to run a mix that requests calls of a kind for which no lookup was found, rather than
+   * reporting a run that never made them.
+   */
+  private static void exercisable(final Map<Traffic.Kind, Integer> mix, final Traffic.Kind kind,
+                                  final @Nullable Lookup lookup, final Class<?> api) {
+
+    if(lookup == null && mix.getOrDefault(kind, 0) > 0) {
+      throw new IllegalStateException("The mix requests " + kind.name().toLowerCase(Locale.ROOT) + " calls, but no lookup of "
+                                      + api.getSimpleName() + " taking only accounts, strings and booleans was found. "
+                                      + "Remove them from the mix to run without them.");
+    }
+  }
+
+  /**
+   * A permission or chat lookup picked from the API by name, made reflectively through the facade
+   * so the harness keeps working as the API changes. Only methods taking nothing but accounts,
+   * strings and booleans are used.
+   */
+  private record Lookup(Method method) {
+
+    @Nullable
+    private static Lookup find(final Class<?> type, final String... prefixes) {
+
+      for(final String prefix : prefixes) {
+        for(final Method method : type.getMethods()) {
+
+          if(!method.getName().startsWith(prefix) || method.getParameterCount() == 0) {
+            continue;
+          }
+
+          final List<Class<?>> parameters = Arrays.asList(method.getParameterTypes());
+          if(parameters.contains(UUID.class) && parameters.stream().allMatch(parameter->parameter == UUID.class
+                                                                            || parameter == String.class
+                                                                            || parameter == boolean.class)) {
+            return new Lookup(method);
+          }
+        }
+      }
+      return null;
+    }
+
+    private Object invoke(final Object target, final UUID account, final int node) throws Throwable {
+
+      final Class<?>[] parameters = method.getParameterTypes();
+      final Object[] args = new Object[parameters.length];
+      for(int i = 0; i < parameters.length; i++) {
+        args[i] = (parameters[i] == UUID.class)? account : (parameters[i] == String.class)? "soak.node." + node : false;
+      }
+
+      try {
+        return method.invoke(target, args);
+      } catch(final InvocationTargetException e) {
+        throw e.getCause();
+      }
+    }
+  }
+
+  private static final class Worker implements Runnable {
+
+    private final Traffic traffic;
+    private final Traffic.Workload workload;
+    private final int scale;
+    private final long durationNanos;
+    private final Economy economy;
+    private final PermissionUnlocked permission;
+    private final Lookup permissionLookup;
+    private final ChatUnlocked chat;
+    private final Lookup chatLookup;
+    private final CountDownLatch start;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Traffic.Kind.values().length];
+    private final long[] errors = new long[Traffic.Kind.values().length];
+    private final long[] deltas;
+    private final long[] sets;
+
+    private Worker(final Traffic traffic, final Traffic.Workload workload, final int scale, final long durationNanos,
+                   final Economy economy, final PermissionUnlocked permission, final @Nullable Lookup permissionLookup,
+                   final ChatUnlocked chat, final @Nullable Lookup chatLookup, final CountDownLatch start) {
+
+      this.traffic = traffic;
+      this.workload = workload;
+      this.scale = scale;
+      this.durationNanos = durationNanos;
+      this.economy = economy;
+      this.permission = permission;
+      this.permissionLookup = permissionLookup;
+      this.chat = chat;
+      this.chatLookup = chatLookup;
+      this.start = start;
+      this.deltas = new long[traffic.accounts().size()];
+      this.sets = new long[traffic.accounts().size()];
+      Arrays.fill(sets, NO_SET);
+      for(int i = 0; i < latencies.length; i++) {
+        latencies[i] = new LatencyHistogram();
+      }
+    }
+
+    @Override
+    public void run() {
+
+      try {
+        start.await();
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      final long deadline = System.nanoTime() + durationNanos;
+      do {
+        for(int i = 0; i < workload.size(); i++) {
+          call(i);
+        }
+      } while(System.nanoTime() - deadline < 0 && workload.size() > 0);
+    }
+
+    private void call(final int index) {
+
+      final Traffic.Kind kind = workload.kind(index);
+      final int account = workload.account(index);
+      final UUID id = traffic.accounts().get(account);
+      final BigDecimal amount = workload.amount(index);
+
+      final long start = System.nanoTime();
+      boolean failed = false;
+      try {
+
+        switch(kind) {
+          case BALANCE -> economy.balance(PLUGIN, id);
+          case HAS -> economy.has(PLUGIN, id, amount);
+          case DEPOSIT -> failed = !applied(economy.deposit(PLUGIN, id, amount), account, amount, false);
+          case WITHDRAW -> failed = !applied(economy.withdraw(PLUGIN, id, amount), account, amount.negate(), false);
+          case SET -> failed = !applied(economy.set(PLUGIN, id, amount), account, amount, true);
+          case PERMISSION -> {
+            if(permissionLookup != null) {
+              permissionLookup.invoke(permission, id, account % NODES);
+            }
+          }
+          case CHAT -> {
+            if(chatLookup != null) {
+              chatLookup.invoke(chat, id, account % NODES);
+            }
+          }
+        }
+      } catch(final Throwable e) {
+        failed = true;
+      }
+
+      latencies[kind.ordinal()].record(System.nanoTime() - start);
+      if(failed) {
+        errors[kind.ordinal()]++;
+      }
+    }
+
+    /**
+     * Adds a change the economy confirmed to this worker's model of the balances.
+     */
+    private boolean applied(final EconomyResponse response, final int account, final BigDecimal amount, final boolean set) {
+
+      if(response == null || !response.transactionSuccess()) {
+        return false;
+      }
+
+      final long units = units(amount, scale);
+      if(set) {
+        sets[account] = units;
+        deltas[account] = 0;
+      } else {
+        deltas[account] += units;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,292 @@
+package net.cfh.vault.soak;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.journal.JournalEntry;
+import net.cfh.vault.journal.JournalReader;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.UUID;
+
+/**
+ * Traffic is the pre-generated sequence of calls every soak worker makes. Generating the calls up
+ * front keeps the measured loop free of random number generation and allocation, and makes runs
+ * with the same options replay exactly the same calls.
+ *
+ * <p>Synthetic traffic draws calls from a weighted mix over accounts shared by every worker, so
+ * workers contend on the same accounts. Recorded traffic replays the deposits, withdrawals and sets
+ * of a {@link net.cfh.vault.journal.TransactionJournal} in time order, with every account assigned
+ * to a single worker so that its changes are replayed in the order they were made.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class Traffic {
+
+  private final List<UUID> accounts;
+  private final Workload[] workloads;
+
+  private Traffic(final List<UUID> accounts, final Workload[] workloads) {
+
+    this.accounts = accounts;
+    this.workloads = workloads;
+  }
+
+  /**
+   * Generates synthetic traffic.
+   *
+   * @param mix the weight of every kind of call.
+   * @param threads the number of workers.
+   * @param operations the number of calls per worker.
+   * @param accounts the number of accounts, matching the stub economy's pre-populated accounts.
+   * @param scale the scale of generated amounts.
+   * @param seed the seed of the generated calls.
+   * @return the generated traffic.
+   */
+  public static Traffic synthetic(final @NotNull Map<Kind, Integer> mix, final int threads, final int operations,
+                                  final int accounts, final int scale, final long seed) {
+
+    if(mix.containsKey(Kind.SET)) {
+      throw new IllegalArgumentException("Synthetic traffic can't contain sets, as concurrent sets of shared accounts have no single expected outcome.");
+    }
+
+    final Kind[] kinds = Kind.values();
+    final int[] cumulative = new int[kinds.length];
+    int total = 0;
+    for(int i = 0; i < kinds.length; i++) {
+      total += Math.max(0, mix.getOrDefault(kinds[i], 0));
+      cumulative[i] = total;
+    }
+    if(total == 0) {
+      throw new IllegalArgumentException("The traffic mix has no calls.");
+    }
+
+    final List<UUID> ids = new ArrayList<>(accounts);
+    for(int i = 0; i < accounts; i++) {
+      ids.add(new UUID(0x5EED, i));
+    }
+
+    final Workload[] workloads = new Workload[threads];
+    for(int worker = 0; worker < threads; worker++) {
+
+      final SplittableRandom random = new SplittableRandom(seed * 31 + worker);
+      final Workload workload = new Workload(operations);
+      for(int i = 0; i < operations; i++) {
+
+        final int pick = random.nextInt(total);
+        int kind = 0;
+        while(cumulative[kind] <= pick) {
+          kind++;
+        }
+
+        workload.kinds[i] = (byte)kind;
+        workload.accounts[i] = random.nextInt(accounts);
+        workload.amounts[i] = BigDecimal.valueOf(1 + random.nextInt(10_000), scale);
+      }
+      workloads[worker] = workload;
+    }
+    return new Traffic(ids, workloads);
+  }
+
+  /**
+   * Loads the changes recorded in a transaction journal as traffic.
+   *
+   * @param directory the journal directory.
+   * @param threads the number of workers.
+   * @param scale the scale amounts are rounded to, so they match the consistency checks.
+   * @return the recorded traffic.
+   * @throws IOException if the journal could not be read.
+   */
+  public static Traffic recorded(final @NotNull Path directory, final int threads, final int scale) throws IOException {
+
+    final List<JournalEntry> entries = JournalReader.read(directory, 0, Long.MAX_VALUE);
+    final Map<UUID, Integer> indexes = new HashMap<>();
+    final List<UUID> ids = new ArrayList<>();
+    final int[] counts = new int[threads];
+    for(final JournalEntry entry : entries) {
+
+      final int account = indexes.computeIfAbsent(entry.account(), id->{
+        ids.add(id);
+        return ids.size() - 1;
+      });
+      counts[account % threads]++;
+    }
+
+    final Workload[] workloads = new Workload[threads];
+    for(int worker = 0; worker < threads; worker++) {
+      workloads[worker] = new Workload(counts[worker]);
+    }
+
+    final int[] positions = new int[threads];
+    for(final JournalEntry entry : entries) {
+
+      final int account = indexes.get(entry.account());
+      final Workload workload = workloads[account % threads];
+      final int i = positions[account % threads]++;
+      workload.kinds[i] = (byte)(switch(entry.operation()) {
+        case DEPOSIT -> Kind.DEPOSIT;
+        case WITHDRAW -> Kind.WITHDRAW;
+        case SET -> Kind.SET;
+      }).ordinal();
+      workload.accounts[i] = account;
+      workload.amounts[i] = entry.amount().setScale(scale, RoundingMode.HALF_EVEN);
+    }
+    return new Traffic(ids, workloads);
+  }
+
+  /**
+   * Parses a traffic mix such as {@code balance:60,deposit:20,withdraw:10,permission:5,chat:5}.
+   *
+   * @param mix the mix to parse.
+   * @return the weight of every kind of call.
+   */
+  public static Map<Kind, Integer> mix(final @NotNull String mix) {
+
+    final Map<Kind, Integer> weights = new EnumMap<>(Kind.class);
+    for(final String part : mix.split(",")) {
+
+      final String[] pair = part.trim().split(":");
+      if(pair.length != 2 || !pair[1].trim().matches("\\d+")) {
+        throw new IllegalArgumentException("Malformed traffic mix entry " + part + ", expected kind:weight.");
+      }
+      weights.put(Kind.valueOf(pair[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(pair[1].trim()));
+    }
+    return weights;
+  }
+
+  /**
+   * Retrieves every account the traffic touches, indexed as in the workloads.
+   *
+   * @return the accounts.
+   */
+  public List<UUID> accounts() {
+
+    return accounts;
+  }
+
+  /**
+   * Retrieves the calls of the specified worker.
+   *
+   * @param worker the index of the worker.
+   * @return the worker's calls.
+   */
+  public Workload workload(final int worker) {
+
+    return workloads[worker];
+  }
+
+  /**
+   * Retrieves the total number of calls across every worker.
+   *
+   * @return the total call count.
+   */
+  public long operations() {
+
+    long operations = 0;
+    for(final Workload workload : workloads) {
+      operations += workload.size();
+    }
+    return operations;
+  }
+
+  /**
+   * The kinds of call a soak worker makes.
+   */
+  public enum Kind {
+    BALANCE,
+    HAS,
+    DEPOSIT,
+    WITHDRAW,
+    SET,
+    PERMISSION,
+    CHAT
+  }
+
+  /**
+   * The calls of a single worker, stored column-wise.
+   */
+  public static final class Workload {
+
+    private static final Kind[] KINDS = Kind.values();
+
+    private final byte[] kinds;
+    private final int[] accounts;
+    private final BigDecimal[] amounts;
+
+    private Workload(final int size) {
+
+      this.kinds = new byte[size];
+      this.accounts = new int[size];
+      this.amounts = new BigDecimal[size];
+    }
+
+    /**
+     * Retrieves the number of calls.
+     *
+     * @return the call count.
+     */
+    public int size() {
+
+      return kinds.length;
+    }
+
+    /**
+     * Retrieves the kind of a call.
+     *
+     * @param index the index of the call.
+     * @return the kind of call.
+     */
+    public Kind kind(final int index) {
+
+      return KINDS[kinds[index]];
+    }
+
+    /**
+     * Retrieves the account a call targets.
+     *
+     * @param index the index of the call.
+     * @return the index of the account in {@link Traffic#accounts()}.
+     */
+    public int account(final int index) {
+
+      return accounts[index];
+    }
+
+    /**
+     * Retrieves the amount of a call, which calls that take no amount ignore.
+     *
+     * @param index the index of the call.
+     * @return the amount.
+     */
+    public BigDecimal amount(final int index) {
+
+      return amounts[index];
+    }
+  }
+}
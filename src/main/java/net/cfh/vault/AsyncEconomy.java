@@ -0,0 +1,293 @@
+package net.cfh.vault;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.economy.Balances;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/**
+ * AsyncEconomy is an asynchronous facade over the active {@link Economy}. Every call runs on a
+ * virtual thread, while a semaphore caps how many provider calls may be in flight at once so a slow
+ * database cannot be flooded. The active economy is resolved when each call runs, so calls always
+ * reach the provider that is active at that moment.
+ *
+ * <p>Futures complete on the virtual thread that made the provider call. Use
+ * {@link #completeOn(CompletableFuture, Executor)} with a world, which is an {@link Executor}, to
+ * continue on that world's thread instead.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class AsyncEconomy {
+
+  private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                     .name("VaultUnlocked-Async-", 0)
+                                                                                     .factory());
+  private final Semaphore permits;
+
+  /**
+   * Creates a new asynchronous economy facade.
+   *
+   * @param maxConcurrency the maximum number of provider calls in flight at once.
+   */
+  public AsyncEconomy(final int maxConcurrency) {
+
+    this.permits = new Semaphore(Math.max(1, maxConcurrency), true);
+  }
+
+  /**
+   * Runs an arbitrary operation against the active economy asynchronously.
+   *
+   * @param operation the operation to run.
+   * @param <R> the result type.
+   * @return a future completed with the operation's result, or exceptionally if no economy is
+   *         active, the facade was shut down or the operation failed.
+   */
+  public <R> CompletableFuture<R> submit(final @NotNull Function<Economy, R> operation) {
+
+    try {
+      return CompletableFuture.supplyAsync(()->{
+
+        //resolve the economy once a permit is held, a call may wait here across a provider switch.
+        permits.acquireUninterruptibly();
+        try {
+          final Economy economy = VaultUnlockedServicesManager.get().economyObj();
+          if(economy == null) {
+            throw new IllegalStateException("No economy provider is currently active.");
+          }
+          return operation.apply(economy);
+        } finally {
+          permits.release();
+        }
+      }, executor);
+    } catch(final RejectedExecutionException e) {
+      return CompletableFuture.failedFuture(new IllegalStateException("The asynchronous economy has been shut down.", e));
+    }
+  }
+
+  /**
+   * Retrieves an account's balance in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @return a future completed with the balance.
+   */
+  public CompletableFuture<BigDecimal> balance(final @NotNull String pluginName, final @NotNull UUID account) {
+
+    return balance(pluginName, account, null, null);
+  }
+
+  /**
+   * Retrieves an account's balance.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return a future completed with the balance.
+   */
+  public CompletableFuture<BigDecimal> balance(final @NotNull String pluginName, final @NotNull UUID account,
+                                               final @Nullable String world, final @Nullable String currency) {
+
+    return submit(economy->Balances.balance(economy, pluginName, account, world, currency));
+  }
+
+  /**
+   * Checks if an account holds at least an amount in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param amount the amount to check for.
+   * @return a future completed with true if the account holds at least {@code amount}.
+   */
+  public CompletableFuture<Boolean> has(final @NotNull String pluginName, final @NotNull UUID account,
+                                        final @NotNull BigDecimal amount) {
+
+    return has(pluginName, account, null, null, amount);
+  }
+
+  /**
+   * Checks if an account holds at least an amount.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the amount to check for.
+   * @return a future completed with true if the account holds at least {@code amount}.
+   */
+  public CompletableFuture<Boolean> has(final @NotNull String pluginName, final @NotNull UUID account,
+                                        final @Nullable String world, final @Nullable String currency,
+                                        final @NotNull BigDecimal amount) {
+
+    return submit(economy->Balances.has(economy, pluginName, account, world, currency, amount));
+  }
+
+  /**
+   * Deposits an amount into an account in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param amount the amount to deposit.
+   * @return a future completed with the provider's response.
+   */
+  public CompletableFuture<EconomyResponse> deposit(final @NotNull String pluginName, final @NotNull UUID account,
+                                                    final @NotNull BigDecimal amount) {
+
+    return deposit(pluginName, account, null, null, amount);
+  }
+
+  /**
+   * Deposits an amount into an account.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the amount to deposit.
+   * @return a future completed with the provider's response.
+   */
+  public CompletableFuture<EconomyResponse> deposit(final @NotNull String pluginName, final @NotNull UUID account,
+                                                    final @Nullable String world, final @Nullable String currency,
+                                                    final @NotNull BigDecimal amount) {
+
+    return submit(economy->Balances.deposit(economy, pluginName, account, world, currency, amount));
+  }
+
+  /**
+   * Withdraws an amount from an account in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param amount the amount to withdraw.
+   * @return a future completed with the provider's response.
+   */
+  public CompletableFuture<EconomyResponse> withdraw(final @NotNull String pluginName, final @NotNull UUID account,
+                                                     final @NotNull BigDecimal amount) {
+
+    return withdraw(pluginName, account, null, null, amount);
+  }
+
+  /**
+   * Withdraws an amount from an account.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the amount to withdraw.
+   * @return a future completed with the provider's response.
+   */
+  public CompletableFuture<EconomyResponse> withdraw(final @NotNull String pluginName, final @NotNull UUID account,
+                                                     final @Nullable String world, final @Nullable String currency,
+                                                     final @NotNull BigDecimal amount) {
+
+    return submit(economy->Balances.withdraw(economy, pluginName, account, world, currency, amount));
+  }
+
+  /**
+   * Sets an account's balance in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param amount the new balance.
+   * @return a future completed with the provider's response.
+   */
+  public CompletableFuture<EconomyResponse> set(final @NotNull String pluginName, final @NotNull UUID account,
+                                                final @NotNull BigDecimal amount) {
+
+    return set(pluginName, account, null, null, amount);
+  }
+
+  /**
+   * Sets an account's balance.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the new balance.
+   * @return a future completed with the provider's response.
+   */
+  public CompletableFuture<EconomyResponse> set(final @NotNull String pluginName, final @NotNull UUID account,
+                                                final @Nullable String world, final @Nullable String currency,
+                                                final @NotNull BigDecimal amount) {
+
+    return submit(economy->Balances.set(economy, pluginName, account, world, currency, amount));
+  }
+
+  /**
+   * Returns a future that completes with the same outcome as {@code future}, but on the specified
+   * executor, such as the world whose thread should continue with the result. A failure is relayed
+   * as the exception the provider call threw, not the {@link CompletionException} wrapping it.
+   *
+   * @param future the future to relay.
+   * @param executor the executor to complete on.
+   * @param <R> the result type.
+   * @return a future completed on {@code executor}.
+   */
+  public static <R> CompletableFuture<R> completeOn(final @NotNull CompletableFuture<R> future,
+                                                    final @NotNull Executor executor) {
+
+    final CompletableFuture<R> relay = new CompletableFuture<>();
+    future.whenCompleteAsync((result, error)->{
+
+      if(error instanceof final CompletionException completion && completion.getCause() != null) {
+        relay.completeExceptionally(completion.getCause());
+      } else if(error != null) {
+        relay.completeExceptionally(error);
+      } else {
+        relay.complete(result);
+      }
+    }, executor);
+    return relay;
+  }
+
+  /**
+   * Retrieves the number of provider calls that may still start without waiting.
+   *
+   * @return the number of free concurrency permits.
+   */
+  public int available() {
+
+    return permits.availablePermits();
+  }
+
+  /**
+   * Stops accepting new calls. Calls already submitted still run to completion, later calls return
+   * futures that have already failed.
+   */
+  public void shutdown() {
+
+    executor.shutdown();
+  }
+}
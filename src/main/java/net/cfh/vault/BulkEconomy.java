@@ -0,0 +1,268 @@
+package net.cfh.vault;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.economy.Balances;
+import net.cfh.vault.economy.BatchBalanceReader;
+import net.cfh.vault.economy.BatchTransactionWriter;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * BulkEconomy reads balances of, and deposits into or withdraws from, many accounts at once through
+ * the active {@link Economy}. Accounts are split into chunks, and each chunk is a single call to the
+ * provider's {@link BatchBalanceReader} or {@link BatchTransactionWriter} extension when it offers
+ * one, so a payout over N accounts costs roughly N / chunk size round-trips. For providers without
+ * the extension, every chunk falls back to individual calls, with the chunks running in parallel.
+ * A chunk that fails leaves its accounts out of balance results, or fails their transactions,
+ * without failing the rest of the operation.
+ *
+ * <p>Chunks are submitted through the {@link AsyncEconomy}, so they share its virtual threads and
+ * its cap on provider calls in flight, and one chunk holds a single concurrency permit.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class BulkEconomy {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private final AsyncEconomy async;
+  private final int chunkSize;
+
+  /**
+   * Creates a new bulk economy facade.
+   *
+   * @param async the asynchronous facade chunks are submitted through.
+   * @param chunkSize the number of accounts handled by a single provider call or fallback chunk.
+   */
+  public BulkEconomy(final @NotNull AsyncEconomy async, final int chunkSize) {
+
+    this.async = async;
+    this.chunkSize = Math.max(1, chunkSize);
+  }
+
+  /**
+   * Reads the balance of every specified account in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param accounts the accounts to read.
+   * @return a future completed with the balances keyed by account; accounts whose balance could not
+   *         be read are left out.
+   */
+  public CompletableFuture<Map<UUID, BigDecimal>> balances(final @NotNull String pluginName,
+                                                          final @NotNull Collection<UUID> accounts) {
+
+    return balances(pluginName, accounts, null, null);
+  }
+
+  /**
+   * Reads the balance of every specified account.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param accounts the accounts to read.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return a future completed with the balances keyed by account; accounts whose balance could not
+   *         be read are left out.
+   */
+  public CompletableFuture<Map<UUID, BigDecimal>> balances(final @NotNull String pluginName,
+                                                          final @NotNull Collection<UUID> accounts,
+                                                          final @Nullable String world, final @Nullable String currency) {
+
+    final List<UUID> unique = new ArrayList<>(new LinkedHashSet<>(accounts));
+    final List<CompletableFuture<Map<UUID, BigDecimal>>> chunks = new ArrayList<>();
+    for(int i = 0; i < unique.size(); i += chunkSize) {
+
+      final List<UUID> chunk = unique.subList(i, Math.min(unique.size(), i + chunkSize));
+      chunks.add(async.submit(economy->{
+
+        if(economy instanceof final BatchBalanceReader reader) {
+          try {
+            return reader.balances(pluginName, chunk, world, currency);
+          } catch(final Exception e) {
+
+            LOGGER.atWarning().withCause(e).log("Unable to read a batch of " + chunk.size() + " balances for " + pluginName + ".");
+            return Map.of();
+          }
+        }
+
+        final Map<UUID, BigDecimal> balances = new HashMap<>(chunk.size() * 2);
+        for(final UUID account : chunk) {
+          try {
+            balances.put(account, Balances.balance(economy, pluginName, account, world, currency));
+          } catch(final Exception e) {
+            LOGGER.atWarning().withCause(e).log("Unable to read the balance of " + account + " for " + pluginName + ".");
+          }
+        }
+        return balances;
+      }));
+    }
+    return merge(chunks, unique.size());
+  }
+
+  /**
+   * Deposits an amount into every specified account in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param amounts the amounts to deposit, keyed by account.
+   * @return a future completed with the provider's response for every account.
+   */
+  public CompletableFuture<Map<UUID, EconomyResponse>> deposit(final @NotNull String pluginName,
+                                                              final @NotNull Map<UUID, BigDecimal> amounts) {
+
+    return deposit(pluginName, amounts, null, null);
+  }
+
+  /**
+   * Deposits an amount into every specified account.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param amounts the amounts to deposit, keyed by account.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return a future completed with the provider's response for every account.
+   */
+  public CompletableFuture<Map<UUID, EconomyResponse>> deposit(final @NotNull String pluginName,
+                                                              final @NotNull Map<UUID, BigDecimal> amounts,
+                                                              final @Nullable String world, final @Nullable String currency) {
+
+    return transact(amounts, economy->(economy instanceof final BatchTransactionWriter writer)?
+                                      chunk->writer.depositAll(pluginName, chunk, world, currency) :
+                                      chunk->each(chunk, (account, amount)->Balances.deposit(economy, pluginName, account, world, currency, amount)));
+  }
+
+  /**
+   * Withdraws an amount from every specified account in the default world and currency.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param amounts the amounts to withdraw, keyed by account.
+   * @return a future completed with the provider's response for every account.
+   */
+  public CompletableFuture<Map<UUID, EconomyResponse>> withdraw(final @NotNull String pluginName,
+                                                               final @NotNull Map<UUID, BigDecimal> amounts) {
+
+    return withdraw(pluginName, amounts, null, null);
+  }
+
+  /**
+   * Withdraws an amount from every specified account.
+   *
+   * @param pluginName the name of the calling plugin.
+   * @param amounts the amounts to withdraw, keyed by account.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return a future completed with the provider's response for every account.
+   */
+  public CompletableFuture<Map<UUID, EconomyResponse>> withdraw(final @NotNull String pluginName,
+                                                               final @NotNull Map<UUID, BigDecimal> amounts,
+                                                               final @Nullable String world, final @Nullable String currency) {
+
+    return transact(amounts, economy->(economy instanceof final BatchTransactionWriter writer)?
+                                      chunk->writer.withdrawAll(pluginName, chunk, world, currency) :
+                                      chunk->each(chunk, (account, amount)->Balances.withdraw(economy, pluginName, account, world, currency, amount)));
+  }
+
+  private CompletableFuture<Map<UUID, EconomyResponse>> transact(final Map<UUID, BigDecimal> amounts,
+                                                                 final Function<Economy, Function<Map<UUID, BigDecimal>, Map<UUID, EconomyResponse>>> path) {
+
+    final List<CompletableFuture<Map<UUID, EconomyResponse>>> chunks = new ArrayList<>();
+    Map<UUID, BigDecimal> chunk = new LinkedHashMap<>();
+    for(final Map.Entry<UUID, BigDecimal> entry : amounts.entrySet()) {
+
+      chunk.put(entry.getKey(), entry.getValue());
+      if(chunk.size() >= chunkSize) {
+
+        final Map<UUID, BigDecimal> full = chunk;
+        chunks.add(async.submit(economy->apply(path.apply(economy), full)));
+        chunk = new LinkedHashMap<>();
+      }
+    }
+
+    if(!chunk.isEmpty()) {
+
+      final Map<UUID, BigDecimal> last = chunk;
+      chunks.add(async.submit(economy->apply(path.apply(economy), last)));
+    }
+    return merge(chunks, amounts.size());
+  }
+
+  private static Map<UUID, EconomyResponse> apply(final Function<Map<UUID, BigDecimal>, Map<UUID, EconomyResponse>> path,
+                                                  final Map<UUID, BigDecimal> chunk) {
+
+    try {
+      return path.apply(chunk);
+    } catch(final Exception e) {
+
+      //a failed batch call fails every account in it, rather than the whole bulk operation.
+      LOGGER.atWarning().withCause(e).log("Unable to apply a batch of " + chunk.size() + " transactions.");
+      return each(chunk, (account, amount)->failure(amount, e));
+    }
+  }
+
+  private static EconomyResponse failure(final BigDecimal amount, final Exception error) {
+
+    return new EconomyResponse(amount, BigDecimal.ZERO, EconomyResponse.ResponseType.FAILURE, String.valueOf(error.getMessage()));
+  }
+
+  private static Map<UUID, EconomyResponse> each(final Map<UUID, BigDecimal> chunk, final Transaction transaction) {
+
+    final Map<UUID, EconomyResponse> responses = new HashMap<>(chunk.size() * 2);
+    for(final Map.Entry<UUID, BigDecimal> entry : chunk.entrySet()) {
+      try {
+        responses.put(entry.getKey(), transaction.apply(entry.getKey(), entry.getValue()));
+      } catch(final Exception e) {
+        responses.put(entry.getKey(), failure(entry.getValue(), e));
+      }
+    }
+    return responses;
+  }
+
+  private static <R> CompletableFuture<Map<UUID, R>> merge(final List<CompletableFuture<Map<UUID, R>>> chunks, final int size) {
+
+    return CompletableFuture.allOf(chunks.toArray(new CompletableFuture<?>[0])).thenApply(ignored->{
+
+      final Map<UUID, R> merged = new HashMap<>(size * 2);
+      for(final CompletableFuture<Map<UUID, R>> chunk : chunks) {
+        merged.putAll(chunk.join());
+      }
+      return merged;
+    });
+  }
+
+  @FunctionalInterface
+  private interface Transaction {
+
+    EconomyResponse apply(UUID account, BigDecimal amount);
+  }
+}
@@ -0,0 +1,376 @@
+package net.cfh.vault;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.economy.Balances;
+import net.cfh.vault.economy.MoneyResult;
+import net.cfh.vault.economy.ScaledEconomy;
+import net.cfh.vault.facade.ProviderFacade;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * FastEconomy is an optional facade for hot paths that represents amounts as {@code long} units of
+ * a currency's smallest denomination instead of {@link BigDecimal}, and answers transactions with a
+ * reused {@link MoneyResult} instead of a new {@link EconomyResponse}.
+ *
+ * <p>When the economy implements {@link ScaledEconomy} and no layers are installed around it,
+ * calls go straight to the provider and allocate nothing. Otherwise they go through the regular
+ * facade, so caches, journals and other layers still see every change, and amounts are converted
+ * to and from {@link BigDecimal} at that boundary using the configured scale of each currency.</p>
+ *
+ * <p>Methods without a {@link MoneyResult} parameter answer with a result owned by the calling
+ * thread, valid until that thread's next call. Callers on short-lived virtual threads should pass a
+ * result of their own, since each new thread would otherwise create one.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class FastEconomy {
+
+  private static final String NO_ECONOMY = "No economy provider is currently active.";
+  private static final ThreadLocal<MoneyResult> RESULTS = ThreadLocal.withInitial(MoneyResult::new);
+
+  private final int defaultScale;
+  private final Map<String, Integer> scales;
+  private final boolean follow;
+
+  private final LongAdder direct = new LongAdder();
+  private final LongAdder converted = new LongAdder();
+
+  private volatile Target target;
+
+  /**
+   * Creates a fast facade over the specified economy.
+   *
+   * @param economy the economy to use.
+   * @param defaultScale the scale of currencies without a configured scale, used for economies that
+   *                     do not implement {@link ScaledEconomy}.
+   * @param scales the scale of each currency, used for economies that do not implement {@link ScaledEconomy}.
+   */
+  public FastEconomy(final @NotNull Economy economy, final int defaultScale, final @NotNull Map<String, Integer> scales) {
+
+    this(defaultScale, scales, false);
+    this.target = Target.of(economy);
+  }
+
+  /**
+   * Creates a fast facade straight over a provider's {@link ScaledEconomy} extension, for callers
+   * that hold the provider itself rather than going through VaultUnlocked. Every call is direct.
+   *
+   * @param economy the scaled economy to use.
+   */
+  public FastEconomy(final @NotNull ScaledEconomy economy) {
+
+    this(0, Map.of(), false);
+    this.target = new Target(null, economy);
+  }
+
+  private FastEconomy(final int defaultScale, final Map<String, Integer> scales, final boolean follow) {
+
+    this.defaultScale = Math.max(0, defaultScale);
+    this.scales = new HashMap<>(scales);
+    this.follow = follow;
+  }
+
+  /**
+   * Creates a fast facade that follows the active economy, switching providers as soon as the
+   * active economy changes.
+   *
+   * @param defaultScale the scale of currencies without a configured scale, used for economies that
+   *                     do not implement {@link ScaledEconomy}.
+   * @param scales the scale of each currency, used for economies that do not implement {@link ScaledEconomy}.
+   * @return the new facade.
+   */
+  public static FastEconomy active(final int defaultScale, final @NotNull Map<String, Integer> scales) {
+
+    final FastEconomy economy = new FastEconomy(defaultScale, scales, true);
+    economy.target = Target.of(VaultUnlockedServicesManager.get().economyObj());
+    VaultUnlockedServicesManager.get().economyListener(event->{
+      if(event.type() == ProviderEvent.Type.ACTIVE_CHANGED) {
+        economy.target = Target.of(event.active());
+      }
+    });
+    return economy;
+  }
+
+  /**
+   * Retrieves the scale of the units of a currency.
+   *
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the number of fractional digits a unit represents.
+   */
+  public int scale(final @Nullable String currency) {
+
+    final Target current = target;
+    return (current.scaled() != null)? current.scaled().scale(currency) : configuredScale(currency);
+  }
+
+  /**
+   * Reads a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the read.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the balance, in units.
+   * @throws IllegalStateException if no economy is active.
+   * @throws ArithmeticException if the balance does not fit a {@code long} of units.
+   */
+  public long balance(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                      final @Nullable String currency) {
+
+    final Target current = target;
+    if(current.scaled() != null) {
+
+      direct.increment();
+      return current.scaled().balanceUnits(pluginName, account, world, currency);
+    }
+
+    if(current.economy() == null) {
+      throw new IllegalStateException(NO_ECONOMY);
+    }
+
+    converted.increment();
+    return units(Balances.balance(current.economy(), pluginName, account, world, currency), configuredScale(currency));
+  }
+
+  /**
+   * Determines if a balance holds at least the specified amount.
+   *
+   * @param pluginName the name of the plugin performing the check.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param units the amount, in units.
+   * @return true if the balance holds at least the amount.
+   */
+  public boolean has(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                     final @Nullable String currency, final long units) {
+
+    return balance(pluginName, account, world, currency) >= units;
+  }
+
+  /**
+   * Deposits into a balance, answering with the calling thread's result.
+   *
+   * @see #deposit(String, UUID, String, String, long, MoneyResult)
+   */
+  public MoneyResult deposit(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                             final @Nullable String currency, final long units) {
+
+    return deposit(pluginName, account, world, currency, units, RESULTS.get());
+  }
+
+  /**
+   * Deposits into a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the deposit.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param units the amount to deposit, in units.
+   * @param result the result to fill in.
+   * @return the filled in result.
+   */
+  public MoneyResult deposit(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                             final @Nullable String currency, final long units, final @NotNull MoneyResult result) {
+
+    final Target current = target;
+    if(current.scaled() != null) {
+
+      direct.increment();
+      current.scaled().depositUnits(pluginName, account, world, currency, units, result);
+      return result;
+    }
+
+    if(current.economy() == null) {
+      return result.fail(units, NO_ECONOMY);
+    }
+
+    converted.increment();
+    final int scale = configuredScale(currency);
+    return result(Balances.deposit(current.economy(), pluginName, account, world, currency, BigDecimal.valueOf(units, scale)),
+                  units, scale, result);
+  }
+
+  /**
+   * Withdraws from a balance, answering with the calling thread's result.
+   *
+   * @see #withdraw(String, UUID, String, String, long, MoneyResult)
+   */
+  public MoneyResult withdraw(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                              final @Nullable String currency, final long units) {
+
+    return withdraw(pluginName, account, world, currency, units, RESULTS.get());
+  }
+
+  /**
+   * Withdraws from a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the withdrawal.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param units the amount to withdraw, in units.
+   * @param result the result to fill in.
+   * @return the filled in result.
+   */
+  public MoneyResult withdraw(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                              final @Nullable String currency, final long units, final @NotNull MoneyResult result) {
+
+    final Target current = target;
+    if(current.scaled() != null) {
+
+      direct.increment();
+      current.scaled().withdrawUnits(pluginName, account, world, currency, units, result);
+      return result;
+    }
+
+    if(current.economy() == null) {
+      return result.fail(units, NO_ECONOMY);
+    }
+
+    converted.increment();
+    final int scale = configuredScale(currency);
+    return result(Balances.withdraw(current.economy(), pluginName, account, world, currency, BigDecimal.valueOf(units, scale)),
+                  units, scale, result);
+  }
+
+  /**
+   * Sets a balance, answering with the calling thread's result.
+   *
+   * @see #set(String, UUID, String, String, long, MoneyResult)
+   */
+  public MoneyResult set(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                         final @Nullable String currency, final long units) {
+
+    return set(pluginName, account, world, currency, units, RESULTS.get());
+  }
+
+  /**
+   * Sets a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the write.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param units the new balance, in units.
+   * @param result the result to fill in.
+   * @return the filled in result.
+   */
+  public MoneyResult set(final @NotNull String pluginName, final @NotNull UUID account, final @Nullable String world,
+                         final @Nullable String currency, final long units, final @NotNull MoneyResult result) {
+
+    final Target current = target;
+    if(current.scaled() != null) {
+
+      direct.increment();
+      current.scaled().setUnits(pluginName, account, world, currency, units, result);
+      return result;
+    }
+
+    if(current.economy() == null) {
+      return result.fail(units, NO_ECONOMY);
+    }
+
+    converted.increment();
+    final int scale = configuredScale(currency);
+    return result(Balances.set(current.economy(), pluginName, account, world, currency, BigDecimal.valueOf(units, scale)),
+                  units, scale, result);
+  }
+
+  /**
+   * Determines if calls currently reach the provider without any conversion.
+   *
+   * @return true if the economy implements {@link ScaledEconomy} and has no layers around it.
+   */
+  public boolean direct() {
+
+    return target.scaled() != null;
+  }
+
+  /**
+   * Formats the number of direct and converted calls as a single human-readable line.
+   *
+   * @return the formatted statistics.
+   */
+  public String describe() {
+
+    return String.format("direct=%d converted=%d path=%s%s", direct.sum(), converted.sum(),
+                         (direct())? "direct" : "converted", (follow)? " following the active economy" : "");
+  }
+
+  private int configuredScale(final @Nullable String currency) {
+
+    if(currency == null) {
+      return defaultScale;
+    }
+
+    final Integer scale = scales.get(currency);
+    return (scale == null)? defaultScale : scale;
+  }
+
+  private static MoneyResult result(final EconomyResponse response, final long units, final int scale,
+                                    final MoneyResult result) {
+
+    if(!response.transactionSuccess()) {
+      return result.fail(units, response.errorMessage);
+    }
+
+    //the transaction was applied either way, so a missing or oversized balance must not read as a failure.
+    if(response.balance == null) {
+      return result.succeedUnknownBalance(units);
+    }
+
+    try {
+      return result.succeed(units, units(response.balance, scale));
+    } catch(final ArithmeticException e) {
+      return result.succeedUnknownBalance(units);
+    }
+  }
+
+  private static long units(final BigDecimal value, final int scale) {
+
+    return value.movePointRight(scale).setScale(0, RoundingMode.DOWN).longValueExact();
+  }
+
+  /**
+   * The economy calls go to, and the provider behind it when calls may skip the facade.
+   */
+  private record Target(@Nullable Economy economy, @Nullable ScaledEconomy scaled) {
+
+    private static Target of(final @Nullable Economy economy) {
+
+      //a facade means layers are installed, which must keep seeing every call.
+      if(economy instanceof final ScaledEconomy scaled && ProviderFacade.unwrap(economy) == economy) {
+        return new Target(economy, scaled);
+      }
+      return new Target(economy, null);
+    }
+  }
+}
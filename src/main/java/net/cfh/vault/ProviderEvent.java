@@ -0,0 +1,59 @@
+package net.cfh.vault;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * ProviderEvent describes a change to the providers of a single service, handed to every
+ * {@link ProviderListener} subscribed to that service.
+ *
+ * @param type the kind of change.
+ * @param name the name of the provider registered or unregistered, or of the provider that became
+ *             active, {@code null} if no provider is active any more.
+ * @param provider the provider registered or unregistered, or the undecorated provider that became
+ *                 active, {@code null} if no provider is active any more.
+ * @param active the active provider as handed out after the change, or {@code null} if none is enabled.
+ * @param <T> the provider type.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public record ProviderEvent<T>(@NotNull Type type, @Nullable String name, @Nullable T provider, @Nullable T active) {
+
+  /**
+   * The kinds of change a {@link ProviderEvent} describes.
+   */
+  public enum Type {
+    /**
+     * A provider was registered, or replaced a provider registered under the same name.
+     */
+    REGISTERED,
+    /**
+     * A provider was unregistered.
+     */
+    UNREGISTERED,
+    /**
+     * The active provider as handed out changed, either because a different provider became active
+     * or because the layers around it were changed. References to the previous active provider
+     * should be dropped.
+     */
+    ACTIVE_CHANGED
+  }
+}
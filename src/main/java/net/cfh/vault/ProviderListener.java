@@ -0,0 +1,44 @@
+package net.cfh.vault;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * ProviderListener is notified of the {@link ProviderEvent}s of a single service. Listeners are
+ * called once the registry has been unlocked, one event at a time and in the order changes are made.
+ * They usually run on the thread making the change, unless another thread is already delivering
+ * events, in which case that thread delivers this change's events as well. Slow work still delays
+ * later events, so it should be handed off to another thread.
+ *
+ * @param <T> the provider type.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+@FunctionalInterface
+public interface ProviderListener<T> {
+
+  /**
+   * Called after the change described by the event has been published, so resolving the active
+   * provider from within the listener already returns the new provider.
+   *
+   * @param event the event describing the change.
+   */
+  void onEvent(@NotNull ProviderEvent<T> event);
+}
@@ -0,0 +1,475 @@
+package net.cfh.vault;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.facade.ProviderFacade;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.cfh.vault.health.ProviderHealth;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * ProviderRegistry holds the registered providers of a single service type as an immutable,
+ * copy-on-write {@link Snapshot}. Readers only ever perform a single volatile read of the current
+ * snapshot, while writers (register, unregister and enable-state changes) rebuild it under the
+ * registry's monitor.
+ *
+ * <p>The active provider is the enabled provider with the best health, then the highest priority,
+ * then the earliest registration. Without a {@link ProviderHealth} every provider counts as healthy,
+ * and every provider has a priority of 0 unless one is assigned, so by default the first enabled
+ * provider in registration order is active.</p>
+ *
+ * <p>When {@link ProviderLayer}s are installed, the active provider is handed out wrapped in a
+ * {@link ProviderFacade}. The facade is only rebuilt when the active provider or the installed
+ * layers change, so per-provider layer state survives unrelated registrations.</p>
+ *
+ * <p>{@link ProviderListener}s are notified of registrations, unregistrations and changes of the
+ * active provider after the new snapshot is published. Events are queued while the monitor is held
+ * and delivered once the writer has released it, one at a time and in the order they were queued,
+ * so a listener may take as long as it needs or change the registry itself without blocking other
+ * writers. Listeners are held in a copy-on-write array, and no event is built while nobody
+ * listens.</p>
+ *
+ * @param <T> the provider type managed by this registry.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class ProviderRegistry<T> {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private final Class<T> type;
+  private final Function<T, String> nameFunction;
+  private final Predicate<T> enabledFunction;
+  private final Map<String, ProviderLayer<T>> layers = new LinkedHashMap<>();
+  private final Map<String, Integer> priorities = new HashMap<>();
+
+  private ProviderHealth<T> health = null;
+
+  @SuppressWarnings("unchecked")
+  private volatile ProviderListener<T>[] listeners = new ProviderListener[0];
+  private final Queue<ProviderEvent<T>> events = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean dispatching = new AtomicBoolean(false);
+
+  private volatile Snapshot<T> snapshot = Snapshot.empty();
+
+  /**
+   * Creates a new registry.
+   *
+   * @param type the provider type.
+   * @param nameFunction the function used to obtain the unique name of a provider.
+   * @param enabledFunction the predicate used to determine if a provider is currently enabled.
+   */
+  public ProviderRegistry(final @NotNull Class<T> type, final @NotNull Function<T, String> nameFunction,
+                          final @NotNull Predicate<T> enabledFunction) {
+
+    this.type = type;
+    this.nameFunction = nameFunction;
+    this.enabledFunction = enabledFunction;
+  }
+
+  /**
+   * Retrieves the current immutable snapshot of this registry.
+   *
+   * @return the current {@link Snapshot}.
+   */
+  @NotNull
+  public Snapshot<T> snapshot() {
+
+    return snapshot;
+  }
+
+  /**
+   * Retrieves the currently active provider, which is the healthiest enabled provider with the
+   * highest priority at the time the snapshot was last rebuilt, wrapped in the facade of any
+   * installed layers.
+   *
+   * @return the active provider, or {@code null} if none is enabled.
+   */
+  @Nullable
+  public T active() {
+
+    return snapshot.active();
+  }
+
+  /**
+   * Retrieves the provider registered under the specified name.
+   *
+   * @param name the name of the provider.
+   * @return the provider, or {@code null} if no provider is registered under that name.
+   */
+  @Nullable
+  public T provider(final @NotNull String name) {
+
+    return snapshot.providers().get(name);
+  }
+
+  /**
+   * Registers a provider, replacing any provider previously registered under the same name while
+   * keeping its original position in the registration order.
+   *
+   * @param provider the provider to register.
+   */
+  public void register(final @NotNull T provider) {
+
+    synchronized(this) {
+
+      final Snapshot<T> previous = snapshot;
+      final String name = nameFunction.apply(provider);
+      final Map<String, T> providers = new LinkedHashMap<>(previous.providers());
+      providers.put(name, provider);
+      publish(providers);
+
+      fire(ProviderEvent.Type.REGISTERED, name, provider);
+      activeChanged(previous);
+    }
+    dispatch();
+  }
+
+  /**
+   * Registers a provider with the specified priority, replacing any provider previously registered
+   * under the same name while keeping its original position in the registration order.
+   *
+   * @param provider the provider to register.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void register(final @NotNull T provider, final int priority) {
+
+    synchronized(this) {
+
+      priorities.put(nameFunction.apply(provider), priority);
+      register(provider);
+    }
+    dispatch();
+  }
+
+  /**
+   * Unregisters the provider registered under the same name as the specified provider.
+   *
+   * @param provider the provider to unregister.
+   */
+  public void unregister(final @NotNull T provider) {
+
+    synchronized(this) {
+
+      final String name = nameFunction.apply(provider);
+      if(!snapshot.providers().containsKey(name)) {
+        return;
+      }
+
+      final Snapshot<T> previous = snapshot;
+      final Map<String, T> providers = new LinkedHashMap<>(previous.providers());
+      final T removed = providers.remove(name);
+      publish(providers);
+
+      fire(ProviderEvent.Type.UNREGISTERED, name, removed);
+      activeChanged(previous);
+    }
+    dispatch();
+  }
+
+  /**
+   * Assigns a priority to the provider registered, or later registered, under the specified name.
+   *
+   * @param name the name of the provider.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void priority(final @NotNull String name, final int priority) {
+
+    synchronized(this) {
+
+      final Snapshot<T> previous = snapshot;
+      priorities.put(name, priority);
+      publish(new LinkedHashMap<>(previous.providers()));
+      activeChanged(previous);
+    }
+    dispatch();
+  }
+
+  /**
+   * Retrieves the priority of the provider registered under the specified name.
+   *
+   * @param name the name of the provider.
+   * @return the priority of the provider, 0 if none was assigned.
+   */
+  public synchronized int priority(final @NotNull String name) {
+
+    return priorities.getOrDefault(name, 0);
+  }
+
+  /**
+   * Sets the health tracker consulted when choosing the active provider.
+   *
+   * @param health the health tracker, or {@code null} to treat every provider as healthy.
+   */
+  public void health(final @Nullable ProviderHealth<T> health) {
+
+    synchronized(this) {
+
+      final Snapshot<T> previous = snapshot;
+      this.health = health;
+      publish(new LinkedHashMap<>(previous.providers()));
+      activeChanged(previous);
+    }
+    dispatch();
+  }
+
+  /**
+   * Re-evaluates the enabled state and health of every registered provider and rebuilds the active
+   * provider reference if it has changed. Besides register and unregister, this is the only path
+   * that changes which provider is active.
+   *
+   * @return true if the active provider changed, otherwise false.
+   */
+  public boolean refresh() {
+
+    synchronized(this) {
+
+      final Snapshot<T> current = snapshot;
+      final T resolved = resolve(current.providers());
+      if(resolved == current.provider()) {
+        return false;
+      }
+
+      snapshot = new Snapshot<>(current.names(), current.providers(), resolved, decorate(resolved));
+      activeChanged(current);
+    }
+    dispatch();
+    return true;
+  }
+
+  /**
+   * Installs a layer around the active provider, replacing any layer installed under the same
+   * name. Layers are applied in installation order, the first installed being the outermost.
+   *
+   * @param name the unique name of the layer.
+   * @param layer the layer to install.
+   */
+  public void layer(final @NotNull String name, final @NotNull ProviderLayer<T> layer) {
+
+    synchronized(this) {
+
+      layers.put(name, layer);
+      redecorate();
+    }
+    dispatch();
+  }
+
+  /**
+   * Removes the layer installed under the specified name.
+   *
+   * @param name the name of the layer.
+   */
+  public void removeLayer(final @NotNull String name) {
+
+    synchronized(this) {
+
+      if(layers.remove(name) != null) {
+        redecorate();
+      }
+    }
+    dispatch();
+  }
+
+  /**
+   * Subscribes a listener to the changes of this registry.
+   *
+   * @param listener the listener to subscribe.
+   */
+  public synchronized void listener(final @NotNull ProviderListener<T> listener) {
+
+    final ProviderListener<T>[] current = listeners;
+    final ProviderListener<T>[] updated = Arrays.copyOf(current, current.length + 1);
+    updated[current.length] = listener;
+    listeners = updated;
+  }
+
+  /**
+   * Unsubscribes a listener from the changes of this registry.
+   *
+   * @param listener the listener to unsubscribe.
+   */
+  public synchronized void removeListener(final @NotNull ProviderListener<T> listener) {
+
+    final ProviderListener<T>[] current = listeners;
+    for(int i = 0; i < current.length; i++) {
+      if(current[i] == listener) {
+
+        final ProviderListener<T>[] updated = Arrays.copyOf(current, current.length - 1);
+        System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+        listeners = updated;
+        return;
+      }
+    }
+  }
+
+  private void redecorate() {
+
+    final Snapshot<T> current = snapshot;
+    snapshot = new Snapshot<>(current.names(), current.providers(), current.provider(), decorate(current.provider()));
+    activeChanged(current);
+  }
+
+  private void activeChanged(final Snapshot<T> previous) {
+
+    final Snapshot<T> current = snapshot;
+    if(current.active() != previous.active()) {
+      fire(ProviderEvent.Type.ACTIVE_CHANGED, (current.provider() == null)? null : nameFunction.apply(current.provider()),
+           current.provider());
+    }
+  }
+
+  /**
+   * Queues an event, to be delivered by {@link #dispatch()} once the monitor is released.
+   */
+  private void fire(final ProviderEvent.Type type, final @Nullable String name, final @Nullable T provider) {
+
+    if(listeners.length > 0) {
+      events.add(new ProviderEvent<>(type, name, provider, snapshot.active()));
+    }
+  }
+
+  /**
+   * Delivers the queued events, unless the monitor is still held further up the stack or another
+   * thread is already delivering, in which case that thread also delivers the events queued here.
+   */
+  private void dispatch() {
+
+    if(Thread.holdsLock(this)) {
+      return;
+    }
+
+    //re-check after releasing the flag, an event may have been queued while this thread delivered.
+    while(!events.isEmpty() && dispatching.compareAndSet(false, true)) {
+      try {
+
+        ProviderEvent<T> event;
+        while((event = events.poll()) != null) {
+          deliver(event);
+        }
+      } finally {
+        dispatching.set(false);
+      }
+    }
+  }
+
+  private void deliver(final ProviderEvent<T> event) {
+
+    for(final ProviderListener<T> listener : listeners) {
+      try {
+        listener.onEvent(event);
+      } catch(final RuntimeException e) {
+        LOGGER.atWarning().withCause(e).log("A provider listener failed to handle " + event.type() + " of "
+                                            + event.name() + ".");
+      }
+    }
+  }
+
+  private void publish(final Map<String, T> providers) {
+
+    final Snapshot<T> current = snapshot;
+    final Map<String, T> frozen = Collections.unmodifiableMap(providers);
+    final List<String> names = List.copyOf(new ArrayList<>(frozen.keySet()));
+    final T resolved = resolve(frozen);
+
+    //keep the existing facade when the active provider didn't change so layer state survives.
+    final T active = (resolved == current.provider())? current.active() : decorate(resolved);
+    snapshot = new Snapshot<>(names, frozen, resolved, active);
+  }
+
+  @Nullable
+  private T decorate(final @Nullable T provider) {
+
+    if(provider == null || layers.isEmpty()) {
+      return provider;
+    }
+
+    final List<ProviderInterceptor> interceptors = new ArrayList<>(layers.size());
+    for(final ProviderLayer<T> layer : layers.values()) {
+
+      final ProviderInterceptor interceptor = layer.create(provider);
+      if(interceptor != null) {
+        interceptors.add(interceptor);
+      }
+    }
+    return ProviderFacade.wrap(type, provider, interceptors);
+  }
+
+  @Nullable
+  private T resolve(final Map<String, T> providers) {
+
+    T best = null;
+    ProviderHealth.Status bestStatus = null;
+    int bestPriority = 0;
+    for(final Map.Entry<String, T> entry : providers.entrySet()) {
+
+      if(!enabledFunction.test(entry.getValue())) {
+        continue;
+      }
+
+      final ProviderHealth.Status status = (health == null)? ProviderHealth.Status.HEALTHY : health.status(entry.getKey());
+      final int priority = priorities.getOrDefault(entry.getKey(), 0);
+
+      //only replace on a strictly better provider so ties keep registration order.
+      if(best == null || status.ordinal() < bestStatus.ordinal()
+         || (status == bestStatus && priority > bestPriority)) {
+
+        best = entry.getValue();
+        bestStatus = status;
+        bestPriority = priority;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * An immutable view of the registered providers at a point in time.
+   *
+   * @param names the provider names in registration order.
+   * @param providers the providers keyed by name, iterating in registration order.
+   * @param provider the undecorated active provider, or {@code null} if none is enabled.
+   * @param active the active provider as handed out, wrapped in the facade of any installed layers.
+   * @param <T> the provider type.
+   */
+  public record Snapshot<T>(List<String> names, Map<String, T> providers, @Nullable T provider, @Nullable T active) {
+
+    private static final Snapshot<?> EMPTY = new Snapshot<>(List.of(), Map.of(), null, null);
+
+    @SuppressWarnings("unchecked")
+    static <T> Snapshot<T> empty() {
+
+      return (Snapshot<T>)EMPTY;
+    }
+  }
+}
@@ -0,0 +1,176 @@
+package net.cfh.vault;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * VaultSettings provides access to the values of VaultUnlocked's {@code settings.properties} file.
+ * The file is created from the bundled defaults on first start, and any entry missing from it falls
+ * back to the bundled default.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class VaultSettings {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+  private static final String FILE_NAME = "settings.properties";
+
+  private final Properties properties;
+
+  private VaultSettings(final Properties properties) {
+
+    this.properties = properties;
+  }
+
+  /**
+   * Loads the settings from the specified data directory, creating the file from the bundled
+   * defaults if it doesn't exist yet.
+   *
+   * @param dataDirectory the plugin's data directory.
+   * @return the loaded settings.
+   */
+  public static VaultSettings load(final @NotNull Path dataDirectory) {
+
+    final Properties defaults = new Properties();
+    try(final InputStream stream = VaultSettings.class.getClassLoader().getResourceAsStream(FILE_NAME)) {
+
+      if(stream != null) {
+        defaults.load(stream);
+      }
+    } catch(final IOException e) {
+      LOGGER.atWarning().withCause(e).log("Unable to read the bundled " + FILE_NAME + ".");
+    }
+
+    final Properties properties = new Properties(defaults);
+    final Path file = dataDirectory.resolve(FILE_NAME);
+    try {
+
+      if(Files.notExists(file)) {
+
+        Files.createDirectories(dataDirectory);
+        try(final InputStream stream = VaultSettings.class.getClassLoader().getResourceAsStream(FILE_NAME)) {
+
+          if(stream != null) {
+            Files.copy(stream, file);
+          }
+        }
+      }
+
+      if(Files.exists(file)) {
+        try(final Reader reader = Files.newBufferedReader(file)) {
+          properties.load(reader);
+        }
+      }
+    } catch(final IOException e) {
+      LOGGER.atWarning().withCause(e).log("Unable to load " + file + ", using the default settings.");
+    }
+    return new VaultSettings(properties);
+  }
+
+  /**
+   * Retrieves a string setting.
+   *
+   * @param key the setting key.
+   * @param def the value to use if the setting is missing.
+   * @return the setting value.
+   */
+  public String string(final @NotNull String key, final String def) {
+
+    final String value = properties.getProperty(key);
+    return (value == null)? def : value.trim();
+  }
+
+  /**
+   * Retrieves a boolean setting.
+   *
+   * @param key the setting key.
+   * @param def the value to use if the setting is missing.
+   * @return the setting value.
+   */
+  public boolean bool(final @NotNull String key, final boolean def) {
+
+    final String value = properties.getProperty(key);
+    return (value == null)? def : Boolean.parseBoolean(value.trim());
+  }
+
+  /**
+   * Retrieves an integer setting.
+   *
+   * @param key the setting key.
+   * @param def the value to use if the setting is missing or malformed.
+   * @return the setting value.
+   */
+  public int integer(final @NotNull String key, final int def) {
+
+    return (int)number(key, def);
+  }
+
+  /**
+   * Retrieves a long setting.
+   *
+   * @param key the setting key.
+   * @param def the value to use if the setting is missing or malformed.
+   * @return the setting value.
+   */
+  public long number(final @NotNull String key, final long def) {
+
+    final String value = properties.getProperty(key);
+    if(value == null) {
+      return def;
+    }
+
+    try {
+      return Long.parseLong(value.trim());
+    } catch(final NumberFormatException e) {
+
+      LOGGER.atWarning().log("Invalid value '" + value + "' for setting " + key + ", using " + def + ".");
+      return def;
+    }
+  }
+
+  /**
+   * Retrieves the remainder of every setting key that starts with the specified prefix, such as the
+   * provider names of {@code routing.priority.economy.<provider>} entries.
+   *
+   * @param prefix the key prefix.
+   * @return the sorted key remainders.
+   */
+  public Set<String> keys(final @NotNull String prefix) {
+
+    final Set<String> keys = new TreeSet<>();
+    for(final String key : properties.stringPropertyNames()) {
+
+      if(key.startsWith(prefix) && key.length() > prefix.length()) {
+        keys.add(key.substring(prefix.length()));
+      }
+    }
+    return keys;
+  }
+}
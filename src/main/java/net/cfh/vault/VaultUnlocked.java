@@ -18,17 +18,60 @@ package net.cfh.vault;
  */
 
 import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.event.events.player.PlayerDisconnectEvent;
 import com.hypixel.hytale.server.core.plugin.JavaPlugin;
 import com.hypixel.hytale.server.core.plugin.JavaPluginInit;
+import net.cfh.vault.cache.WarmSnapshot;
+import net.cfh.vault.chat.ChatCache;
+import net.cfh.vault.cluster.InvalidationChannel;
+import net.cfh.vault.cluster.InvalidationTransport;
+import net.cfh.vault.command.VaultConvertCancelCommand;
 import net.cfh.vault.command.VaultConvertCommand;
+import net.cfh.vault.command.VaultConvertStatusCommand;
 import net.cfh.vault.command.VaultInfoCommand;
+import net.cfh.vault.command.VaultJournalReplayCommand;
+import net.cfh.vault.command.VaultJournalReverseCommand;
+import net.cfh.vault.command.VaultMetricsCommand;
+import net.cfh.vault.command.VaultMetricsExportCommand;
+import net.cfh.vault.command.VaultStatsCommand;
+import net.cfh.vault.convert.ConversionJob;
+import net.cfh.vault.convert.ConversionManager;
+import net.cfh.vault.economy.AccountDirectory;
+import net.cfh.vault.economy.AccountSerializer;
+import net.cfh.vault.economy.BalanceCache;
+import net.cfh.vault.economy.DirectoryTracker;
+import net.cfh.vault.economy.Leaderboard;
+import net.cfh.vault.economy.MutationLimiter;
+import net.cfh.vault.economy.WriteBehindBuffer;
+import net.cfh.vault.health.HealthMonitor;
+import net.cfh.vault.health.ProviderHealth;
+import net.cfh.vault.journal.TransactionJournal;
+import net.cfh.vault.metrics.MetricsRegistry;
+import net.cfh.vault.metrics.ServiceMetrics;
+import net.cfh.vault.metrics.SlowCallDetector;
+import net.cfh.vault.metrics.StatsSampler;
+import net.cfh.vault.permission.PermissionCache;
 import net.milkbowl.vault2.chat.ChatUnlocked;
 import net.milkbowl.vault2.economy.Economy;
 import net.milkbowl.vault2.permission.PermissionUnlocked;
 import org.jetbrains.annotations.Nullable;
 
 import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * VaultUnlocked
@@ -39,8 +82,32 @@ import java.util.Optional;
 public class VaultUnlocked extends JavaPlugin {
 
   private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+  private static final String DIRECTORY_FOLDER = "directories";
+  private static final String SNAPSHOT_DIRECTORY = "snapshot";
+  private static final UUID PROBE_ACCOUNT = new UUID(0L, 0L);
+  private static final String SLOW_CALL_THREADS = "(?i)(main|.*world.*|.*server.*)";
   private static VaultUnlocked instance;
   private VaultUnlockedServicesManager services;
+  private ScheduledExecutorService scheduler;
+  private VaultSettings settings;
+  private MetricsRegistry metrics;
+  private SlowCallDetector slowCalls;
+  private StatsSampler stats;
+  private MutationLimiter mutationLimiter;
+  private TransactionJournal journal;
+  private BalanceCache balanceCache;
+  private volatile InvalidationChannel invalidationChannel;
+  private AccountSerializer accountSerializer;
+  private Leaderboard leaderboard;
+  private DirectoryTracker directoryTracker;
+  private WriteBehindBuffer writeBehind;
+  private PermissionCache permissionCache;
+  private ChatCache chatCache;
+  private WarmSnapshot snapshot;
+  private AsyncEconomy asyncEconomy;
+  private BulkEconomy bulkEconomy;
+  private FastEconomy fastEconomy;
+  private HealthMonitor health;
 
 
   public VaultUnlocked(@Nonnull final JavaPluginInit init) {
@@ -53,12 +120,385 @@ public class VaultUnlocked extends JavaPlugin {
   @Override
   protected void setup() {
     LOGGER.atInfo().log("Setting up plugin " + this.getName());
+    this.settings = VaultSettings.load(this.getDataDirectory());
+
+    //installed first so it is the outermost layer and times calls the way callers see them.
+    if(this.settings.bool("metrics.enabled", false)) {
+      this.metrics = new MetricsRegistry();
+      VaultUnlockedServicesManager.get().economyLayer(ServiceMetrics.LAYER, this.metrics.economy());
+      VaultUnlockedServicesManager.get().permissionLayer(ServiceMetrics.LAYER, this.metrics.permission());
+      VaultUnlockedServicesManager.get().chatLayer(ServiceMetrics.LAYER, this.metrics.chat());
+    }
+
+    if(this.settings.bool("slow-calls.enabled", false)) {
+      this.slowCalls = new SlowCallDetector(slowCallThreads(),
+                                            this.settings.number("slow-calls.threshold-millis", 50),
+                                            this.settings.number("slow-calls.report-interval-millis", 60000),
+                                            this.settings.integer("slow-calls.max-reports-per-minute", 10),
+                                            this.settings.integer("slow-calls.stack-depth", 16));
+      VaultUnlockedServicesManager.get().economyLayer(SlowCallDetector.LAYER, this.slowCalls.layer("economy", Economy::getName, true));
+      VaultUnlockedServicesManager.get().permissionLayer(SlowCallDetector.LAYER, this.slowCalls.layer("permission", PermissionUnlocked::getName, false));
+      VaultUnlockedServicesManager.get().chatLayer(SlowCallDetector.LAYER, this.slowCalls.layer("chat", ChatUnlocked::getName, false));
+    }
+
+    if(this.settings.bool("rate-limit.enabled", false)) {
+
+      MutationLimiter.Mode mode = MutationLimiter.Mode.parse(this.settings.string("rate-limit.mode", "reject"));
+      if(mode == null) {
+        LOGGER.atWarning().log("Unknown rate-limit.mode " + this.settings.string("rate-limit.mode", "") + ", rejecting mutations over the limits instead.");
+        mode = MutationLimiter.Mode.REJECT;
+      }
+
+      final MutationLimiter.Limits defaults = limits(null, new MutationLimiter.Limits(200, 400, 16));
+      final Map<String, MutationLimiter.Limits> overrides = new HashMap<>();
+      for(final String prefix : new String[] { "rate-limit.per-second.", "rate-limit.burst.", "rate-limit.max-in-flight." }) {
+        for(final String plugin : this.settings.keys(prefix)) {
+          overrides.computeIfAbsent(plugin, name->limits(name, defaults));
+        }
+      }
+
+      this.mutationLimiter = new MutationLimiter(mode, defaults, overrides,
+                                                 this.settings.number("rate-limit.queue-timeout-millis", 250),
+                                                 this.settings.integer("rate-limit.overflow-concurrency", 2));
+      VaultUnlockedServicesManager.get().economyLayer(MutationLimiter.LAYER, this.mutationLimiter);
+    }
+
+    if(this.settings.bool("economy.cache.enabled", false)) {
+      this.balanceCache = new BalanceCache(this.settings.integer("economy.cache.max-accounts", 10000),
+                                           this.settings.number("economy.cache.ttl-millis", 1000));
+      VaultUnlockedServicesManager.get().economyLayer(BalanceCache.LAYER, this.balanceCache);
+    }
+
+    if(this.settings.bool("economy.serialize.enabled", false)) {
+      this.accountSerializer = new AccountSerializer(this.settings.integer("economy.serialize.stripes", 256));
+      VaultUnlockedServicesManager.get().economyLayer(AccountSerializer.LAYER, this.accountSerializer);
+    }
+
+    //installed inside the serializer, so the balance a set replaces is read under the account's lock, and
+    //outside the write-behind buffer, so it records changes the way callers made them.
+    if(this.settings.bool("journal.enabled", false)) {
+      try {
+        this.journal = new TransactionJournal(this.getDataDirectory().resolve("journal"),
+                                              this.settings.integer("journal.segment-mb", 64),
+                                              this.settings.number("journal.sync-millis", 100),
+                                              this.settings.integer("journal.retention-days", 30),
+                                              this.settings.bool("journal.capture-previous", true));
+        VaultUnlockedServicesManager.get().economyLayer(TransactionJournal.LAYER, this.journal);
+      } catch(final IOException e) {
+        LOGGER.atWarning().withCause(e).log("Unable to open the transaction journal, balance changes will not be journaled.");
+      }
+    }
+
+    if(this.settings.bool("leaderboard.enabled", false)) {
+
+      final List<String> currencies = new ArrayList<>();
+      for(final String currency : this.settings.string("leaderboard.currencies", "").split(",")) {
+        if(!currency.isBlank()) {
+          currencies.add(currency.trim());
+        }
+      }
+      this.leaderboard = new Leaderboard(currencies, this.settings.integer("leaderboard.seed-chunk-size", 500),
+                                         provider->accountDirectory(provider).orElse(null));
+      VaultUnlockedServicesManager.get().economyLayer(Leaderboard.LAYER, this.leaderboard);
+    }
+
+    if(this.settings.bool("economy.write-behind.enabled", false)) {
+      this.writeBehind = new WriteBehindBuffer(this.settings.number("economy.write-behind.flush-interval-millis", 5000),
+                                               this.settings.integer("economy.write-behind.max-pending", 1000));
+      VaultUnlockedServicesManager.get().economyLayer(WriteBehindBuffer.LAYER, this.writeBehind);
+    }
+
+    if(this.settings.bool("directory.enabled", false)) {
+      this.directoryTracker = new DirectoryTracker();
+      VaultUnlockedServicesManager.get().economyLayer(DirectoryTracker.LAYER, this.directoryTracker);
+    }
+
+    if(this.settings.bool("permission.cache.enabled", false)) {
+      this.permissionCache = new PermissionCache(this.settings.integer("permission.cache.max-subjects", 5000),
+                                                 this.settings.number("permission.cache.ttl-millis", 30000));
+      VaultUnlockedServicesManager.get().permissionLayer(PermissionCache.LAYER, this.permissionCache);
+    }
+
+    if(this.settings.bool("chat.cache.enabled", false)) {
+      this.chatCache = new ChatCache(this.settings.integer("chat.cache.max-subjects", 5000),
+                                     this.settings.number("chat.cache.ttl-millis", 600000),
+                                     this.settings.number("chat.cache.refresh-millis", 10000));
+      VaultUnlockedServicesManager.get().chatLayer(ChatCache.LAYER, this.chatCache);
+    }
+
+    for(final String provider : this.settings.keys("routing.priority.economy.")) {
+      VaultUnlockedServicesManager.get().economyPriority(provider, this.settings.integer("routing.priority.economy." + provider, 0));
+    }
+    for(final String provider : this.settings.keys("routing.priority.permission.")) {
+      VaultUnlockedServicesManager.get().permissionPriority(provider, this.settings.integer("routing.priority.permission." + provider, 0));
+    }
+    for(final String provider : this.settings.keys("routing.priority.chat.")) {
+      VaultUnlockedServicesManager.get().chatPriority(provider, this.settings.integer("routing.priority.chat." + provider, 0));
+    }
+
+    //installed last so it is the innermost layer and measures the provider rather than the layers above it.
+    if(this.settings.bool("routing.health.enabled", false)) {
+
+      final ProviderHealth<Economy> economy = health("economy", Economy::getName, provider->provider.hasAccount(PROBE_ACCOUNT));
+      //isEnabled never reaches the backing store, and no other call is cheap and harmless on every
+      //permission or chat provider, so those are only judged by their live calls.
+      final ProviderHealth<PermissionUnlocked> permission = health("permission", PermissionUnlocked::getName, null);
+      final ProviderHealth<ChatUnlocked> chat = health("chat", ChatUnlocked::getName, null);
+
+      VaultUnlockedServicesManager.get().economyLayer(ProviderHealth.LAYER, economy);
+      VaultUnlockedServicesManager.get().permissionLayer(ProviderHealth.LAYER, permission);
+      VaultUnlockedServicesManager.get().chatLayer(ProviderHealth.LAYER, chat);
+      VaultUnlockedServicesManager.get().economyHealth(economy);
+      VaultUnlockedServicesManager.get().permissionHealth(permission);
+      VaultUnlockedServicesManager.get().chatHealth(chat);
+
+      this.health = new HealthMonitor(economy, permission, chat,
+                                      this.settings.number("routing.health.probe-interval-millis", 5000),
+                                      this.settings.number("routing.health.probe-timeout-millis", 2000));
+    }
+
+    this.getEventRegistry().register(PlayerDisconnectEvent.class, this::onDisconnect);
+    ConversionManager.get().completion(this::onConversionFinished);
+
+    this.asyncEconomy = new AsyncEconomy(this.settings.integer("async.max-concurrency", 64));
+    this.bulkEconomy = new BulkEconomy(this.asyncEconomy, this.settings.integer("bulk.chunk-size", 500));
+
+    final Map<String, Integer> scales = new HashMap<>();
+    for(final String currency : this.settings.keys("fast-path.scale.")) {
+      scales.put(currency, this.settings.integer("fast-path.scale." + currency, 2));
+    }
+    this.fastEconomy = FastEconomy.active(this.settings.integer("fast-path.default-scale", 2), scales);
+
     this.getCommandRegistry().registerCommand(new VaultConvertCommand());
+    this.getCommandRegistry().registerCommand(new VaultConvertStatusCommand());
+    this.getCommandRegistry().registerCommand(new VaultConvertCancelCommand());
     this.getCommandRegistry().registerCommand(new VaultInfoCommand());
+    this.getCommandRegistry().registerCommand(new VaultMetricsCommand());
+    this.getCommandRegistry().registerCommand(new VaultMetricsExportCommand());
+    this.getCommandRegistry().registerCommand(new VaultStatsCommand());
+    this.getCommandRegistry().registerCommand(new VaultJournalReplayCommand());
+    this.getCommandRegistry().registerCommand(new VaultJournalReverseCommand());
+
+    //Providers may toggle their enabled state without re-registering, so pick that up off-thread.
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable->{
+      final Thread thread = new Thread(runnable, "VaultUnlocked-Scheduler");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.scheduler.scheduleWithFixedDelay(()->VaultUnlockedServicesManager.get().refresh(), 1, 1, TimeUnit.SECONDS);
+
+    this.stats = new StatsSampler(this.metrics);
+    if(this.balanceCache != null) {
+      this.stats.cache("Balance Cache", this.balanceCache::stats);
+    }
+    if(this.permissionCache != null) {
+      this.stats.cache("Permission Cache", this.permissionCache::stats);
+    }
+    if(this.chatCache != null) {
+      this.stats.cache("Chat Cache", this.chatCache::stats);
+    }
+    final long sample = Math.max(100, this.settings.number("metrics.sample-millis", 5000));
+    this.scheduler.scheduleWithFixedDelay(this.stats::sample, sample, sample, TimeUnit.MILLISECONDS);
+
+    if(this.settings.bool("snapshot.enabled", false)
+       && (this.balanceCache != null || this.permissionCache != null || this.chatCache != null)) {
+
+      //read in the background and preload once the providers the snapshot was saved from are active.
+      this.snapshot = new WarmSnapshot(this.getDataDirectory().resolve(SNAPSHOT_DIRECTORY),
+                                       this.settings.integer("snapshot.max-entries", 20000),
+                                       TimeUnit.MINUTES.toMillis(this.settings.number("snapshot.max-age-minutes", 60)),
+                                       this.settings.number("snapshot.provisional-millis", 60000),
+                                       this.balanceCache, ()->this.invalidationChannel != null,
+                                       this.permissionCache, this.chatCache);
+      this.snapshot.load();
+      this.scheduler.schedule(this.snapshot::discard, Math.max(1, this.settings.number("snapshot.wait-minutes", 5)),
+                              TimeUnit.MINUTES);
+    }
+
+    if(this.directoryTracker != null) {
+
+      //load or build the directory of whichever economy becomes active, then keep it current from the facade.
+      VaultUnlockedServicesManager.get().economyListener(event->{
+        if(event.type() == ProviderEvent.Type.ACTIVE_CHANGED && event.provider() != null) {
+
+          final Economy provider = event.provider();
+          Thread.ofVirtual().name("VaultUnlocked-Directory").start(()->trackDirectory(provider, false));
+        }
+      });
+
+      final Economy active = VaultUnlockedServicesManager.get().economyObj();
+      if(active != null) {
+        Thread.ofVirtual().name("VaultUnlocked-Directory").start(()->trackDirectory(active, false));
+      }
+
+      //accounts a provider creates without going through the facade are only picked up by a rebuild.
+      final long refresh = this.settings.number("directory.refresh-minutes", 0);
+      if(refresh > 0) {
+        this.scheduler.scheduleWithFixedDelay(()->{
+
+          final Economy economy = VaultUnlockedServicesManager.get().economyObj();
+          if(economy != null) {
+            Thread.ofVirtual().name("VaultUnlocked-Directory").start(()->trackDirectory(economy, true));
+          }
+        }, refresh, refresh, TimeUnit.MINUTES);
+      }
+    }
 
     //TODO: Update checking.
   }
 
+  private MutationLimiter.Limits limits(final @Nullable String plugin, final MutationLimiter.Limits defaults) {
+
+    final String suffix = (plugin == null)? "" : "." + plugin;
+    return new MutationLimiter.Limits(this.settings.number("rate-limit.per-second" + suffix, defaults.perSecond()),
+                                      this.settings.integer("rate-limit.burst" + suffix, defaults.burst()),
+                                      this.settings.integer("rate-limit.max-in-flight" + suffix, defaults.maxInFlight()));
+  }
+
+  private <T> ProviderHealth<T> health(final String service, final Function<T, String> nameFunction,
+                                       @Nullable final ProviderHealth.Probe<T> probe) {
+
+    return new ProviderHealth<>(service, nameFunction, probe,
+                                this.settings.number("routing.health.latency-threshold-millis", 250),
+                                this.settings.integer("routing.health.error-percent-threshold", 5),
+                                this.settings.integer("routing.health.failure-threshold", 3),
+                                this.settings.integer("routing.health.recovery-probes", 3));
+  }
+
+  private Pattern slowCallThreads() {
+
+    final String pattern = this.settings.string("slow-calls.threads", SLOW_CALL_THREADS);
+    try {
+      return Pattern.compile(pattern);
+    } catch(final PatternSyntaxException e) {
+
+      LOGGER.atWarning().withCause(e).log("Invalid slow-calls.threads pattern '" + pattern + "', using the default.");
+      return Pattern.compile(SLOW_CALL_THREADS);
+    }
+  }
+
+  private void trackDirectory(final Economy economy, final boolean rebuild) {
+
+    //one build at a time, so an activation and the first build at startup don't both read the economy.
+    synchronized(this.directoryTracker) {
+      trackDirectoryLocked(economy, rebuild);
+    }
+  }
+
+  private void trackDirectoryLocked(final Economy economy, final boolean rebuild) {
+
+    final String name = economy.getName();
+    if(!rebuild && this.directoryTracker.directory(name) != null) {
+      return;
+    }
+
+    final Path file = directoryFile(name);
+    if(!rebuild && this.settings.bool("directory.persist", true) && Files.exists(file)) {
+      try {
+
+        final AccountDirectory directory = AccountDirectory.load(file);
+        this.directoryTracker.track(name, directory);
+        LOGGER.atInfo().log("Loaded the account directory of " + name + " with " + directory.size() + " accounts.");
+        return;
+      } catch(final IOException e) {
+        LOGGER.atWarning().withCause(e).log("Unable to load the saved account directory of " + name + ", it will be rebuilt.");
+      }
+    }
+
+    try {
+
+      final long start = System.currentTimeMillis();
+      final AccountDirectory directory = AccountDirectory.of(economy);
+      this.directoryTracker.track(name, directory);
+      LOGGER.atInfo().log("Built the account directory of " + name + " with " + directory.size() + " accounts in "
+                          + (System.currentTimeMillis() - start) + "ms.");
+    } catch(final Exception e) {
+      LOGGER.atWarning().withCause(e).log("Unable to build the account directory of " + name + ".");
+    }
+  }
+
+  private Path directoryFile(final String provider) {
+
+    return this.getDataDirectory().resolve(DIRECTORY_FOLDER).resolve(provider.replaceAll("[^A-Za-z0-9._-]", "_") + ".directory");
+  }
+
+  private void onConversionFinished(final ConversionJob job) {
+
+    //conversions write to the target directly, so no cache saw the balances they changed.
+    if(job.mode() != ConversionJob.Mode.CONVERT || this.balanceCache == null) {
+      return;
+    }
+
+    this.balanceCache.clear();
+    final InvalidationChannel channel = this.invalidationChannel;
+    if(channel != null) {
+      channel.publishAll();
+    }
+  }
+
+  private void onDisconnect(final PlayerDisconnectEvent event) {
+
+    if(this.permissionCache != null) {
+      this.permissionCache.flush(event.getPlayerRef().getUuid());
+    }
+
+    if(this.chatCache != null) {
+      this.chatCache.flush(event.getPlayerRef().getUuid());
+    }
+  }
+
+  @Override
+  protected void shutdown() {
+
+    ConversionManager.get().shutdown();
+
+    if(this.asyncEconomy != null) {
+      this.asyncEconomy.shutdown();
+    }
+
+    if(this.writeBehind != null) {
+      this.writeBehind.close();
+    }
+
+    if(this.snapshot != null) {
+      this.snapshot.save();
+    }
+
+    if(this.leaderboard != null) {
+      this.leaderboard.close();
+    }
+
+    final InvalidationChannel channel = this.invalidationChannel;
+    if(channel != null) {
+      channel.close();
+    }
+
+    if(this.journal != null) {
+      this.journal.close();
+    }
+
+    if(this.slowCalls != null) {
+      this.slowCalls.close();
+    }
+
+    if(this.health != null) {
+      this.health.close();
+    }
+
+    if(this.scheduler != null) {
+      this.scheduler.shutdownNow();
+    }
+
+    final DirectoryTracker.Tracked tracked = (this.directoryTracker == null)? null : this.directoryTracker.tracked();
+    if(tracked != null && this.settings.bool("directory.persist", true)) {
+      try {
+        tracked.directory().save(directoryFile(tracked.provider()));
+      } catch(final IOException e) {
+        LOGGER.atWarning().withCause(e).log("Unable to save the account directory of " + tracked.provider() + ".");
+      }
+    }
+  }
+
   /**
    * Provides access to the VaultUnlockedServicesManager instance.
    * This method is used for interacting with the service manager responsible for managing
@@ -91,6 +531,39 @@ public class VaultUnlocked extends JavaPlugin {
     return VaultUnlockedServicesManager.get().economyObj();
   }
 
+  /**
+   * Retrieves the asynchronous facade over the active economy.
+   * Calls made through it run on virtual threads, so callers on a world thread never wait on the provider.
+   *
+   * @return the AsyncEconomy instance, or null if VaultUnlocked has not been set up yet
+   */
+  @Nullable
+  public static AsyncEconomy asyncEconomy() {
+    return (instance == null)? null : instance.asyncEconomy;
+  }
+
+  /**
+   * Retrieves the bulk facade over the active economy.
+   * It reads or changes the balances of many accounts in chunks, using a provider's batch extensions when offered.
+   *
+   * @return the BulkEconomy instance, or null if VaultUnlocked has not been set up yet
+   */
+  @Nullable
+  public static BulkEconomy bulkEconomy() {
+    return (instance == null)? null : instance.bulkEconomy;
+  }
+
+  /**
+   * Retrieves the fast facade over the active economy.
+   * It represents amounts as long units of each currency and reuses its results, avoiding allocation on hot paths.
+   *
+   * @return the FastEconomy instance, or null if VaultUnlocked has not been set up yet
+   */
+  @Nullable
+  public static FastEconomy fastEconomy() {
+    return (instance == null)? null : instance.fastEconomy;
+  }
+
   /**
    * Retrieves the permission service if available.
    * This method provides access to an optional PermissionUnlocked instance managed by the VaultUnlockedServicesManager.
@@ -136,4 +609,194 @@ public class VaultUnlocked extends JavaPlugin {
   public static VaultUnlocked instance() {
     return instance;
   }
-}
\ No newline at end of file
+
+  /**
+   * Retrieves the settings loaded from VaultUnlocked's settings file.
+   *
+   * @return the loaded {@link VaultSettings}.
+   */
+  public VaultSettings settings() {
+    return settings;
+  }
+
+  /**
+   * Retrieves the limiter bounding the economy mutations of each calling plugin, if it is enabled.
+   *
+   * @return an Optional containing the {@link MutationLimiter}, or an empty Optional if it is disabled
+   */
+  public Optional<MutationLimiter> mutationLimiter() {
+    return Optional.ofNullable(mutationLimiter);
+  }
+
+  /**
+   * Retrieves the transaction journal recording balance changes made through the active economy, if it is enabled.
+   *
+   * @return an Optional containing the {@link TransactionJournal}, or an empty Optional if it is disabled
+   */
+  public Optional<TransactionJournal> journal() {
+    return Optional.ofNullable(journal);
+  }
+
+  /**
+   * Retrieves the balance cache placed around the active economy, if it is enabled.
+   *
+   * @return an Optional containing the {@link BalanceCache}, or an empty Optional if caching is disabled
+   */
+  public Optional<BalanceCache> balanceCache() {
+    return Optional.ofNullable(balanceCache);
+  }
+
+  /**
+   * Connects the balance cache to the other servers sharing the same economy through the specified
+   * transport, replacing any transport connected before. Balances cached before connecting are
+   * dropped, since changes made elsewhere in the meantime were missed.
+   *
+   * @param transport the transport to connect through, or {@code null} to disconnect.
+   * @return false if a transport was given but the balance cache is disabled, otherwise true.
+   */
+  public synchronized boolean invalidationTransport(@Nullable final InvalidationTransport transport) {
+
+    final InvalidationChannel previous = this.invalidationChannel;
+    if(previous != null) {
+
+      this.balanceCache.mutations(null);
+      if(this.writeBehind != null) {
+        this.writeBehind.flushes(null);
+      }
+      this.invalidationChannel = null;
+      previous.close();
+    }
+
+    if(transport == null) {
+      return true;
+    }
+
+    if(this.balanceCache == null) {
+      LOGGER.atWarning().log("A cluster transport was connected, but economy.cache is disabled so there is nothing to keep coherent.");
+      return false;
+    }
+
+    final InvalidationChannel channel = new InvalidationChannel(transport, this.settings.number("cluster.batch-millis", 5),
+                                                                this.balanceCache::invalidate, this.balanceCache::clear);
+    this.balanceCache.clear();
+    this.balanceCache.mutations(channel::publish);
+
+    //buffered deposits only reach the shared economy when flushed, so publish them again then.
+    if(this.writeBehind != null) {
+      this.writeBehind.flushes(channel::publish);
+    }
+    this.invalidationChannel = channel;
+    return true;
+  }
+
+  /**
+   * Retrieves the channel keeping the balance cache coherent with other servers, if a transport is connected.
+   *
+   * @return an Optional containing the {@link InvalidationChannel}, or an empty Optional if none is connected
+   */
+  public Optional<InvalidationChannel> invalidationChannel() {
+    return Optional.ofNullable(invalidationChannel);
+  }
+
+  /**
+   * Retrieves the per-account serializer placed around the active economy, if it is enabled.
+   *
+   * @return an Optional containing the {@link AccountSerializer}, or an empty Optional if it is disabled
+   */
+  public Optional<AccountSerializer> accountSerializer() {
+    return Optional.ofNullable(accountSerializer);
+  }
+
+  /**
+   * Retrieves the balance leaderboard maintained from the active economy, if it is enabled.
+   *
+   * @return an Optional containing the {@link Leaderboard}, or an empty Optional if it is disabled
+   */
+  public Optional<Leaderboard> leaderboard() {
+    return Optional.ofNullable(leaderboard);
+  }
+
+  /**
+   * Retrieves the compact account directory of the active economy, if it is enabled and has been built or loaded.
+   *
+   * @return an Optional containing the {@link AccountDirectory}, or an empty Optional if none is available
+   */
+  public Optional<AccountDirectory> accountDirectory() {
+
+    final DirectoryTracker.Tracked tracked = (directoryTracker == null)? null : directoryTracker.tracked();
+    return Optional.ofNullable((tracked == null)? null : tracked.directory());
+  }
+
+  /**
+   * Retrieves the compact account directory of the specified economy, if it is enabled and one was built or loaded for it.
+   *
+   * @param provider the name of the economy.
+   * @return an Optional containing the {@link AccountDirectory}, or an empty Optional if none is available
+   */
+  public Optional<AccountDirectory> accountDirectory(@Nonnull final String provider) {
+    return Optional.ofNullable((directoryTracker == null)? null : directoryTracker.directory(provider));
+  }
+
+  /**
+   * Retrieves the write-behind buffer placed around the active economy, if it is enabled.
+   *
+   * @return an Optional containing the {@link WriteBehindBuffer}, or an empty Optional if it is disabled
+   */
+  public Optional<WriteBehindBuffer> writeBehind() {
+    return Optional.ofNullable(writeBehind);
+  }
+
+  /**
+   * Retrieves the lookup cache placed around the active permission provider, if it is enabled.
+   *
+   * @return an Optional containing the {@link PermissionCache}, or an empty Optional if it is disabled
+   */
+  public Optional<PermissionCache> permissionCache() {
+    return Optional.ofNullable(permissionCache);
+  }
+
+  /**
+   * Retrieves the prefix, suffix and meta cache placed around the active chat provider, if it is enabled.
+   *
+   * @return an Optional containing the {@link ChatCache}, or an empty Optional if it is disabled
+   */
+  public Optional<ChatCache> chatCache() {
+    return Optional.ofNullable(chatCache);
+  }
+
+  /**
+   * Retrieves the call metrics recorded around every active provider, if they are enabled.
+   *
+   * @return an Optional containing the {@link MetricsRegistry}, or an empty Optional if metrics are disabled
+   */
+  public Optional<MetricsRegistry> metrics() {
+    return Optional.ofNullable(metrics);
+  }
+
+  /**
+   * Retrieves the sampler publishing the live call rates, latencies and cache hit rates shown by /vault-stats.
+   *
+   * @return the {@link StatsSampler}.
+   */
+  public StatsSampler stats() {
+    return stats;
+  }
+
+  /**
+   * Retrieves the detector watching for slow provider calls on server and world threads, if it is enabled.
+   *
+   * @return an Optional containing the {@link SlowCallDetector}, or an empty Optional if it is disabled
+   */
+  public Optional<SlowCallDetector> slowCalls() {
+    return Optional.ofNullable(slowCalls);
+  }
+
+  /**
+   * Retrieves the monitor probing the health of every provider, if health-aware routing is enabled.
+   *
+   * @return an Optional containing the {@link HealthMonitor}, or an empty Optional if it is disabled
+   */
+  public Optional<HealthMonitor> health() {
+    return Optional.ofNullable(health);
+  }
+}
@@ -17,6 +17,8 @@ package net.cfh.vault;
     along with Vault.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import net.cfh.vault.facade.ProviderLayer;
+import net.cfh.vault.health.ProviderHealth;
 import net.milkbowl.vault2.chat.ChatUnlocked;
 import net.milkbowl.vault2.economy.Economy;
 import net.milkbowl.vault2.permission.PermissionUnlocked;
@@ -24,50 +26,67 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.LinkedList;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * VaultUnlockedServicesManager
  *
+ * <p>Since 2.19.0 the active provider of each service is resolved when providers are registered or
+ * unregistered, and by {@link #refresh()}, rather than on every lookup. A provider that is enabled
+ * or disabled without re-registering is therefore only noticed by the next refresh, which
+ * VaultUnlocked runs once a second. The {@code *ProviderNames()} methods return a copy of the
+ * registered names instead of the live list.</p>
+ *
  * @author creatorfromhell
  * @since 2.18.0
  */
 public class VaultUnlockedServicesManager {
 
-  private static VaultUnlockedServicesManager instance;
-  //maintain this for insertion order.
-  private final LinkedList<String> economyProviderNames = new LinkedList<>();
-  private final LinkedList<String> permissionProviderNames = new LinkedList<>();
-  private final LinkedList<String> chatProviderNames = new LinkedList<>();
-  private final Map<String, Economy> economyProviders = new ConcurrentHashMap<>();
-  private final Map<String, PermissionUnlocked> permissionProviders = new ConcurrentHashMap<>();
-  private final Map<String, ChatUnlocked> chatProviders = new ConcurrentHashMap<>();
+  private static final VaultUnlockedServicesManager INSTANCE = new VaultUnlockedServicesManager();
+
+  //registries maintain insertion order and publish immutable snapshots with a precomputed active provider,
+  //chosen by health, then priority, then insertion order.
+  private final ProviderRegistry<Economy> economyProviders = new ProviderRegistry<>(Economy.class, Economy::getName, Economy::isEnabled);
+  private final ProviderRegistry<PermissionUnlocked> permissionProviders = new ProviderRegistry<>(PermissionUnlocked.class, PermissionUnlocked::getName, PermissionUnlocked::isEnabled);
+  private final ProviderRegistry<ChatUnlocked> chatProviders = new ProviderRegistry<>(ChatUnlocked.class, ChatUnlocked::getName, ChatUnlocked::isEnabled);
 
   private VaultUnlockedServicesManager() {
   }
 
   /**
    * Retrieves the singleton instance of the {@code VaultUnlockedServicesManager}.
-   * If no instance exists, a new one is created.
    *
    * @return the singleton instance of {@code VaultUnlockedServicesManager}.
    */
   public static VaultUnlockedServicesManager get() {
-    if (instance == null) {
-      instance = new VaultUnlockedServicesManager();
-    }
-    return instance;
+    return INSTANCE;
+  }
+
+  /**
+   * Re-evaluates the enabled state and health of every registered economy, permission and chat
+   * provider and rebuilds the cached active provider references where they have changed. Providers
+   * that toggle their enabled state outside of registration should call this so that resolution
+   * picks up the change; VaultUnlocked also calls it periodically.
+   *
+   * @return true if any active provider changed, otherwise false.
+   */
+  public boolean refresh() {
+
+    final boolean economy = economyProviders.refresh();
+    final boolean permission = permissionProviders.refresh();
+    final boolean chat = chatProviders.refresh();
+    return economy || permission || chat;
   }
 
   /**
    * Retrieves the list of names of available economy providers managed by this service.
    *
-   * @return a {@link LinkedList} of strings containing the names of registered economy providers.
+   * @return a {@link LinkedList} of strings containing the names of registered economy providers,
+   *         copied from the current registration snapshot. Since 2.19.0 this is a new copy on every
+   *         call, so it doesn't follow later registrations and changing it has no effect.
    */
   public LinkedList<String> economyProviderNames() {
-    return economyProviderNames;
+    return new LinkedList<>(economyProviders.snapshot().names());
   }
 
   /**
@@ -78,8 +97,7 @@ public class VaultUnlockedServicesManager {
    *                 Must not be {@code null}.
    */
   public void economy(final @NotNull Economy provider) {
-    economyProviderNames.add(provider.getName());
-    economyProviders.put(provider.getName(), provider);
+    economyProviders.register(provider);
   }
 
   /**
@@ -88,31 +106,91 @@ public class VaultUnlockedServicesManager {
    * @param provider the economy provider to be removed; must not be null.
    */
   public void unregister(final @NotNull Economy provider) {
-    economyProviderNames.remove(provider.getName());
-    economyProviders.remove(provider.getName());
+    economyProviders.unregister(provider);
+  }
+
+  /**
+   * Registers a new {@link Economy} provider with the specified priority. When several providers
+   * are enabled and equally healthy, the one with the highest priority becomes active.
+   *
+   * @param provider the {@link Economy} instance to be registered.
+   *                 Must not be {@code null}.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void economy(final @NotNull Economy provider, final int priority) {
+    economyProviders.register(provider, priority);
+  }
+
+  /**
+   * Assigns a priority to the {@link Economy} provider registered, or later registered, under the
+   * specified name.
+   *
+   * @param name the name of the provider.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void economyPriority(final @NotNull String name, final int priority) {
+    economyProviders.priority(name, priority);
+  }
+
+  /**
+   * Sets the {@link ProviderHealth} consulted when choosing the active {@link Economy} provider, so
+   * that routing prefers the healthiest enabled provider.
+   *
+   * @param health the health tracker, or {@code null} to treat every provider as healthy.
+   */
+  public void economyHealth(final @Nullable ProviderHealth<Economy> health) {
+    economyProviders.health(health);
+  }
+
+  /**
+   * Installs a {@link ProviderLayer} around the active {@link Economy} provider, replacing any layer
+   * installed under the same name. Providers retrieved by identifier are never decorated.
+   *
+   * @param name the unique name of the layer.
+   * @param layer the layer to install.
+   */
+  public void economyLayer(final @NotNull String name, final @NotNull ProviderLayer<Economy> layer) {
+    economyProviders.layer(name, layer);
+  }
+
+  /**
+   * Removes the {@link Economy} layer installed under the specified name.
+   *
+   * @param name the name of the layer.
+   */
+  public void removeEconomyLayer(final @NotNull String name) {
+    economyProviders.removeLayer(name);
+  }
+
+  /**
+   * Subscribes a {@link ProviderListener} to the {@link Economy} providers, notifying it when a
+   * provider is registered or unregistered and when the active provider changes. Plugins may hold
+   * on to the active provider and only resolve it again once they are told it changed.
+   *
+   * @param listener the listener to subscribe.
+   */
+  public void economyListener(final @NotNull ProviderListener<Economy> listener) {
+    economyProviders.listener(listener);
+  }
+
+  /**
+   * Unsubscribes a {@link ProviderListener} from the {@link Economy} providers.
+   *
+   * @param listener the listener to unsubscribe.
+   */
+  public void removeEconomyListener(final @NotNull ProviderListener<Economy> listener) {
+    economyProviders.removeListener(listener);
   }
 
   /**
    * Retrieves the primary {@link Economy} instance currently managed by this service.
+   * A change of a provider's enabled state is only reflected once {@link #refresh()} has run.
    *
    * @return an {@link Optional} containing the managed {@link Economy} instance,
    *         or an empty {@link Optional} if no economy implementation is available.
    */
   public Optional<Economy> economy() {
-    synchronized (economyProviderNames) {
-
-      for(final String economyProviderName : economyProviderNames) {
-
-        if(economyProviders.containsKey(economyProviderName)) {
-
-          final Economy economy = economyProviders.get(economyProviderName);
-          if(economy.isEnabled()) {
-            return Optional.of(economy);
-          }
-        }
-      }
-    }
-    return Optional.empty();
+    return Optional.ofNullable(economyProviders.active());
   }
 
   /**
@@ -124,7 +202,7 @@ public class VaultUnlockedServicesManager {
    */
   public Economy economyObj() {
 
-    return economy().orElse(null);
+    return economyProviders.active();
   }
 
   /**
@@ -138,7 +216,7 @@ public class VaultUnlockedServicesManager {
    *         is associated with the given identifier.
    */
   public Optional<Economy> economy(final @NotNull String identifier) {
-    return Optional.ofNullable(economyProviders.get(identifier));
+    return Optional.ofNullable(economyProviders.provider(identifier));
   }
 
   /**
@@ -149,16 +227,18 @@ public class VaultUnlockedServicesManager {
    */
   @Nullable
   public Economy economyObj(final @NotNull String identifier) {
-    return economyProviders.get(identifier);
+    return economyProviders.provider(identifier);
   }
 
   /**
    * Retrieves the list of names of available permission providers managed by this service.
    *
-   * @return a {@link LinkedList} of strings containing the names of registered permission providers.
+   * @return a {@link LinkedList} of strings containing the names of registered permission providers,
+   *         copied from the current registration snapshot. Since 2.19.0 this is a new copy on every
+   *         call, so it doesn't follow later registrations and changing it has no effect.
    */
   public LinkedList<String> permissionProviderNames() {
-    return permissionProviderNames;
+    return new LinkedList<>(permissionProviders.snapshot().names());
   }
 
   /**
@@ -169,8 +249,7 @@ public class VaultUnlockedServicesManager {
    *                 Must not be {@code null}.
    */
   public void permission(final @NotNull PermissionUnlocked provider) {
-    permissionProviderNames.add(provider.getName());
-    permissionProviders.put(provider.getName(), provider);
+    permissionProviders.register(provider);
   }
 
   /**
@@ -181,46 +260,106 @@ public class VaultUnlockedServicesManager {
    *                 must not be null
    */
   public void unregister(final @NotNull PermissionUnlocked provider) {
-    permissionProviderNames.remove(provider.getName());
-    permissionProviders.remove(provider.getName());
+    permissionProviders.unregister(provider);
+  }
+
+  /**
+   * Registers a new {@link PermissionUnlocked} provider with the specified priority. When several providers
+   * are enabled and equally healthy, the one with the highest priority becomes active.
+   *
+   * @param provider the {@link PermissionUnlocked} instance to be registered.
+   *                 Must not be {@code null}.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void permission(final @NotNull PermissionUnlocked provider, final int priority) {
+    permissionProviders.register(provider, priority);
+  }
+
+  /**
+   * Assigns a priority to the {@link PermissionUnlocked} provider registered, or later registered, under the
+   * specified name.
+   *
+   * @param name the name of the provider.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void permissionPriority(final @NotNull String name, final int priority) {
+    permissionProviders.priority(name, priority);
+  }
+
+  /**
+   * Sets the {@link ProviderHealth} consulted when choosing the active {@link PermissionUnlocked} provider, so
+   * that routing prefers the healthiest enabled provider.
+   *
+   * @param health the health tracker, or {@code null} to treat every provider as healthy.
+   */
+  public void permissionHealth(final @Nullable ProviderHealth<PermissionUnlocked> health) {
+    permissionProviders.health(health);
+  }
+
+  /**
+   * Installs a {@link ProviderLayer} around the active {@link PermissionUnlocked} provider, replacing any layer
+   * installed under the same name. Providers retrieved by identifier are never decorated.
+   *
+   * @param name the unique name of the layer.
+   * @param layer the layer to install.
+   */
+  public void permissionLayer(final @NotNull String name, final @NotNull ProviderLayer<PermissionUnlocked> layer) {
+    permissionProviders.layer(name, layer);
+  }
+
+  /**
+   * Removes the {@link PermissionUnlocked} layer installed under the specified name.
+   *
+   * @param name the name of the layer.
+   */
+  public void removePermissionLayer(final @NotNull String name) {
+    permissionProviders.removeLayer(name);
+  }
+
+  /**
+   * Subscribes a {@link ProviderListener} to the {@link PermissionUnlocked} providers, notifying it when a
+   * provider is registered or unregistered and when the active provider changes. Plugins may hold
+   * on to the active provider and only resolve it again once they are told it changed.
+   *
+   * @param listener the listener to subscribe.
+   */
+  public void permissionListener(final @NotNull ProviderListener<PermissionUnlocked> listener) {
+    permissionProviders.listener(listener);
+  }
+
+  /**
+   * Unsubscribes a {@link ProviderListener} from the {@link PermissionUnlocked} providers.
+   *
+   * @param listener the listener to unsubscribe.
+   */
+  public void removePermissionListener(final @NotNull ProviderListener<PermissionUnlocked> listener) {
+    permissionProviders.removeListener(listener);
   }
 
   /**
    * Retrieves the primary {@link PermissionUnlocked} instance currently managed by this service.
-   * The method sequentially evaluates the available permission providers in the order
-   * of their registration and returns the first enabled provider if available.
+   * The active provider is the healthiest enabled provider with the highest priority, ties
+   * going to the earliest registered.
+   * A change of a provider's enabled state is only reflected once {@link #refresh()} has run.
    *
    * @return an {@link Optional} containing the managed {@link PermissionUnlocked} instance,
    *         or an empty {@link Optional} if no enabled permission implementation is present.
    */
   public Optional<PermissionUnlocked> permission() {
-    synchronized (permissionProviderNames) {
-
-      for(final String permissionProviderName : permissionProviderNames) {
-
-        if(permissionProviders.containsKey(permissionProviderName)) {
-
-          final PermissionUnlocked permission = permissionProviders.get(permissionProviderName);
-          if(permission.isEnabled()) {
-            return Optional.of(permission);
-          }
-        }
-      }
-    }
-    return Optional.empty();
+    return Optional.ofNullable(permissionProviders.active());
   }
 
   /**
    * Retrieves the primary {@link PermissionUnlocked} instance currently managed by this service.
-   * The method evaluates the available permission providers in the order of their registration
-   * and returns the first enabled provider if available.
+   * The active provider is the healthiest enabled provider with the highest priority, ties
+   * going to the earliest registered.
    *
    * @return the managed {@link PermissionUnlocked} instance, or {@code null} if no enabled
    *         permission implementation is available.
    */
   public PermissionUnlocked permissionObj() {
 
-    return permission().orElse(null);
+    return permissionProviders.active();
   }
 
   /**
@@ -234,7 +373,7 @@ public class VaultUnlockedServicesManager {
    *         the given identifier.
    */
   public Optional<PermissionUnlocked> permission(final @NotNull String identifier) {
-    return Optional.ofNullable(permissionProviders.get(identifier));
+    return Optional.ofNullable(permissionProviders.provider(identifier));
   }
 
   /**
@@ -247,16 +386,18 @@ public class VaultUnlockedServicesManager {
    */
   @Nullable
   public PermissionUnlocked permissionObj(final @NotNull String identifier) {
-    return permissionProviders.get(identifier);
+    return permissionProviders.provider(identifier);
   }
 
   /**
    * Retrieves the list of names of available chat providers managed by this service.
    *
-   * @return a {@link LinkedList} of strings containing the names of registered chat providers.
+   * @return a {@link LinkedList} of strings containing the names of registered chat providers,
+   *         copied from the current registration snapshot. Since 2.19.0 this is a new copy on every
+   *         call, so it doesn't follow later registrations and changing it has no effect.
    */
   public LinkedList<String> chatProviderNames() {
-    return chatProviderNames;
+    return new LinkedList<>(chatProviders.snapshot().names());
   }
 
   /**
@@ -267,8 +408,7 @@ public class VaultUnlockedServicesManager {
    *                 Must not be {@code null}.
    */
   public void chat(final @NotNull ChatUnlocked provider) {
-    chatProviderNames.add(provider.getName());
-    chatProviders.put(provider.getName(), provider);
+    chatProviders.register(provider);
   }
 
   /**
@@ -278,33 +418,93 @@ public class VaultUnlockedServicesManager {
    * @param provider The chat provider to unregister. Must not be null.
    */
   public void unregister(final @NotNull ChatUnlocked provider) {
-    chatProviderNames.remove(provider.getName());
-    chatProviders.remove(provider.getName());
+    chatProviders.unregister(provider);
+  }
+
+  /**
+   * Registers a new {@link ChatUnlocked} provider with the specified priority. When several providers
+   * are enabled and equally healthy, the one with the highest priority becomes active.
+   *
+   * @param provider the {@link ChatUnlocked} instance to be registered.
+   *                 Must not be {@code null}.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void chat(final @NotNull ChatUnlocked provider, final int priority) {
+    chatProviders.register(provider, priority);
+  }
+
+  /**
+   * Assigns a priority to the {@link ChatUnlocked} provider registered, or later registered, under the
+   * specified name.
+   *
+   * @param name the name of the provider.
+   * @param priority the priority of the provider, higher priorities being preferred.
+   */
+  public void chatPriority(final @NotNull String name, final int priority) {
+    chatProviders.priority(name, priority);
+  }
+
+  /**
+   * Sets the {@link ProviderHealth} consulted when choosing the active {@link ChatUnlocked} provider, so
+   * that routing prefers the healthiest enabled provider.
+   *
+   * @param health the health tracker, or {@code null} to treat every provider as healthy.
+   */
+  public void chatHealth(final @Nullable ProviderHealth<ChatUnlocked> health) {
+    chatProviders.health(health);
+  }
+
+  /**
+   * Installs a {@link ProviderLayer} around the active {@link ChatUnlocked} provider, replacing any layer
+   * installed under the same name. Providers retrieved by identifier are never decorated.
+   *
+   * @param name the unique name of the layer.
+   * @param layer the layer to install.
+   */
+  public void chatLayer(final @NotNull String name, final @NotNull ProviderLayer<ChatUnlocked> layer) {
+    chatProviders.layer(name, layer);
+  }
+
+  /**
+   * Removes the {@link ChatUnlocked} layer installed under the specified name.
+   *
+   * @param name the name of the layer.
+   */
+  public void removeChatLayer(final @NotNull String name) {
+    chatProviders.removeLayer(name);
+  }
+
+  /**
+   * Subscribes a {@link ProviderListener} to the {@link ChatUnlocked} providers, notifying it when a
+   * provider is registered or unregistered and when the active provider changes. Plugins may hold
+   * on to the active provider and only resolve it again once they are told it changed.
+   *
+   * @param listener the listener to subscribe.
+   */
+  public void chatListener(final @NotNull ProviderListener<ChatUnlocked> listener) {
+    chatProviders.listener(listener);
+  }
+
+  /**
+   * Unsubscribes a {@link ProviderListener} from the {@link ChatUnlocked} providers.
+   *
+   * @param listener the listener to unsubscribe.
+   */
+  public void removeChatListener(final @NotNull ProviderListener<ChatUnlocked> listener) {
+    chatProviders.removeListener(listener);
   }
 
   /**
    * Retrieves the primary {@link ChatUnlocked} instance currently managed by this service.
-   * The method evaluates the available chat providers in the order of their registration
-   * and returns the first enabled provider if available.
+   * The active provider is the healthiest enabled provider with the highest priority, ties
+   * going to the earliest registered.
+   * A change of a provider's enabled state is only reflected once {@link #refresh()} has run.
    *
    * @return an {@link Optional} containing the managed {@link ChatUnlocked} instance,
    *         or an empty {@link Optional} if no enabled chat implementation is available.
    */
   public Optional<ChatUnlocked> chat() {
-    synchronized (chatProviderNames) {
-
-      for(final String chatProviderName : chatProviderNames) {
-
-        if(chatProviders.containsKey(chatProviderName)) {
-
-          final ChatUnlocked chat = chatProviders.get(chatProviderName);
-          if(chat.isEnabled()) {
-            return Optional.of(chat);
-          }
-        }
-      }
-    }
-    return Optional.empty();
+    return Optional.ofNullable(chatProviders.active());
   }
 
   /**
@@ -314,7 +514,7 @@ public class VaultUnlockedServicesManager {
    */
   public ChatUnlocked chatObj() {
 
-    return chat().orElse(null);
+    return chatProviders.active();
   }
 
   /**
@@ -328,7 +528,7 @@ public class VaultUnlockedServicesManager {
    *         is associated with the given identifier.
    */
   public Optional<ChatUnlocked> chat(final @NotNull String identifier) {
-    return Optional.ofNullable(chatProviders.get(identifier));
+    return Optional.ofNullable(chatProviders.provider(identifier));
   }
 
   /**
@@ -341,6 +541,6 @@ public class VaultUnlockedServicesManager {
    */
   @Nullable
   public ChatUnlocked chatObj(final @NotNull String identifier) {
-    return chatProviders.get(identifier);
+    return chatProviders.provider(identifier);
   }
 }
\ No newline at end of file
@@ -0,0 +1,56 @@
+package net.cfh.vault.cache;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * CacheStats is a point-in-time view of the counters of one of VaultUnlocked's caches.
+ *
+ * @param hits the number of lookups answered from the cache.
+ * @param misses the number of lookups passed on to the provider.
+ * @param evictions the number of entries removed to keep the cache within its size bound.
+ * @param invalidations the number of entries removed because they were changed.
+ * @param refreshes the number of stale entries refreshed in the background.
+ * @param size the number of entries currently held.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public record CacheStats(long hits, long misses, long evictions, long invalidations, long refreshes, long size) {
+
+  /**
+   * Retrieves the fraction of lookups answered from the cache.
+   *
+   * @return the hit rate between 0 and 1, or 0 if no lookups were made.
+   */
+  public double hitRate() {
+
+    final long lookups = hits + misses;
+    return (lookups == 0)? 0.0 : (double)hits / lookups;
+  }
+
+  /**
+   * Formats these statistics as a single human-readable line.
+   *
+   * @return the formatted statistics.
+   */
+  public String describe() {
+
+    return String.format("hits=%d misses=%d rate=%.1f%% evictions=%d invalidations=%d refreshes=%d size=%d",
+                         hits, misses, hitRate() * 100, evictions, invalidations, refreshes, size);
+  }
+}
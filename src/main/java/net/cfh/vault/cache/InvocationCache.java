@@ -0,0 +1,378 @@
+package net.cfh.vault.cache;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.facade.ProviderCall;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * InvocationCache caches the results of provider calls, keyed by the called method and its
+ * arguments, and grouped by the subject the call concerns so that everything cached for one subject
+ * can be dropped at once. The cache is bounded by the number of subjects it holds and each result is
+ * served for a fixed time to live.
+ *
+ * <p>Results are stored in the subject's bucket that was current when the lookup started. Dropping
+ * a subject detaches its bucket, so a lookup racing with an invalidation can never make its stale
+ * result visible.</p>
+ *
+ * <p>When created with a refresh interval, a result older than that interval is still served, but
+ * also refreshed once in the background, so callers only wait on the provider after a result has
+ * fully expired.</p>
+ *
+ * <p>Results saved by {@link #export(int)} before a restart can be {@link #preload(Collection, long)
+ * preloaded} afterwards. A preloaded result is served straight away, but its first hit also
+ * re-runs the call in the background to validate it.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class InvocationCache {
+
+  /**
+   * The subject used for calls that don't concern a single subject.
+   */
+  public static final Object GLOBAL = new Object();
+
+  private static final Executor VALIDATOR = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                     .name("VaultUnlocked-Validate")
+                                                                                     .factory());
+
+  private final int maxSubjects;
+  private final long ttlNanos;
+  private final long refreshNanos;
+  private final Executor refresher;
+
+  private final Map<Object, Bucket> subjects = new ConcurrentHashMap<>();
+  private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+
+  /**
+   * Creates a new invocation cache.
+   *
+   * @param maxSubjects the maximum number of subjects held.
+   * @param ttlMillis how long a cached result is served for, in milliseconds.
+   */
+  public InvocationCache(final int maxSubjects, final long ttlMillis) {
+
+    this(maxSubjects, ttlMillis, ttlMillis, null);
+  }
+
+  /**
+   * Creates a new invocation cache that refreshes stale results in the background.
+   *
+   * @param maxSubjects the maximum number of subjects held.
+   * @param ttlMillis how long a cached result is served for, in milliseconds.
+   * @param refreshMillis how old a result may get before it is refreshed in the background, in
+   *                      milliseconds. Has no effect unless shorter than {@code ttlMillis}.
+   * @param refresher the executor background refreshes run on, or {@code null} to never refresh.
+   */
+  public InvocationCache(final int maxSubjects, final long ttlMillis, final long refreshMillis,
+                         final Executor refresher) {
+
+    this.maxSubjects = Math.max(1, maxSubjects);
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttlMillis));
+    this.refreshNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, Math.min(refreshMillis, ttlMillis)));
+    this.refresher = (refreshMillis < ttlMillis)? refresher : null;
+  }
+
+  /**
+   * Answers a call from the cache, or proceeds with it and caches its result. The call's arguments
+   * are part of the key, so only calls whose arguments are plain values, as resolved by a
+   * {@link MethodTable}, should be cached.
+   *
+   * @param call the call to answer.
+   * @param subject the subject the call concerns, or {@link #GLOBAL}.
+   * @return the call's result.
+   * @throws Throwable any exception thrown while proceeding with the call.
+   */
+  public Object get(final @NotNull ProviderCall call, final @NotNull Object subject) throws Throwable {
+
+    final Key key = new Key(call.method(), call.args().clone());
+    final long now = System.nanoTime();
+
+    Bucket bucket = subjects.get(subject);
+    if(bucket != null) {
+
+      final Entry entry = bucket.values.get(key);
+      if(entry != null && entry.expiresAt - now > 0) {
+
+        hits.increment();
+        if((refresher != null || entry.provisional) && entry.refreshAt - now <= 0 && entry.claimRefresh()) {
+          refresh(call, bucket, key, entry);
+        }
+        return entry.value;
+      }
+    } else {
+
+      bucket = subjects.computeIfAbsent(subject, id->new Bucket());
+      if(subjects.size() > maxSubjects) {
+        evict(now);
+      }
+    }
+    misses.increment();
+
+    final Object result = call.proceed();
+    if(result != null) {
+      bucket.values.put(key, new Entry(result, now));
+    }
+    return result;
+  }
+
+  private void refresh(final ProviderCall call, final Bucket bucket, final Key key, final Entry stale) {
+
+    final Object provider = call.provider();
+    final Method method = call.method();
+    try {
+
+      ((refresher == null)? VALIDATOR : refresher).execute(()->{
+        try {
+
+          final long now = System.nanoTime();
+          final Object result = method.invoke(provider, key.args());
+          if(result != null) {
+            bucket.values.replace(key, stale, new Entry(result, now));
+          } else {
+            bucket.values.remove(key, stale);
+          }
+          refreshes.increment();
+        } catch(final IllegalAccessException | InvocationTargetException | RuntimeException e) {
+
+          //keep serving the stale result until it expires, but allow another attempt.
+          stale.refreshing.set(false);
+        }
+      });
+    } catch(final RuntimeException e) {
+      stale.refreshing.set(false);
+    }
+  }
+
+  /**
+   * Drops every result cached for the specified subject.
+   *
+   * @param subject the subject.
+   */
+  public void invalidate(final @NotNull Object subject) {
+
+    if(subjects.remove(subject) != null) {
+      invalidations.increment();
+    }
+  }
+
+  /**
+   * Drops every cached result.
+   */
+  public void clear() {
+
+    invalidations.add(subjects.size());
+    subjects.clear();
+  }
+
+  /**
+   * Copies up to the specified number of cached results, including expired ones that have not been
+   * evicted yet, so that they can be saved and {@link #preload(Collection, long) preloaded} after a
+   * restart.
+   *
+   * @param limit the maximum number of results to copy.
+   * @return the copied results.
+   */
+  public List<Warm> export(final int limit) {
+
+    final List<Warm> results = new ArrayList<>();
+    for(final Map.Entry<Object, Bucket> subject : subjects.entrySet()) {
+      for(final Map.Entry<Key, Entry> value : subject.getValue().values.entrySet()) {
+
+        if(results.size() >= limit) {
+          return results;
+        }
+        results.add(new Warm((subject.getKey() == GLOBAL)? null : subject.getKey(), value.getKey().method(),
+                             value.getKey().args(), value.getValue().value));
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Preloads results saved by {@link #export(int)}, without replacing results cached since. A
+   * preloaded result is served until it is validated by re-running the call in the background on its
+   * first hit, but never for longer than the specified time or the time to live of this cache.
+   *
+   * @param results the results to preload.
+   * @param provisionalMillis how long a preloaded result may be served before it is validated, in
+   *                          milliseconds.
+   * @return the number of results preloaded.
+   */
+  public int preload(final @NotNull Collection<Warm> results, final long provisionalMillis) {
+
+    final long now = System.nanoTime();
+    final long expiresAt = now + Math.min(ttlNanos, TimeUnit.MILLISECONDS.toNanos(Math.max(1, provisionalMillis)));
+
+    int preloaded = 0;
+    for(final Warm result : results) {
+
+      final Object subject = (result.subject() == null)? GLOBAL : result.subject();
+      Bucket bucket = subjects.get(subject);
+      if(bucket == null) {
+
+        if(subjects.size() >= maxSubjects) {
+          continue;
+        }
+        bucket = subjects.computeIfAbsent(subject, id->new Bucket());
+      }
+
+      if(bucket.values.putIfAbsent(new Key(result.method(), result.args().clone()),
+                                   new Entry(result.value(), expiresAt, now, true)) == null) {
+        preloaded++;
+      }
+    }
+    return preloaded;
+  }
+
+  /**
+   * Retrieves the current statistics of this cache.
+   *
+   * @return the current {@link CacheStats}.
+   */
+  public CacheStats stats() {
+
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), refreshes.sum(),
+                          subjects.size());
+  }
+
+  /**
+   * Brings the cache back under its bound, first dropping subjects whose results have all expired,
+   * then arbitrary subjects until ten percent of the bound is free again.
+   */
+  private void evict(final long now) {
+
+    if(!evicting.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+
+      final int target = maxSubjects - Math.max(1, maxSubjects / 10);
+      final Iterator<Bucket> expired = subjects.values().iterator();
+      while(expired.hasNext() && subjects.size() > target) {
+
+        if(expired.next().expired(now)) {
+          expired.remove();
+          evictions.increment();
+        }
+      }
+
+      final Iterator<Bucket> any = subjects.values().iterator();
+      while(any.hasNext() && subjects.size() > target) {
+
+        any.next();
+        any.remove();
+        evictions.increment();
+      }
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  private static final class Bucket {
+
+    private final Map<Key, Entry> values = new ConcurrentHashMap<>(8);
+
+    private boolean expired(final long now) {
+
+      for(final Entry entry : values.values()) {
+        if(entry.expiresAt - now > 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private final class Entry {
+
+    private final Object value;
+    private final long expiresAt;
+    private final long refreshAt;
+    private final boolean provisional;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+
+    private Entry(final Object value, final long loadedAt) {
+
+      this(value, loadedAt + ttlNanos, loadedAt + refreshNanos, false);
+    }
+
+    private Entry(final Object value, final long expiresAt, final long refreshAt, final boolean provisional) {
+
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.refreshAt = refreshAt;
+      this.provisional = provisional;
+    }
+
+    private boolean claimRefresh() {
+
+      return refreshing.compareAndSet(false, true);
+    }
+  }
+
+  /**
+   * A cached result as saved by {@link #export(int)}.
+   *
+   * @param subject the subject the call concerns, or {@code null} for {@link #GLOBAL}.
+   * @param method the called method.
+   * @param args the arguments of the call.
+   * @param value the result of the call.
+   */
+  public record Warm(@Nullable Object subject, Method method, Object[] args, Object value) {
+  }
+
+  private record Key(Method method, Object[] args) {
+
+    @Override
+    public boolean equals(final Object other) {
+
+      return other instanceof final Key key && method.equals(key.method) && Arrays.equals(args, key.args);
+    }
+
+    @Override
+    public int hashCode() {
+
+      return 31 * method.hashCode() + Arrays.hashCode(args);
+    }
+  }
+}
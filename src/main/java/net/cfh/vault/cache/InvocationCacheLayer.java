@@ -0,0 +1,187 @@
+package net.cfh.vault.cache;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * InvocationCacheLayer is the base of the layers that cache the lookups made through a facade in an
+ * {@link InvocationCache}, per subject and per call. Each provider that becomes active starts over
+ * with an empty cache.
+ *
+ * <p>Lookups and mutations are resolved by the layer's {@link MethodTable}, and only lookups whose
+ * arguments are plain values are cached. A mutation that names a player drops everything cached for
+ * that player, while any other mutation, such as a change to a group, drops the whole cache. Any
+ * other method is never cached. The layer warns when it is created if a listed lookup of the
+ * provider type can't be cached, or if none can.</p>
+ *
+ * @param <T> the provider type.
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public abstract class InvocationCacheLayer<T> implements ProviderLayer<T> {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private final MethodTable methods;
+  private final int maxSubjects;
+  private final long ttlMillis;
+  private final long refreshMillis;
+  private final Executor refresher;
+
+  private volatile InvocationCache current = null;
+
+  /**
+   * Creates a new invocation cache layer.
+   *
+   * @param type the provider type.
+   * @param methods the lookup and mutation methods of the provider type.
+   * @param maxSubjects the maximum number of subjects held.
+   * @param ttlMillis how long a cached lookup may be served for at most, in milliseconds.
+   * @param refreshMillis how old a cached lookup may get before it is refreshed in the background,
+   *                      in milliseconds. Has no effect unless shorter than {@code ttlMillis}.
+   * @param refresher the executor background refreshes run on, or {@code null} to never refresh.
+   */
+  protected InvocationCacheLayer(final @NotNull Class<T> type, final @NotNull MethodTable methods,
+                                 final int maxSubjects, final long ttlMillis, final long refreshMillis,
+                                 final @Nullable Executor refresher) {
+
+    this.methods = methods;
+    this.maxSubjects = maxSubjects;
+    this.ttlMillis = ttlMillis;
+    this.refreshMillis = refreshMillis;
+    this.refresher = refresher;
+
+    if(!methods.caches(type)) {
+      LOGGER.atWarning().log("No lookup of " + type.getSimpleName() + " can be cached, so its cache has no effect.");
+      return;
+    }
+
+    final List<String> uncached = methods.uncached(type);
+    if(!uncached.isEmpty()) {
+      LOGGER.atWarning().log("These lookups of " + type.getSimpleName() + " take arguments that aren't plain values "
+                             + "and are never cached: " + String.join(", ", uncached) + ".");
+    }
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull T provider) {
+
+    final InvocationCache cache = new InvocationCache(maxSubjects, ttlMillis, refreshMillis, refresher);
+    current = cache;
+    return call->intercept(cache, call);
+  }
+
+  private Object intercept(final InvocationCache cache, final ProviderCall call) throws Throwable {
+
+    final MethodTable.Operation operation = methods.operation(call.method());
+    final Object subject = (operation.subject() < 0)? null : call.args()[operation.subject()];
+    if(operation.kind() == MethodTable.Kind.LOOKUP) {
+      return cache.get(call, (subject == null)? InvocationCache.GLOBAL : subject);
+    }
+
+    if(operation.kind() == MethodTable.Kind.MUTATION) {
+      try {
+        return call.proceed();
+      } finally {
+
+        if(subject == null) {
+          cache.clear();
+        } else {
+          cache.invalidate(subject);
+        }
+      }
+    }
+    return call.proceed();
+  }
+
+  /**
+   * Drops everything cached for the specified player, such as when they disconnect.
+   *
+   * @param player the player's identifier.
+   */
+  public void flush(final @NotNull UUID player) {
+
+    final InvocationCache cache = current;
+    if(cache != null) {
+      cache.invalidate(player);
+    }
+  }
+
+  /**
+   * Drops every cached lookup.
+   */
+  public void clear() {
+
+    final InvocationCache cache = current;
+    if(cache != null) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * Copies up to the specified number of cached lookups so that they can be saved and preloaded after
+   * a restart.
+   *
+   * @param limit the maximum number of lookups to copy.
+   * @return the copied lookups.
+   */
+  public List<InvocationCache.Warm> export(final int limit) {
+
+    final InvocationCache cache = current;
+    return (cache == null)? List.of() : cache.export(limit);
+  }
+
+  /**
+   * Preloads lookups saved by {@link #export(int)}, which are served until validated in the background
+   * on their first hit.
+   *
+   * @param lookups the lookups to preload.
+   * @param provisionalMillis how long a preloaded value may be served before it is validated, in
+   *                          milliseconds.
+   * @return the number of lookups preloaded.
+   * @see InvocationCache#preload(Collection, long)
+   */
+  public int preload(final @NotNull Collection<InvocationCache.Warm> lookups, final long provisionalMillis) {
+
+    final InvocationCache cache = current;
+    return (cache == null)? 0 : cache.preload(lookups, provisionalMillis);
+  }
+
+  /**
+   * Retrieves the current statistics of this cache.
+   *
+   * @return the current {@link CacheStats}.
+   */
+  public CacheStats stats() {
+
+    final InvocationCache cache = current;
+    return (cache == null)? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+  }
+}
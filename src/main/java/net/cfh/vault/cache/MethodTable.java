@@ -0,0 +1,183 @@
+package net.cfh.vault.cache;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * MethodTable classifies the methods of a provider API for a cache layer from explicit lists of the
+ * lookup and mutation method names, rather than from naming patterns. Each method is resolved once,
+ * from its declared parameter types.
+ *
+ * <p>A lookup is only cached when every parameter is a value whose equality is well defined, such as
+ * a {@link UUID}, a {@link String}, a primitive or an enum, so an argument that can't serve as part of
+ * a key never produces a result that is wrongly shared or never hit. The subject of a call is its
+ * first {@link UUID} parameter. A mutation without one changes something other than a single player,
+ * such as a group, and drops the whole cache. Methods in neither list are never cached.</p>
+ *
+ * <p>A listed lookup that takes anything else, such as a context object, is passed through like any
+ * other method. {@link #uncached(Class)} reports those lookups so a layer can warn about them.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class MethodTable {
+
+  private static final Operation OTHER = new Operation(Kind.OTHER, -1);
+  private static final Set<Class<?>> VALUES = Set.of(UUID.class, String.class, Boolean.class, Character.class,
+                                                     Byte.class, Short.class, Integer.class, Long.class,
+                                                     Float.class, Double.class);
+
+  private final Set<String> lookups;
+  private final Set<String> mutations;
+  private final Map<Method, Operation> operations = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new method table.
+   *
+   * @param lookups the names of the methods that only read.
+   * @param mutations the names of the methods that change what lookups return.
+   */
+  public MethodTable(final @NotNull Set<String> lookups, final @NotNull Set<String> mutations) {
+
+    this.lookups = Set.copyOf(lookups);
+    this.mutations = Set.copyOf(mutations);
+  }
+
+  /**
+   * Retrieves how a cache should treat calls to the specified method.
+   *
+   * @param method the called method.
+   * @return the method's {@link Operation}.
+   */
+  public Operation operation(final @NotNull Method method) {
+
+    return operations.computeIfAbsent(method, this::resolve);
+  }
+
+  /**
+   * Resolves every public method of an API and lists the methods named as lookups that are never
+   * cached, because one of their parameters isn't a plain value.
+   *
+   * @param api the provider API.
+   * @return the signatures of the uncached lookups, such as {@code has(UUID, Context)}.
+   */
+  @NotNull
+  public List<String> uncached(final @NotNull Class<?> api) {
+
+    final List<String> uncached = new ArrayList<>();
+    for(final Method method : api.getMethods()) {
+      if(lookups.contains(method.getName()) && method.getParameterCount() > 0 && operation(method).kind() != Kind.LOOKUP) {
+        uncached.add(method.getName() + Arrays.stream(method.getParameterTypes()).map(Class::getSimpleName)
+                                              .collect(Collectors.joining(", ", "(", ")")));
+      }
+    }
+    return uncached;
+  }
+
+  /**
+   * Determines if any public method of an API resolves to a cached lookup.
+   *
+   * @param api the provider API.
+   * @return true if at least one method of the API is cached, otherwise false.
+   */
+  public boolean caches(final @NotNull Class<?> api) {
+
+    for(final Method method : api.getMethods()) {
+      if(operation(method).kind() == Kind.LOOKUP) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Operation resolve(final Method method) {
+
+    final Class<?>[] types = method.getParameterTypes();
+    final int subject = subject(types);
+    if(mutations.contains(method.getName())) {
+      return new Operation(Kind.MUTATION, subject);
+    }
+
+    if(!lookups.contains(method.getName()) || types.length == 0) {
+      return OTHER;
+    }
+
+    for(final Class<?> type : types) {
+      if(!keyable(type)) {
+        return OTHER;
+      }
+    }
+    return new Operation(Kind.LOOKUP, subject);
+  }
+
+  private static int subject(final Class<?>[] types) {
+
+    for(int i = 0; i < types.length; i++) {
+      if(types[i] == UUID.class) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static boolean keyable(final Class<?> type) {
+
+    return type.isPrimitive() || type.isEnum() || VALUES.contains(type);
+  }
+
+  /**
+   * How a cache treats a method.
+   */
+  public enum Kind {
+
+    /**
+     * The method only reads, and its result is cached.
+     */
+    LOOKUP,
+
+    /**
+     * The method changes what lookups return, and drops the cached results it may affect.
+     */
+    MUTATION,
+
+    /**
+     * The method is passed through without being cached.
+     */
+    OTHER
+  }
+
+  /**
+   * How a cache treats a method, and where its subject is.
+   *
+   * @param kind the {@link Kind} of the method.
+   * @param subject the index of the method's {@link UUID} parameter, or -1 if it has none.
+   */
+  public record Operation(Kind kind, int subject) {
+  }
+}
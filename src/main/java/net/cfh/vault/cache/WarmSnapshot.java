@@ -0,0 +1,548 @@
+package net.cfh.vault.cache;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.ProviderEvent;
+import net.cfh.vault.ProviderListener;
+import net.cfh.vault.VaultUnlockedServicesManager;
+import net.cfh.vault.chat.ChatCache;
+import net.cfh.vault.economy.BalanceCache;
+import net.cfh.vault.permission.PermissionCache;
+import net.milkbowl.vault2.chat.ChatUnlocked;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.permission.PermissionUnlocked;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
+
+/**
+ * WarmSnapshot saves the hottest entries of the balance, permission and chat caches at shutdown
+ * and preloads them on the next start, so the first players to join after a restart don't all miss
+ * the caches and reach the backing stores at once.
+ *
+ * <p>Each cache is saved to its own compact binary file together with the name of the provider it
+ * was filled from. On start every file is read on its own virtual thread, without delaying startup,
+ * and is preloaded once the same provider becomes active, which is usually only after the plugin
+ * providing it has registered. Snapshots older than the configured age, or saved from a different
+ * provider, are discarded. A snapshot file is removed once read, so a server that crashes never
+ * preloads a snapshot older than its last run.</p>
+ *
+ * <p>Preloaded permission and chat entries are validated lazily: each is served straight away, while
+ * its first hit re-reads it from the provider in the background. Preloaded balances are only served
+ * once they have been re-read, and are not preloaded at all while a cluster channel is connected,
+ * since other servers may have changed them while this one was down.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class WarmSnapshot {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private static final int MAGIC = 0x56555753;
+  private static final int VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte UUID_VALUE = 2;
+  private static final byte BOOLEAN = 3;
+  private static final byte INT = 4;
+  private static final byte LONG = 5;
+  private static final byte DOUBLE = 6;
+  private static final byte DECIMAL = 7;
+  private static final byte STRINGS = 8;
+
+  private final Path directory;
+  private final int maxEntries;
+  private final long maxAgeMillis;
+  private final long provisionalMillis;
+  private final List<Section<?, ?>> sections = new ArrayList<>();
+
+  /**
+   * Creates a snapshot of the specified caches, any of which may be disabled.
+   *
+   * @param directory the directory snapshot files are stored in.
+   * @param maxEntries the maximum number of entries saved per cache.
+   * @param maxAgeMillis the age after which a snapshot is discarded rather than preloaded, in milliseconds.
+   * @param provisionalMillis how long a preloaded entry may be served before it is validated, in milliseconds.
+   * @param balances the balance cache, or {@code null} if it is disabled.
+   * @param clustered tells whether a cluster channel is connected, in which case balances are not preloaded.
+   * @param permissions the permission cache, or {@code null} if it is disabled.
+   * @param chat the chat cache, or {@code null} if it is disabled.
+   */
+  public WarmSnapshot(final @NotNull Path directory, final int maxEntries, final long maxAgeMillis,
+                      final long provisionalMillis, final @Nullable BalanceCache balances,
+                      final @NotNull BooleanSupplier clustered, final @Nullable PermissionCache permissions,
+                      final @Nullable ChatCache chat) {
+
+    this.directory = directory;
+    this.maxEntries = Math.max(0, maxEntries);
+    this.maxAgeMillis = maxAgeMillis;
+    this.provisionalMillis = provisionalMillis;
+
+    final VaultUnlockedServicesManager manager = VaultUnlockedServicesManager.get();
+    if(balances != null) {
+
+      //a restarted server missed the invalidations sent while it was down, so its balances can't be trusted.
+      final Section<Economy, BalanceCache.Warm> section = new Section<>("economy.snapshot", new BalanceCodec(),
+                                                                        balances::export,
+                                                                        loaded->(clustered.getAsBoolean())? 0
+                                                                                : balances.preload(loaded, provisionalMillis));
+      section.active = name(manager.economyObj(), Economy::getName);
+      manager.economyListener(section);
+      sections.add(section);
+    }
+
+    if(permissions != null) {
+
+      final Section<PermissionUnlocked, InvocationCache.Warm> section = new Section<>("permission.snapshot",
+                                                                                     new InvocationCodec(PermissionUnlocked.class),
+                                                                                     permissions::export,
+                                                                                     loaded->permissions.preload(loaded, provisionalMillis));
+      section.active = name(manager.permissionObj(), PermissionUnlocked::getName);
+      manager.permissionListener(section);
+      sections.add(section);
+    }
+
+    if(chat != null) {
+
+      final Section<ChatUnlocked, InvocationCache.Warm> section = new Section<>("chat.snapshot",
+                                                                               new InvocationCodec(ChatUnlocked.class),
+                                                                               chat::export,
+                                                                               loaded->chat.preload(loaded, provisionalMillis));
+      section.active = name(manager.chatObj(), ChatUnlocked::getName);
+      manager.chatListener(section);
+      sections.add(section);
+    }
+  }
+
+  /**
+   * Reads every saved snapshot in the background, preloading each once the provider it was saved
+   * from is active.
+   */
+  public void load() {
+
+    for(final Section<?, ?> section : sections) {
+      Thread.ofVirtual().name("VaultUnlocked-Snapshot").start(section::load);
+    }
+  }
+
+  /**
+   * Drops every snapshot that has been read but not preloaded yet, such as when the provider it was
+   * saved from never became active.
+   *
+   * @return the number of snapshots dropped.
+   */
+  public int discard() {
+
+    int discarded = 0;
+    for(final Section<?, ?> section : sections) {
+
+      final Loaded<?> loaded = section.pending.getAndSet(null);
+      if(loaded != null) {
+
+        LOGGER.atInfo().log("Discarded the " + section.file + " of " + loaded.provider()
+                            + " as that provider never became active.");
+        discarded++;
+      }
+    }
+    return discarded;
+  }
+
+  /**
+   * Saves the hottest entries of every cache, used when the plugin shuts down.
+   */
+  public void save() {
+
+    for(final Section<?, ?> section : sections) {
+      try {
+        section.save();
+      } catch(final IOException e) {
+        LOGGER.atWarning().withCause(e).log("Unable to save the " + section.file + ".");
+      }
+    }
+  }
+
+  @Nullable
+  private static <T> String name(final @Nullable T provider, final Function<T, String> names) {
+
+    return (provider == null)? null : names.apply(provider);
+  }
+
+  private final class Section<T, E> implements ProviderListener<T> {
+
+    private final String file;
+    private final Codec<E> codec;
+    private final IntFunction<List<E>> exporter;
+    private final ToIntFunction<List<E>> preloader;
+    private final AtomicReference<Loaded<E>> pending = new AtomicReference<>();
+
+    private volatile String active;
+
+    private Section(final String file, final Codec<E> codec, final IntFunction<List<E>> exporter,
+                    final ToIntFunction<List<E>> preloader) {
+
+      this.file = file;
+      this.codec = codec;
+      this.exporter = exporter;
+      this.preloader = preloader;
+    }
+
+    @Override
+    public void onEvent(final @NotNull ProviderEvent<T> event) {
+
+      //keep the last provider once none is active, as the cache still holds what it was filled from.
+      if(event.type() == ProviderEvent.Type.ACTIVE_CHANGED && event.name() != null) {
+
+        active = event.name();
+        apply();
+      }
+    }
+
+    private void load() {
+
+      final Path path = directory.resolve(file);
+      try(final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+
+        if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+          throw new IOException(path + " is not a cache snapshot.");
+        }
+
+        final long savedAt = in.readLong();
+        final String provider = in.readUTF();
+        final int count = in.readInt();
+        if(System.currentTimeMillis() - savedAt > maxAgeMillis) {
+
+          LOGGER.atInfo().log("Ignoring the " + file + " of " + provider + " as it is older than the configured maximum age.");
+          return;
+        }
+
+        final List<E> entries = new ArrayList<>(Math.min(count, maxEntries));
+        for(int i = 0; i < count; i++) {
+
+          final E entry = codec.read(in);
+          if(entry != null) {
+            entries.add(entry);
+          }
+        }
+
+        pending.set(new Loaded<>(provider, entries));
+        apply();
+      } catch(final NoSuchFileException ignore) {
+        //nothing was saved at the last shutdown.
+      } catch(final IOException | RuntimeException e) {
+        LOGGER.atWarning().withCause(e).log("Unable to read the " + file + ".");
+      } finally {
+        try {
+          Files.deleteIfExists(path);
+        } catch(final IOException e) {
+          LOGGER.atWarning().withCause(e).log("Unable to remove the " + file + ".");
+        }
+      }
+    }
+
+    /**
+     * Preloads the loaded snapshot, if there is one and the provider it was saved from is active.
+     */
+    private void apply() {
+
+      final Loaded<E> loaded = pending.get();
+      if(loaded == null || !loaded.provider().equals(active) || !pending.compareAndSet(loaded, null)) {
+        return;
+      }
+
+      final int preloaded = preloader.applyAsInt(loaded.entries());
+      LOGGER.atInfo().log("Preloaded " + preloaded + " of " + loaded.entries().size() + " entries from the "
+                          + file + " of " + loaded.provider() + ".");
+    }
+
+    private void save() throws IOException {
+
+      final String provider = active;
+      if(provider == null || maxEntries == 0) {
+        return;
+      }
+
+      final List<E> entries = new ArrayList<>();
+      for(final E entry : exporter.apply(maxEntries)) {
+        if(codec.encodable(entry)) {
+          entries.add(entry);
+        }
+      }
+      if(entries.isEmpty()) {
+        return;
+      }
+
+      Files.createDirectories(directory);
+      final Path path = directory.resolve(file);
+      final Path temp = path.resolveSibling(file + ".tmp");
+      try(final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeUTF(provider);
+        out.writeInt(entries.size());
+        for(final E entry : entries) {
+          codec.write(out, entry);
+        }
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+  }
+
+  private record Loaded<E>(String provider, List<E> entries) {
+  }
+
+  private interface Codec<E> {
+
+    boolean encodable(E entry);
+
+    void write(DataOutputStream out, E entry) throws IOException;
+
+    /**
+     * Reads an entry, returning {@code null} if it was read but can no longer be used.
+     */
+    @Nullable
+    E read(DataInputStream in) throws IOException;
+  }
+
+  private static final class BalanceCodec implements Codec<BalanceCache.Warm> {
+
+    @Override
+    public boolean encodable(final BalanceCache.Warm entry) {
+
+      return true;
+    }
+
+    @Override
+    public void write(final DataOutputStream out, final BalanceCache.Warm entry) throws IOException {
+
+      out.writeLong(entry.account().getMostSignificantBits());
+      out.writeLong(entry.account().getLeastSignificantBits());
+      writeValue(out, entry.world());
+      writeValue(out, entry.currency());
+      writeValue(out, entry.balance());
+    }
+
+    @Override
+    public BalanceCache.Warm read(final DataInputStream in) throws IOException {
+
+      final UUID account = new UUID(in.readLong(), in.readLong());
+      final Object world = readValue(in);
+      final Object currency = readValue(in);
+      final Object balance = readValue(in);
+      if(!(balance instanceof final BigDecimal value)) {
+        throw new IOException("Malformed balance of " + account + ".");
+      }
+      return new BalanceCache.Warm(account, (String)world, (String)currency, value);
+    }
+  }
+
+  /**
+   * Encodes cached calls by method name and parameter types, resolving them against the service
+   * interface again when read so that a method the provider API no longer has is skipped.
+   */
+  private static final class InvocationCodec implements Codec<InvocationCache.Warm> {
+
+    private final Class<?> service;
+
+    private InvocationCodec(final Class<?> service) {
+
+      this.service = service;
+    }
+
+    @Override
+    public boolean encodable(final InvocationCache.Warm entry) {
+
+      if(!encodableValue(entry.subject()) || !encodableValue(entry.value())) {
+        return false;
+      }
+
+      for(final Object arg : entry.args()) {
+        if(!encodableValue(arg)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public void write(final DataOutputStream out, final InvocationCache.Warm entry) throws IOException {
+
+      writeValue(out, entry.subject());
+      out.writeUTF(entry.method().getName());
+
+      final Class<?>[] parameters = entry.method().getParameterTypes();
+      out.writeByte(parameters.length);
+      for(final Class<?> parameter : parameters) {
+        out.writeUTF(parameter.getName());
+      }
+
+      out.writeByte(entry.args().length);
+      for(final Object arg : entry.args()) {
+        writeValue(out, arg);
+      }
+      writeValue(out, entry.value());
+    }
+
+    @Override
+    public InvocationCache.Warm read(final DataInputStream in) throws IOException {
+
+      final Object subject = readValue(in);
+      final String name = in.readUTF();
+      final String[] parameters = new String[in.readUnsignedByte()];
+      for(int i = 0; i < parameters.length; i++) {
+        parameters[i] = in.readUTF();
+      }
+
+      final Object[] args = new Object[in.readUnsignedByte()];
+      for(int i = 0; i < args.length; i++) {
+        args[i] = readValue(in);
+      }
+      final Object value = readValue(in);
+
+      final Method method = resolve(name, parameters);
+      return (method == null || value == null || method.getParameterCount() != args.length)? null
+             : new InvocationCache.Warm(subject, method, args, value);
+    }
+
+    @Nullable
+    private Method resolve(final String name, final String[] parameters) {
+
+      for(final Method method : service.getMethods()) {
+
+        if(!method.getName().equals(name) || method.getParameterCount() != parameters.length) {
+          continue;
+        }
+
+        final Class<?>[] types = method.getParameterTypes();
+        boolean matches = true;
+        for(int i = 0; i < types.length && matches; i++) {
+          matches = types[i].getName().equals(parameters[i]);
+        }
+        if(matches) {
+          return method;
+        }
+      }
+      return null;
+    }
+  }
+
+  private static boolean encodableValue(final @Nullable Object value) {
+
+    return value == null || value instanceof String || value instanceof UUID || value instanceof Boolean
+           || value instanceof Integer || value instanceof Long || value instanceof Double
+           || value instanceof BigDecimal || (value instanceof final String[] strings && !Arrays.asList(strings).contains(null));
+  }
+
+  private static void writeValue(final DataOutputStream out, final @Nullable Object value) throws IOException {
+
+    if(value == null) {
+      out.writeByte(NULL);
+    } else if(value instanceof final String string) {
+      out.writeByte(STRING);
+      out.writeUTF(string);
+    } else if(value instanceof final UUID id) {
+      out.writeByte(UUID_VALUE);
+      out.writeLong(id.getMostSignificantBits());
+      out.writeLong(id.getLeastSignificantBits());
+    } else if(value instanceof final Boolean bool) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean(bool);
+    } else if(value instanceof final Integer number) {
+      out.writeByte(INT);
+      out.writeInt(number);
+    } else if(value instanceof final Long number) {
+      out.writeByte(LONG);
+      out.writeLong(number);
+    } else if(value instanceof final Double number) {
+      out.writeByte(DOUBLE);
+      out.writeDouble(number);
+    } else if(value instanceof final BigDecimal decimal) {
+
+      final byte[] unscaled = decimal.unscaledValue().toByteArray();
+      out.writeByte(DECIMAL);
+      out.writeInt(decimal.scale());
+      out.writeShort(unscaled.length);
+      out.write(unscaled);
+    } else if(value instanceof final String[] strings) {
+
+      out.writeByte(STRINGS);
+      out.writeShort(strings.length);
+      for(final String string : strings) {
+        out.writeUTF(string);
+      }
+    } else {
+      throw new IOException("Unable to save a " + value.getClass().getName() + ".");
+    }
+  }
+
+  @Nullable
+  private static Object readValue(final DataInputStream in) throws IOException {
+
+    final byte tag = in.readByte();
+    return switch(tag) {
+      case NULL -> null;
+      case STRING -> in.readUTF();
+      case UUID_VALUE -> new UUID(in.readLong(), in.readLong());
+      case BOOLEAN -> in.readBoolean();
+      case INT -> in.readInt();
+      case LONG -> in.readLong();
+      case DOUBLE -> in.readDouble();
+      case DECIMAL -> {
+
+        final int scale = in.readInt();
+        final byte[] unscaled = new byte[in.readUnsignedShort()];
+        in.readFully(unscaled);
+        yield new BigDecimal(new BigInteger(unscaled), scale);
+      }
+      case STRINGS -> {
+
+        final String[] strings = new String[in.readUnsignedShort()];
+        for(int i = 0; i < strings.length; i++) {
+          strings[i] = in.readUTF();
+        }
+        yield strings;
+      }
+      default -> throw new IOException("Unknown value tag " + tag + ".");
+    };
+  }
+}
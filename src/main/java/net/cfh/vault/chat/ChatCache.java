@@ -0,0 +1,78 @@
+package net.cfh.vault.chat;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.cache.InvocationCacheLayer;
+import net.cfh.vault.cache.MethodTable;
+import net.milkbowl.vault2.chat.ChatUnlocked;
+
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * ChatCache caches the prefixes, suffixes and meta served by the active {@link ChatUnlocked}
+ * facade per player. Once a cached value is older than the refresh interval it keeps being served
+ * while a single background lookup refreshes it, so chat and nameplate rendering only wait on the
+ * provider the first time a value is requested or after it has fully expired.
+ *
+ * <p>Lookups and mutations are the methods listed in {@link #METHODS}, and cached as described by
+ * {@link InvocationCacheLayer}. Any other method is never cached.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class ChatCache extends InvocationCacheLayer<ChatUnlocked> {
+
+  public static final String LAYER = "chat-cache";
+
+  /**
+   * The lookup and mutation methods of {@link ChatUnlocked}.
+   */
+  public static final MethodTable METHODS = new MethodTable(Set.of("getPrefix", "getSuffix", "getMeta", "hasMeta",
+                                                                   "getPlayerPrefix", "getPlayerSuffix",
+                                                                   "getGroupPrefix", "getGroupSuffix",
+                                                                   "getPlayerInfoString", "getPlayerInfoInteger",
+                                                                   "getPlayerInfoDouble", "getPlayerInfoBoolean",
+                                                                   "getGroupInfoString", "getGroupInfoInteger",
+                                                                   "getGroupInfoDouble", "getGroupInfoBoolean"),
+                                                            Set.of("setPrefix", "setSuffix", "setMeta", "removeMeta",
+                                                                   "clearMeta", "setPlayerPrefix", "setPlayerSuffix",
+                                                                   "setGroupPrefix", "setGroupSuffix",
+                                                                   "setPlayerInfoString", "setPlayerInfoInteger",
+                                                                   "setPlayerInfoDouble", "setPlayerInfoBoolean",
+                                                                   "setGroupInfoString", "setGroupInfoInteger",
+                                                                   "setGroupInfoDouble", "setGroupInfoBoolean"));
+
+  private static final Executor REFRESHER = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                  .name("VaultUnlocked-ChatRefresh-", 0)
+                                                                                  .factory());
+
+  /**
+   * Creates a new chat cache.
+   *
+   * @param maxSubjects the maximum number of subjects held.
+   * @param ttlMillis how long a cached value may be served for at most, in milliseconds.
+   * @param refreshMillis how old a cached value may get before it is refreshed in the background,
+   *                      in milliseconds.
+   */
+  public ChatCache(final int maxSubjects, final long ttlMillis, final long refreshMillis) {
+
+    super(ChatUnlocked.class, METHODS, maxSubjects, ttlMillis, refreshMillis, REFRESHER);
+  }
+}
@@ -0,0 +1,250 @@
+package net.cfh.vault.cluster;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * InvalidationChannel keeps the balance caches of several servers sharing one economy coherent.
+ * Every account changed through this server's facade is published to the other servers, which drop
+ * their cached balances of it, while the invalidations they publish are applied here.
+ *
+ * <p>Accounts published within a short window are deduplicated and sent as one message, each
+ * account taking 16 bytes. Messages carry the identifier of the server that sent them, so a server
+ * ignores its own messages on transports that echo them back. The channel does not depend on any
+ * particular transport: {@link LoopbackTransport} connects channels within a process, and adapters
+ * for message brokers implement {@link InvalidationTransport}.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class InvalidationChannel implements AutoCloseable {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private static final byte ACCOUNTS = 1;
+  private static final byte ALL = 2;
+  private static final int HEADER = 21;
+  private static final int MAX_BATCH = 4096;
+
+  private final UUID node = UUID.randomUUID();
+  private final InvalidationTransport transport;
+  private final Consumer<UUID> invalidate;
+  private final Runnable clear;
+  private final Set<UUID> pending = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService sender;
+
+  private final LongAdder published = new LongAdder();
+  private final LongAdder sent = new LongAdder();
+  private final LongAdder received = new LongAdder();
+  private final LongAdder invalidated = new LongAdder();
+  private final LongAdder malformed = new LongAdder();
+
+  /**
+   * Creates a new channel and starts receiving from the specified transport.
+   *
+   * @param transport the transport messages are sent and received through.
+   * @param batchMillis how long published accounts are collected for before they are sent, in
+   *                    milliseconds, or 0 to send every account immediately.
+   * @param invalidate the consumer dropping the cached balances of an account changed elsewhere.
+   * @param clear the runnable dropping every cached balance.
+   */
+  public InvalidationChannel(final @NotNull InvalidationTransport transport, final long batchMillis,
+                             final @NotNull Consumer<UUID> invalidate, final @NotNull Runnable clear) {
+
+    this.transport = transport;
+    this.invalidate = invalidate;
+    this.clear = clear;
+
+    if(batchMillis > 0) {
+
+      this.sender = Executors.newSingleThreadScheduledExecutor(runnable->{
+        final Thread thread = new Thread(runnable, "VaultUnlocked-Cluster");
+        thread.setDaemon(true);
+        return thread;
+      });
+      this.sender.scheduleWithFixedDelay(this::flush, batchMillis, batchMillis, TimeUnit.MILLISECONDS);
+    } else {
+      this.sender = null;
+    }
+
+    transport.receive(this::receive);
+  }
+
+  /**
+   * Publishes an account changed on this server to the other servers.
+   *
+   * @param account the account identifier.
+   */
+  public void publish(final @NotNull UUID account) {
+
+    published.increment();
+    if(sender == null) {
+
+      send(ACCOUNTS, new UUID[] { account }, 1);
+      return;
+    }
+    pending.add(account);
+  }
+
+  /**
+   * Tells the other servers to drop every cached balance, used after changes made outside the
+   * facade, such as a conversion.
+   */
+  public void publishAll() {
+
+    send(ALL, new UUID[0], 0);
+  }
+
+  /**
+   * Sends the accounts published since the last flush.
+   */
+  public void flush() {
+
+    if(pending.isEmpty()) {
+      return;
+    }
+
+    final UUID[] batch = new UUID[Math.min(MAX_BATCH, pending.size())];
+    int size = 0;
+    final Iterator<UUID> iterator = pending.iterator();
+    while(iterator.hasNext()) {
+
+      batch[size++] = iterator.next();
+      iterator.remove();
+      if(size == batch.length) {
+        send(ACCOUNTS, batch, size);
+        size = 0;
+      }
+    }
+
+    if(size > 0) {
+      send(ACCOUNTS, batch, size);
+    }
+  }
+
+  /**
+   * Retrieves the current statistics of this channel.
+   *
+   * @return the current {@link Stats}.
+   */
+  public Stats stats() {
+
+    return new Stats(published.sum(), sent.sum(), received.sum(), invalidated.sum(), malformed.sum());
+  }
+
+  @Override
+  public void close() {
+
+    if(sender != null) {
+      sender.shutdownNow();
+    }
+    flush();
+    transport.close();
+  }
+
+  private void send(final byte kind, final UUID[] accounts, final int count) {
+
+    final ByteBuffer buffer = ByteBuffer.allocate(HEADER + count * 16);
+    buffer.put(kind);
+    buffer.putLong(node.getMostSignificantBits());
+    buffer.putLong(node.getLeastSignificantBits());
+    buffer.putInt(count);
+    for(int i = 0; i < count; i++) {
+      buffer.putLong(accounts[i].getMostSignificantBits());
+      buffer.putLong(accounts[i].getLeastSignificantBits());
+    }
+
+    try {
+
+      transport.send(buffer.array());
+      sent.increment();
+    } catch(final RuntimeException e) {
+      LOGGER.atWarning().withCause(e).log("Unable to send " + count + " balance invalidations to the other servers.");
+    }
+  }
+
+  private void receive(final byte[] message) {
+
+    try {
+
+      final ByteBuffer buffer = ByteBuffer.wrap(message);
+      final byte kind = buffer.get();
+      final long most = buffer.getLong();
+      final long least = buffer.getLong();
+      if(most == node.getMostSignificantBits() && least == node.getLeastSignificantBits()) {
+        return;
+      }
+      received.increment();
+
+      if(kind == ALL) {
+        clear.run();
+        return;
+      }
+
+      final int count = buffer.getInt();
+      if(kind != ACCOUNTS || count < 0 || buffer.remaining() != count * 16) {
+        malformed.increment();
+        return;
+      }
+
+      for(int i = 0; i < count; i++) {
+        invalidate.accept(new UUID(buffer.getLong(), buffer.getLong()));
+      }
+      invalidated.add(count);
+    } catch(final BufferUnderflowException e) {
+      malformed.increment();
+    }
+  }
+
+  /**
+   * A point-in-time view of an {@link InvalidationChannel}.
+   *
+   * @param published the number of accounts published by this server.
+   * @param sent the number of messages sent.
+   * @param received the number of messages received from other servers.
+   * @param invalidated the number of accounts invalidated by other servers.
+   * @param malformed the number of messages that could not be decoded.
+   */
+  public record Stats(long published, long sent, long received, long invalidated, long malformed) {
+
+    /**
+     * Formats these statistics as a single human-readable line.
+     *
+     * @return the formatted statistics.
+     */
+    public String describe() {
+
+      return String.format("published=%d sent=%d received=%d invalidated=%d malformed=%d", published, sent,
+                           received, invalidated, malformed);
+    }
+  }
+}
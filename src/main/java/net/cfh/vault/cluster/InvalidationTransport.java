@@ -0,0 +1,53 @@
+package net.cfh.vault.cluster;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * InvalidationTransport is the adapter an {@link InvalidationChannel} sends its encoded messages
+ * through, such as a message broker's publish/subscribe topic shared by every server. A transport
+ * only moves opaque byte arrays; it does not need to filter out the messages its own server sent,
+ * and it may drop messages, since cached balances still expire on their own.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+  /**
+   * Sends a message to every other server.
+   *
+   * @param message the encoded message, which the transport must not modify.
+   */
+  void send(@NotNull byte[] message);
+
+  /**
+   * Sets the handler every message received from another server is passed to. Called once, before
+   * the first message is sent.
+   *
+   * @param handler the handler of received messages.
+   */
+  void receive(@NotNull Consumer<byte[]> handler);
+
+  @Override
+  default void close() {
+  }
+}
@@ -0,0 +1,87 @@
+package net.cfh.vault.cluster;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * LoopbackTransport connects {@link InvalidationChannel}s within a single process, delivering every
+ * message synchronously to every other transport created from the same {@link Hub}. It stands in for
+ * a real transport when testing, or when several economies share a process.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class LoopbackTransport implements InvalidationTransport {
+
+  private final Hub hub;
+  private volatile Consumer<byte[]> handler = null;
+
+  private LoopbackTransport(final Hub hub) {
+
+    this.hub = hub;
+  }
+
+  @Override
+  public void send(final @NotNull byte[] message) {
+
+    for(final LoopbackTransport transport : hub.transports) {
+
+      final Consumer<byte[]> receiver = transport.handler;
+      if(transport != this && receiver != null) {
+        receiver.accept(message);
+      }
+    }
+  }
+
+  @Override
+  public void receive(final @NotNull Consumer<byte[]> handler) {
+
+    this.handler = handler;
+  }
+
+  @Override
+  public void close() {
+
+    hub.transports.remove(this);
+  }
+
+  /**
+   * Hub is the shared medium of a group of {@link LoopbackTransport}s.
+   */
+  public static final class Hub {
+
+    private final List<LoopbackTransport> transports = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a new transport connected to this hub.
+     *
+     * @return the new transport.
+     */
+    public LoopbackTransport connect() {
+
+      final LoopbackTransport transport = new LoopbackTransport(this);
+      transports.add(transport);
+      return transport;
+    }
+  }
+}
@@ -17,20 +17,23 @@ package net.cfh.vault.command;
     along with Vault.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+import com.hypixel.hytale.logger.HytaleLogger;
 import com.hypixel.hytale.server.core.Message;
 import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.arguments.system.OptionalArg;
 import com.hypixel.hytale.server.core.command.system.arguments.system.RequiredArg;
 import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
 import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import com.hypixel.hytale.server.core.universe.Universe;
 import net.cfh.vault.VaultUnlocked;
+import net.cfh.vault.convert.ConversionJob;
+import net.cfh.vault.convert.ConversionManager;
 import net.milkbowl.vault2.economy.Economy;
-import net.milkbowl.vault2.economy.EconomyResponse;
 
 import javax.annotation.Nonnull;
-import java.math.BigDecimal;
-import java.util.Map;
+import java.util.List;
+import java.util.Locale;
 import java.util.Optional;
-import java.util.UUID;
 
 /**
  * VaultConvertCommand
@@ -40,20 +43,43 @@ import java.util.UUID;
  */
 public class VaultConvertCommand extends CommandBase {
 
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
 
   private final RequiredArg<String> fromArg;
   private final RequiredArg<String> targetArg;
+  private final OptionalArg<String> modeArg;
+  private final OptionalArg<String> scopeArg;
 
   public VaultConvertCommand() {
-    super("vault-convert", "from target - Converts from one Economy to another");
+    super("vault-convert", "from target [mode] [scope] - Converts, dry-runs or verifies a conversion from one Economy to another");
 
     this.fromArg = this.withRequiredArg("from", "The economy you're converting from.", ArgTypes.STRING);
     this.targetArg = this.withRequiredArg("target", "The economy you're converting to.", ArgTypes.STRING);
+    this.modeArg = this.withOptionalArg("mode", "The mode: write to convert, dry-run to report what would change, or verify to compare. Defaults to write.", ArgTypes.STRING);
+    this.scopeArg = this.withOptionalArg("scope", "The scope: default for the default currency and world, or all for every currency and world. Defaults to default.", ArgTypes.STRING);
   }
 
   @Override
   protected void executeSync(@Nonnull final CommandContext ctx) {
 
+    final ConversionJob.Mode mode = switch(option(ctx, this.modeArg, "write")) {
+      case "write" -> ConversionJob.Mode.CONVERT;
+      case "dry-run" -> ConversionJob.Mode.DRY_RUN;
+      case "verify" -> ConversionJob.Mode.VERIFY;
+      default -> null;
+    };
+
+    final ConversionJob.Scope scope = switch(option(ctx, this.scopeArg, "default")) {
+      case "default" -> ConversionJob.Scope.DEFAULT;
+      case "all" -> ConversionJob.Scope.ALL;
+      default -> null;
+    };
+
+    if(mode == null || scope == null) {
+      ctx.sendMessage(Message.raw("The mode must be write, dry-run or verify, and the scope default or all."));
+      return;
+    }
+
     final Optional<Economy> fromEconomy = VaultUnlocked.services().economy(this.fromArg.get(ctx));
     final Optional<Economy> targetEconomy = VaultUnlocked.services().economy(this.targetArg.get(ctx));
 
@@ -62,16 +88,36 @@ public class VaultConvertCommand extends CommandBase {
       return;
     }
 
-    for(final Map.Entry<UUID, String> entry : fromEconomy.get().getUUIDNameMap().entrySet()) {
+    final List<String> worlds = (scope == ConversionJob.Scope.ALL)?
+                                List.copyOf(Universe.get().getWorlds().keySet()) : List.of();
+
+    //journal what the conversion writes so that a broken conversion can be reversed.
+    final Economy target = (mode != ConversionJob.Mode.CONVERT)? targetEconomy.get()
+                           : VaultUnlocked.instance().journal().map(journal->journal.wrap(targetEconomy.get()))
+                                          .orElse(targetEconomy.get());
+
+    final ConversionJob job = new ConversionJob(fromEconomy.get(),
+                                                VaultUnlocked.instance().accountDirectory(fromEconomy.get().getName()).orElse(null),
+                                                target, scope, mode, worlds,
+                                                VaultUnlocked.instance().getDataDirectory().resolve("conversions"),
+                                                ConversionManager.DEFAULT_CHUNK_SIZE,
+                                                ConversionManager.DEFAULT_PARALLELISM,
+                                                ConversionManager.DEFAULT_REPORT_INTERVAL,
+                                                message->{
+                                                  LOGGER.atInfo().log(message);
+                                                  ctx.sendMessage(Message.raw(message));
+                                                });
+
+    if(!ConversionManager.get().start(job)) {
+      ctx.sendMessage(Message.raw("A conversion is already running. Use /vault-convert-status or /vault-convert-cancel."));
+      return;
+    }
 
-      final BigDecimal balance = fromEconomy.get().balance("VaultUnlocked", entry.getKey());
+    ctx.sendMessage(Message.raw("Conversion " + job.id() + " started in the background."));
+  }
 
-      final EconomyResponse response = targetEconomy.get().set("VaultUnlocked", entry.getKey(), balance);
-      if(!response.transactionSuccess()) {
-        ctx.sendMessage(Message.raw("Failed to convert " + entry.getValue() + "'s balance. Reason: " + response.errorMessage));
-      }
-    }
+  private static String option(final CommandContext ctx, final OptionalArg<String> arg, final String defaultValue) {
 
-    ctx.sendMessage(Message.raw("Conversion successful!"));
+    return (arg.provided(ctx))? arg.get(ctx).toLowerCase(Locale.ROOT) : defaultValue;
   }
 }
\ No newline at end of file
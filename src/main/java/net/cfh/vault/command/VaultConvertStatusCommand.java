@@ -0,0 +1,53 @@
+package net.cfh.vault.command;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import net.cfh.vault.convert.ConversionJob;
+import net.cfh.vault.convert.ConversionManager;
+
+import javax.annotation.Nonnull;
+import java.util.Optional;
+
+/**
+ * VaultConvertStatusCommand
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class VaultConvertStatusCommand extends CommandBase {
+
+
+  public VaultConvertStatusCommand() {
+    super("vault-convert-status", "Displays the progress of the current economy conversion");
+  }
+
+  @Override
+  protected void executeSync(@Nonnull final CommandContext ctx) {
+
+    final Optional<ConversionJob> job = ConversionManager.get().current();
+    if(job.isEmpty()) {
+      ctx.sendMessage(Message.raw("No conversion has been started."));
+      return;
+    }
+
+    ctx.sendMessage(Message.raw(job.get().progress().describe()));
+  }
+}
@@ -66,5 +66,17 @@ public class VaultInfoCommand extends CommandBase {
     ctx.sendMessage(Message.raw(String.format("[%s] Economy: %s%s", name, (economy == null)? "None" : economy.getName(), registeredEconomies)));
     ctx.sendMessage(Message.raw(String.format("[%s] Permission: %s%s", name, (permission == null)? "None" : permission.getName(), registeredPermissions)));
     ctx.sendMessage(Message.raw(String.format("[%s] Chat: %s%s", name, (chat == null)? "None" : chat.getName(), registeredChats)));
+    VaultUnlocked.instance().mutationLimiter().ifPresent(limiter->ctx.sendMessage(Message.raw(String.format("[%s] Rate Limit: %s", name, limiter.stats().describe()))));
+    VaultUnlocked.instance().journal().ifPresent(journal->ctx.sendMessage(Message.raw(String.format("[%s] Journal: %s", name, journal.stats().describe()))));
+    VaultUnlocked.instance().balanceCache().ifPresent(cache->ctx.sendMessage(Message.raw(String.format("[%s] Balance Cache: %s", name, cache.stats().describe()))));
+    VaultUnlocked.instance().invalidationChannel().ifPresent(channel->ctx.sendMessage(Message.raw(String.format("[%s] Cluster: %s", name, channel.stats().describe()))));
+    VaultUnlocked.instance().accountSerializer().ifPresent(serializer->ctx.sendMessage(Message.raw(String.format("[%s] Account Serializer: %s", name, serializer.stats().describe()))));
+    VaultUnlocked.instance().leaderboard().ifPresent(leaderboard->ctx.sendMessage(Message.raw(String.format("[%s] Leaderboard: %s", name, leaderboard.describe()))));
+    VaultUnlocked.instance().accountDirectory().ifPresent(directory->ctx.sendMessage(Message.raw(String.format("[%s] Account Directory: accounts=%d", name, directory.size()))));
+    VaultUnlocked.instance().writeBehind().ifPresent(buffer->ctx.sendMessage(Message.raw(String.format("[%s] Write-Behind: %s", name, buffer.stats().describe()))));
+    VaultUnlocked.instance().permissionCache().ifPresent(cache->ctx.sendMessage(Message.raw(String.format("[%s] Permission Cache: %s", name, cache.stats().describe()))));
+    VaultUnlocked.instance().chatCache().ifPresent(cache->ctx.sendMessage(Message.raw(String.format("[%s] Chat Cache: %s", name, cache.stats().describe()))));
+    VaultUnlocked.instance().slowCalls().ifPresent(detector->ctx.sendMessage(Message.raw(String.format("[%s] Slow Calls: %s", name, detector.stats().describe()))));
+    VaultUnlocked.instance().health().ifPresent(monitor->monitor.reports().forEach(report->ctx.sendMessage(Message.raw(String.format("[%s] %s Health: %s", name, report.service(), report.describe())))));
   }
 }
\ No newline at end of file
@@ -0,0 +1,139 @@
+package net.cfh.vault.command;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.arguments.system.RequiredArg;
+import com.hypixel.hytale.server.core.command.system.arguments.types.ArgTypes;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import net.cfh.vault.VaultUnlocked;
+import net.cfh.vault.journal.JournalEntry;
+import net.cfh.vault.journal.JournalReader;
+import net.cfh.vault.journal.JournalReplayer;
+import net.cfh.vault.journal.TransactionJournal;
+import net.milkbowl.vault2.economy.Economy;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * VaultJournalReplayCommand
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class VaultJournalReplayCommand extends CommandBase {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private final boolean reverse;
+  private final RequiredArg<String> fromArg;
+  private final RequiredArg<String> toArg;
+  private final RequiredArg<String> pluginArg;
+
+  public VaultJournalReplayCommand() {
+    this("vault-journal-replay", "from to plugin - Makes the journaled balance changes in a time range again", false);
+  }
+
+  protected VaultJournalReplayCommand(final String name, final String description, final boolean reverse) {
+    super(name, description);
+
+    this.reverse = reverse;
+
+    this.fromArg = this.withRequiredArg("from", "The start of the range, as an ISO date-time or epoch milliseconds.", ArgTypes.STRING);
+    this.toArg = this.withRequiredArg("to", "The end of the range, as an ISO date-time or epoch milliseconds.", ArgTypes.STRING);
+    this.pluginArg = this.withRequiredArg("plugin", "The plugin whose changes are included, or * for every plugin.", ArgTypes.STRING);
+  }
+
+  @Override
+  protected void executeSync(@Nonnull final CommandContext ctx) {
+
+    final Optional<TransactionJournal> journal = VaultUnlocked.instance().journal();
+    if(journal.isEmpty()) {
+      ctx.sendMessage(Message.raw("The transaction journal is disabled."));
+      return;
+    }
+
+    final long from;
+    final long to;
+    try {
+      from = time(this.fromArg.get(ctx));
+      to = time(this.toArg.get(ctx));
+    } catch(final DateTimeParseException e) {
+      ctx.sendMessage(Message.raw("Times must be an ISO date-time, such as 2026-01-31T18:00, or epoch milliseconds."));
+      return;
+    }
+
+    final String plugin = this.pluginArg.get(ctx);
+    final Predicate<JournalEntry> filter = (plugin.equals("*"))? entry->true : entry->plugin.equalsIgnoreCase(entry.plugin());
+
+    //reading and applying a large range may take a while, so keep it off the command thread.
+    Thread.ofVirtual().name("VaultUnlocked-Journal-Replay").start(()->{
+
+      try {
+
+        journal.get().sync();
+        final List<JournalEntry> entries = JournalReader.read(journal.get().directory(), from, to);
+        final JournalReplayer.Result result = (reverse)? JournalReplayer.reverse(entries, filter, VaultJournalReplayCommand::economy)
+                                                       : JournalReplayer.replay(entries, filter, VaultJournalReplayCommand::economy);
+
+        final String message = String.format("%s %d journal entries: %s", (reverse)? "Reversed" : "Replayed",
+                                             entries.size(), result.describe());
+        LOGGER.atInfo().log(message);
+        ctx.sendMessage(Message.raw(message));
+      } catch(final IOException e) {
+
+        LOGGER.atWarning().withCause(e).log("Unable to read the transaction journal.");
+        ctx.sendMessage(Message.raw("Unable to read the transaction journal: " + e.getMessage()));
+      }
+    });
+    ctx.sendMessage(Message.raw(((reverse)? "Reversing" : "Replaying") + " journal entries in the background."));
+  }
+
+  private static Economy economy(final String provider) {
+
+    //prefer the facade so replayed changes go through the installed layers, and are journaled themselves.
+    final Economy active = VaultUnlocked.economyObj();
+    if(active != null && provider.equals(active.getName())) {
+      return active;
+    }
+    return VaultUnlocked.services().economy(provider).orElse(null);
+  }
+
+  private static long time(final String value) {
+
+    if(value.matches("\\d+")) {
+      return Long.parseLong(value);
+    }
+
+    try {
+      return Instant.parse(value).toEpochMilli();
+    } catch(final DateTimeParseException e) {
+      return LocalDateTime.parse(value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+  }
+}
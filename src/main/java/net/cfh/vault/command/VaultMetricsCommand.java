@@ -0,0 +1,75 @@
+package net.cfh.vault.command;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import net.cfh.vault.VaultUnlocked;
+import net.cfh.vault.metrics.LatencyHistogram;
+import net.cfh.vault.metrics.MetricsRegistry;
+import net.cfh.vault.metrics.ServiceMetrics;
+
+import javax.annotation.Nonnull;
+import java.util.Optional;
+
+/**
+ * VaultMetricsCommand
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class VaultMetricsCommand extends CommandBase {
+
+  private static final int LIMIT = 10;
+
+  public VaultMetricsCommand() {
+    super("vault-metrics", "Displays the provider methods VaultUnlocked spends the most time in");
+  }
+
+  @Override
+  protected void executeSync(@Nonnull final CommandContext ctx) {
+
+    final Optional<MetricsRegistry> metrics = VaultUnlocked.instance().metrics();
+    if(metrics.isEmpty()) {
+      ctx.sendMessage(Message.raw("Metrics are disabled. Set metrics.enabled=true in settings.properties."));
+      return;
+    }
+
+    int shown = 0;
+    for(final ServiceMetrics.Row row : metrics.get().rows()) {
+
+      if(row.plugin() != null) {
+        continue;
+      }
+
+      final LatencyHistogram.Summary summary = row.metrics().latency().summary();
+      ctx.sendMessage(Message.raw(String.format("%s %s.%s calls=%d errors=%d mean=%.3fms p99=%.3fms max=%.3fms",
+                                                row.service(), row.provider(), row.method(), row.metrics().calls(),
+                                                row.metrics().errors(), summary.mean() / 1_000_000.0,
+                                                summary.p99() / 1_000_000.0, summary.max() / 1_000_000.0)));
+      if(++shown >= LIMIT) {
+        break;
+      }
+    }
+
+    if(shown == 0) {
+      ctx.sendMessage(Message.raw("No provider calls have been recorded yet."));
+    }
+  }
+}
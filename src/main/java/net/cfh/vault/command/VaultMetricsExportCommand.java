@@ -0,0 +1,65 @@
+package net.cfh.vault.command;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import net.cfh.vault.VaultUnlocked;
+import net.cfh.vault.metrics.MetricsRegistry;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * VaultMetricsExportCommand
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class VaultMetricsExportCommand extends CommandBase {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  public VaultMetricsExportCommand() {
+    super("vault-metrics-export", "Writes a snapshot of every provider metric to a CSV file");
+  }
+
+  @Override
+  protected void executeSync(@Nonnull final CommandContext ctx) {
+
+    final Optional<MetricsRegistry> metrics = VaultUnlocked.instance().metrics();
+    if(metrics.isEmpty()) {
+      ctx.sendMessage(Message.raw("Metrics are disabled. Set metrics.enabled=true in settings.properties."));
+      return;
+    }
+
+    try {
+
+      final Path file = metrics.get().export(VaultUnlocked.instance().getDataDirectory().resolve("metrics"));
+      ctx.sendMessage(Message.raw("Metrics written to " + file + "."));
+    } catch(final IOException e) {
+
+      LOGGER.atWarning().withCause(e).log("Unable to export metrics.");
+      ctx.sendMessage(Message.raw("Unable to export metrics: " + e.getMessage()));
+    }
+  }
+}
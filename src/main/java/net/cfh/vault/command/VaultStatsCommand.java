@@ -0,0 +1,76 @@
+package net.cfh.vault.command;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.server.core.Message;
+import com.hypixel.hytale.server.core.command.system.CommandContext;
+import com.hypixel.hytale.server.core.command.system.basecommands.CommandBase;
+import net.cfh.vault.VaultUnlocked;
+import net.cfh.vault.convert.ConversionManager;
+import net.cfh.vault.metrics.StatsSampler;
+
+import javax.annotation.Nonnull;
+
+/**
+ * VaultStatsCommand
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class VaultStatsCommand extends CommandBase {
+
+  private static final int LIMIT = 10;
+
+  public VaultStatsCommand() {
+    super("vault-stats", "Displays live provider throughput, latency and cache hit rates");
+  }
+
+  @Override
+  protected void executeSync(@Nonnull final CommandContext ctx) {
+
+    final StatsSampler.Snapshot snapshot = VaultUnlocked.instance().stats().latest();
+    if(snapshot.windowMillis() == 0) {
+      ctx.sendMessage(Message.raw("No statistics have been sampled yet, try again in a few seconds."));
+    } else {
+      ctx.sendMessage(Message.raw(String.format("Live statistics over the last %.1fs", snapshot.windowMillis() / 1000.0)));
+    }
+
+    if(VaultUnlocked.instance().metrics().isEmpty()) {
+      ctx.sendMessage(Message.raw("Metrics are disabled. Set metrics.enabled=true in settings.properties for provider rates."));
+    } else if(snapshot.windowMillis() > 0 && snapshot.methods().isEmpty()) {
+      ctx.sendMessage(Message.raw("No provider calls were made during the last window."));
+    }
+
+    int shown = 0;
+    for(final StatsSampler.MethodRate rate : snapshot.methods()) {
+
+      ctx.sendMessage(Message.raw(rate.describe()));
+      if(++shown >= LIMIT) {
+        break;
+      }
+    }
+
+    for(final StatsSampler.CacheRate cache : snapshot.caches()) {
+      ctx.sendMessage(Message.raw(String.format("%s: %s", cache.name(), cache.describe())));
+    }
+
+    VaultUnlocked.instance().mutationLimiter().ifPresent(limiter->ctx.sendMessage(Message.raw(String.format("Rate Limit: %s", limiter.stats().describe()))));
+    VaultUnlocked.instance().writeBehind().ifPresent(buffer->ctx.sendMessage(Message.raw(String.format("Write-Behind: %s", buffer.stats().describe()))));
+    ConversionManager.get().current().ifPresent(job->ctx.sendMessage(Message.raw(String.format("Conversion: %s", job.progress().describe()))));
+  }
+}
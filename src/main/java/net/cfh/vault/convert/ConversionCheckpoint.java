@@ -0,0 +1,160 @@
+package net.cfh.vault.convert;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * ConversionCheckpoint is an append-only record of the accounts a conversion has already written
+ * to its target. Each completed account is stored as a fixed 16 byte record, and every batch is
+ * forced to disk before the job moves on, so a cancelled or crashed conversion can resume without
+ * rewriting accounts it already finished.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class ConversionCheckpoint implements Closeable {
+
+  private static final int RECORD_SIZE = 16;
+
+  private final Path file;
+  private final UUID[] restored;
+  private final FileChannel channel;
+
+  private ConversionCheckpoint(final Path file, final UUID[] restored, final FileChannel channel) {
+
+    this.file = file;
+    this.restored = restored;
+    this.channel = channel;
+  }
+
+  /**
+   * Opens the checkpoint for the specified job, restoring any accounts completed by a previous run.
+   *
+   * @param directory the directory checkpoints are stored in.
+   * @param jobId the identifier of the conversion job.
+   * @return the opened checkpoint.
+   * @throws IOException if the checkpoint could not be read or opened for writing.
+   */
+  public static ConversionCheckpoint open(final @NotNull Path directory, final @NotNull String jobId) throws IOException {
+
+    Files.createDirectories(directory);
+    final Path file = directory.resolve(jobId.replaceAll("[^A-Za-z0-9_-]", "_") + ".checkpoint");
+
+    UUID[] restored = new UUID[0];
+    if(Files.exists(file)) {
+
+      //ignore a trailing partial record left behind by a crash mid-write.
+      final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+      restored = new UUID[buffer.remaining() / RECORD_SIZE];
+      for(int i = 0; i < restored.length; i++) {
+        restored[i] = new UUID(buffer.getLong(), buffer.getLong());
+      }
+      Arrays.sort(restored);
+    }
+
+    //drop that partial record before writing, otherwise every new record would land misaligned after it.
+    final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    try {
+
+      channel.truncate((long)restored.length * RECORD_SIZE);
+      channel.position(channel.size());
+    } catch(final IOException e) {
+
+      channel.close();
+      throw e;
+    }
+    return new ConversionCheckpoint(file, restored, channel);
+  }
+
+  /**
+   * Determines if the specified account was completed by a previous run of this job.
+   *
+   * @param account the account identifier.
+   * @return true if the account was already converted, otherwise false.
+   */
+  public boolean completed(final @NotNull UUID account) {
+
+    return restored.length > 0 && Arrays.binarySearch(restored, account) >= 0;
+  }
+
+  /**
+   * Retrieves the number of accounts restored from a previous run.
+   *
+   * @return the restored account count.
+   */
+  public int restored() {
+
+    return restored.length;
+  }
+
+  /**
+   * Durably records the first {@code count} accounts of the specified array as completed.
+   *
+   * @param accounts the completed accounts.
+   * @param count the number of entries of {@code accounts} to record.
+   * @throws IOException if the records could not be written.
+   */
+  public synchronized void complete(final @NotNull UUID[] accounts, final int count) throws IOException {
+
+    if(count == 0) {
+      return;
+    }
+
+    final ByteBuffer buffer = ByteBuffer.allocate(count * RECORD_SIZE);
+    for(int i = 0; i < count; i++) {
+      buffer.putLong(accounts[i].getMostSignificantBits());
+      buffer.putLong(accounts[i].getLeastSignificantBits());
+    }
+    buffer.flip();
+
+    while(buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    channel.force(false);
+  }
+
+  /**
+   * Closes and removes the checkpoint, used once a conversion finishes without failures.
+   *
+   * @throws IOException if the checkpoint file could not be deleted.
+   */
+  public synchronized void delete() throws IOException {
+
+    close();
+    Files.deleteIfExists(file);
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+
+    if(channel.isOpen()) {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,637 @@
+package net.cfh.vault.convert;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.economy.AccountCursor;
+import net.cfh.vault.economy.AccountDirectory;
+import net.cfh.vault.economy.Balances;
+import net.cfh.vault.economy.BatchBalanceReader;
+import net.cfh.vault.economy.BatchBalanceWriter;
+import net.cfh.vault.economy.ContextBalance;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * ConversionJob moves account balances from a source {@link Economy} to a target {@link Economy}
+ * off the command thread. Accounts are streamed from the source in pages through an
+ * {@link AccountCursor}, so only the pages currently in flight are held in memory. Each page flows
+ * through a two stage pipeline: reader workers load its balances from the source and hand it to
+ * writer workers through a bounded queue, so reads of later pages overlap writes of earlier ones
+ * while the queue applies backpressure. Every written page is recorded in a
+ * {@link ConversionCheckpoint}, allowing a cancelled or failed run to resume where it stopped.
+ *
+ * <p>With {@link Scope#ALL} every currency the source exposes is converted in every known world,
+ * and each page is handed to targets implementing {@link BatchBalanceWriter} as a single bulk
+ * write.</p>
+ *
+ * <p>With {@link Mode#DRY_RUN} or {@link Mode#VERIFY} nothing is written. The writer workers instead
+ * read the target's balances of each page and stream every difference to a
+ * {@link ConversionReport}, so the reads of both economies run in parallel. A dry-run shows what a
+ * conversion would change, while a verification fails unless every balance, total and checksum
+ * matches.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class ConversionJob implements Runnable {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+  private static final String PLUGIN_NAME = "VaultUnlocked";
+  private static final Map<UUID, List<ContextBalance>> END = Map.of();
+  private static final int MAX_REPORTED_FAILURES = 20;
+
+  private final String id;
+  private final Economy source;
+  private final AccountDirectory sourceDirectory;
+  private final Economy target;
+  private final Scope scope;
+  private final Mode mode;
+  private final List<String> worlds;
+  private final Path checkpointDirectory;
+  private final int chunkSize;
+  private final int parallelism;
+  private final long reportIntervalMillis;
+  private final Consumer<String> reporter;
+
+  private final LongAdder converted = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+  private final LongAdder failed = new LongAdder();
+  private final AtomicInteger reportedFailures = new AtomicInteger();
+  private final CountDownLatch finished = new CountDownLatch(1);
+
+  private volatile State state = State.PENDING;
+  private volatile boolean cancelled = false;
+  private volatile long total = -1;
+  private volatile long startedAt = 0;
+  private volatile long endedAt = 0;
+  private volatile ConversionReport report = null;
+
+  /**
+   * Creates a new conversion job.
+   *
+   * @param source the economy balances are read from.
+   * @param target the economy balances are written to.
+   * @param scope which balances of each account are converted.
+   * @param worlds the worlds converted with {@link Scope#ALL}, ignored otherwise.
+   * @param checkpointDirectory the directory used to persist the job's checkpoint.
+   * @param chunkSize the number of accounts in each page.
+   * @param parallelism the number of reader and writer workers, each.
+   * @param reportIntervalMillis how often progress is passed to the reporter.
+   * @param reporter the consumer progress and failure messages are sent to.
+   */
+  public ConversionJob(final @NotNull Economy source, final @NotNull Economy target, final @NotNull Scope scope,
+                       final @NotNull Collection<String> worlds, final @NotNull Path checkpointDirectory,
+                       final int chunkSize, final int parallelism, final long reportIntervalMillis,
+                       final @NotNull Consumer<String> reporter) {
+
+    this(source, target, scope, Mode.CONVERT, worlds, checkpointDirectory, chunkSize, parallelism,
+         reportIntervalMillis, reporter);
+  }
+
+  /**
+   * Creates a new conversion job.
+   *
+   * @param source the economy balances are read from.
+   * @param target the economy balances are written to, or compared against.
+   * @param scope which balances of each account are converted.
+   * @param mode whether balances are converted or only compared.
+   * @param worlds the worlds converted with {@link Scope#ALL}, ignored otherwise.
+   * @param checkpointDirectory the directory used to persist the job's checkpoint and reports.
+   * @param chunkSize the number of accounts in each page.
+   * @param parallelism the number of reader and writer workers, each.
+   * @param reportIntervalMillis how often progress is passed to the reporter.
+   * @param reporter the consumer progress and failure messages are sent to.
+   */
+  public ConversionJob(final @NotNull Economy source, final @NotNull Economy target, final @NotNull Scope scope,
+                       final @NotNull Mode mode, final @NotNull Collection<String> worlds,
+                       final @NotNull Path checkpointDirectory, final int chunkSize, final int parallelism,
+                       final long reportIntervalMillis, final @NotNull Consumer<String> reporter) {
+
+    this(source, null, target, scope, mode, worlds, checkpointDirectory, chunkSize, parallelism,
+         reportIntervalMillis, reporter);
+  }
+
+  /**
+   * Creates a new conversion job that enumerates the source's accounts from its account directory
+   * when the source can't page them natively, rather than from its account map.
+   *
+   * @param source the economy balances are read from.
+   * @param sourceDirectory the directory of the source's accounts, or {@code null} if none is available.
+   * @param target the economy balances are written to, or compared against.
+   * @param scope which balances of each account are converted.
+   * @param mode whether balances are converted or only compared.
+   * @param worlds the worlds converted with {@link Scope#ALL}, ignored otherwise.
+   * @param checkpointDirectory the directory used to persist the job's checkpoint and reports.
+   * @param chunkSize the number of accounts in each page.
+   * @param parallelism the number of reader and writer workers, each.
+   * @param reportIntervalMillis how often progress is passed to the reporter.
+   * @param reporter the consumer progress and failure messages are sent to.
+   */
+  public ConversionJob(final @NotNull Economy source, final @Nullable AccountDirectory sourceDirectory,
+                       final @NotNull Economy target, final @NotNull Scope scope, final @NotNull Mode mode,
+                       final @NotNull Collection<String> worlds, final @NotNull Path checkpointDirectory,
+                       final int chunkSize, final int parallelism, final long reportIntervalMillis,
+                       final @NotNull Consumer<String> reporter) {
+
+    this.id = source.getName() + "-to-" + target.getName() + ((scope == Scope.ALL)? "-all" : "") + mode.suffix;
+    this.source = source;
+    this.sourceDirectory = sourceDirectory;
+    this.target = target;
+    this.scope = scope;
+    this.mode = mode;
+    this.worlds = List.copyOf(worlds);
+    this.checkpointDirectory = checkpointDirectory;
+    this.chunkSize = Math.max(1, chunkSize);
+    this.parallelism = Math.max(1, parallelism);
+    this.reportIntervalMillis = Math.max(1000, reportIntervalMillis);
+    this.reporter = reporter;
+  }
+
+  @Override
+  public void run() {
+
+    startedAt = System.currentTimeMillis();
+    state = State.RUNNING;
+
+    //a dry-run or verification is cheap to repeat, so it keeps a report instead of a checkpoint.
+    try(final ConversionCheckpoint checkpoint = (mode == Mode.CONVERT)? ConversionCheckpoint.open(checkpointDirectory, id) : null;
+        final ConversionReport diff = (mode == Mode.CONVERT)? null : ConversionReport.open(checkpointDirectory, id)) {
+
+      if(checkpoint != null && checkpoint.restored() > 0) {
+        reporter.accept("Resuming " + id + ", " + checkpoint.restored() + " accounts were already converted.");
+      }
+      report = diff;
+
+      final AccountCursor cursor = AccountCursor.of(source, sourceDirectory);
+      total = cursor.total();
+
+      pipeline(cursor, contexts(), checkpoint);
+
+      if(diff != null && !cancelled) {
+
+        //the target is only read for the source's accounts, counting all of its own would materialize them.
+        for(final String line : diff.finish(total)) {
+          reporter.accept(id + " " + line);
+        }
+        reporter.accept("Report for " + id + " written to " + diff.file() + ".");
+      }
+
+      if(cancelled) {
+        state = State.CANCELLED;
+      } else if(failed.sum() > 0 || (mode == Mode.VERIFY && !diff.matches())) {
+        state = State.FAILED;
+      } else {
+        state = State.COMPLETED;
+        if(checkpoint != null) {
+          checkpoint.delete();
+        }
+      }
+    } catch(final IOException | RuntimeException e) {
+
+      LOGGER.atSevere().withCause(e).log("Conversion " + id + " aborted.");
+      reporter.accept("Conversion " + id + " aborted: " + e.getMessage());
+      state = State.FAILED;
+    } catch(final InterruptedException e) {
+
+      Thread.currentThread().interrupt();
+      state = State.CANCELLED;
+    } finally {
+
+      endedAt = System.currentTimeMillis();
+      finished.countDown();
+      reporter.accept(progress().describe());
+    }
+  }
+
+  /**
+   * Builds the world and currency contexts read for every account, where {@code null} stands for
+   * the default world or currency.
+   */
+  private List<String[]> contexts() {
+
+    final List<String[]> contexts = new ArrayList<>();
+    if(scope == Scope.DEFAULT) {
+
+      contexts.add(new String[] { null, null });
+      return contexts;
+    }
+
+    final List<String> currencies = new ArrayList<>();
+    if(source.hasMultiCurrencySupport()) {
+      currencies.addAll(source.currencies());
+    }
+    if(currencies.isEmpty()) {
+      currencies.add(null);
+    }
+
+    final List<String> contextWorlds = (worlds.isEmpty())? Collections.singletonList(null) : worlds;
+    for(final String world : contextWorlds) {
+      for(final String currency : currencies) {
+        contexts.add(new String[] { world, currency });
+      }
+    }
+    return contexts;
+  }
+
+  private void pipeline(final AccountCursor cursor, final List<String[]> contexts,
+                        final ConversionCheckpoint checkpoint) throws InterruptedException {
+
+    final BlockingQueue<Map<UUID, List<ContextBalance>>> pending = new ArrayBlockingQueue<>(parallelism * 2);
+    final CountDownLatch readers = new CountDownLatch(parallelism);
+    final CountDownLatch writers = new CountDownLatch(parallelism);
+
+    try(final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor()) {
+
+      for(int i = 0; i < parallelism; i++) {
+
+        workers.execute(()->{
+          try {
+            read(cursor, contexts, pending, checkpoint);
+          } finally {
+            readers.countDown();
+          }
+        });
+
+        workers.execute(()->{
+          try {
+            write(pending, checkpoint);
+          } finally {
+            writers.countDown();
+          }
+        });
+      }
+
+      while(!readers.await(reportIntervalMillis, TimeUnit.MILLISECONDS)) {
+        reporter.accept(progress().describe());
+      }
+
+      for(int i = 0; i < parallelism; i++) {
+        pending.put(END);
+      }
+
+      while(!writers.await(reportIntervalMillis, TimeUnit.MILLISECONDS)) {
+        reporter.accept(progress().describe());
+      }
+    }
+  }
+
+  private void read(final AccountCursor cursor, final List<String[]> contexts,
+                    final BlockingQueue<Map<UUID, List<ContextBalance>>> pending,
+                    final ConversionCheckpoint checkpoint) {
+
+    while(!cancelled) {
+
+      final List<UUID> page = cursor.next(chunkSize);
+      if(page.isEmpty()) {
+        return;
+      }
+
+      final Map<UUID, List<ContextBalance>> chunk = new LinkedHashMap<>(page.size() * 2);
+      for(final UUID account : page) {
+
+        if(checkpoint != null && checkpoint.completed(account)) {
+          skipped.increment();
+          continue;
+        }
+
+        try {
+
+          final List<ContextBalance> balances = new ArrayList<>(contexts.size());
+          for(final String[] context : contexts) {
+            balances.add(new ContextBalance(context[0], context[1],
+                                            Balances.balance(source, PLUGIN_NAME, account, context[0], context[1])));
+          }
+          chunk.put(account, balances);
+        } catch(final RuntimeException e) {
+          fail(account, "unable to read balance: " + e.getMessage());
+        }
+      }
+
+      try {
+        pending.put(chunk);
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  private void write(final BlockingQueue<Map<UUID, List<ContextBalance>>> pending,
+                     final ConversionCheckpoint checkpoint) {
+
+    while(true) {
+
+      final Map<UUID, List<ContextBalance>> chunk;
+      try {
+        chunk = pending.take();
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      if(chunk == END) {
+        return;
+      }
+
+      if(chunk.isEmpty()) {
+        continue;
+      }
+
+      final ConversionReport diff = report;
+      if(diff != null) {
+        compare(diff, chunk);
+        continue;
+      }
+
+      final UUID[] completed = (target instanceof final BatchBalanceWriter batch)? writeBatch(batch, chunk)
+                                                                                 : writeEach(chunk);
+      int size = 0;
+      while(size < completed.length && completed[size] != null) {
+        size++;
+      }
+
+      try {
+        checkpoint.complete(completed, size);
+      } catch(final IOException e) {
+        LOGGER.atWarning().withCause(e).log("Unable to write checkpoint for conversion " + id + ".");
+      }
+    }
+  }
+
+  private UUID[] writeBatch(final BatchBalanceWriter batch, final Map<UUID, List<ContextBalance>> chunk) {
+
+    final UUID[] completed = new UUID[chunk.size()];
+    final Set<UUID> failures;
+    try {
+      failures = batch.setBalances(PLUGIN_NAME, chunk);
+    } catch(final RuntimeException e) {
+
+      for(final UUID account : chunk.keySet()) {
+        fail(account, e.getMessage());
+      }
+      return completed;
+    }
+
+    int size = 0;
+    for(final UUID account : chunk.keySet()) {
+
+      if(failures.contains(account)) {
+        fail(account, "rejected by the target's batch write");
+        continue;
+      }
+      completed[size++] = account;
+      converted.increment();
+    }
+    return completed;
+  }
+
+  private UUID[] writeEach(final Map<UUID, List<ContextBalance>> chunk) {
+
+    final UUID[] completed = new UUID[chunk.size()];
+    int size = 0;
+    for(final Map.Entry<UUID, List<ContextBalance>> entry : chunk.entrySet()) {
+
+      final UUID account = entry.getKey();
+      String error = null;
+      for(final ContextBalance balance : entry.getValue()) {
+
+        try {
+
+          final EconomyResponse response = Balances.set(target, PLUGIN_NAME, account, balance.world(),
+                                                        balance.currency(), balance.amount());
+          if(!response.transactionSuccess()) {
+            error = response.errorMessage;
+          }
+        } catch(final RuntimeException e) {
+          error = e.getMessage();
+        }
+      }
+
+      if(error != null) {
+        fail(account, error);
+        continue;
+      }
+      completed[size++] = account;
+      converted.increment();
+    }
+    return completed;
+  }
+
+  /**
+   * Compares a page of source balances against the target's, reading the target in one round-trip
+   * per context when it implements {@link BatchBalanceReader}.
+   */
+  private void compare(final ConversionReport diff, final Map<UUID, List<ContextBalance>> chunk) {
+
+    final List<Map<UUID, BigDecimal>> batches = new ArrayList<>();
+    if(target instanceof final BatchBalanceReader batch) {
+      try {
+        for(final ContextBalance context : chunk.values().iterator().next()) {
+          batches.add(batch.balances(PLUGIN_NAME, chunk.keySet(), context.world(), context.currency()));
+        }
+      } catch(final RuntimeException e) {
+        batches.clear();
+      }
+    }
+
+    for(final Map.Entry<UUID, List<ContextBalance>> entry : chunk.entrySet()) {
+
+      final UUID account = entry.getKey();
+      try {
+
+        final boolean exists = !batches.isEmpty() || target.hasAccount(account);
+        for(int i = 0; i < entry.getValue().size(); i++) {
+
+          final ContextBalance balance = entry.getValue().get(i);
+          final BigDecimal held = (!exists)? null : (!batches.isEmpty())? batches.get(i).get(account)
+                                  : Balances.balance(target, PLUGIN_NAME, account, balance.world(), balance.currency());
+          if(held == null) {
+            diff.missing(account, balance);
+          } else {
+            diff.compare(account, balance, held);
+          }
+        }
+        converted.increment();
+      } catch(final IOException e) {
+
+        LOGGER.atWarning().withCause(e).log("Unable to write the report of " + id + ".");
+        cancelled = true;
+        return;
+      } catch(final RuntimeException e) {
+        fail(account, "unable to read target balance: " + e.getMessage());
+      }
+    }
+  }
+
+  private void fail(final UUID account, final String reason) {
+
+    failed.increment();
+    if(reportedFailures.incrementAndGet() <= MAX_REPORTED_FAILURES) {
+      reporter.accept("Failed to convert " + account + "'s balance. Reason: " + reason);
+    }
+  }
+
+  /**
+   * Requests that this job stops after the chunks currently in flight. Completed accounts remain
+   * checkpointed so that the job may be resumed later.
+   */
+  public void cancel() {
+
+    cancelled = true;
+  }
+
+  /**
+   * Waits for this job to finish.
+   *
+   * @param timeout the maximum time to wait.
+   * @param unit the unit of {@code timeout}.
+   * @return true if the job finished, false if the timeout elapsed first.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean await(final long timeout, final TimeUnit unit) throws InterruptedException {
+
+    return finished.await(timeout, unit);
+  }
+
+  /**
+   * Retrieves the identifier of this job, derived from the source and target economy names.
+   *
+   * @return the job identifier.
+   */
+  public String id() {
+
+    return id;
+  }
+
+  /**
+   * Retrieves whether this job writes balances or only compares them.
+   *
+   * @return the {@link Mode} of this job.
+   */
+  public Mode mode() {
+
+    return mode;
+  }
+
+  /**
+   * Retrieves the current state of this job.
+   *
+   * @return the current {@link State}.
+   */
+  public State state() {
+
+    return state;
+  }
+
+  /**
+   * Creates a snapshot of this job's progress.
+   *
+   * @return the current {@link ConversionProgress}.
+   */
+  public ConversionProgress progress() {
+
+    final long start = startedAt;
+    final long end = (endedAt == 0)? System.currentTimeMillis() : endedAt;
+    return new ConversionProgress(id, state, total, converted.sum(), skipped.sum(), failed.sum(),
+                                  (start == 0)? 0 : end - start);
+  }
+
+  /**
+   * The balances of each account that a {@link ConversionJob} converts.
+   */
+  public enum Scope {
+    /**
+     * Only the default currency balance in the default world, matching the original behaviour.
+     */
+    DEFAULT,
+    /**
+     * Every currency the source exposes, in every world the job was given.
+     */
+    ALL
+  }
+
+  /**
+   * Whether a {@link ConversionJob} writes balances to its target or only compares them.
+   */
+  public enum Mode {
+    /**
+     * Writes every balance to the target.
+     */
+    CONVERT(""),
+    /**
+     * Reports what a conversion would change without writing anything.
+     */
+    DRY_RUN("-dry-run"),
+    /**
+     * Confirms that a completed conversion left the target holding the source's balances.
+     */
+    VERIFY("-verify");
+
+    private final String suffix;
+
+    Mode(final String suffix) {
+
+      this.suffix = suffix;
+    }
+  }
+
+  /**
+   * The lifecycle states of a {@link ConversionJob}.
+   */
+  public enum State {
+    PENDING,
+    RUNNING,
+    COMPLETED,
+    CANCELLED,
+    FAILED;
+
+    /**
+     * Determines if this state is terminal.
+     *
+     * @return true if the job is no longer running.
+     */
+    public boolean finished() {
+
+      return this == COMPLETED || this == CANCELLED || this == FAILED;
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package net.cfh.vault.convert;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * ConversionManager owns the conversion job that is currently running, ensuring only a single
+ * conversion runs at a time and that it runs on its own thread rather than the caller's.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class ConversionManager {
+
+  public static final int DEFAULT_CHUNK_SIZE = 500;
+  public static final int DEFAULT_PARALLELISM = 8;
+  public static final long DEFAULT_REPORT_INTERVAL = 5000;
+
+  private static final ConversionManager INSTANCE = new ConversionManager();
+
+  private final AtomicReference<ConversionJob> current = new AtomicReference<>();
+
+  private volatile Consumer<ConversionJob> completion = null;
+
+  private ConversionManager() {
+  }
+
+  /**
+   * Retrieves the singleton instance of the {@code ConversionManager}.
+   *
+   * @return the singleton instance of {@code ConversionManager}.
+   */
+  public static ConversionManager get() {
+    return INSTANCE;
+  }
+
+  /**
+   * Starts the specified job on a dedicated thread if no other job is currently running.
+   *
+   * @param job the job to start.
+   * @return true if the job was started, false if another job is still running.
+   */
+  public boolean start(final @NotNull ConversionJob job) {
+
+    final ConversionJob running = current.get();
+    if(running != null && !running.state().finished()) {
+      return false;
+    }
+
+    if(!current.compareAndSet(running, job)) {
+      return false;
+    }
+
+    Thread.ofPlatform().name("VaultUnlocked-Convert").daemon(true).start(()->{
+      try {
+        job.run();
+      } finally {
+
+        final Consumer<ConversionJob> listener = completion;
+        if(listener != null) {
+          listener.accept(job);
+        }
+      }
+    });
+    return true;
+  }
+
+  /**
+   * Sets the listener told about every job once it has finished, whether it completed or not.
+   *
+   * @param listener the listener, or {@code null} to remove it.
+   */
+  public void completion(final @Nullable Consumer<ConversionJob> listener) {
+
+    this.completion = listener;
+  }
+
+  /**
+   * Retrieves the most recently started job, which may have already finished.
+   *
+   * @return an {@link Optional} containing the latest job, or empty if none was started.
+   */
+  public Optional<ConversionJob> current() {
+
+    return Optional.ofNullable(current.get());
+  }
+
+  /**
+   * Cancels the running job, if any.
+   *
+   * @return true if a running job was asked to cancel, otherwise false.
+   */
+  public boolean cancel() {
+
+    final ConversionJob running = current.get();
+    if(running == null || running.state().finished()) {
+      return false;
+    }
+
+    running.cancel();
+    return true;
+  }
+
+  /**
+   * Cancels the running job, if any, and waits briefly for its in-flight chunks to be checkpointed.
+   * Used when the plugin shuts down.
+   */
+  public void shutdown() {
+
+    final ConversionJob running = current.get();
+    if(running != null && !running.state().finished()) {
+
+      running.cancel();
+      try {
+        running.await(10, TimeUnit.SECONDS);
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
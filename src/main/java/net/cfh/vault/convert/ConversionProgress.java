@@ -0,0 +1,69 @@
+package net.cfh.vault.convert;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+/**
+ * ConversionProgress is a point-in-time view of a {@link ConversionJob}.
+ *
+ * @param jobId the identifier of the job.
+ * @param state the current state of the job.
+ * @param total the total number of accounts, or -1 while accounts are still being enumerated.
+ * @param converted the number of accounts written to the target during this run.
+ * @param skipped the number of accounts skipped because a previous run already converted them.
+ * @param failed the number of accounts that could not be converted.
+ * @param elapsedMillis the time the job has been running for.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public record ConversionProgress(String jobId, ConversionJob.State state, long total, long converted,
+                                 long skipped, long failed, long elapsedMillis) {
+
+  /**
+   * Retrieves the number of accounts that have been handled in any way.
+   *
+   * @return the processed account count.
+   */
+  public long processed() {
+
+    return converted + skipped + failed;
+  }
+
+  /**
+   * Retrieves the conversion throughput of this run.
+   *
+   * @return the accounts converted per second.
+   */
+  public double perSecond() {
+
+    return (elapsedMillis <= 0)? 0.0 : converted * 1000.0 / elapsedMillis;
+  }
+
+  /**
+   * Formats this progress as a single human-readable line.
+   *
+   * @return the formatted progress.
+   */
+  public String describe() {
+
+    final String percent = (total <= 0)? "?" : String.format("%.1f", processed() * 100.0 / total);
+    return String.format("%s [%s] %d/%s (%s%%) converted=%d skipped=%d failed=%d %.1f/s %ds",
+                         jobId, state, processed(), (total < 0)? "?" : String.valueOf(total), percent,
+                         converted, skipped, failed, perSecond(), elapsedMillis / 1000);
+  }
+}
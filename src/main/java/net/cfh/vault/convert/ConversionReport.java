@@ -0,0 +1,251 @@
+package net.cfh.vault.convert;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.economy.ContextBalance;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ConversionReport is the difference between a source and a target economy found by a dry-run or
+ * verification {@link ConversionJob}. Every account missing from the target and every mismatched
+ * balance is streamed to a CSV file as it is found, so memory stays flat however many accounts are
+ * compared, and only a running total and checksum per world and currency is kept.
+ *
+ * <p>Checksums are sums of a hash of each account and balance, so they do not depend on the order
+ * accounts were compared in and match exactly when both economies hold the same balances.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class ConversionReport implements Closeable {
+
+  private final Path file;
+  private final BufferedWriter writer;
+  private final Map<String, Totals> totals = new TreeMap<>();
+
+  private final LongAdder missing = new LongAdder();
+  private final LongAdder mismatched = new LongAdder();
+
+  private ConversionReport(final Path file, final BufferedWriter writer) {
+
+    this.file = file;
+    this.writer = writer;
+  }
+
+  /**
+   * Opens a new report for the specified job.
+   *
+   * @param directory the directory reports are written to.
+   * @param jobId the identifier of the job.
+   * @return the opened report.
+   * @throws IOException if the report could not be created.
+   */
+  public static ConversionReport open(final @NotNull Path directory, final @NotNull String jobId) throws IOException {
+
+    Files.createDirectories(directory);
+    final Path file = directory.resolve(jobId.replaceAll("[^A-Za-z0-9_-]", "_") + "-" + System.currentTimeMillis() + ".csv");
+    final BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+    writer.write("kind,account,world,currency,source,target");
+    writer.newLine();
+    return new ConversionReport(file, writer);
+  }
+
+  /**
+   * Retrieves the file this report is written to.
+   *
+   * @return the report file.
+   */
+  public Path file() {
+
+    return file;
+  }
+
+  /**
+   * Records an account balance the target does not hold at all.
+   *
+   * @param account the account identifier.
+   * @param source the balance held by the source.
+   * @throws IOException if the report could not be written.
+   */
+  public void missing(final @NotNull UUID account, final @NotNull ContextBalance source) throws IOException {
+
+    missing.increment();
+    totals(source).add(account, source.amount(), null);
+    line("missing", account, source, null);
+  }
+
+  /**
+   * Records an account balance held by both economies.
+   *
+   * @param account the account identifier.
+   * @param source the balance held by the source.
+   * @param target the balance held by the target.
+   * @throws IOException if the report could not be written.
+   */
+  public void compare(final @NotNull UUID account, final @NotNull ContextBalance source,
+                      final @NotNull BigDecimal target) throws IOException {
+
+    totals(source).add(account, source.amount(), target);
+    if(source.amount().compareTo(target) != 0) {
+
+      mismatched.increment();
+      line("mismatch", account, source, target);
+    }
+  }
+
+  /**
+   * Retrieves the number of balances missing from the target.
+   *
+   * @return the missing balance count.
+   */
+  public long missing() {
+
+    return missing.sum();
+  }
+
+  /**
+   * Retrieves the number of balances that differ between the source and the target.
+   *
+   * @return the mismatched balance count.
+   */
+  public long mismatched() {
+
+    return mismatched.sum();
+  }
+
+  /**
+   * Determines if the source and the target hold the same balances in every world and currency.
+   *
+   * @return true if no balance is missing or mismatched and every total and checksum matches.
+   */
+  public synchronized boolean matches() {
+
+    if(missing() > 0 || mismatched() > 0) {
+      return false;
+    }
+
+    for(final Totals context : totals.values()) {
+      if(!context.matches()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Appends the totals of every world and currency to the report and summarises it. Only the
+   * target's balances of the source's accounts are read, so accounts held only by the target are
+   * not counted.
+   *
+   * @param sourceAccounts the number of accounts held by the source, or -1 if unknown.
+   * @return the summary lines, which are also written to the report.
+   * @throws IOException if the report could not be written.
+   */
+  public synchronized List<String> finish(final long sourceAccounts) throws IOException {
+
+    final List<String> summary = new ArrayList<>();
+    summary.add(String.format("accounts source=%s missing=%d mismatched=%d",
+                              (sourceAccounts < 0)? "?" : String.valueOf(sourceAccounts), missing(), mismatched()));
+    for(final Map.Entry<String, Totals> entry : totals.entrySet()) {
+
+      final Totals context = entry.getValue();
+      writer.write(String.join(",", "total", "", entry.getKey(), context.sourceTotal.toPlainString(),
+                               context.targetTotal.toPlainString()));
+      writer.newLine();
+      writer.write(String.join(",", "checksum", "", entry.getKey(), Long.toHexString(context.sourceChecksum),
+                               Long.toHexString(context.targetChecksum)));
+      writer.newLine();
+      summary.add(String.format("%s balances=%d source=%s target=%s %s", entry.getKey(), context.balances,
+                                context.sourceTotal.toPlainString(), context.targetTotal.toPlainString(),
+                                (context.matches())? "match" : "differ"));
+    }
+    writer.flush();
+    return summary;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+
+    writer.close();
+  }
+
+  private synchronized Totals totals(final ContextBalance balance) {
+
+    return totals.computeIfAbsent(((balance.world() == null)? "default" : balance.world()) + "/"
+                                  + ((balance.currency() == null)? "default" : balance.currency()), key->new Totals());
+  }
+
+  private synchronized void line(final String kind, final UUID account, final ContextBalance source,
+                                 final @Nullable BigDecimal target) throws IOException {
+
+    writer.write(String.join(",", kind, account.toString(), (source.world() == null)? "" : source.world(),
+                             (source.currency() == null)? "" : source.currency(), source.amount().toPlainString(),
+                             (target == null)? "" : target.toPlainString()));
+    writer.newLine();
+  }
+
+  private static long checksum(final UUID account, final BigDecimal amount) {
+
+    //splitmix64 finalizer over the account and the scale-independent value of the balance.
+    long hash = account.getMostSignificantBits() * 31 + account.getLeastSignificantBits();
+    hash = hash * 31 + amount.stripTrailingZeros().hashCode();
+    hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+    return hash ^ (hash >>> 31);
+  }
+
+  private static final class Totals {
+
+    private BigDecimal sourceTotal = BigDecimal.ZERO;
+    private BigDecimal targetTotal = BigDecimal.ZERO;
+    private long sourceChecksum = 0;
+    private long targetChecksum = 0;
+    private long balances = 0;
+
+    private synchronized void add(final UUID account, final BigDecimal source, final @Nullable BigDecimal target) {
+
+      balances++;
+      sourceTotal = sourceTotal.add(source);
+      sourceChecksum += checksum(account, source);
+      if(target != null) {
+        targetTotal = targetTotal.add(target);
+        targetChecksum += checksum(account, target);
+      }
+    }
+
+    private synchronized boolean matches() {
+
+      return sourceChecksum == targetChecksum && sourceTotal.compareTo(targetTotal) == 0;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.milkbowl.vault2.economy.Economy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * AccountCursor streams the accounts of an {@link Economy} in pages. Providers implementing
+ * {@link AccountPaging} are paged natively. For every other provider the cursor walks the provider's
+ * {@link AccountDirectory} when one is given, which avoids materializing the provider's boxed
+ * account map, and otherwise walks the key set of {@code getUUIDNameMap()} in place, without copying
+ * or sorting it. The cursor is safe to share between worker threads, each call to
+ * {@link #next(int)} hands out a distinct page.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class AccountCursor {
+
+  private final AccountPaging paging;
+  private final Iterator<UUID> iterator;
+  private final long[] identifiers;
+  private final long total;
+
+  private UUID last = null;
+  private int position = 0;
+  private boolean exhausted = false;
+
+  private AccountCursor(final AccountPaging paging, final Iterator<UUID> iterator, final long[] identifiers,
+                        final long total) {
+
+    this.paging = paging;
+    this.iterator = iterator;
+    this.identifiers = identifiers;
+    this.total = total;
+  }
+
+  /**
+   * Creates a cursor over the accounts of the specified economy.
+   *
+   * @param economy the economy to enumerate.
+   * @return the new cursor, positioned before the first account.
+   */
+  public static AccountCursor of(final @NotNull Economy economy) {
+
+    return of(economy, null);
+  }
+
+  /**
+   * Creates a cursor over the accounts of the specified economy, walking its directory instead of
+   * its account map if it can't page natively.
+   *
+   * @param economy the economy to enumerate.
+   * @param directory the directory of the economy's accounts, or {@code null} if none is available.
+   * @return the new cursor, positioned before the first account.
+   */
+  public static AccountCursor of(final @NotNull Economy economy, final @Nullable AccountDirectory directory) {
+
+    if(economy instanceof final AccountPaging paging) {
+      return new AccountCursor(paging, null, null, -1);
+    }
+
+    if(directory != null) {
+
+      final long[] identifiers = directory.identifiers();
+      return new AccountCursor(null, null, identifiers, identifiers.length / 2);
+    }
+
+    final var accounts = economy.getUUIDNameMap().keySet();
+    return new AccountCursor(null, accounts.iterator(), null, accounts.size());
+  }
+
+  /**
+   * Retrieves the next page of accounts.
+   *
+   * @param limit the maximum number of accounts to return.
+   * @return the next page, empty once the cursor is exhausted.
+   */
+  @NotNull
+  public synchronized List<UUID> next(final int limit) {
+
+    if(exhausted) {
+      return List.of();
+    }
+
+    final List<UUID> page;
+    if(paging != null) {
+
+      page = paging.accountsAfter(last, limit);
+      if(!page.isEmpty()) {
+        last = page.get(page.size() - 1);
+      }
+    } else if(identifiers != null) {
+
+      page = new ArrayList<>(limit);
+      while(page.size() < limit && position < identifiers.length) {
+        page.add(new UUID(identifiers[position], identifiers[position + 1]));
+        position += 2;
+      }
+    } else {
+
+      page = new ArrayList<>(limit);
+      while(page.size() < limit && iterator.hasNext()) {
+        page.add(iterator.next());
+      }
+    }
+
+    if(page.size() < limit) {
+      exhausted = true;
+    }
+    return page;
+  }
+
+  /**
+   * Retrieves the total number of accounts, if the provider made it known up front.
+   *
+   * @return the total account count, or -1 if unknown.
+   */
+  public long total() {
+
+    return total;
+  }
+}
@@ -0,0 +1,549 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.milkbowl.vault2.economy.Economy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * AccountDirectory is a compact index of account identifiers to account names, intended for
+ * economies with hundreds of thousands of accounts where a boxed {@code Map<UUID, String>} costs a
+ * lot of heap and garbage collection.
+ *
+ * <p>Accounts are stored densely as pairs of longs, with every name encoded as UTF-8 in a single
+ * shared byte arena and referenced by a packed offset and length. Lookups go through an
+ * open-addressing table of entry indexes, and {@link #forEach(Consumer)} walks the entries through a
+ * reusable {@link View}, so iterating allocates nothing unless the caller asks for a {@link UUID} or
+ * {@link String}. A directory can be saved to and loaded from a file through memory-mapped I/O, so
+ * a server can start with yesterday's directory while a fresh one is built in the background.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class AccountDirectory {
+
+  private static final int MAGIC = 0x56554144;
+  private static final int VERSION = 1;
+  private static final int HEADER = 16;
+
+  private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private long[] most;
+  private long[] least;
+  private long[] names;
+  private int[] table;
+  private byte[] arena;
+
+  private int size = 0;
+  private int arenaSize = 0;
+  private int wasted = 0;
+
+  /**
+   * Creates an empty directory.
+   *
+   * @param capacity the number of accounts to size the directory for.
+   */
+  public AccountDirectory(final int capacity) {
+
+    final int length = Math.max(16, capacity);
+    this.most = new long[length];
+    this.least = new long[length];
+    this.names = new long[length];
+    this.table = new int[tableSize(length)];
+    this.arena = new byte[length * 12];
+  }
+
+  /**
+   * Builds a directory from the accounts of the specified economy. This reads the economy's whole
+   * {@code getUUIDNameMap()} once, so it is meant for the first build of a provider's directory,
+   * which a {@link DirectoryTracker} then keeps current.
+   *
+   * @param economy the economy to read.
+   * @return the new directory.
+   */
+  public static AccountDirectory of(final @NotNull Economy economy) {
+
+    final Map<UUID, String> accounts = economy.getUUIDNameMap();
+    final AccountDirectory directory = new AccountDirectory(accounts.size());
+    for(final Map.Entry<UUID, String> entry : accounts.entrySet()) {
+      directory.put(entry.getKey(), entry.getValue());
+    }
+    return directory;
+  }
+
+  /**
+   * Retrieves the number of accounts in this directory.
+   *
+   * @return the account count.
+   */
+  public int size() {
+
+    lock.readLock().lock();
+    try {
+      return size;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Adds an account, or renames it if it is already present.
+   *
+   * @param account the account identifier.
+   * @param name the account name.
+   */
+  public void put(final @NotNull UUID account, final @NotNull String name) {
+
+    final byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+    lock.writeLock().lock();
+    try {
+
+      final int index = find(account.getMostSignificantBits(), account.getLeastSignificantBits());
+      if(index >= 0) {
+
+        if(!nameEquals(index, encoded)) {
+
+          wasted += length(names[index]);
+          names[index] = append(encoded);
+        }
+        return;
+      }
+
+      if(size == most.length) {
+        grow();
+      }
+
+      most[size] = account.getMostSignificantBits();
+      least[size] = account.getLeastSignificantBits();
+      names[size] = append(encoded);
+      insert(size);
+      size++;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Removes an account.
+   *
+   * @param account the account identifier.
+   * @return true if the account was present, otherwise false.
+   */
+  public boolean remove(final @NotNull UUID account) {
+
+    lock.writeLock().lock();
+    try {
+
+      final int index = find(account.getMostSignificantBits(), account.getLeastSignificantBits());
+      if(index < 0) {
+        return false;
+      }
+
+      wasted += length(names[index]);
+      delete(index);
+
+      //keep entries dense by moving the last entry into the freed index.
+      final int last = --size;
+      if(index != last) {
+
+        delete(last);
+        most[index] = most[last];
+        least[index] = least[last];
+        names[index] = names[last];
+        insert(index);
+      }
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Retrieves the name of an account.
+   *
+   * @param account the account identifier.
+   * @return the account name, or {@code null} if the account is not present.
+   */
+  @Nullable
+  public String name(final @NotNull UUID account) {
+
+    lock.readLock().lock();
+    try {
+
+      final int index = find(account.getMostSignificantBits(), account.getLeastSignificantBits());
+      return (index < 0)? null : decode(index);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Determines if an account is present.
+   *
+   * @param account the account identifier.
+   * @return true if the account is present, otherwise false.
+   */
+  public boolean contains(final @NotNull UUID account) {
+
+    lock.readLock().lock();
+    try {
+      return find(account.getMostSignificantBits(), account.getLeastSignificantBits()) >= 0;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Copies the identifiers of every account into a flat array, the most significant bits of each
+   * account followed by its least significant bits, so they can be walked without holding the
+   * directory's lock or boxing a {@link UUID} per account.
+   *
+   * @return the identifiers, two longs per account.
+   */
+  public long[] identifiers() {
+
+    lock.readLock().lock();
+    try {
+
+      final long[] identifiers = new long[size * 2];
+      for(int i = 0; i < size; i++) {
+        identifiers[i * 2] = most[i];
+        identifiers[i * 2 + 1] = least[i];
+      }
+      return identifiers;
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Visits every account through a single reusable {@link View}. The view is only valid during the
+   * call that received it, and the directory must not be modified from within the visitor.
+   *
+   * @param visitor the visitor.
+   */
+  public void forEach(final @NotNull Consumer<View> visitor) {
+
+    lock.readLock().lock();
+    try {
+
+      final View view = new View();
+      for(int i = 0; i < size; i++) {
+
+        view.index = i;
+        visitor.accept(view);
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Writes this directory to a file, replacing it atomically. Names no longer referenced are left
+   * out, so the saved arena is always compact.
+   *
+   * @param file the file to write.
+   * @throws IOException if the file could not be written.
+   */
+  public void save(final @NotNull Path file) throws IOException {
+
+    lock.readLock().lock();
+    try {
+
+      final long arenaLength = (long)arenaSize - wasted;
+      final long length = HEADER + (long)size * 24 + arenaLength;
+      final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+      if(file.getParent() != null) {
+        Files.createDirectories(file.getParent());
+      }
+
+      try(final FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                       StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(size).putInt((int)arenaLength);
+        buffer.asLongBuffer().put(most, 0, size).put(least, 0, size);
+        buffer.position(HEADER + size * 16);
+
+        //rewrite name references against the compacted arena as it is written.
+        final int arenaStart = HEADER + size * 24;
+        int offset = 0;
+        for(int i = 0; i < size; i++) {
+
+          final int nameLength = length(names[i]);
+          buffer.putLong(((long)offset << 32) | nameLength);
+          buffer.put(arenaStart + offset, arena, offset(names[i]), nameLength);
+          offset += nameLength;
+        }
+        buffer.force();
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Loads a directory previously written by {@link #save(Path)}.
+   *
+   * @param file the file to read.
+   * @return the loaded directory.
+   * @throws IOException if the file could not be read or is not a directory file.
+   */
+  public static AccountDirectory load(final @NotNull Path file) throws IOException {
+
+    try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+      final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if(buffer.remaining() < HEADER || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException(file + " is not an account directory.");
+      }
+
+      final int count = buffer.getInt();
+      final int arenaLength = buffer.getInt();
+      if(count < 0 || arenaLength < 0 || buffer.remaining() != (long)count * 24 + arenaLength) {
+        throw new IOException(file + " is truncated.");
+      }
+
+      final AccountDirectory directory = new AccountDirectory(count);
+      final ByteBuffer longs = buffer.slice(HEADER, count * 24);
+      longs.asLongBuffer().get(directory.most, 0, count)
+                          .get(directory.least, 0, count)
+                          .get(directory.names, 0, count);
+
+      if(directory.arena.length < arenaLength) {
+        directory.arena = new byte[arenaLength];
+      }
+      buffer.get(HEADER + count * 24, directory.arena, 0, arenaLength);
+      directory.arenaSize = arenaLength;
+
+      for(int i = 0; i < count; i++) {
+        directory.insert(i);
+      }
+      directory.size = count;
+      return directory;
+    }
+  }
+
+  private int find(final long accountMost, final long accountLeast) {
+
+    final int mask = table.length - 1;
+    for(int slot = hash(accountMost, accountLeast) & mask;; slot = (slot + 1) & mask) {
+
+      final int entry = table[slot] - 1;
+      if(entry < 0) {
+        return -1;
+      }
+
+      if(most[entry] == accountMost && least[entry] == accountLeast) {
+        return entry;
+      }
+    }
+  }
+
+  private void insert(final int index) {
+
+    final int mask = table.length - 1;
+    int slot = hash(most[index], least[index]) & mask;
+    while(table[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    table[slot] = index + 1;
+  }
+
+  /**
+   * Removes the table slot of an entry, shifting back later entries of the same probe run so no
+   * tombstones are needed.
+   */
+  private void delete(final int index) {
+
+    final int mask = table.length - 1;
+    int slot = hash(most[index], least[index]) & mask;
+    while(table[slot] != index + 1) {
+      slot = (slot + 1) & mask;
+    }
+
+    int next = slot;
+    while(true) {
+
+      next = (next + 1) & mask;
+      final int entry = table[next] - 1;
+      if(entry < 0) {
+        break;
+      }
+
+      //move the entry back if its home slot doesn't lie in the cyclic range (slot, next].
+      final int home = hash(most[entry], least[entry]) & mask;
+      if((next > slot)? (home <= slot || home > next) : (home <= slot && home > next)) {
+
+        table[slot] = table[next];
+        slot = next;
+      }
+    }
+    table[slot] = 0;
+  }
+
+  private void grow() {
+
+    final int length = most.length * 2;
+    most = Arrays.copyOf(most, length);
+    least = Arrays.copyOf(least, length);
+    names = Arrays.copyOf(names, length);
+    table = new int[tableSize(length)];
+    for(int i = 0; i < size; i++) {
+      insert(i);
+    }
+  }
+
+  private long append(final byte[] encoded) {
+
+    if(arenaSize + encoded.length > arena.length) {
+
+      //compact instead of growing when at least half the arena is unreferenced.
+      if(wasted >= arenaSize / 2) {
+        compact();
+      }
+
+      if(arenaSize + encoded.length > arena.length) {
+        arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + encoded.length));
+      }
+    }
+
+    final long reference = ((long)arenaSize << 32) | encoded.length;
+    System.arraycopy(encoded, 0, arena, arenaSize, encoded.length);
+    arenaSize += encoded.length;
+    return reference;
+  }
+
+  private void compact() {
+
+    final byte[] compacted = new byte[arena.length];
+    int offset = 0;
+    for(int i = 0; i < size; i++) {
+
+      final int nameLength = length(names[i]);
+      System.arraycopy(arena, offset(names[i]), compacted, offset, nameLength);
+      names[i] = ((long)offset << 32) | nameLength;
+      offset += nameLength;
+    }
+    arena = compacted;
+    arenaSize = offset;
+    wasted = 0;
+  }
+
+  private boolean nameEquals(final int index, final byte[] encoded) {
+
+    final int offset = offset(names[index]);
+    return Arrays.equals(arena, offset, offset + length(names[index]), encoded, 0, encoded.length);
+  }
+
+  private String decode(final int index) {
+
+    return new String(arena, offset(names[index]), length(names[index]), StandardCharsets.UTF_8);
+  }
+
+  private static int offset(final long reference) {
+
+    return (int)(reference >>> 32);
+  }
+
+  private static int length(final long reference) {
+
+    return (int)reference;
+  }
+
+  private static int hash(final long accountMost, final long accountLeast) {
+
+    final long bits = accountMost ^ accountLeast;
+    final int hash = (int)(bits ^ (bits >>> 32)) * 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+  private static int tableSize(final int capacity) {
+
+    //keep the table at most half full.
+    return Integer.highestOneBit(Math.max(2, capacity) - 1) << 2;
+  }
+
+  /**
+   * A reusable view of the account currently being visited by {@link #forEach(Consumer)}.
+   */
+  public final class View {
+
+    private int index;
+
+    private View() {
+    }
+
+    /**
+     * Retrieves the most significant bits of the account identifier.
+     *
+     * @return the most significant bits.
+     */
+    public long most() {
+
+      return most[index];
+    }
+
+    /**
+     * Retrieves the least significant bits of the account identifier.
+     *
+     * @return the least significant bits.
+     */
+    public long least() {
+
+      return least[index];
+    }
+
+    /**
+     * Creates the account identifier.
+     *
+     * @return the account identifier.
+     */
+    public UUID account() {
+
+      return new UUID(most[index], least[index]);
+    }
+
+    /**
+     * Decodes the account name.
+     *
+     * @return the account name.
+     */
+    public String name() {
+
+      return decode(index);
+    }
+  }
+}
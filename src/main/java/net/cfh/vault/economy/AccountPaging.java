@@ -0,0 +1,46 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * AccountPaging is an optional extension an {@link net.milkbowl.vault2.economy.Economy} provider
+ * may implement to enumerate its accounts in pages instead of materializing them all through
+ * {@code getUUIDNameMap()}. Pages are keyset based so that database backed providers can serve
+ * them with a single indexed range query.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public interface AccountPaging {
+
+  /**
+   * Retrieves the next page of account identifiers, ordered consistently between calls.
+   *
+   * @param after the last account of the previous page, or {@code null} for the first page.
+   * @param limit the maximum number of accounts to return.
+   * @return the next page of accounts, empty once every account has been returned.
+   */
+  @NotNull
+  List<UUID> accountsAfter(@Nullable UUID after, int limit);
+}
@@ -0,0 +1,194 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.milkbowl.vault2.economy.Economy;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * AccountSerializer runs the mutations made through the active {@link Economy} facade one at a time
+ * per account, removing read-modify-write races in providers that don't guard against concurrent
+ * updates themselves. Accounts are mapped onto a fixed set of lock stripes, so mutations of
+ * different accounts only wait on each other if they share a stripe, and never on a global lock.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class AccountSerializer implements ProviderLayer<Economy> {
+
+  public static final String LAYER = "account-serializer";
+
+  private final ReentrantLock[] stripes;
+  private final int mask;
+
+  private final LongAdder operations = new LongAdder();
+  private final LongAdder waiting = new LongAdder();
+  private final LongAdder waitNanos = new LongAdder();
+  private final AtomicLong maxWaitNanos = new AtomicLong();
+
+  /**
+   * Creates a new account serializer.
+   *
+   * @param stripes the number of lock stripes, rounded up to a power of two.
+   */
+  public AccountSerializer(final int stripes) {
+
+    final int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+    this.stripes = new ReentrantLock[size];
+    this.mask = size - 1;
+    for(int i = 0; i < size; i++) {
+      this.stripes[i] = new ReentrantLock();
+    }
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull Economy provider) {
+
+    return this::intercept;
+  }
+
+  private Object intercept(final ProviderCall call) throws Throwable {
+
+    final UUID account = call.account();
+    if(account == null) {
+
+      final Collection<?> batch = call.accounts();
+      final boolean write = call.name().equals("depositAll") || call.name().equals("withdrawAll");
+      return (batch != null && write)? serializedAll(batch, call) : call.proceed();
+    }
+
+    return switch(call.name()) {
+      case "deposit", "withdraw", "set", "createAccount", "deleteAccount" -> serialized(account, call);
+      default -> call.proceed();
+    };
+  }
+
+  private Object serialized(final UUID account, final ProviderCall call) throws Throwable {
+
+    final ReentrantLock lock = stripe(account);
+    if(!lock.tryLock()) {
+
+      final long start = System.nanoTime();
+      waiting.increment();
+      try {
+        lock.lock();
+      } finally {
+        waiting.decrement();
+      }
+
+      final long waited = System.nanoTime() - start;
+      waitNanos.add(waited);
+      maxWaitNanos.accumulateAndGet(waited, Math::max);
+    }
+
+    operations.increment();
+    try {
+      return call.proceed();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Object serializedAll(final Collection<?> batch, final ProviderCall call) throws Throwable {
+
+    //take every stripe the batch touches in ascending order, so batches can't deadlock each other.
+    final BitSet touched = new BitSet(stripes.length);
+    for(final Object account : batch) {
+      if(account instanceof final UUID id) {
+        touched.set(index(id));
+      }
+    }
+
+    final long start = System.nanoTime();
+    int locked = 0;
+    try {
+
+      for(int i = touched.nextSetBit(0); i >= 0; i = touched.nextSetBit(i + 1)) {
+
+        stripes[i].lock();
+        locked = i + 1;
+      }
+
+      final long waited = System.nanoTime() - start;
+      waitNanos.add(waited);
+      maxWaitNanos.accumulateAndGet(waited, Math::max);
+      operations.increment();
+      return call.proceed();
+    } finally {
+
+      for(int i = touched.previousSetBit(locked - 1); i >= 0; i = touched.previousSetBit(i - 1)) {
+        stripes[i].unlock();
+      }
+    }
+  }
+
+  private ReentrantLock stripe(final UUID account) {
+
+    return stripes[index(account)];
+  }
+
+  private int index(final UUID account) {
+
+    final long bits = account.getMostSignificantBits() ^ account.getLeastSignificantBits();
+    final int hash = (int)(bits ^ (bits >>> 32));
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  /**
+   * Retrieves the current statistics of this serializer.
+   *
+   * @return the current {@link Stats}.
+   */
+  public Stats stats() {
+
+    return new Stats(operations.sum(), waiting.sum(), waitNanos.sum(), maxWaitNanos.get());
+  }
+
+  /**
+   * A point-in-time view of an {@link AccountSerializer}'s counters.
+   *
+   * @param operations the number of serialized operations run.
+   * @param waiting the number of operations currently queued behind another on the same stripe.
+   * @param waitNanos the total time operations spent queued.
+   * @param maxWaitNanos the longest time a single operation spent queued.
+   */
+  public record Stats(long operations, long waiting, long waitNanos, long maxWaitNanos) {
+
+    /**
+     * Formats these statistics as a single human-readable line.
+     *
+     * @return the formatted statistics.
+     */
+    public String describe() {
+
+      final double average = (operations == 0)? 0.0 : waitNanos / 1_000_000.0 / operations;
+      return String.format("operations=%d queued=%d avgWait=%.3fms maxWait=%.3fms",
+                           operations, waiting, average, maxWaitNanos / 1_000_000.0);
+    }
+  }
+}
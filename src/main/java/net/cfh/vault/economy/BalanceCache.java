@@ -0,0 +1,499 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.cache.CacheStats;
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.milkbowl.vault2.economy.Economy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * BalanceCache is a read-through cache of the balances served by the active {@link Economy}.
+ * Balances are cached per account, world and currency for a fixed time to live, and the cache is
+ * bounded by the number of accounts it holds. Any {@code deposit}, {@code withdraw}, {@code set} or
+ * {@code deleteAccount} made through the facade drops every cached balance of the account, and
+ * {@code has} checks are answered from a cached balance when one is present.
+ *
+ * <p>Cached balances of an account live in a per-account entry which invalidation removes from the
+ * cache. A lookup that raced with a mutation therefore stores its result in the detached entry,
+ * where it can never be served.</p>
+ *
+ * <p>When several servers share one economy, a mutation listener can broadcast every account changed
+ * through this server's facade, and the other servers drop their cached balances of it through
+ * {@link #invalidate(UUID)}.</p>
+ *
+ * <p>Balances saved by {@link #export(int)} before a restart can be {@link #preload(Collection, long)
+ * preloaded} afterwards. Preloaded balances are re-read one at a time in the background, through
+ * the layers below the cache so that deposits a write-behind buffer still holds are counted, and
+ * neither balance lookups nor {@code has} checks are answered from a balance until it has been
+ * validated this way.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class BalanceCache implements ProviderLayer<Economy> {
+
+  public static final String LAYER = "balance-cache";
+
+  private final int maxAccounts;
+  private final long ttlNanos;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  private volatile Interceptor current = null;
+  private volatile Consumer<UUID> mutations = null;
+
+  /**
+   * Creates a new balance cache.
+   *
+   * @param maxAccounts the maximum number of accounts held.
+   * @param ttlMillis how long a cached balance is served for, in milliseconds.
+   */
+  public BalanceCache(final int maxAccounts, final long ttlMillis) {
+
+    this.maxAccounts = Math.max(1, maxAccounts);
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, ttlMillis));
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull Economy provider) {
+
+    final Interceptor interceptor = new Interceptor();
+    current = interceptor;
+    return interceptor;
+  }
+
+  /**
+   * Drops every cached balance of the specified account.
+   *
+   * @param account the account identifier.
+   */
+  public void invalidate(final @NotNull UUID account) {
+
+    final Interceptor interceptor = current;
+    if(interceptor != null) {
+      interceptor.invalidate(account);
+    }
+  }
+
+  /**
+   * Sets the listener told about every account changed through the facade, after its cached
+   * balances have been dropped.
+   *
+   * @param listener the listener, or {@code null} to remove it.
+   */
+  public void mutations(final @Nullable Consumer<UUID> listener) {
+
+    this.mutations = listener;
+  }
+
+  /**
+   * Drops every cached balance.
+   */
+  public void clear() {
+
+    final Interceptor interceptor = current;
+    if(interceptor != null) {
+      interceptor.accounts.clear();
+    }
+  }
+
+  /**
+   * Copies up to the specified number of cached balances, including expired ones that have not been
+   * evicted yet, so that they can be saved and {@link #preload(Collection, long) preloaded} after a
+   * restart. Preloaded balances that were never validated are left out.
+   *
+   * @param limit the maximum number of balances to copy.
+   * @return the copied balances.
+   */
+  public List<Warm> export(final int limit) {
+
+    final List<Warm> balances = new ArrayList<>();
+    final Interceptor interceptor = current;
+    if(interceptor == null) {
+      return balances;
+    }
+
+    for(final Map.Entry<UUID, AccountEntry> account : interceptor.accounts.entrySet()) {
+      for(final Map.Entry<ContextKey, Cached> value : account.getValue().values.entrySet()) {
+
+        if(balances.size() >= limit) {
+          return balances;
+        }
+        if(value.getValue().provisional) {
+          continue;
+        }
+        balances.add(new Warm(account.getKey(), value.getKey().world(), value.getKey().currency(),
+                              value.getValue().value));
+      }
+    }
+    return balances;
+  }
+
+  /**
+   * Preloads balances saved by {@link #export(int)}, without replacing balances cached since. From
+   * the next call made through the facade on, the preloaded balances are re-read through the layers
+   * below the cache one at a time on a background thread, and each is only served once it has been
+   * re-read. A balance that could not be re-read within the specified time is dropped.
+   *
+   * @param balances the balances to preload.
+   * @param provisionalMillis how long a preloaded balance is kept while waiting to be validated, in
+   *                          milliseconds.
+   * @return the number of balances preloaded.
+   */
+  public int preload(final @NotNull Collection<Warm> balances, final long provisionalMillis) {
+
+    final Interceptor interceptor = current;
+    if(interceptor == null) {
+      return 0;
+    }
+
+    final long expiresAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(1, provisionalMillis));
+    final List<Pending> pending = new ArrayList<>();
+    for(final Warm balance : balances) {
+
+      AccountEntry entry = interceptor.accounts.get(balance.account());
+      if(entry == null) {
+
+        if(interceptor.accounts.size() >= maxAccounts) {
+          continue;
+        }
+        entry = interceptor.accounts.computeIfAbsent(balance.account(), key->new AccountEntry());
+      }
+
+      final ContextKey key = new ContextKey(balance.world(), balance.currency());
+      final Cached cached = new Cached(balance.balance(), expiresAt, true);
+      if(entry.values.putIfAbsent(key, cached) == null) {
+        pending.add(new Pending(balance.account(), entry, key, cached));
+      }
+    }
+
+    //validated once the next call provides the layers below the cache to read through.
+    interceptor.unvalidated.addAll(pending);
+    return pending.size();
+  }
+
+  /**
+   * Retrieves the current statistics of this cache.
+   *
+   * @return the current {@link CacheStats}.
+   */
+  public CacheStats stats() {
+
+    final Interceptor interceptor = current;
+    return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), 0,
+                          (interceptor == null)? 0 : interceptor.accounts.size());
+  }
+
+  private final class Interceptor implements ProviderInterceptor {
+
+    private final Map<UUID, AccountEntry> accounts = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+    private final Queue<Pending> unvalidated = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean validating = new AtomicBoolean(false);
+
+    @Override
+    public Object intercept(final @NotNull ProviderCall call) throws Throwable {
+
+      if(!unvalidated.isEmpty() && validating.compareAndSet(false, true)) {
+
+        final Economy below = call.below(Economy.class);
+        Thread.ofVirtual().name("VaultUnlocked-Validate").start(()->validate(below));
+      }
+
+      final UUID account = call.account();
+      if(account == null) {
+        return batch(call);
+      }
+
+      final Object[] args = call.args();
+      switch(call.name()) {
+
+        case "balance", "getBalance" -> {
+          return balance(call, account, string(args, 2), string(args, 3));
+        }
+        case "has" -> {
+
+          //has(plugin, account, [world, [currency,]] amount)
+          final String world = (args.length > 3)? string(args, 2) : null;
+          final String currency = (args.length > 4)? string(args, 3) : null;
+          final Cached cached = cached(account, world, currency);
+          if(cached != null && !cached.provisional && args[args.length - 1] instanceof final BigDecimal amount) {
+
+            hits.increment();
+            return cached.value.compareTo(amount) >= 0;
+          }
+          misses.increment();
+          return call.proceed();
+        }
+        case "deposit", "withdraw", "set", "deleteAccount" -> {
+
+          invalidate(account);
+          try {
+            return call.proceed();
+          } finally {
+            invalidate(account);
+            mutated(account);
+          }
+        }
+        default -> {
+          return call.proceed();
+        }
+      }
+    }
+
+    private Object batch(final ProviderCall call) throws Throwable {
+
+      final Collection<?> batch = call.accounts();
+      if(batch == null || !(call.name().equals("depositAll") || call.name().equals("withdrawAll"))) {
+        return call.proceed();
+      }
+
+      invalidateAll(batch);
+      try {
+        return call.proceed();
+      } finally {
+        invalidateAll(batch);
+        mutatedAll(batch);
+      }
+    }
+
+    private void invalidateAll(final Collection<?> batch) {
+
+      for(final Object account : batch) {
+        if(account instanceof final UUID id) {
+          invalidate(id);
+        }
+      }
+    }
+
+    private void mutatedAll(final Collection<?> batch) {
+
+      for(final Object account : batch) {
+        if(account instanceof final UUID id) {
+          mutated(id);
+        }
+      }
+    }
+
+    private void mutated(final UUID account) {
+
+      final Consumer<UUID> listener = mutations;
+      if(listener != null) {
+        listener.accept(account);
+      }
+    }
+
+    private Object balance(final ProviderCall call, final UUID account, final @Nullable String world,
+                           final @Nullable String currency) throws Throwable {
+
+      final Cached cached = cached(account, world, currency);
+      if(cached != null && !cached.provisional) {
+
+        hits.increment();
+        return cached.value;
+      }
+      misses.increment();
+
+      //acquire the entry before reading so that a concurrent invalidation detaches it.
+      AccountEntry entry = accounts.get(account);
+      if(entry == null) {
+
+        entry = accounts.computeIfAbsent(account, key->new AccountEntry());
+        if(accounts.size() > maxAccounts) {
+          evict();
+        }
+      }
+
+      final Object result = call.proceed();
+      if(result instanceof final BigDecimal balance) {
+        entry.values.put(new ContextKey(world, currency), new Cached(balance, System.nanoTime() + ttlNanos, false));
+      }
+      return result;
+    }
+
+    /**
+     * Re-reads preloaded balances through the layers below the cache one at a time, replacing each
+     * with the current balance, or dropping it if the read fails. Each balance is written to the entry
+     * it was preloaded into, and a mutation detaches that entry, so a read racing with a mutation can
+     * never be served.
+     */
+    private void validate(final Economy below) {
+
+      try {
+
+        Pending balance;
+        while((balance = unvalidated.poll()) != null) {
+          validate(below, balance);
+        }
+      } finally {
+        validating.set(false);
+      }
+    }
+
+    private void validate(final Economy below, final Pending balance) {
+
+      if(balance.cached().expiresAt - System.nanoTime() <= 0) {
+
+        balance.entry().values.remove(balance.key(), balance.cached());
+        return;
+      }
+
+      try {
+
+        final long now = System.nanoTime();
+        final BigDecimal current = Balances.balance(below, "VaultUnlocked", balance.account(),
+                                                    balance.key().world(), balance.key().currency());
+        if(current != null) {
+          balance.entry().values.replace(balance.key(), balance.cached(), new Cached(current, now + ttlNanos, false));
+        } else {
+          balance.entry().values.remove(balance.key(), balance.cached());
+        }
+      } catch(final RuntimeException e) {
+        balance.entry().values.remove(balance.key(), balance.cached());
+      }
+    }
+
+    @Nullable
+    private Cached cached(final UUID account, final @Nullable String world, final @Nullable String currency) {
+
+      final AccountEntry entry = accounts.get(account);
+      if(entry == null) {
+        return null;
+      }
+
+      final Cached cached = entry.values.get(new ContextKey(world, currency));
+      return (cached != null && cached.expiresAt - System.nanoTime() > 0)? cached : null;
+    }
+
+    private void invalidate(final UUID account) {
+
+      if(accounts.remove(account) != null) {
+        invalidations.increment();
+      }
+    }
+
+    /**
+     * Brings the cache back under its bound, first dropping accounts whose balances have all
+     * expired, then arbitrary accounts until ten percent of the bound is free again.
+     */
+    private void evict() {
+
+      if(!evicting.compareAndSet(false, true)) {
+        return;
+      }
+
+      try {
+
+        final long now = System.nanoTime();
+        final int target = maxAccounts - Math.max(1, maxAccounts / 10);
+        final Iterator<AccountEntry> expired = accounts.values().iterator();
+        while(expired.hasNext() && accounts.size() > target) {
+
+          if(expired.next().expired(now)) {
+            expired.remove();
+            evictions.increment();
+          }
+        }
+
+        final Iterator<AccountEntry> any = accounts.values().iterator();
+        while(any.hasNext() && accounts.size() > target) {
+
+          any.next();
+          any.remove();
+          evictions.increment();
+        }
+      } finally {
+        evicting.set(false);
+      }
+    }
+
+    @Nullable
+    private static String string(final Object[] args, final int index) {
+
+      return (args.length > index && args[index] instanceof final String value)? value : null;
+    }
+  }
+
+  private static final class AccountEntry {
+
+    private final Map<ContextKey, Cached> values = new ConcurrentHashMap<>(4);
+
+    private boolean expired(final long now) {
+
+      for(final Cached cached : values.values()) {
+        if(cached.expiresAt - now > 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private record ContextKey(@Nullable String world, @Nullable String currency) {
+  }
+
+  private record Pending(UUID account, AccountEntry entry, ContextKey key, Cached cached) {
+  }
+
+  /**
+   * A cached balance as saved by {@link #export(int)}.
+   *
+   * @param account the account identifier.
+   * @param world the world of the balance, or {@code null} for the default.
+   * @param currency the currency of the balance, or {@code null} for the default.
+   * @param balance the balance.
+   */
+  public record Warm(UUID account, @Nullable String world, @Nullable String currency, BigDecimal balance) {
+  }
+
+  private static final class Cached {
+
+    private final BigDecimal value;
+    private final long expiresAt;
+    private final boolean provisional;
+
+    private Cached(final BigDecimal value, final long expiresAt, final boolean provisional) {
+
+      this.value = value;
+      this.expiresAt = expiresAt;
+      this.provisional = provisional;
+    }
+  }
+}
@@ -0,0 +1,153 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+/**
+ * Balances maps a world and currency context, where {@code null} stands for the default, onto the
+ * matching {@link Economy} overload so that callers handling arbitrary contexts do not need to
+ * repeat the overload selection.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class Balances {
+
+  /**
+   * The world name used when a currency is specified without a world.
+   */
+  public static final String DEFAULT_WORLD = "default";
+
+  private Balances() {
+  }
+
+  /**
+   * Reads a balance in the specified context.
+   *
+   * @param economy the economy to read from.
+   * @param pluginName the name of the plugin performing the read.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the balance.
+   */
+  @NotNull
+  public static BigDecimal balance(final @NotNull Economy economy, final @NotNull String pluginName,
+                                   final @NotNull UUID account, final @Nullable String world,
+                                   final @Nullable String currency) {
+
+    if(currency == null) {
+      return (world == null)? economy.balance(pluginName, account) : economy.balance(pluginName, account, world);
+    }
+    return economy.balance(pluginName, account, (world == null)? DEFAULT_WORLD : world, currency);
+  }
+
+  /**
+   * Sets a balance in the specified context.
+   *
+   * @param economy the economy to write to.
+   * @param pluginName the name of the plugin performing the write.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the new balance.
+   * @return the provider's response.
+   */
+  @NotNull
+  public static EconomyResponse set(final @NotNull Economy economy, final @NotNull String pluginName,
+                                    final @NotNull UUID account, final @Nullable String world,
+                                    final @Nullable String currency, final @NotNull BigDecimal amount) {
+
+    if(currency == null) {
+      return (world == null)? economy.set(pluginName, account, amount) : economy.set(pluginName, account, world, amount);
+    }
+    return economy.set(pluginName, account, (world == null)? DEFAULT_WORLD : world, currency, amount);
+  }
+
+  /**
+   * Deposits into a balance in the specified context.
+   *
+   * @param economy the economy to deposit into.
+   * @param pluginName the name of the plugin performing the deposit.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the amount to deposit.
+   * @return the provider's response.
+   */
+  @NotNull
+  public static EconomyResponse deposit(final @NotNull Economy economy, final @NotNull String pluginName,
+                                        final @NotNull UUID account, final @Nullable String world,
+                                        final @Nullable String currency, final @NotNull BigDecimal amount) {
+
+    if(currency == null) {
+      return (world == null)? economy.deposit(pluginName, account, amount) : economy.deposit(pluginName, account, world, amount);
+    }
+    return economy.deposit(pluginName, account, (world == null)? DEFAULT_WORLD : world, currency, amount);
+  }
+
+  /**
+   * Withdraws from a balance in the specified context.
+   *
+   * @param economy the economy to withdraw from.
+   * @param pluginName the name of the plugin performing the withdrawal.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the amount to withdraw.
+   * @return the provider's response.
+   */
+  @NotNull
+  public static EconomyResponse withdraw(final @NotNull Economy economy, final @NotNull String pluginName,
+                                         final @NotNull UUID account, final @Nullable String world,
+                                         final @Nullable String currency, final @NotNull BigDecimal amount) {
+
+    if(currency == null) {
+      return (world == null)? economy.withdraw(pluginName, account, amount) : economy.withdraw(pluginName, account, world, amount);
+    }
+    return economy.withdraw(pluginName, account, (world == null)? DEFAULT_WORLD : world, currency, amount);
+  }
+
+  /**
+   * Checks if an account holds at least the specified amount in the specified context.
+   *
+   * @param economy the economy to check.
+   * @param pluginName the name of the plugin performing the check.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the amount to check for.
+   * @return true if the account holds at least {@code amount}, otherwise false.
+   */
+  public static boolean has(final @NotNull Economy economy, final @NotNull String pluginName,
+                            final @NotNull UUID account, final @Nullable String world,
+                            final @Nullable String currency, final @NotNull BigDecimal amount) {
+
+    if(currency == null) {
+      return (world == null)? economy.has(pluginName, account, amount) : economy.has(pluginName, account, world, amount);
+    }
+    return economy.has(pluginName, account, (world == null)? DEFAULT_WORLD : world, currency, amount);
+  }
+}
@@ -0,0 +1,47 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * BatchBalanceWriter is an optional extension an {@link net.milkbowl.vault2.economy.Economy}
+ * provider may implement to persist the balances of several accounts, across every world and
+ * currency, in bulk. VaultUnlocked falls back to individual {@code set} calls for providers that
+ * do not implement it.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public interface BatchBalanceWriter {
+
+  /**
+   * Sets every specified balance.
+   *
+   * @param pluginName the name of the plugin performing the write.
+   * @param balances the balances to set, grouped by account.
+   * @return the accounts for which one or more balances could not be set.
+   */
+  @NotNull
+  Set<UUID> setBalances(@NotNull String pluginName, @NotNull Map<UUID, List<ContextBalance>> balances);
+}
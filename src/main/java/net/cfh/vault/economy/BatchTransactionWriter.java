@@ -0,0 +1,64 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * BatchTransactionWriter is an optional extension an {@link net.milkbowl.vault2.economy.Economy}
+ * provider may implement to deposit into or withdraw from many accounts in a single round-trip.
+ * VaultUnlocked falls back to individual {@code deposit} and {@code withdraw} calls for providers
+ * that do not implement it.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public interface BatchTransactionWriter {
+
+  /**
+   * Deposits an amount into every specified account in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the deposits.
+   * @param amounts the amounts to deposit, keyed by account.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the provider's response for every account.
+   */
+  @NotNull
+  Map<UUID, EconomyResponse> depositAll(@NotNull String pluginName, @NotNull Map<UUID, BigDecimal> amounts,
+                                        @Nullable String world, @Nullable String currency);
+
+  /**
+   * Withdraws an amount from every specified account in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the withdrawals.
+   * @param amounts the amounts to withdraw, keyed by account.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the provider's response for every account.
+   */
+  @NotNull
+  Map<UUID, EconomyResponse> withdrawAll(@NotNull String pluginName, @NotNull Map<UUID, BigDecimal> amounts,
+                                         @Nullable String world, @Nullable String currency);
+}
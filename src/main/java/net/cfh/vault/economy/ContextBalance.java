@@ -0,0 +1,36 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+
+/**
+ * ContextBalance is a single balance of an account within a world and currency context.
+ *
+ * @param world the world the balance belongs to, or {@code null} for the default world.
+ * @param currency the currency of the balance, or {@code null} for the default currency.
+ * @param amount the balance amount.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public record ContextBalance(@Nullable String world, @Nullable String currency, @NotNull BigDecimal amount) {
+}
@@ -0,0 +1,140 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.milkbowl.vault2.economy.Economy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DirectoryTracker keeps the {@link AccountDirectory} of the active {@link Economy} current from
+ * the account creations, renames and deletions made through the facade, so the directory only has
+ * to be built in full once per provider rather than rebuilt on a schedule.
+ *
+ * <p>A directory belongs to the provider it was built from and is only updated by calls made on
+ * that provider. Accounts a provider creates on its own, without going through the facade, are not
+ * seen until the directory is rebuilt.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class DirectoryTracker implements ProviderLayer<Economy> {
+
+  public static final String LAYER = "account-directory";
+
+  private final LongAdder updates = new LongAdder();
+
+  private volatile Tracked current = null;
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull Economy provider) {
+
+    final String name = provider.getName();
+    return call->intercept(name, call);
+  }
+
+  private Object intercept(final String provider, final ProviderCall call) throws Throwable {
+
+    final String method = call.name();
+    if(!method.equals("createAccount") && !method.equals("renameAccount") && !method.equals("deleteAccount")) {
+      return call.proceed();
+    }
+
+    final Object result = call.proceed();
+    final Tracked tracked = current;
+    if(tracked == null || !tracked.provider().equals(provider) || !Boolean.TRUE.equals(result)) {
+      return result;
+    }
+
+    //createAccount(UUID, name, ...), renameAccount([plugin,] UUID, name) and deleteAccount(plugin, UUID).
+    final Object[] args = call.args();
+    for(int i = 0; i < args.length; i++) {
+      if(args[i] instanceof final UUID account) {
+
+        if(method.equals("deleteAccount")) {
+          tracked.directory().remove(account);
+        } else if(call.arg(i + 1, String.class) instanceof final String accountName) {
+          tracked.directory().put(account, accountName);
+        }
+        updates.increment();
+        break;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Starts keeping the specified directory current, replacing any directory tracked before.
+   *
+   * @param provider the name of the provider the directory was built from.
+   * @param directory the directory.
+   */
+  public void track(final @NotNull String provider, final @NotNull AccountDirectory directory) {
+
+    this.current = new Tracked(provider, directory);
+  }
+
+  /**
+   * Retrieves the tracked directory if it belongs to the specified provider.
+   *
+   * @param provider the name of the provider.
+   * @return the provider's directory, or {@code null} if none is tracked for it.
+   */
+  @Nullable
+  public AccountDirectory directory(final @NotNull String provider) {
+
+    final Tracked tracked = current;
+    return (tracked != null && tracked.provider().equals(provider))? tracked.directory() : null;
+  }
+
+  /**
+   * Retrieves the tracked directory and the provider it belongs to.
+   *
+   * @return the tracked directory, or {@code null} if none is tracked yet.
+   */
+  @Nullable
+  public Tracked tracked() {
+
+    return current;
+  }
+
+  /**
+   * Retrieves the number of account changes applied to tracked directories.
+   *
+   * @return the update count.
+   */
+  public long updates() {
+
+    return updates.sum();
+  }
+
+  /**
+   * A directory and the provider it was built from.
+   *
+   * @param provider the name of the provider.
+   * @param directory the directory of the provider's accounts.
+   */
+  public record Tracked(String provider, AccountDirectory directory) {
+  }
+}
@@ -0,0 +1,607 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * Leaderboard keeps a ranked index of the balances of every account, per tracked currency, so
+ * top-N and rank-of-player queries are answered in O(log n) without any provider calls.
+ *
+ * <p>Whenever a provider becomes active, its boards are seeded by a single background scan of its
+ * accounts, using {@link BatchBalanceReader} when the provider offers it. From then on the boards are
+ * updated from the balance reported in the response of every successful {@code deposit},
+ * {@code withdraw} and {@code set} made through the facade, and accounts deleted through the facade
+ * are removed. A live update always wins over the value the scan read for the same account.</p>
+ *
+ * <p>When a provider doesn't report the new balance, the requested amount is applied to the balance
+ * the board already holds for the account. Only an account the board doesn't know yet is read back,
+ * off the calling thread through the layers below this one, with at most one read in flight per
+ * account and board; mutations that complete during that read cause it to be repeated.</p>
+ *
+ * <p>Updates follow the order in which mutations complete, so two concurrent mutations of the same
+ * account can be applied out of order. Enabling the {@link AccountSerializer}, which sits outside
+ * this layer, rules that out.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class Leaderboard implements ProviderLayer<Economy>, AutoCloseable {
+
+  public static final String LAYER = "leaderboard";
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+  private static final String PLUGIN_NAME = "VaultUnlocked";
+
+  private final List<String> currencies;
+  private final int chunkSize;
+  private final Function<String, AccountDirectory> directories;
+  private final ExecutorService executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                                                                     .name("VaultUnlocked-Leaderboard-", 0)
+                                                                                     .factory());
+
+  private volatile Boards current = null;
+
+  /**
+   * Creates a new leaderboard.
+   *
+   * @param currencies the currencies tracked besides the default currency, read in the default world.
+   * @param chunkSize the number of accounts read per call while seeding.
+   */
+  public Leaderboard(final @NotNull Collection<String> currencies, final int chunkSize) {
+
+    this(currencies, chunkSize, provider->null);
+  }
+
+  /**
+   * Creates a new leaderboard that seeds from the account directory of a provider when one is
+   * available, rather than from its account map.
+   *
+   * @param currencies the currencies tracked besides the default currency, read in the default world.
+   * @param chunkSize the number of accounts read per call while seeding.
+   * @param directories looks up the directory of a provider by name, answering {@code null} if there is none.
+   */
+  public Leaderboard(final @NotNull Collection<String> currencies, final int chunkSize,
+                     final @NotNull Function<String, AccountDirectory> directories) {
+
+    this.currencies = List.copyOf(currencies);
+    this.chunkSize = Math.max(1, chunkSize);
+    this.directories = directories;
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull Economy provider) {
+
+    final Boards previous = current;
+    if(previous != null) {
+      previous.cancelled = true;
+    }
+
+    final Boards boards = new Boards(provider);
+    current = boards;
+    executor.execute(boards::seed);
+    return boards;
+  }
+
+  /**
+   * Retrieves the highest ranked accounts of a currency.
+   *
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param offset the number of highest ranked accounts to skip.
+   * @param limit the maximum number of accounts to return.
+   * @return the accounts in rank order, empty if the currency isn't tracked.
+   */
+  @NotNull
+  public List<Entry> top(final @Nullable String currency, final int offset, final int limit) {
+
+    final Board board = board(currency);
+    if(board == null) {
+      return List.of();
+    }
+
+    final List<Entry> entries = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+    board.lock.readLock().lock();
+    try {
+      board.index.range(Math.max(0, offset), limit, (account, balance, rank)->entries.add(new Entry(account, balance, rank)));
+    } finally {
+      board.lock.readLock().unlock();
+    }
+    return Collections.unmodifiableList(entries);
+  }
+
+  /**
+   * Retrieves the rank of an account in a currency.
+   *
+   * @param account the account identifier.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the account's entry, or {@code null} if the account or currency isn't tracked.
+   */
+  @Nullable
+  public Entry rank(final @NotNull UUID account, final @Nullable String currency) {
+
+    final Board board = board(currency);
+    if(board == null) {
+      return null;
+    }
+
+    board.lock.readLock().lock();
+    try {
+
+      final BigDecimal balance = board.balances.get(account);
+      return (balance == null)? null : new Entry(account, balance, board.index.rank(account, balance));
+    } finally {
+      board.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Retrieves the number of accounts ranked in a currency.
+   *
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the ranked account count.
+   */
+  public int size(final @Nullable String currency) {
+
+    final Board board = board(currency);
+    if(board == null) {
+      return 0;
+    }
+
+    board.lock.readLock().lock();
+    try {
+      return board.index.size();
+    } finally {
+      board.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Determines if the initial scan of the active provider's accounts has finished.
+   *
+   * @return true once the boards are fully seeded, otherwise false.
+   */
+  public boolean seeded() {
+
+    final Boards boards = current;
+    return boards != null && boards.seeded;
+  }
+
+  /**
+   * Formats the state of this leaderboard as a single human-readable line.
+   *
+   * @return the formatted state.
+   */
+  public String describe() {
+
+    final StringBuilder builder = new StringBuilder("seeded=").append(seeded()).append(" default=").append(size(null));
+    for(final String currency : currencies) {
+      builder.append(' ').append(currency).append('=').append(size(currency));
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Stops any running seed scan.
+   */
+  @Override
+  public void close() {
+
+    final Boards boards = current;
+    if(boards != null) {
+      boards.cancelled = true;
+    }
+    executor.shutdownNow();
+  }
+
+  @Nullable
+  private Board board(final @Nullable String currency) {
+
+    final Boards boards = current;
+    return (boards == null)? null : boards.boards.get(currency);
+  }
+
+  private final class Boards implements ProviderInterceptor {
+
+    private final Economy provider;
+    //keyed by currency, the default currency under null.
+    private final Map<String, Board> boards = new HashMap<>();
+
+    //the provider behind the layers below this one, captured from the first mutation.
+    private volatile Economy below = null;
+    private volatile boolean cancelled = false;
+    private volatile boolean seeded = false;
+
+    private Boards(final Economy provider) {
+
+      this.provider = provider;
+      boards.put(null, new Board(null));
+      for(final String currency : currencies) {
+        boards.put(currency, new Board(currency));
+      }
+    }
+
+    @Override
+    public Object intercept(final @NotNull ProviderCall call) throws Throwable {
+
+      final UUID account = call.account();
+      if(account == null) {
+        return batch(call);
+      }
+
+      switch(call.name()) {
+
+        case "deposit", "withdraw", "set" -> {
+
+          capture(call);
+          final Object result = call.proceed();
+          final Object[] args = call.args();
+          final Board board = board(args);
+          if(board != null && result instanceof final EconomyResponse response && response.transactionSuccess()) {
+            update(board, account, response, call.name(), args[args.length - 1]);
+          }
+          return result;
+        }
+        case "deleteAccount" -> {
+
+          final Object result = call.proceed();
+          if(Boolean.TRUE.equals(result)) {
+            for(final Board board : boards.values()) {
+              board.update(account, null, true);
+            }
+          }
+          return result;
+        }
+        default -> {
+          return call.proceed();
+        }
+      }
+    }
+
+    private Object batch(final ProviderCall call) throws Throwable {
+
+      if(!(call.name().equals("depositAll") || call.name().equals("withdrawAll"))) {
+        return call.proceed();
+      }
+
+      capture(call);
+      final Object result = call.proceed();
+      if(!(result instanceof final Map<?, ?> responses)) {
+        return result;
+      }
+
+      //depositAll(plugin, amounts, world, currency)
+      final Object[] args = call.args();
+      final Map<?, ?> amounts = call.arg(1, Map.class);
+      final Board board = board((args.length > 2)? (String)args[2] : null, (args.length > 3)? (String)args[3] : null);
+      if(board != null) {
+        for(final Map.Entry<?, ?> entry : responses.entrySet()) {
+
+          if(entry.getKey() instanceof final UUID account && entry.getValue() instanceof final EconomyResponse response
+             && response.transactionSuccess()) {
+            update(board, account, response, call.name(), amounts.get(account));
+          }
+        }
+      }
+      return result;
+    }
+
+    private void capture(final ProviderCall call) {
+
+      if(below == null) {
+        below = call.below(Economy.class);
+      }
+    }
+
+    private void update(final Board board, final UUID account, final EconomyResponse response,
+                        final String operation, final Object requested) {
+
+      if(response.balance != null) {
+
+        board.update(account, response.balance, true);
+        return;
+      }
+
+      final BigDecimal amount = (requested instanceof final BigDecimal found)? found : null;
+      if(amount != null && operation.equals("set")) {
+
+        board.update(account, amount, true);
+        return;
+      }
+
+      final BigDecimal change = (amount == null || !operation.startsWith("withdraw"))? amount : amount.negate();
+      if(!board.apply(account, change)) {
+        read(board, account);
+      }
+    }
+
+    /**
+     * Reads the balance of an account the board doesn't know yet off the calling thread, repeating
+     * the read for as long as mutations of the account complete while it runs.
+     */
+    private void read(final Board board, final UUID account) {
+
+      final Economy economy = below;
+      final String world = (board.currency == null)? null : Balances.DEFAULT_WORLD;
+      executor.execute(()->{
+        try {
+
+          BigDecimal balance = Balances.balance(economy, PLUGIN_NAME, account, world, board.currency);
+          while(!board.settle(account, balance)) {
+            balance = Balances.balance(economy, PLUGIN_NAME, account, world, board.currency);
+          }
+        } catch(final Exception e) {
+
+          board.abandon(account);
+          LOGGER.atWarning().withCause(e).log("Unable to read the balance of " + account + " for the leaderboard.");
+        }
+      });
+    }
+
+    /**
+     * Resolves the board of a single account mutation: (plugin, account, [world, [currency,]] amount).
+     */
+    @Nullable
+    private Board board(final Object[] args) {
+
+      return board((args.length > 3)? (String)args[2] : null, (args.length > 4)? (String)args[3] : null);
+    }
+
+    @Nullable
+    private Board board(final @Nullable String world, final @Nullable String currency) {
+
+      //only the default world is ranked.
+      if(world != null && !world.equals(Balances.DEFAULT_WORLD)) {
+        return null;
+      }
+      return boards.get(currency);
+    }
+
+    private void seed() {
+
+      final long start = System.currentTimeMillis();
+      try {
+
+        final AccountCursor cursor = AccountCursor.of(provider, directories.apply(provider.getName()));
+        List<UUID> page = cursor.next(chunkSize);
+        while(!page.isEmpty() && !cancelled) {
+
+          for(final Map.Entry<String, Board> entry : boards.entrySet()) {
+            seed(entry.getValue(), page, entry.getKey());
+          }
+          page = cursor.next(chunkSize);
+        }
+
+        if(!cancelled) {
+
+          boards.values().forEach(Board::seeded);
+          seeded = true;
+          LOGGER.atInfo().log("Seeded the leaderboard of " + provider.getName() + " with " + boards.get(null).size()
+                              + " accounts in " + (System.currentTimeMillis() - start) + "ms.");
+        }
+      } catch(final Exception e) {
+        LOGGER.atWarning().withCause(e).log("Unable to seed the leaderboard of " + provider.getName() + ".");
+      }
+    }
+
+    private void seed(final Board board, final List<UUID> page, final @Nullable String currency) {
+
+      final String world = (currency == null)? null : Balances.DEFAULT_WORLD;
+      final Map<UUID, BigDecimal> balances;
+      if(provider instanceof final BatchBalanceReader reader) {
+        balances = reader.balances(PLUGIN_NAME, page, world, currency);
+      } else {
+
+        balances = new LinkedHashMap<>(page.size() * 2);
+        for(final UUID account : page) {
+          balances.put(account, Balances.balance(provider, PLUGIN_NAME, account, world, currency));
+        }
+      }
+
+      for(final Map.Entry<UUID, BigDecimal> entry : balances.entrySet()) {
+        board.update(entry.getKey(), entry.getValue(), false);
+      }
+    }
+  }
+
+  private static final class Board {
+
+    private final String currency;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<UUID, BigDecimal> balances = new HashMap<>();
+    private final RankIndex index = new RankIndex(1024);
+
+    //accounts updated live while the seed scan runs, which the scan must not overwrite.
+    private final Set<UUID> touched = new HashSet<>();
+    private boolean seeding = true;
+
+    //accounts being read back, mapped to whether they changed again since their read started.
+    private final Map<UUID, Boolean> reading = new HashMap<>();
+
+    private Board(final @Nullable String currency) {
+
+      this.currency = currency;
+    }
+
+    /**
+     * Moves an account to a new balance, or removes it when the balance is {@code null}. Seeded
+     * balances never replace a balance set by a live update.
+     */
+    private void update(final UUID account, final @Nullable BigDecimal balance, final boolean live) {
+
+      lock.writeLock().lock();
+      try {
+
+        if(live && seeding) {
+          touched.add(account);
+        } else if(!live && touched.contains(account)) {
+          return;
+        }
+
+        if(live && reading.containsKey(account)) {
+          reading.put(account, true);
+        }
+
+        final BigDecimal previous = balances.get(account);
+
+        if(previous != null) {
+
+          if(Objects.equals(previous, balance)) {
+            return;
+          }
+          index.remove(account, previous);
+        }
+
+        if(balance == null) {
+          balances.remove(account);
+          return;
+        }
+
+        balances.put(account, balance);
+        index.insert(account, balance);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Applies a change to the balance the board holds for an account, or marks the account as
+     * being read back when the board doesn't hold a balance for it or the change is unknown.
+     *
+     * @return false if the caller must start the read, otherwise true.
+     */
+    private boolean apply(final UUID account, final @Nullable BigDecimal change) {
+
+      lock.writeLock().lock();
+      try {
+
+        final BigDecimal previous = balances.get(account);
+        if(reading.containsKey(account)) {
+
+          reading.put(account, true);
+          return true;
+        }
+
+        if(previous == null || change == null) {
+
+          reading.put(account, false);
+          return false;
+        }
+
+        update(account, previous.add(change), true);
+        return true;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    /**
+     * Completes a read of an account's balance.
+     *
+     * @return false if the account changed while it was read and must be read again, otherwise true.
+     */
+    private boolean settle(final UUID account, final @Nullable BigDecimal balance) {
+
+      lock.writeLock().lock();
+      try {
+
+        final Boolean changed = reading.get(account);
+        if(changed == null) {
+          return true;
+        }
+
+        if(changed) {
+
+          reading.put(account, false);
+          return false;
+        }
+
+        reading.remove(account);
+        update(account, balance, true);
+        return true;
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private void abandon(final UUID account) {
+
+      lock.writeLock().lock();
+      try {
+        reading.remove(account);
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private void seeded() {
+
+      lock.writeLock().lock();
+      try {
+
+        seeding = false;
+        touched.clear();
+      } finally {
+        lock.writeLock().unlock();
+      }
+    }
+
+    private int size() {
+
+      lock.readLock().lock();
+      try {
+        return index.size();
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * An account's position on a leaderboard.
+   *
+   * @param account the account identifier.
+   * @param balance the account's balance.
+   * @param rank the account's 1-based rank.
+   */
+  public record Entry(UUID account, BigDecimal balance, int rank) {
+  }
+}
@@ -0,0 +1,142 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * MoneyResult is the mutable, reusable result of a {@link ScaledEconomy} or
+ * {@link net.cfh.vault.FastEconomy} transaction, the allocation-free counterpart of an
+ * {@link net.milkbowl.vault2.economy.EconomyResponse}. A result is overwritten by the next
+ * transaction it is passed to, so callers should read what they need before reusing it.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class MoneyResult {
+
+  private boolean success = false;
+  private long amount = 0;
+  private long balance = 0;
+  private boolean balanceKnown = false;
+  private String error = null;
+
+  /**
+   * Records a successful transaction.
+   *
+   * @param amount the amount of the transaction, in units.
+   * @param balance the balance afterwards, in units.
+   * @return this result.
+   */
+  public MoneyResult succeed(final long amount, final long balance) {
+
+    this.success = true;
+    this.amount = amount;
+    this.balance = balance;
+    this.balanceKnown = true;
+    this.error = null;
+    return this;
+  }
+
+  /**
+   * Records a successful transaction whose resulting balance is unknown, either because the
+   * provider didn't report it or because it doesn't fit a {@code long} of units. The transaction
+   * was still applied, so callers must not retry it.
+   *
+   * @param amount the amount of the transaction, in units.
+   * @return this result.
+   */
+  public MoneyResult succeedUnknownBalance(final long amount) {
+
+    this.success = true;
+    this.amount = amount;
+    this.balance = 0;
+    this.balanceKnown = false;
+    this.error = null;
+    return this;
+  }
+
+  /**
+   * Records a failed transaction.
+   *
+   * @param amount the amount of the transaction, in units.
+   * @param error the reason the transaction failed, preferably a constant so failing allocates nothing.
+   * @return this result.
+   */
+  public MoneyResult fail(final long amount, final @Nullable String error) {
+
+    this.success = false;
+    this.amount = amount;
+    this.balance = 0;
+    this.balanceKnown = false;
+    this.error = error;
+    return this;
+  }
+
+  /**
+   * Determines if the transaction succeeded.
+   *
+   * @return true if the transaction succeeded, otherwise false.
+   */
+  public boolean success() {
+
+    return success;
+  }
+
+  /**
+   * Retrieves the amount of the transaction.
+   *
+   * @return the amount, in units.
+   */
+  public long amount() {
+
+    return amount;
+  }
+
+  /**
+   * Retrieves the balance after a successful transaction.
+   *
+   * @return the balance, in units, or 0 if the transaction failed or the balance is unknown.
+   */
+  public long balance() {
+
+    return balance;
+  }
+
+  /**
+   * Determines if {@link #balance()} holds the balance after the transaction. A successful
+   * transaction may leave it unknown, see {@link #succeedUnknownBalance(long)}.
+   *
+   * @return true if the balance is known, otherwise false.
+   */
+  public boolean balanceKnown() {
+
+    return balanceKnown;
+  }
+
+  /**
+   * Retrieves the reason the transaction failed.
+   *
+   * @return the reason, or {@code null} if the transaction succeeded.
+   */
+  @Nullable
+  public String error() {
+
+    return error;
+  }
+}
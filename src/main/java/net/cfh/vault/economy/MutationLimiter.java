@@ -0,0 +1,348 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * MutationLimiter bounds the economy mutations each calling plugin may make through the active
+ * {@link Economy} facade, keyed on the plugin name the 2.x API passes as the first argument, so a
+ * single misbehaving plugin can't starve every other plugin of the provider's database connections.
+ *
+ * <p>Every plugin gets a token bucket limiting its average rate and burst, tracked as a single
+ * theoretical arrival time that is advanced with one compare-and-set per call, and a bound on the
+ * mutations it may have in progress at once. Batch mutations cost one token per account. A batch
+ * larger than the burst only goes ahead once the plugin's bucket is full, and then holds back the
+ * plugin's following mutations until its whole cost has been paid back. Tokens taken by a mutation
+ * that is turned away after all are returned. Reads are never limited.</p>
+ *
+ * <p>What happens to a mutation over its plugin's limits depends on the {@link Mode}. A rejected
+ * mutation is answered with a failed response, or {@code false}, without reaching the provider.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class MutationLimiter implements ProviderLayer<Economy> {
+
+  public static final String LAYER = "rate-limit";
+
+  private static final String UNKNOWN_PLUGIN = "unknown";
+
+  private final Mode mode;
+  private final Limits defaults;
+  private final Map<String, Limits> overrides;
+  private final long queueTimeoutNanos;
+  private final Semaphore overflow;
+  private final Map<String, PluginLimiter> plugins = new ConcurrentHashMap<>();
+
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder queued = new LongAdder();
+  private final LongAdder degraded = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * Creates a new mutation limiter.
+   *
+   * @param mode what happens to mutations over their plugin's limits.
+   * @param defaults the limits of every plugin without an override.
+   * @param overrides the limits of specific plugins, keyed by plugin name.
+   * @param queueTimeoutMillis how long a mutation may wait for capacity in {@link Mode#QUEUE}, in milliseconds.
+   * @param overflowConcurrency how many mutations may run in the shared overflow lane of {@link Mode#DEGRADE}.
+   */
+  public MutationLimiter(final @NotNull Mode mode, final @NotNull Limits defaults,
+                         final @NotNull Map<String, Limits> overrides, final long queueTimeoutMillis,
+                         final int overflowConcurrency) {
+
+    this.mode = mode;
+    this.defaults = defaults;
+    this.overrides = new HashMap<>(overrides);
+    this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, queueTimeoutMillis));
+    this.overflow = new Semaphore(Math.max(0, overflowConcurrency));
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull Economy provider) {
+
+    return this::intercept;
+  }
+
+  private Object intercept(final ProviderCall call) throws Throwable {
+
+    final int cost;
+    if(call.account() != null) {
+
+      switch(call.name()) {
+        case "deposit", "withdraw", "set", "createAccount", "deleteAccount" -> cost = 1;
+        default -> {
+          return call.proceed();
+        }
+      }
+    } else {
+
+      final Collection<?> batch = call.accounts();
+      if(batch == null || !(call.name().equals("depositAll") || call.name().equals("withdrawAll"))) {
+        return call.proceed();
+      }
+      cost = Math.max(1, batch.size());
+    }
+
+    final String plugin = (call.pluginName() == null)? UNKNOWN_PLUGIN : call.pluginName();
+    PluginLimiter limiter = plugins.get(plugin);
+    if(limiter == null) {
+      limiter = plugins.computeIfAbsent(plugin, name->new PluginLimiter(overrides.getOrDefault(name, defaults)));
+    }
+
+    final long now = System.nanoTime();
+    final long timeout = (mode == Mode.QUEUE)? queueTimeoutNanos : 0;
+    final long delay = limiter.reserve(cost, now, timeout);
+    if(delay >= 0) {
+
+      if(delay > 0) {
+
+        queued.increment();
+        LockSupport.parkNanos(delay);
+      }
+
+      if(limiter.inFlight.tryAcquire()
+         || (timeout > 0 && limiter.inFlight.tryAcquire(Math.max(0, now + timeout - System.nanoTime()), TimeUnit.NANOSECONDS))) {
+
+        admitted.increment();
+        try {
+          return call.proceed();
+        } finally {
+          limiter.inFlight.release();
+        }
+      }
+
+      //turned away for lack of in-flight capacity, so give back what was taken from the bucket.
+      limiter.refund(cost);
+    }
+
+    if(mode == Mode.DEGRADE && overflow.tryAcquire()) {
+
+      degraded.increment();
+      try {
+        return call.proceed();
+      } finally {
+        overflow.release();
+      }
+    }
+
+    limiter.rejected.increment();
+    rejected.increment();
+    return reject(call, plugin);
+  }
+
+  /**
+   * Builds the answer to a rejected mutation from the return type of the called method.
+   */
+  @Nullable
+  private static Object reject(final ProviderCall call, final String plugin) {
+
+    final String message = "Economy mutations of " + plugin + " are being rate limited.";
+    final Class<?> type = call.method().getReturnType();
+    if(type == boolean.class || type == Boolean.class) {
+      return false;
+    }
+
+    if(type == EconomyResponse.class) {
+
+      final Object amount = call.args()[call.args().length - 1];
+      return new EconomyResponse((amount instanceof final BigDecimal value)? value : BigDecimal.ZERO, BigDecimal.ZERO,
+                                 EconomyResponse.ResponseType.FAILURE, message);
+    }
+
+    if(Map.class.isAssignableFrom(type) && call.arg(1, Map.class) instanceof final Map<?, ?> amounts) {
+
+      final Map<UUID, EconomyResponse> responses = new HashMap<>();
+      for(final Map.Entry<?, ?> entry : amounts.entrySet()) {
+        if(entry.getKey() instanceof final UUID account) {
+          responses.put(account, new EconomyResponse((entry.getValue() instanceof final BigDecimal value)? value : BigDecimal.ZERO,
+                                                     BigDecimal.ZERO, EconomyResponse.ResponseType.FAILURE, message));
+        }
+      }
+      return responses;
+    }
+    return null;
+  }
+
+  /**
+   * Retrieves the number of mutations of the specified plugin rejected so far.
+   *
+   * @param plugin the name of the plugin.
+   * @return the rejected mutation count.
+   */
+  public long rejected(final @NotNull String plugin) {
+
+    final PluginLimiter limiter = plugins.get(plugin);
+    return (limiter == null)? 0 : limiter.rejected.sum();
+  }
+
+  /**
+   * Retrieves the current statistics of this limiter.
+   *
+   * @return the current {@link Stats}.
+   */
+  public Stats stats() {
+
+    return new Stats(mode, admitted.sum(), queued.sum(), degraded.sum(), rejected.sum(), plugins.size());
+  }
+
+  private static final class PluginLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong arrival = new AtomicLong(System.nanoTime());
+    private final Semaphore inFlight;
+    private final LongAdder rejected = new LongAdder();
+
+    private PluginLimiter(final Limits limits) {
+
+      this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / Math.max(1, limits.perSecond()));
+      this.burstNanos = intervalNanos * Math.max(1, limits.burst());
+      this.inFlight = new Semaphore(Math.max(1, limits.maxInFlight()));
+    }
+
+    /**
+     * Takes tokens from the bucket, waiting for them for at most the specified time. The bucket is
+     * kept as the time at which it would be empty again, so taking tokens only moves that time
+     * forward, and a call may go ahead once it lies no further than the burst ahead of now.
+     *
+     * @return the time to wait before going ahead, or -1 if that would exceed {@code maxWaitNanos}
+     *         and no tokens were taken.
+     */
+    private long reserve(final int cost, final long now, final long maxWaitNanos) {
+
+      final long charge = cost * intervalNanos;
+      while(true) {
+
+        final long current = arrival.get();
+        final long base = (current - now < 0)? now : current;
+        final long next = base + charge;
+
+        //a batch larger than the burst could never fit, so it waits for a full bucket instead.
+        final long wait = (charge > burstNanos)? base - now : next - burstNanos - now;
+        if(wait > maxWaitNanos) {
+          return -1;
+        }
+
+        if(arrival.compareAndSet(current, next)) {
+          return Math.max(0, wait);
+        }
+      }
+    }
+
+    /**
+     * Returns the tokens taken by {@link #reserve(int, long, long)} for a call that didn't go ahead.
+     */
+    private void refund(final int cost) {
+
+      arrival.addAndGet(-cost * intervalNanos);
+    }
+  }
+
+  /**
+   * What a {@link MutationLimiter} does with a mutation over its plugin's limits.
+   */
+  public enum Mode {
+    /**
+     * Fails the mutation straight away.
+     */
+    REJECT,
+    /**
+     * Holds the calling thread until the plugin has capacity again, failing the mutation if that
+     * takes longer than the queue timeout. Best suited to plugins calling from their own threads.
+     */
+    QUEUE,
+    /**
+     * Runs the mutation in a small overflow lane shared by every plugin over its limits, failing it
+     * only if that lane is full too, so a busy plugin keeps working at a bounded cost to others.
+     */
+    DEGRADE;
+
+    /**
+     * Parses a mode from its name, ignoring case.
+     *
+     * @param name the name of the mode.
+     * @return the parsed mode, or {@code null} if there is no mode with that name.
+     */
+    @Nullable
+    public static Mode parse(final @NotNull String name) {
+
+      for(final Mode mode : values()) {
+        if(mode.name().equals(name.trim().toUpperCase(Locale.ROOT))) {
+          return mode;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The limits applied to a single plugin.
+   *
+   * @param perSecond the average number of mutations allowed per second.
+   * @param burst the number of mutations allowed at once after the plugin has been idle.
+   * @param maxInFlight the number of mutations the plugin may have in progress at the same time.
+   */
+  public record Limits(long perSecond, int burst, int maxInFlight) {
+  }
+
+  /**
+   * A point-in-time view of a {@link MutationLimiter}'s counters.
+   *
+   * @param mode what the limiter does with mutations over their plugin's limits.
+   * @param admitted the number of mutations admitted within their plugin's limits.
+   * @param queued the number of mutations held back until their plugin had capacity again.
+   * @param degraded the number of mutations run in the overflow lane.
+   * @param rejected the number of mutations rejected.
+   * @param plugins the number of plugins that have made a mutation.
+   */
+  public record Stats(Mode mode, long admitted, long queued, long degraded, long rejected, int plugins) {
+
+    /**
+     * Formats these statistics as a single human-readable line.
+     *
+     * @return the formatted statistics.
+     */
+    public String describe() {
+
+      return String.format("mode=%s admitted=%d queued=%d degraded=%d rejected=%d plugins=%d",
+                           mode, admitted, queued, degraded, rejected, plugins);
+    }
+  }
+}
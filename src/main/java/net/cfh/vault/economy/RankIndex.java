@@ -0,0 +1,351 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * RankIndex is an order-statistic treap of accounts ordered by balance, highest first, with ties
+ * broken by account identifier. Nodes live in parallel primitive arrays rather than as objects, and
+ * every node tracks the size of its subtree, so inserting, removing and ranking an account and
+ * locating the start of any page are all O(log n).
+ *
+ * <p>The index is not thread-safe; {@link Leaderboard} guards it with a read-write lock.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+final class RankIndex {
+
+  private static final int NIL = 0;
+
+  private int[] left;
+  private int[] right;
+  private int[] size;
+  private int[] priority;
+  private long[] most;
+  private long[] least;
+  private BigDecimal[] amount;
+
+  private int root = NIL;
+  private int next = 1;
+  private int free = NIL;
+
+  //results of split, only valid directly after it returns.
+  private int splitLeft;
+  private int splitRight;
+
+  RankIndex(final int capacity) {
+
+    final int length = Math.max(16, capacity + 1);
+    left = new int[length];
+    right = new int[length];
+    size = new int[length];
+    priority = new int[length];
+    most = new long[length];
+    least = new long[length];
+    amount = new BigDecimal[length];
+  }
+
+  /**
+   * Retrieves the number of indexed accounts.
+   *
+   * @return the account count.
+   */
+  int size() {
+
+    return size[root];
+  }
+
+  /**
+   * Adds an account with the specified balance. The account must not already be indexed.
+   *
+   * @param account the account identifier.
+   * @param balance the account's balance.
+   */
+  void insert(final UUID account, final BigDecimal balance) {
+
+    final int node = allocate();
+    most[node] = account.getMostSignificantBits();
+    least[node] = account.getLeastSignificantBits();
+    amount[node] = balance;
+    priority[node] = ThreadLocalRandom.current().nextInt();
+    left[node] = NIL;
+    right[node] = NIL;
+    size[node] = 1;
+    root = insert(root, node);
+  }
+
+  /**
+   * Removes an account that was indexed with the specified balance.
+   *
+   * @param account the account identifier.
+   * @param balance the balance the account was indexed with.
+   */
+  void remove(final UUID account, final BigDecimal balance) {
+
+    root = remove(root, balance, account.getMostSignificantBits(), account.getLeastSignificantBits());
+  }
+
+  /**
+   * Retrieves the 1-based rank of an account that is indexed with the specified balance.
+   *
+   * @param account the account identifier.
+   * @param balance the balance the account is indexed with.
+   * @return the account's rank, or -1 if it is not indexed with that balance.
+   */
+  int rank(final UUID account, final BigDecimal balance) {
+
+    final long accountMost = account.getMostSignificantBits();
+    final long accountLeast = account.getLeastSignificantBits();
+    int rank = 0;
+    int node = root;
+    while(node != NIL) {
+
+      final int compare = compare(balance, accountMost, accountLeast, node);
+      if(compare == 0) {
+        return rank + size[left[node]] + 1;
+      }
+
+      if(compare < 0) {
+        node = left[node];
+      } else {
+
+        rank += size[left[node]] + 1;
+        node = right[node];
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Visits up to {@code limit} accounts in rank order, starting at the specified 0-based offset.
+   *
+   * @param offset the number of highest ranked accounts to skip.
+   * @param limit the maximum number of accounts to visit.
+   * @param visitor the visitor called with each account, its balance and its 1-based rank.
+   */
+  void range(final int offset, final int limit, final Visitor visitor) {
+
+    if(offset >= size() || limit <= 0) {
+      return;
+    }
+
+    //descend to the node at offset, remembering every ancestor whose left subtree we entered.
+    int[] path = new int[64];
+    int depth = 0;
+    int node = root;
+    int skip = offset;
+    while(node != NIL) {
+
+      final int leftSize = size[left[node]];
+      if(skip > leftSize) {
+
+        skip -= leftSize + 1;
+        node = right[node];
+        continue;
+      }
+
+      if(depth == path.length) {
+        path = Arrays.copyOf(path, path.length * 2);
+      }
+      path[depth++] = node;
+      if(skip == leftSize) {
+        break;
+      }
+      node = left[node];
+    }
+
+    int rank = offset + 1;
+    for(int visited = 0; visited < limit && depth > 0; visited++) {
+
+      node = path[--depth];
+      visitor.visit(new UUID(most[node], least[node]), amount[node], rank++);
+
+      //continue with the leftmost node of the right subtree.
+      int child = right[node];
+      while(child != NIL) {
+
+        if(depth == path.length) {
+          path = Arrays.copyOf(path, path.length * 2);
+        }
+        path[depth++] = child;
+        child = left[child];
+      }
+    }
+  }
+
+  private int insert(final int tree, final int node) {
+
+    if(tree == NIL) {
+      return node;
+    }
+
+    if(priority[node] > priority[tree]) {
+
+      split(tree, node);
+      left[node] = splitLeft;
+      right[node] = splitRight;
+      update(node);
+      return node;
+    }
+
+    if(compare(amount[node], most[node], least[node], tree) < 0) {
+      left[tree] = insert(left[tree], node);
+    } else {
+      right[tree] = insert(right[tree], node);
+    }
+    update(tree);
+    return tree;
+  }
+
+  private int remove(final int tree, final BigDecimal balance, final long accountMost, final long accountLeast) {
+
+    if(tree == NIL) {
+      return NIL;
+    }
+
+    final int compare = compare(balance, accountMost, accountLeast, tree);
+    if(compare == 0) {
+
+      final int merged = merge(left[tree], right[tree]);
+      release(tree);
+      return merged;
+    }
+
+    if(compare < 0) {
+      left[tree] = remove(left[tree], balance, accountMost, accountLeast);
+    } else {
+      right[tree] = remove(right[tree], balance, accountMost, accountLeast);
+    }
+    update(tree);
+    return tree;
+  }
+
+  /**
+   * Splits a tree into the nodes ordered before the specified node and the rest.
+   */
+  private void split(final int tree, final int node) {
+
+    if(tree == NIL) {
+
+      splitLeft = NIL;
+      splitRight = NIL;
+      return;
+    }
+
+    if(compare(amount[tree], most[tree], least[tree], node) < 0) {
+
+      split(right[tree], node);
+      right[tree] = splitLeft;
+      update(tree);
+      splitLeft = tree;
+    } else {
+
+      split(left[tree], node);
+      left[tree] = splitRight;
+      update(tree);
+      splitRight = tree;
+    }
+  }
+
+  private int merge(final int first, final int second) {
+
+    if(first == NIL) {
+      return second;
+    }
+
+    if(second == NIL) {
+      return first;
+    }
+
+    if(priority[first] > priority[second]) {
+
+      right[first] = merge(right[first], second);
+      update(first);
+      return first;
+    }
+
+    left[second] = merge(first, left[second]);
+    update(second);
+    return second;
+  }
+
+  /**
+   * Compares a key with a node, higher balances ordering first.
+   */
+  private int compare(final BigDecimal balance, final long accountMost, final long accountLeast, final int node) {
+
+    final int byBalance = amount[node].compareTo(balance);
+    if(byBalance != 0) {
+      return byBalance;
+    }
+
+    final int byMost = Long.compare(accountMost, most[node]);
+    return (byMost != 0)? byMost : Long.compare(accountLeast, least[node]);
+  }
+
+  private void update(final int node) {
+
+    size[node] = size[left[node]] + size[right[node]] + 1;
+  }
+
+  private int allocate() {
+
+    if(free != NIL) {
+
+      final int node = free;
+      free = left[node];
+      return node;
+    }
+
+    if(next == left.length) {
+
+      final int length = left.length * 2;
+      left = Arrays.copyOf(left, length);
+      right = Arrays.copyOf(right, length);
+      size = Arrays.copyOf(size, length);
+      priority = Arrays.copyOf(priority, length);
+      most = Arrays.copyOf(most, length);
+      least = Arrays.copyOf(least, length);
+      amount = Arrays.copyOf(amount, length);
+    }
+    return next++;
+  }
+
+  private void release(final int node) {
+
+    amount[node] = null;
+    size[node] = 0;
+    left[node] = free;
+    right[node] = NIL;
+    free = node;
+  }
+
+  /**
+   * Receives the accounts visited by {@link #range(int, int, Visitor)}.
+   */
+  @FunctionalInterface
+  interface Visitor {
+
+    void visit(UUID account, BigDecimal balance, int rank);
+  }
+}
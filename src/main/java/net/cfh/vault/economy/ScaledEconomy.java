@@ -0,0 +1,95 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.UUID;
+
+/**
+ * ScaledEconomy is an optional extension an {@link net.milkbowl.vault2.economy.Economy} provider may
+ * implement to serve {@link net.cfh.vault.FastEconomy} without allocating. Amounts are whole units
+ * of a currency's smallest denomination held in a {@code long}, so with a scale of 2 a balance of
+ * 12.34 is 1234 units, and results are written into a {@link MoneyResult} owned by the caller.
+ * VaultUnlocked converts to and from {@link java.math.BigDecimal} for providers that do not
+ * implement it.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public interface ScaledEconomy {
+
+  /**
+   * Retrieves the number of fractional digits the units of a currency represent.
+   *
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the scale of the currency's units.
+   */
+  int scale(@Nullable String currency);
+
+  /**
+   * Reads a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the read.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @return the balance, in units.
+   */
+  long balanceUnits(@NotNull String pluginName, @NotNull UUID account, @Nullable String world, @Nullable String currency);
+
+  /**
+   * Deposits into a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the deposit.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param units the amount to deposit, in units.
+   * @param result the result to fill in.
+   */
+  void depositUnits(@NotNull String pluginName, @NotNull UUID account, @Nullable String world,
+                    @Nullable String currency, long units, @NotNull MoneyResult result);
+
+  /**
+   * Withdraws from a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the withdrawal.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param units the amount to withdraw, in units.
+   * @param result the result to fill in.
+   */
+  void withdrawUnits(@NotNull String pluginName, @NotNull UUID account, @Nullable String world,
+                     @Nullable String currency, long units, @NotNull MoneyResult result);
+
+  /**
+   * Sets a balance in the specified context.
+   *
+   * @param pluginName the name of the plugin performing the write.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param units the new balance, in units.
+   * @param result the result to fill in.
+   */
+  void setUnits(@NotNull String pluginName, @NotNull UUID account, @Nullable String world,
+                @Nullable String currency, long units, @NotNull MoneyResult result);
+}
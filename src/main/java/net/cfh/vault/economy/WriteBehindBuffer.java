@@ -0,0 +1,511 @@
+package net.cfh.vault.economy;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * WriteBehindBuffer absorbs deposits made through the active {@link Economy} facade and combines
+ * them per account, world and currency, flushing the combined deltas to the provider on a fixed
+ * interval or as soon as a threshold of pending deltas is reached.
+ *
+ * <p>Reads stay consistent with buffered deposits: a balance lookup in the same context as the
+ * account's pending deltas returns the provider's balance plus the pending delta, while any other
+ * call that depends on the account's balance, such as a withdrawal, first flushes the account.
+ * Every pending delta is flushed when the buffer is closed on shutdown, after which deposits go
+ * straight to the provider.</p>
+ *
+ * <p>A deposit is only buffered once the account's balance in its context is known, from a deposit
+ * passed through to the provider or a balance lookup, and is then answered with that balance plus
+ * the pending delta without reading the provider. The first deposit of an account after each flush
+ * therefore still reaches the provider. A buffered deposit is reported as successful before the
+ * provider has seen it, so it can still fail when it is flushed. A delta that fails with
+ * an exception is kept and retried on the next flush, while one the provider refuses can't be retried
+ * blindly, so it is logged and kept as a {@link DeadLetter} that {@link #deadLetters()} reports until
+ * it is settled by hand. Layers outside this one, such as the journal and leaderboard, have already
+ * recorded such a deposit as successful.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class WriteBehindBuffer implements ProviderLayer<Economy>, AutoCloseable {
+
+  public static final String LAYER = "write-behind";
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+  private static final String PLUGIN_NAME = "VaultUnlocked";
+  private static final int MAX_DEAD_LETTERS = 10000;
+
+  private final int maxPending;
+  private final ScheduledExecutorService flusher;
+  private final AtomicBoolean flushQueued = new AtomicBoolean(false);
+  private final ConcurrentLinkedQueue<DeadLetter> deadLetters = new ConcurrentLinkedQueue<>();
+
+  private final LongAdder buffered = new LongAdder();
+  private final LongAdder flushed = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  private volatile Buffer current = null;
+  private volatile boolean closed = false;
+  private volatile Consumer<UUID> flushes = null;
+
+  /**
+   * Creates a new write-behind buffer and starts its flush schedule.
+   *
+   * @param intervalMillis how often pending deltas are flushed, in milliseconds.
+   * @param maxPending the number of pending deltas that triggers an early flush.
+   */
+  public WriteBehindBuffer(final long intervalMillis, final int maxPending) {
+
+    this.maxPending = Math.max(1, maxPending);
+    this.flusher = Executors.newSingleThreadScheduledExecutor(runnable->{
+      final Thread thread = new Thread(runnable, "VaultUnlocked-WriteBehind");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final long interval = Math.max(50, intervalMillis);
+    this.flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull Economy provider) {
+
+    final Buffer previous = current;
+    current = new Buffer(provider);
+
+    //deltas buffered for the previous provider belong to it, so drain them there.
+    if(previous != null) {
+      try {
+        flusher.execute(previous::flushAll);
+      } catch(final RejectedExecutionException e) {
+        previous.flushAll();
+      }
+    }
+    return current;
+  }
+
+  /**
+   * Sets the listener told about every account whose deltas were written to the provider, which is
+   * when other servers sharing the economy can first read the new balance.
+   *
+   * @param listener the listener, or {@code null} to remove it.
+   */
+  public void flushes(final @Nullable Consumer<UUID> listener) {
+
+    this.flushes = listener;
+  }
+
+  /**
+   * Flushes every pending delta of the current provider.
+   */
+  public void flush() {
+
+    flushQueued.set(false);
+    final Buffer buffer = current;
+    if(buffer != null) {
+      buffer.flushAll();
+    }
+  }
+
+  /**
+   * Retrieves the number of deltas currently waiting to be flushed.
+   *
+   * @return the pending delta count.
+   */
+  public int pending() {
+
+    final Buffer buffer = current;
+    return (buffer == null)? 0 : buffer.pendingDeltas.get();
+  }
+
+  /**
+   * Retrieves the current statistics of this buffer.
+   *
+   * @return the current {@link Stats}.
+   */
+  public Stats stats() {
+
+    return new Stats(buffered.sum(), flushed.sum(), rejected.sum(), pending(), deadLetters.size());
+  }
+
+  /**
+   * Retrieves the buffered deposits the provider refused when they were flushed, oldest first. Only
+   * the most recent {@value #MAX_DEAD_LETTERS} are kept, every one of them is also logged.
+   *
+   * @return a copy of the dead letters.
+   */
+  public List<DeadLetter> deadLetters() {
+
+    return List.copyOf(deadLetters);
+  }
+
+  /**
+   * Stops the flush schedule and synchronously flushes every pending delta.
+   */
+  @Override
+  public void close() {
+
+    closed = true;
+    flusher.shutdown();
+    try {
+      flusher.awaitTermination(10, TimeUnit.SECONDS);
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+  }
+
+  private final class Buffer implements ProviderInterceptor {
+
+    private final Economy provider;
+    private final Map<UUID, Pending> accounts = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingDeltas = new AtomicInteger();
+
+    private Buffer(final Economy provider) {
+
+      this.provider = provider;
+    }
+
+    @Override
+    public Object intercept(final @NotNull ProviderCall call) throws Throwable {
+
+      final UUID account = call.account();
+      if(account == null) {
+        return batch(call);
+      }
+
+      //once closed nothing flushes anymore, so the account's last deltas go ahead of the call.
+      if(closed) {
+
+        final Pending pending = accounts.get(account);
+        if(pending != null) {
+          synchronized(pending) {
+            flush(account, pending);
+          }
+        }
+        return call.proceed();
+      }
+
+      final Object[] args = call.args();
+      switch(call.name()) {
+
+        case "deposit" -> {
+
+          //deposit(plugin, account, [world, [currency,]] amount)
+          if(args[args.length - 1] instanceof final BigDecimal amount && amount.signum() > 0) {
+            return deposit(call, account, (args.length > 3)? (String)args[2] : null,
+                           (args.length > 4)? (String)args[3] : null, amount);
+          }
+          return call.proceed();
+        }
+        case "balance", "getBalance" -> {
+          return balance(call, account, (args.length > 2)? (String)args[2] : null,
+                         (args.length > 3)? (String)args[3] : null);
+        }
+        case "withdraw", "set", "has", "deleteAccount" -> {
+
+          final Pending pending = accounts.get(account);
+          if(pending != null) {
+            synchronized(pending) {
+              flush(account, pending);
+            }
+          }
+          return call.proceed();
+        }
+        default -> {
+          return call.proceed();
+        }
+      }
+    }
+
+    private Object batch(final ProviderCall call) throws Throwable {
+
+      //batch reads and writes see the provider directly, so hand it every pending deposit first.
+      final Collection<?> batch = call.accounts();
+      if(batch != null && (call.name().equals("balances") || call.name().equals("depositAll")
+                           || call.name().equals("withdrawAll"))) {
+
+        for(final Object account : batch) {
+
+          final Pending pending = (account instanceof final UUID id)? accounts.get(id) : null;
+          if(pending != null) {
+            synchronized(pending) {
+              flush((UUID)account, pending);
+            }
+          }
+        }
+      }
+      return call.proceed();
+    }
+
+    private Object deposit(final ProviderCall call, final UUID account, final @Nullable String world,
+                           final @Nullable String currency, final BigDecimal amount) throws Throwable {
+
+      final ContextKey key = new ContextKey(world, currency);
+      while(true) {
+
+        final Pending pending = accounts.computeIfAbsent(account, id->new Pending());
+        synchronized(pending) {
+
+          if(pending.detached) {
+            continue;
+          }
+
+          //closed while waiting for the monitor, so the final flush may have missed this account.
+          if(closed) {
+            flush(account, pending);
+            return call.proceed();
+          }
+
+          final Delta delta = pending.deltas.get(key);
+          if(delta == null) {
+
+            //deltas in another context may alias this one, so settle them rather than guess a balance.
+            if(!pending.deltas.isEmpty()) {
+              flush(account, pending);
+              return call.proceed();
+            }
+
+            //without a known balance the response couldn't carry one, so let the provider answer it.
+            final Object result = call.proceed();
+            if(result instanceof final EconomyResponse response && response.transactionSuccess()
+               && response.balance != null) {
+
+              pending.deltas.put(key, new Delta(response.balance));
+              if(pendingDeltas.incrementAndGet() >= maxPending && flushQueued.compareAndSet(false, true)) {
+                queueFlush();
+              }
+            } else {
+
+              pending.detached = true;
+              accounts.remove(account, pending);
+            }
+            return result;
+          }
+
+          delta.amount = delta.amount.add(amount);
+          buffered.increment();
+          return new EconomyResponse(amount, delta.base.add(delta.amount), EconomyResponse.ResponseType.SUCCESS, "");
+        }
+      }
+    }
+
+    private void queueFlush() {
+
+      try {
+        flusher.execute(WriteBehindBuffer.this::flush);
+      } catch(final RejectedExecutionException e) {
+
+        //closed in the meantime, and close() flushes everything itself.
+        flushQueued.set(false);
+      }
+    }
+
+    private Object balance(final ProviderCall call, final UUID account, final @Nullable String world,
+                           final @Nullable String currency) throws Throwable {
+
+      final Pending pending = accounts.get(account);
+      if(pending == null) {
+        return call.proceed();
+      }
+
+      synchronized(pending) {
+
+        final Delta delta = pending.deltas.get(new ContextKey(world, currency));
+        if(!pending.detached && delta != null && pending.deltas.size() == 1) {
+
+          final Object result = call.proceed();
+          if(result instanceof final BigDecimal balance) {
+
+            delta.base = balance;
+            return balance.add(delta.amount);
+          }
+          return result;
+        }
+
+        //deltas in another context may alias this one, so settle them before reading.
+        flush(account, pending);
+        return call.proceed();
+      }
+    }
+
+    private void flushAll() {
+
+      for(final Map.Entry<UUID, Pending> entry : accounts.entrySet()) {
+        synchronized(entry.getValue()) {
+          flush(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    /**
+     * Writes the pending deltas of an account to the provider. Must hold the monitor of {@code pending}.
+     */
+    private void flush(final UUID account, final Pending pending) {
+
+      if(pending.detached) {
+        return;
+      }
+
+      boolean written = false;
+      final Iterator<Map.Entry<ContextKey, Delta>> iterator = pending.deltas.entrySet().iterator();
+      while(iterator.hasNext()) {
+
+        final Map.Entry<ContextKey, Delta> entry = iterator.next();
+        final ContextKey key = entry.getKey();
+        final BigDecimal amount = entry.getValue().amount;
+        if(amount.signum() == 0) {
+
+          //only the balance was known, nothing was buffered on top of it.
+          iterator.remove();
+          pendingDeltas.decrementAndGet();
+          continue;
+        }
+
+        try {
+
+          final EconomyResponse response = Balances.deposit(provider, PLUGIN_NAME, account, key.world(),
+                                                            key.currency(), amount);
+          if(response.transactionSuccess()) {
+            flushed.increment();
+            written = true;
+          } else {
+
+            rejected.increment();
+            deadLetter(new DeadLetter(account, key.world(), key.currency(), amount, provider.getName(),
+                                      response.errorMessage, System.currentTimeMillis()));
+          }
+        } catch(final RuntimeException e) {
+
+          LOGGER.atWarning().withCause(e).log("Unable to flush buffered deposit of " + amount + " to " + account
+                                              + ", retrying on the next flush.");
+          continue;
+        }
+
+        iterator.remove();
+        pendingDeltas.decrementAndGet();
+      }
+
+      final Consumer<UUID> listener = flushes;
+      if(written && listener != null) {
+        listener.accept(account);
+      }
+
+      if(pending.deltas.isEmpty()) {
+        pending.detached = true;
+        accounts.remove(account, pending);
+      }
+    }
+  }
+
+  private void deadLetter(final DeadLetter letter) {
+
+    LOGGER.atSevere().log("Provider " + letter.provider() + " rejected buffered deposit of " + letter.amount()
+                          + " to " + letter.account() + ", which was already reported as successful: "
+                          + letter.reason());
+    deadLetters.add(letter);
+    while(deadLetters.size() > MAX_DEAD_LETTERS) {
+      deadLetters.poll();
+    }
+  }
+
+  private static final class Pending {
+
+    private final Map<ContextKey, Delta> deltas = new HashMap<>(4);
+    private boolean detached = false;
+  }
+
+  private static final class Delta {
+
+    private BigDecimal base;
+    private BigDecimal amount = BigDecimal.ZERO;
+
+    private Delta(final BigDecimal base) {
+
+      this.base = base;
+    }
+  }
+
+  private record ContextKey(@Nullable String world, @Nullable String currency) {
+  }
+
+  /**
+   * A buffered deposit the provider refused when it was flushed, after the caller had already been
+   * told it succeeded.
+   *
+   * @param account the account identifier.
+   * @param world the world of the deposit, or {@code null} for the default.
+   * @param currency the currency of the deposit, or {@code null} for the default.
+   * @param amount the combined amount that was refused.
+   * @param provider the name of the provider that refused it.
+   * @param reason the error message of the provider's response.
+   * @param rejectedAt when the provider refused it, in epoch milliseconds.
+   */
+  public record DeadLetter(UUID account, @Nullable String world, @Nullable String currency, BigDecimal amount,
+                           String provider, @Nullable String reason, long rejectedAt) {
+  }
+
+  /**
+   * A point-in-time view of a {@link WriteBehindBuffer}'s counters.
+   *
+   * @param buffered the number of deposits absorbed by the buffer.
+   * @param flushed the number of combined deltas written to the provider.
+   * @param rejected the number of combined deltas the provider rejected.
+   * @param pending the number of combined deltas waiting to be flushed.
+   * @param deadLetters the number of refused deltas kept as {@link DeadLetter}s.
+   */
+  public record Stats(long buffered, long flushed, long rejected, long pending, long deadLetters) {
+
+    /**
+     * Formats these statistics as a single human-readable line.
+     *
+     * @return the formatted statistics.
+     */
+    public String describe() {
+
+      return String.format("buffered=%d flushed=%d rejected=%d pending=%d deadLetters=%d", buffered, flushed, rejected,
+                           pending, deadLetters);
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package net.cfh.vault.facade;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * ProviderCall represents a single method call made on a provider facade as it travels through
+ * the facade's interceptors.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class ProviderCall {
+
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private final Object provider;
+  private final Method method;
+  private final Object[] args;
+  private final ProviderInterceptor[] chain;
+
+  private int index = 0;
+
+  ProviderCall(final Object provider, final Method method, final @Nullable Object[] args,
+               final ProviderInterceptor[] chain) {
+
+    this.provider = provider;
+    this.method = method;
+    this.args = (args == null)? NO_ARGS : args;
+    this.chain = chain;
+  }
+
+  /**
+   * Passes this call on to the next interceptor, or to the provider once every interceptor has
+   * been visited.
+   *
+   * @return the result of the call.
+   * @throws Throwable any exception thrown by the remaining interceptors or the provider.
+   */
+  public Object proceed() throws Throwable {
+
+    if(index < chain.length) {
+      return chain[index++].intercept(this);
+    }
+
+    try {
+      return method.invoke(provider, args);
+    } catch(final InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Retrieves the undecorated provider this call is ultimately made on.
+   *
+   * @return the provider.
+   */
+  @NotNull
+  public Object provider() {
+
+    return provider;
+  }
+
+  /**
+   * Retrieves the provider as seen by the interceptor currently handling this call: calls made on
+   * it pass through the interceptors this call has yet to reach, so an interceptor can read state
+   * the layers beneath it still hold, such as deposits a write-behind buffer has not flushed. Must be
+   * called before {@link #proceed()}.
+   *
+   * @param type the provider type.
+   * @param <T> the provider type.
+   * @return the provider behind the remaining interceptors.
+   */
+  @NotNull
+  public <T> T below(final @NotNull Class<T> type) {
+
+    final T target = type.cast(provider);
+    if(index >= chain.length) {
+      return target;
+    }
+    return ProviderFacade.wrap(type, target, List.of(Arrays.copyOfRange(chain, index, chain.length)));
+  }
+
+  /**
+   * Retrieves the method being called.
+   *
+   * @return the called method.
+   */
+  @NotNull
+  public Method method() {
+
+    return method;
+  }
+
+  /**
+   * Retrieves the name of the method being called.
+   *
+   * @return the called method's name.
+   */
+  @NotNull
+  public String name() {
+
+    return method.getName();
+  }
+
+  /**
+   * Retrieves the call's arguments. Interceptors may replace entries before proceeding.
+   *
+   * @return the arguments, never {@code null}.
+   */
+  @NotNull
+  public Object[] args() {
+
+    return args;
+  }
+
+  /**
+   * Retrieves the calling plugin's name, which the 2.x economy API passes as the first argument.
+   *
+   * @return the plugin name, or {@code null} if the first argument is not a string.
+   */
+  @Nullable
+  public String pluginName() {
+
+    return (args.length > 0 && args[0] instanceof final String name)? name : null;
+  }
+
+  /**
+   * Retrieves the account the call targets, which the 2.x economy API passes after the plugin name.
+   *
+   * @return the account identifier, or {@code null} if the call does not target an account.
+   */
+  @Nullable
+  public UUID account() {
+
+    return (args.length > 1 && args[1] instanceof final UUID account)? account : null;
+  }
+
+  /**
+   * Retrieves the accounts a batch call targets, which batch extensions pass after the plugin name
+   * either as a collection of account identifiers or as a map keyed by them.
+   *
+   * @return the accounts, or {@code null} if the call is not a batch call.
+   */
+  @Nullable
+  public Collection<?> accounts() {
+
+    if(args.length > 1 && args[1] instanceof final Collection<?> accounts) {
+      return accounts;
+    }
+    return (args.length > 1 && args[1] instanceof final Map<?, ?> accounts)? accounts.keySet() : null;
+  }
+
+  /**
+   * Retrieves the first argument of the specified type, starting at the specified index.
+   *
+   * @param from the index to start searching from.
+   * @param type the argument type.
+   * @param <A> the argument type.
+   * @return the argument, or {@code null} if none of that type follows {@code from}.
+   */
+  @Nullable
+  public <A> A arg(final int from, final @NotNull Class<A> type) {
+
+    for(int i = from; i < args.length; i++) {
+      if(type.isInstance(args[i])) {
+        return type.cast(args[i]);
+      }
+    }
+    return null;
+  }
+}
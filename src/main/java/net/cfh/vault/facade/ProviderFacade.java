@@ -0,0 +1,135 @@
+package net.cfh.vault.facade;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * ProviderFacade builds the single proxy VaultUnlocked hands out in place of the active provider.
+ * The proxy exposes every interface the provider implements, including optional extensions such
+ * as {@link net.cfh.vault.economy.AccountPaging}, and routes each call through a fixed chain of
+ * {@link ProviderInterceptor}s before it reaches the provider.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class ProviderFacade {
+
+  private ProviderFacade() {
+  }
+
+  /**
+   * Wraps a provider in a facade applying the specified interceptors, in order.
+   *
+   * @param type the provider type exposed by the facade.
+   * @param provider the provider to wrap.
+   * @param interceptors the interceptors to apply, outermost first.
+   * @param <T> the provider type.
+   * @return the facade, or the provider itself if there are no interceptors.
+   */
+  @NotNull
+  public static <T> T wrap(final @NotNull Class<T> type, final @NotNull T provider,
+                           final @NotNull List<ProviderInterceptor> interceptors) {
+
+    if(interceptors.isEmpty()) {
+      return provider;
+    }
+
+    final Handler handler = new Handler(provider, interceptors.toArray(new ProviderInterceptor[0]));
+    try {
+
+      final Set<Class<?>> interfaces = new LinkedHashSet<>();
+      interfaces.add(type);
+      collect(provider.getClass(), interfaces);
+      return type.cast(Proxy.newProxyInstance(provider.getClass().getClassLoader(),
+                                              interfaces.toArray(new Class<?>[0]), handler));
+    } catch(final IllegalArgumentException e) {
+
+      //an extension interface isn't visible to the provider's loader; expose only the provider type.
+      return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+    }
+  }
+
+  /**
+   * Retrieves the provider behind a facade.
+   *
+   * @param provider the facade, or a provider that isn't wrapped.
+   * @param <T> the provider type.
+   * @return the undecorated provider.
+   */
+  @NotNull
+  @SuppressWarnings("unchecked")
+  public static <T> T unwrap(final @NotNull T provider) {
+
+    if(Proxy.isProxyClass(provider.getClass())
+       && Proxy.getInvocationHandler(provider) instanceof final Handler handler) {
+      return (T)handler.provider;
+    }
+    return provider;
+  }
+
+  private static void collect(final Class<?> type, final Set<Class<?>> interfaces) {
+
+    for(Class<?> current = type; current != null; current = current.getSuperclass()) {
+      for(final Class<?> implemented : current.getInterfaces()) {
+
+        if(interfaces.add(implemented)) {
+          collect(implemented, interfaces);
+        }
+      }
+    }
+  }
+
+  private static final class Handler implements InvocationHandler {
+
+    private final Object provider;
+    private final ProviderInterceptor[] chain;
+
+    private Handler(final Object provider, final ProviderInterceptor[] chain) {
+
+      this.provider = provider;
+      this.chain = chain;
+    }
+
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+
+      if(method.getDeclaringClass() == Object.class) {
+
+        if("equals".equals(method.getName())) {
+          return proxy == args[0] || provider.equals(args[0]);
+        }
+
+        try {
+          return method.invoke(provider, args);
+        } catch(final InvocationTargetException e) {
+          throw e.getCause();
+        }
+      }
+      return new ProviderCall(provider, method, args, chain).proceed();
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package net.cfh.vault.facade;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * ProviderInterceptor is a single layer of the facade VaultUnlocked places around the active
+ * economy, permission or chat provider. An interceptor either answers a call itself or passes it
+ * on to the next layer, and ultimately the provider, through {@link ProviderCall#proceed()}.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+@FunctionalInterface
+public interface ProviderInterceptor {
+
+  /**
+   * Intercepts a call made on the facade.
+   *
+   * @param call the call being made.
+   * @return the result of the call.
+   * @throws Throwable any exception thrown by this layer or by the layers and provider behind it.
+   */
+  Object intercept(@NotNull ProviderCall call) throws Throwable;
+}
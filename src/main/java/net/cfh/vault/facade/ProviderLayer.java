@@ -0,0 +1,44 @@
+package net.cfh.vault.facade;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * ProviderLayer creates the {@link ProviderInterceptor} a feature places around a provider. A new
+ * interceptor is created every time the active provider changes, so per-provider state such as
+ * cached results never outlives the provider it was built from.
+ *
+ * @param <T> the provider type.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+@FunctionalInterface
+public interface ProviderLayer<T> {
+
+  /**
+   * Creates the interceptor for the specified provider.
+   *
+   * @param provider the provider that became active.
+   * @return the interceptor to apply, or {@code null} to leave this provider undecorated.
+   */
+  @Nullable
+  ProviderInterceptor create(@NotNull T provider);
+}
@@ -0,0 +1,183 @@
+package net.cfh.vault.health;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.VaultUnlockedServicesManager;
+import net.milkbowl.vault2.chat.ChatUnlocked;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.permission.PermissionUnlocked;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * HealthMonitor periodically probes every enabled economy, permission and chat provider in the
+ * background and refreshes the {@link VaultUnlockedServicesManager} whenever a provider's health
+ * changes, so routing moves to the healthiest provider without any work on the calling thread.
+ *
+ * <p>Probes run in parallel on virtual threads, and a probe that doesn't finish within the timeout
+ * counts as failed without holding up the probes of other providers. A service whose tracker has no
+ * probe is only evaluated from its live calls.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class HealthMonitor implements AutoCloseable {
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private final ProviderHealth<Economy> economy;
+  private final ProviderHealth<PermissionUnlocked> permission;
+  private final ProviderHealth<ChatUnlocked> chat;
+  private final long timeoutNanos;
+  private final ScheduledExecutorService scheduler;
+  private final ExecutorService probes = Executors.newVirtualThreadPerTaskExecutor();
+
+  /**
+   * Creates a new monitor and starts its probe schedule.
+   *
+   * @param economy the health tracker of the economy providers.
+   * @param permission the health tracker of the permission providers.
+   * @param chat the health tracker of the chat providers.
+   * @param intervalMillis how often every provider is probed, in milliseconds.
+   * @param timeoutMillis how long a probe may take before it counts as failed, in milliseconds.
+   */
+  public HealthMonitor(final @NotNull ProviderHealth<Economy> economy, final @NotNull ProviderHealth<PermissionUnlocked> permission,
+                       final @NotNull ProviderHealth<ChatUnlocked> chat, final long intervalMillis, final long timeoutMillis) {
+
+    this.economy = economy;
+    this.permission = permission;
+    this.chat = chat;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, timeoutMillis));
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable->{
+      final Thread thread = new Thread(runnable, "VaultUnlocked-Health");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final long interval = Math.max(100, intervalMillis);
+    this.scheduler.scheduleWithFixedDelay(this::probe, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Probes every enabled provider once and refreshes the active providers if any status changed.
+   */
+  public void probe() {
+
+    try {
+
+      final VaultUnlockedServicesManager services = VaultUnlockedServicesManager.get();
+      boolean changed = probe(economy, services.economyProviderNames(), services::economyObj, Economy::isEnabled);
+      changed |= probe(permission, services.permissionProviderNames(), services::permissionObj, PermissionUnlocked::isEnabled);
+      changed |= probe(chat, services.chatProviderNames(), services::chatObj, ChatUnlocked::isEnabled);
+
+      if(changed) {
+        services.refresh();
+      }
+    } catch(final Exception e) {
+      LOGGER.atWarning().withCause(e).log("Unable to probe provider health.");
+    }
+  }
+
+  private <T> boolean probe(final ProviderHealth<T> health, final List<String> names, final Function<String, T> lookup,
+                            final Predicate<T> enabled) {
+
+    health.retain(names);
+
+    final List<String> probed = new ArrayList<>(names.size());
+    final List<Future<Long>> results = new ArrayList<>(names.size());
+    for(final String name : names) {
+
+      final T provider = lookup.apply(name);
+      if(provider == null || !enabled.test(provider)) {
+        continue;
+      }
+
+      probed.add(name);
+      if(!health.probes()) {
+
+        results.add(CompletableFuture.completedFuture(0L));
+        continue;
+      }
+      results.add(probes.submit(()->{
+        final long start = System.nanoTime();
+        health.probe(provider);
+        return System.nanoTime() - start;
+      }));
+    }
+
+    boolean changed = false;
+    final long deadline = System.nanoTime() + timeoutNanos;
+    for(int i = 0; i < probed.size(); i++) {
+
+      final Future<Long> result = results.get(i);
+      long nanos = timeoutNanos;
+      boolean success = false;
+      try {
+
+        nanos = result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        success = true;
+      } catch(final TimeoutException e) {
+        result.cancel(true);
+      } catch(final ExecutionException e) {
+        LOGGER.atFine().withCause(e.getCause()).log("Health probe of " + health.service() + " provider " + probed.get(i) + " failed.");
+      } catch(final InterruptedException e) {
+
+        Thread.currentThread().interrupt();
+        return changed;
+      }
+      changed |= health.evaluate(probed.get(i), nanos, success);
+    }
+    return changed;
+  }
+
+  /**
+   * Creates a report of every tracked provider of every service.
+   *
+   * @return the current reports.
+   */
+  public List<ProviderHealth.Report> reports() {
+
+    final List<ProviderHealth.Report> reports = new ArrayList<>(economy.reports());
+    reports.addAll(permission.reports());
+    reports.addAll(chat.reports());
+    return reports;
+  }
+
+  /**
+   * Stops the probe schedule and interrupts any running probe.
+   */
+  @Override
+  public void close() {
+
+    scheduler.shutdownNow();
+    probes.shutdownNow();
+  }
+}
@@ -0,0 +1,325 @@
+package net.cfh.vault.health;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * ProviderHealth tracks the health of every provider of one service type, combining the results of
+ * periodic background probes with the latency and error rate of live calls made through the active
+ * provider. The {@link net.cfh.vault.ProviderRegistry} consults it when choosing which provider is
+ * active, so a degraded provider is demoted in favour of a healthy one.
+ *
+ * <p>Live calls only add to a few counters, which are folded into the provider's status once per
+ * probe. A service without a probe is tracked from live calls alone, so only the active provider's
+ * status is measured, while a provider that was demoted recovers once it has gone several
+ * evaluations without calls. A provider becomes degraded as soon as a probe fails or its latency or error rate crosses a
+ * threshold, unhealthy after several failed probes in a row or once half of its calls fail, and only
+ * recovers after several healthy evaluations in a row, so a flapping provider doesn't keep switching
+ * the active provider back and forth.</p>
+ *
+ * @param <T> the provider type.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class ProviderHealth<T> implements ProviderLayer<T> {
+
+  public static final String LAYER = "health";
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+  private static final int MIN_CALLS = 20;
+
+  private final String service;
+  private final Function<T, String> nameFunction;
+  private final Probe<T> probe;
+  private final long latencyNanos;
+  private final int errorPercent;
+  private final int failureThreshold;
+  private final int recoveryProbes;
+  private final Map<String, Tracker> trackers = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a new health tracker.
+   *
+   * @param service the name of the service, such as {@code economy}.
+   * @param nameFunction the function used to obtain a provider's name.
+   * @param probe the probe run against every enabled provider, or {@code null} to track health from
+   *              live calls only.
+   * @param latencyMillis the latency above which a provider is degraded, in milliseconds.
+   * @param errorPercent the percentage of failed live calls above which a provider is degraded.
+   * @param failureThreshold the number of failed probes in a row that make a provider unhealthy.
+   * @param recoveryProbes the number of healthy evaluations in a row needed to recover.
+   */
+  public ProviderHealth(final @NotNull String service, final @NotNull Function<T, String> nameFunction,
+                        final @Nullable Probe<T> probe, final long latencyMillis, final int errorPercent,
+                        final int failureThreshold, final int recoveryProbes) {
+
+    this.service = service;
+    this.nameFunction = nameFunction;
+    this.probe = probe;
+    this.latencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, latencyMillis));
+    this.errorPercent = Math.max(1, errorPercent);
+    this.failureThreshold = Math.max(1, failureThreshold);
+    this.recoveryProbes = Math.max(1, recoveryProbes);
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull T provider) {
+
+    final Tracker tracker = tracker(nameFunction.apply(provider));
+    return call->intercept(tracker, call);
+  }
+
+  private Object intercept(final Tracker tracker, final ProviderCall call) throws Throwable {
+
+    final long start = System.nanoTime();
+    boolean error = true;
+    try {
+
+      final Object result = call.proceed();
+      error = false;
+      return result;
+    } finally {
+
+      tracker.calls.increment();
+      tracker.latency.add(System.nanoTime() - start);
+      if(error) {
+        tracker.errors.increment();
+      }
+    }
+  }
+
+  /**
+   * Retrieves the name of the tracked service.
+   *
+   * @return the service name.
+   */
+  public String service() {
+
+    return service;
+  }
+
+  /**
+   * Retrieves the current status of the provider registered under the specified name.
+   *
+   * @param name the name of the provider.
+   * @return the provider's status, {@link Status#HEALTHY} if it hasn't been evaluated yet.
+   */
+  @NotNull
+  public Status status(final @NotNull String name) {
+
+    final Tracker tracker = trackers.get(name);
+    return (tracker == null)? Status.HEALTHY : tracker.status;
+  }
+
+  /**
+   * Checks whether this tracker has a probe, rather than tracking health from live calls only.
+   *
+   * @return true if providers are probed, otherwise false.
+   */
+  public boolean probes() {
+
+    return probe != null;
+  }
+
+  /**
+   * Runs this tracker's probe against the specified provider, if it has one.
+   *
+   * @param provider the provider to probe.
+   * @throws Exception if the probe failed.
+   */
+  public void probe(final @NotNull T provider) throws Exception {
+
+    if(probe != null) {
+      probe.probe(provider);
+    }
+  }
+
+  /**
+   * Folds the result of a probe and the live calls made since the previous evaluation into the
+   * status of the provider registered under the specified name.
+   *
+   * @param name the name of the provider.
+   * @param probeNanos how long the probe took, in nanoseconds.
+   * @param success whether the probe succeeded within its timeout.
+   * @return true if the provider's status changed, otherwise false.
+   */
+  public boolean evaluate(final @NotNull String name, final long probeNanos, final boolean success) {
+
+    final Tracker tracker = tracker(name);
+    synchronized(tracker) {
+
+      final long calls = tracker.calls.sumThenReset();
+      final long errors = tracker.errors.sumThenReset();
+      final long latency = tracker.latency.sumThenReset();
+
+      tracker.failures = (success)? 0 : tracker.failures + 1;
+      tracker.lastLatency = (calls >= MIN_CALLS)? Math.max(probeNanos, latency / calls) : probeNanos;
+      tracker.lastErrorPercent = (calls >= MIN_CALLS)? (int)(errors * 100 / calls) : 0;
+
+      final Status measured;
+      if(tracker.failures >= failureThreshold || tracker.lastErrorPercent >= 50) {
+        measured = Status.UNHEALTHY;
+      } else if(!success || tracker.lastLatency >= latencyNanos || tracker.lastErrorPercent >= errorPercent) {
+        measured = Status.DEGRADED;
+      } else {
+        measured = Status.HEALTHY;
+      }
+
+      //worse statuses apply at once, better ones only after enough good evaluations in a row.
+      Status next = measured;
+      if(measured.ordinal() < tracker.status.ordinal()) {
+
+        tracker.recovering++;
+        next = (tracker.recovering >= recoveryProbes)? measured : tracker.status;
+      }
+
+      if(next == measured) {
+        tracker.recovering = 0;
+      }
+
+      if(next == tracker.status) {
+        return false;
+      }
+
+      LOGGER.atWarning().log(String.format("%s provider %s is now %s (latency=%.1fms errors=%d%% failedProbes=%d).",
+                                           service, name, next, tracker.lastLatency / 1_000_000.0,
+                                           tracker.lastErrorPercent, tracker.failures));
+      tracker.status = next;
+      return true;
+    }
+  }
+
+  /**
+   * Drops the tracked state of every provider not in the specified collection of names.
+   *
+   * @param names the names of the currently registered providers.
+   */
+  public void retain(final @NotNull Collection<String> names) {
+
+    trackers.keySet().retainAll(names);
+  }
+
+  /**
+   * Creates a report of every tracked provider.
+   *
+   * @return the current reports.
+   */
+  public List<Report> reports() {
+
+    final List<Report> reports = new ArrayList<>(trackers.size());
+    for(final Map.Entry<String, Tracker> entry : trackers.entrySet()) {
+
+      final Tracker tracker = entry.getValue();
+      synchronized(tracker) {
+        reports.add(new Report(service, entry.getKey(), tracker.status, tracker.lastLatency,
+                               tracker.lastErrorPercent, tracker.failures));
+      }
+    }
+    return Collections.unmodifiableList(reports);
+  }
+
+  private Tracker tracker(final String name) {
+
+    final Tracker tracker = trackers.get(name);
+    return (tracker == null)? trackers.computeIfAbsent(name, key->new Tracker()) : tracker;
+  }
+
+  /**
+   * A lightweight check run against a provider in the background, such as a read that touches the
+   * provider's storage. A probe fails by throwing or by exceeding the probe timeout.
+   *
+   * @param <T> the provider type.
+   */
+  @FunctionalInterface
+  public interface Probe<T> {
+
+    /**
+     * Probes the specified provider.
+     *
+     * @param provider the provider to probe.
+     * @throws Exception if the provider is not working.
+     */
+    void probe(@NotNull T provider) throws Exception;
+  }
+
+  /**
+   * The health of a provider, ordered from best to worst.
+   */
+  public enum Status {
+
+    HEALTHY,
+    DEGRADED,
+    UNHEALTHY
+  }
+
+  /**
+   * The health of a single provider at its last evaluation.
+   *
+   * @param service the service name.
+   * @param provider the provider name.
+   * @param status the provider's status.
+   * @param latencyNanos the latency measured at the last evaluation, in nanoseconds.
+   * @param errorPercent the percentage of live calls that failed since the evaluation before it.
+   * @param failedProbes the number of failed probes in a row.
+   */
+  public record Report(String service, String provider, Status status, long latencyNanos, int errorPercent,
+                       int failedProbes) {
+
+    /**
+     * Formats this report as a single human-readable line.
+     *
+     * @return the formatted report.
+     */
+    public String describe() {
+
+      return String.format("%s=%s latency=%.1fms errors=%d%% failedProbes=%d", provider, status,
+                           latencyNanos / 1_000_000.0, errorPercent, failedProbes);
+    }
+  }
+
+  private static final class Tracker {
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder latency = new LongAdder();
+
+    //guarded by the tracker's monitor, status is also read lock-free while resolving.
+    private volatile Status status = Status.HEALTHY;
+    private int failures;
+    private int recovering;
+    private long lastLatency;
+    private int lastErrorPercent;
+  }
+}
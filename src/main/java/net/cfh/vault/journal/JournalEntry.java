@@ -0,0 +1,79 @@
+package net.cfh.vault.journal;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * JournalEntry is a single balance change read back from a {@link TransactionJournal}.
+ *
+ * @param timestamp the time the change was made, in epoch milliseconds.
+ * @param operation the kind of change.
+ * @param provider the name of the economy the change was made against.
+ * @param plugin the name of the plugin that made the change.
+ * @param account the account identifier.
+ * @param world the world, or {@code null} for the default world.
+ * @param currency the currency, or {@code null} for the default currency.
+ * @param amount the amount deposited or withdrawn, or the balance set.
+ * @param previous the balance before a set, or {@code null} if it was not captured.
+ * @param balance the balance reported by the provider afterwards, or {@code null} if none was reported.
+ * @param success true if the provider reported the change as successful.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public record JournalEntry(long timestamp, Operation operation, @NotNull String provider, @Nullable String plugin,
+                           @NotNull UUID account, @Nullable String world, @Nullable String currency,
+                           @NotNull BigDecimal amount, @Nullable BigDecimal previous,
+                           @Nullable BigDecimal balance, boolean success) {
+
+  /**
+   * Formats this entry as a single human-readable line.
+   *
+   * @return the formatted entry.
+   */
+  public String describe() {
+
+    return String.format("%s %s %s %s plugin=%s world=%s currency=%s amount=%s previous=%s balance=%s %s",
+                         Instant.ofEpochMilli(timestamp), provider, operation, account, plugin, world, currency,
+                         amount.toPlainString(), (previous == null)? "?" : previous.toPlainString(),
+                         (balance == null)? "?" : balance.toPlainString(), (success)? "ok" : "failed");
+  }
+
+  /**
+   * The kinds of balance change recorded by the journal.
+   */
+  public enum Operation {
+
+    DEPOSIT,
+    WITHDRAW,
+    SET;
+
+    private static final Operation[] VALUES = values();
+
+    static Operation of(final int code) {
+
+      return VALUES[code];
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package net.cfh.vault.journal;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * JournalReader reads the entries written by a {@link TransactionJournal} back from its directory.
+ * It may be used while the journal is still being written to, in which case records that are not
+ * yet fully written are skipped.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class JournalReader {
+
+  private JournalReader() {
+  }
+
+  /**
+   * Reads every entry with a timestamp in the specified range, in segment order, which is the
+   * order the entries were appended in.
+   *
+   * @param directory the directory the journal is stored in.
+   * @param from the start of the range, inclusive, in epoch milliseconds.
+   * @param to the end of the range, exclusive, in epoch milliseconds.
+   * @param consumer the consumer handed every entry in the range.
+   * @throws IOException if the journal could not be read.
+   */
+  public static void read(final @NotNull Path directory, final long from, final long to,
+                          final @NotNull Consumer<JournalEntry> consumer) throws IOException {
+
+    final Map<Integer, String> names = dictionary(directory.resolve(TransactionJournal.DICTIONARY)).names();
+    for(final Path segment : segments(directory)) {
+
+      try(final FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ)) {
+
+        final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        final int records = (int)(channel.size() / TransactionJournal.RECORD_SIZE);
+        for(int i = 0; i < records; i++) {
+
+          final int base = i * TransactionJournal.RECORD_SIZE;
+          final long timestamp = (long)TransactionJournal.LONGS.getAcquire(buffer, base + TransactionJournal.TIMESTAMP);
+          if(timestamp != 0 && timestamp >= from && timestamp < to) {
+            consumer.accept(entry(buffer, base, timestamp, names));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads every entry with a timestamp in the specified range into a list ordered by timestamp.
+   *
+   * @param directory the directory the journal is stored in.
+   * @param from the start of the range, inclusive, in epoch milliseconds.
+   * @param to the end of the range, exclusive, in epoch milliseconds.
+   * @return the entries in the range, oldest first.
+   * @throws IOException if the journal could not be read.
+   */
+  @NotNull
+  public static List<JournalEntry> read(final @NotNull Path directory, final long from, final long to) throws IOException {
+
+    final List<JournalEntry> entries = new ArrayList<>();
+    read(directory, from, to, entries::add);
+
+    //concurrent writers may publish records slightly out of order, the sort is stable for equal times.
+    entries.sort((first, second)->Long.compare(first.timestamp(), second.timestamp()));
+    return entries;
+  }
+
+  private static JournalEntry entry(final ByteBuffer buffer, final int base, final long timestamp,
+                                    final Map<Integer, String> names) {
+
+    final int flags = buffer.get(base + TransactionJournal.FLAGS);
+    return new JournalEntry(timestamp,
+                            JournalEntry.Operation.of(buffer.get(base + TransactionJournal.OPERATION)),
+                            names.getOrDefault(buffer.getInt(base + TransactionJournal.PROVIDER), "?"),
+                            names.get(buffer.getInt(base + TransactionJournal.PLUGIN)),
+                            new UUID(buffer.getLong(base + TransactionJournal.MOST), buffer.getLong(base + TransactionJournal.LEAST)),
+                            names.get(buffer.getInt(base + TransactionJournal.WORLD)),
+                            names.get(buffer.getInt(base + TransactionJournal.CURRENCY)),
+                            decimal(buffer, base + TransactionJournal.AMOUNT, base + TransactionJournal.AMOUNT_SCALE),
+                            ((flags & TransactionJournal.HAS_PREVIOUS) != 0)?
+                            decimal(buffer, base + TransactionJournal.PREVIOUS, base + TransactionJournal.PREVIOUS_SCALE) : null,
+                            ((flags & TransactionJournal.HAS_BALANCE) != 0)?
+                            decimal(buffer, base + TransactionJournal.BALANCE, base + TransactionJournal.BALANCE_SCALE) : null,
+                            (flags & TransactionJournal.SUCCESS) != 0);
+  }
+
+  private static BigDecimal decimal(final ByteBuffer buffer, final int offset, final int scaleOffset) {
+
+    final long high = buffer.getLong(offset);
+    final long low = buffer.getLong(offset + 8);
+    final BigInteger unscaled = ((high == 0 && low >= 0) || (high == -1 && low < 0))? BigInteger.valueOf(low)
+                                : new BigInteger(ByteBuffer.allocate(16).putLong(high).putLong(low).array());
+    return new BigDecimal(unscaled, buffer.getShort(scaleOffset));
+  }
+
+  /**
+   * Reads the dictionary of interned names.
+   *
+   * @param file the dictionary file.
+   * @return the names keyed by id and the length of the complete entries, empty if the file does not
+   *         exist.
+   * @throws IOException if the dictionary could not be read.
+   */
+  static Dictionary dictionary(final Path file) throws IOException {
+
+    final Map<Integer, String> names = new HashMap<>();
+    if(!Files.exists(file)) {
+      return new Dictionary(names, 0);
+    }
+
+    final byte[] bytes = Files.readAllBytes(file);
+    final ByteArrayInputStream stream = new ByteArrayInputStream(bytes);
+    long length = 0;
+    try(final DataInputStream in = new DataInputStream(stream)) {
+
+      while(true) {
+
+        names.put(in.readInt(), in.readUTF());
+        length = bytes.length - stream.available();
+      }
+    } catch(final EOFException ignored) {
+      //the end of the dictionary, or a trailing partial entry left behind by a crash mid-write.
+    }
+    return new Dictionary(names, length);
+  }
+
+  /**
+   * The interned names of a journal.
+   *
+   * @param names the names keyed by id.
+   * @param length the length of the dictionary file up to the end of its last complete entry.
+   */
+  record Dictionary(Map<Integer, String> names, long length) {
+  }
+
+  /**
+   * Lists the segment files of a journal in the order they were written.
+   *
+   * @param directory the directory the journal is stored in.
+   * @return the segment files, oldest first.
+   * @throws IOException if the directory could not be listed.
+   */
+  static List<Path> segments(final Path directory) throws IOException {
+
+    if(!Files.isDirectory(directory)) {
+      return List.of();
+    }
+
+    try(final Stream<Path> files = Files.list(directory)) {
+      return files.filter(file->sequence(file) > 0).sorted().toList();
+    }
+  }
+
+  static long sequence(final Path file) {
+
+    final String name = file.getFileName().toString();
+    if(!name.startsWith(TransactionJournal.SEGMENT_PREFIX) || !name.endsWith(TransactionJournal.SEGMENT_SUFFIX)) {
+      return -1;
+    }
+
+    try {
+      return Long.parseLong(name.substring(TransactionJournal.SEGMENT_PREFIX.length(),
+                                           name.length() - TransactionJournal.SEGMENT_SUFFIX.length()));
+    } catch(final NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  static String name(final long sequence) {
+
+    return String.format("%s%020d%s", TransactionJournal.SEGMENT_PREFIX, sequence, TransactionJournal.SEGMENT_SUFFIX);
+  }
+}
@@ -0,0 +1,169 @@
+package net.cfh.vault.journal;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.economy.Balances;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * JournalReplayer applies a range of {@link JournalEntry}s again, or undoes them, against the
+ * economies they were originally made against. Only entries the provider reported as successful are
+ * considered.
+ *
+ * <p>Reversing walks the entries newest first, withdrawing what was deposited, depositing what was
+ * withdrawn and restoring the previous balance of every set, which makes it possible to back out a
+ * broken conversion. A set whose previous balance was not captured cannot be reversed and is
+ * skipped.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public final class JournalReplayer {
+
+  /**
+   * The plugin name replayed and reversed changes are made under.
+   */
+  public static final String PLUGIN_NAME = "VaultUnlocked-Journal";
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  private JournalReplayer() {
+  }
+
+  /**
+   * Makes the specified changes again, oldest first.
+   *
+   * @param entries the entries to replay, oldest first.
+   * @param filter the filter an entry must pass to be replayed.
+   * @param economies the function resolving a provider name to the economy to apply changes to.
+   * @return the outcome of the replay.
+   */
+  @NotNull
+  public static Result replay(final @NotNull List<JournalEntry> entries, final @NotNull Predicate<JournalEntry> filter,
+                              final @NotNull Function<String, Economy> economies) {
+
+    long applied = 0;
+    long skipped = 0;
+    long failed = 0;
+    for(final JournalEntry entry : entries) {
+
+      final Economy economy = economies.apply(entry.provider());
+      if(!entry.success() || !filter.test(entry) || economy == null) {
+        skipped++;
+        continue;
+      }
+
+      final EconomyResponse response = apply(economy, entry, entry.operation(), entry.amount());
+      if(response != null && response.transactionSuccess()) {
+        applied++;
+      } else {
+        failed++;
+      }
+    }
+    return new Result(applied, skipped, failed);
+  }
+
+  /**
+   * Undoes the specified changes, newest first.
+   *
+   * @param entries the entries to reverse, oldest first.
+   * @param filter the filter an entry must pass to be reversed.
+   * @param economies the function resolving a provider name to the economy to apply changes to.
+   * @return the outcome of the reversal.
+   */
+  @NotNull
+  public static Result reverse(final @NotNull List<JournalEntry> entries, final @NotNull Predicate<JournalEntry> filter,
+                               final @NotNull Function<String, Economy> economies) {
+
+    long applied = 0;
+    long skipped = 0;
+    long failed = 0;
+    for(int i = entries.size() - 1; i >= 0; i--) {
+
+      final JournalEntry entry = entries.get(i);
+      final Economy economy = economies.apply(entry.provider());
+      if(!entry.success() || !filter.test(entry) || economy == null
+         || (entry.operation() == JournalEntry.Operation.SET && entry.previous() == null)) {
+        skipped++;
+        continue;
+      }
+
+      final JournalEntry.Operation inverse = switch(entry.operation()) {
+        case DEPOSIT -> JournalEntry.Operation.WITHDRAW;
+        case WITHDRAW -> JournalEntry.Operation.DEPOSIT;
+        case SET -> JournalEntry.Operation.SET;
+      };
+
+      final BigDecimal amount = (inverse == JournalEntry.Operation.SET)? entry.previous() : entry.amount();
+      final EconomyResponse response = apply(economy, entry, inverse, amount);
+      if(response != null && response.transactionSuccess()) {
+        applied++;
+      } else {
+        failed++;
+      }
+    }
+    return new Result(applied, skipped, failed);
+  }
+
+  @Nullable
+  private static EconomyResponse apply(final Economy economy, final JournalEntry entry,
+                                       final JournalEntry.Operation operation, final BigDecimal amount) {
+
+    try {
+      return switch(operation) {
+        case DEPOSIT -> Balances.deposit(economy, PLUGIN_NAME, entry.account(), entry.world(), entry.currency(), amount);
+        case WITHDRAW -> Balances.withdraw(economy, PLUGIN_NAME, entry.account(), entry.world(), entry.currency(), amount);
+        case SET -> Balances.set(economy, PLUGIN_NAME, entry.account(), entry.world(), entry.currency(), amount);
+      };
+    } catch(final Exception e) {
+
+      LOGGER.atWarning().withCause(e).log("Unable to apply journal entry: " + entry.describe());
+      return null;
+    }
+  }
+
+  /**
+   * The outcome of a replay or reversal.
+   *
+   * @param applied the number of changes applied.
+   * @param skipped the number of entries skipped, because they failed originally, were filtered out,
+   *                could not be reversed or their economy is no longer registered.
+   * @param failed the number of changes the economy rejected.
+   */
+  public record Result(long applied, long skipped, long failed) {
+
+    /**
+     * Formats this result as a single human-readable line.
+     *
+     * @return the formatted result.
+     */
+    public String describe() {
+
+      return String.format("applied=%d skipped=%d failed=%d", applied, skipped, failed);
+    }
+  }
+}
@@ -0,0 +1,675 @@
+package net.cfh.vault.journal;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.economy.Balances;
+import net.cfh.vault.economy.ContextBalance;
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderFacade;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.economy.EconomyResponse;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * TransactionJournal is an append-only audit log of every balance change made through the economy
+ * facade, and through conversions, kept so that a time range of changes can later be inspected,
+ * replayed or reversed with a {@link JournalReplayer}.
+ *
+ * <p>Entries are fixed size records written into memory-mapped segment files. A writer reserves a
+ * record with a single atomic increment and writes it in place, publishing the timestamp last so
+ * that readers skip records still being written, which keeps appends free of locks and per-entry
+ * buffers. Plugin, provider, world and currency names are interned into a small dictionary file
+ * instead of being repeated in every record. Segments are forced to disk by a background thread on
+ * a fixed interval, so one {@code fsync} covers every entry appended in between.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class TransactionJournal implements ProviderLayer<Economy>, AutoCloseable {
+
+  public static final String LAYER = "journal";
+
+  static final int RECORD_SIZE = 96;
+  static final String DICTIONARY = "journal.dict";
+  static final String SEGMENT_PREFIX = "journal-";
+  static final String SEGMENT_SUFFIX = ".seg";
+
+  //record layout, timestamp first so an empty record reads as zero.
+  static final int TIMESTAMP = 0;
+  static final int MOST = 8;
+  static final int LEAST = 16;
+  static final int OPERATION = 24;
+  static final int FLAGS = 25;
+  static final int AMOUNT_SCALE = 26;
+  static final int PREVIOUS_SCALE = 28;
+  static final int BALANCE_SCALE = 30;
+  static final int PROVIDER = 32;
+  static final int PLUGIN = 36;
+  static final int WORLD = 40;
+  static final int CURRENCY = 44;
+  static final int AMOUNT = 48;
+  static final int PREVIOUS = 64;
+  static final int BALANCE = 80;
+
+  static final int SUCCESS = 1;
+  static final int HAS_PREVIOUS = 2;
+  static final int HAS_BALANCE = 4;
+
+  static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+
+  //38 digits always fit the 128 bit unscaled value of a record.
+  private static final MathContext PRECISION = new MathContext(38, RoundingMode.HALF_EVEN);
+
+  private final Path directory;
+  private final int segmentRecords;
+  private final long retentionMillis;
+  private final boolean capturePrevious;
+
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  private final FileChannel dictionary;
+  private final List<Segment> retiring = new ArrayList<>();
+  private final ScheduledExecutorService syncer;
+
+  private final LongAdder appended = new LongAdder();
+  private final LongAdder dropped = new LongAdder();
+  private final LongAdder syncs = new LongAdder();
+
+  private volatile Segment current;
+  private volatile boolean closed = false;
+
+  /**
+   * Opens the journal in the specified directory, starting a new segment after any left behind by
+   * a previous run.
+   *
+   * @param directory the directory the journal is stored in.
+   * @param segmentMegabytes the size of each segment file, in megabytes.
+   * @param syncMillis how often appended entries are forced to disk, in milliseconds.
+   * @param retentionDays how long segments are kept for, in days, or 0 to keep them forever.
+   * @param capturePrevious true to read the balance before every set, so that sets can be reversed.
+   * @throws IOException if the journal could not be opened.
+   */
+  public TransactionJournal(final @NotNull Path directory, final int segmentMegabytes, final long syncMillis,
+                            final int retentionDays, final boolean capturePrevious) throws IOException {
+
+    this.directory = directory;
+    this.segmentRecords = (int)Math.min(Integer.MAX_VALUE / RECORD_SIZE,
+                                        Math.max(1, segmentMegabytes) * 1024L * 1024L / RECORD_SIZE);
+    this.retentionMillis = TimeUnit.DAYS.toMillis(Math.max(0, retentionDays));
+    this.capturePrevious = capturePrevious;
+
+    Files.createDirectories(directory);
+    final JournalReader.Dictionary names = JournalReader.dictionary(directory.resolve(DICTIONARY));
+    for(final Map.Entry<Integer, String> entry : names.names().entrySet()) {
+      ids.put(entry.getValue(), entry.getKey());
+    }
+
+    //drop a partial entry left by a crash, new entries would otherwise be read as part of it.
+    this.dictionary = FileChannel.open(directory.resolve(DICTIONARY), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    this.dictionary.truncate(names.length());
+    this.dictionary.position(this.dictionary.size());
+
+    long sequence = 0;
+    for(final Path segment : JournalReader.segments(directory)) {
+      sequence = Math.max(sequence, JournalReader.sequence(segment));
+    }
+    this.current = open(sequence + 1);
+    expire();
+
+    this.syncer = Executors.newSingleThreadScheduledExecutor(runnable->{
+      final Thread thread = new Thread(runnable, "VaultUnlocked-Journal");
+      thread.setDaemon(true);
+      return thread;
+    });
+    final long interval = Math.max(1, syncMillis);
+    this.syncer.scheduleWithFixedDelay(this::sync, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull Economy provider) {
+
+    final String name = provider.getName();
+    return call->intercept(name, call);
+  }
+
+  /**
+   * Wraps an economy so that the changes made through it are journaled, used for economies that
+   * are written to directly rather than through the facade, such as conversion targets.
+   *
+   * @param economy the economy to wrap.
+   * @return the journaled economy.
+   */
+  @NotNull
+  public Economy wrap(final @NotNull Economy economy) {
+
+    return ProviderFacade.wrap(Economy.class, economy, List.of(create(economy)));
+  }
+
+  /**
+   * Retrieves the directory this journal is stored in.
+   *
+   * @return the journal directory.
+   */
+  @NotNull
+  public Path directory() {
+
+    return directory;
+  }
+
+  /**
+   * Appends an entry to the journal. Entries appended after the journal was closed, or while a new
+   * segment could not be opened, are counted as dropped rather than failing the caller.
+   *
+   * @param operation the kind of change.
+   * @param provider the name of the economy the change was made against.
+   * @param plugin the name of the plugin that made the change.
+   * @param account the account identifier.
+   * @param world the world, or {@code null} for the default world.
+   * @param currency the currency, or {@code null} for the default currency.
+   * @param amount the amount deposited or withdrawn, or the balance set.
+   * @param previous the balance before a set, or {@code null} if it is unknown.
+   * @param balance the balance reported afterwards, or {@code null} if none was reported.
+   * @param success true if the change succeeded.
+   */
+  public void append(final @NotNull JournalEntry.Operation operation, final @NotNull String provider,
+                     final @Nullable String plugin, final @NotNull UUID account, final @Nullable String world,
+                     final @Nullable String currency, final @NotNull BigDecimal amount,
+                     final @Nullable BigDecimal previous, final @Nullable BigDecimal balance,
+                     final boolean success) {
+
+    if(closed) {
+      dropped.increment();
+      return;
+    }
+
+    final int providerId = id(provider);
+    final int pluginId = id(plugin);
+    final int worldId = id(world);
+    final int currencyId = id(currency);
+    if(providerId < 0 || pluginId < 0 || worldId < 0 || currencyId < 0) {
+      dropped.increment();
+      return;
+    }
+
+    while(true) {
+
+      final Segment segment = current;
+      final int slot = segment.next.getAndIncrement();
+      if(slot >= segment.capacity) {
+
+        if(!rotate(segment)) {
+          dropped.increment();
+          return;
+        }
+        continue;
+      }
+
+      final int base = slot * RECORD_SIZE;
+      final MappedByteBuffer buffer = segment.buffer;
+      int flags = (success)? SUCCESS : 0;
+      buffer.putLong(base + MOST, account.getMostSignificantBits());
+      buffer.putLong(base + LEAST, account.getLeastSignificantBits());
+      buffer.put(base + OPERATION, (byte)operation.ordinal());
+      buffer.putInt(base + PROVIDER, providerId);
+      buffer.putInt(base + PLUGIN, pluginId);
+      buffer.putInt(base + WORLD, worldId);
+      buffer.putInt(base + CURRENCY, currencyId);
+      decimal(buffer, base + AMOUNT, base + AMOUNT_SCALE, amount);
+      if(previous != null) {
+        decimal(buffer, base + PREVIOUS, base + PREVIOUS_SCALE, previous);
+        flags |= HAS_PREVIOUS;
+      }
+      if(balance != null) {
+        decimal(buffer, base + BALANCE, base + BALANCE_SCALE, balance);
+        flags |= HAS_BALANCE;
+      }
+      buffer.put(base + FLAGS, (byte)flags);
+
+      //publish the record; readers treat a zero timestamp as a record still being written.
+      LONGS.setRelease(buffer, base + TIMESTAMP, System.currentTimeMillis());
+      segment.dirty = true;
+      segment.written.incrementAndGet();
+      appended.increment();
+      return;
+    }
+  }
+
+  /**
+   * Forces every entry appended so far to disk.
+   */
+  public void sync() {
+
+    final Segment segment = current;
+    if(segment.dirty) {
+
+      segment.dirty = false;
+      segment.buffer.force();
+      syncs.increment();
+    }
+
+    synchronized(this) {
+
+      //a retired segment is forced once more after its last reserved record has been written.
+      retiring.removeIf(retired->{
+
+        final boolean finished = retired.written.get() >= retired.capacity;
+        if(retired.dirty || finished) {
+          retired.dirty = false;
+          retired.buffer.force();
+        }
+        return finished;
+      });
+    }
+  }
+
+  /**
+   * Retrieves the current statistics of this journal.
+   *
+   * @return the current {@link Stats}.
+   */
+  public Stats stats() {
+
+    return new Stats(appended.sum(), dropped.sum(), syncs.sum(), current.sequence);
+  }
+
+  @Override
+  public void close() {
+
+    if(closed) {
+      return;
+    }
+    closed = true;
+
+    syncer.shutdownNow();
+    try {
+      syncer.awaitTermination(5, TimeUnit.SECONDS);
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    synchronized(this) {
+
+      current.buffer.force();
+      for(final Segment retired : retiring) {
+        retired.buffer.force();
+      }
+      retiring.clear();
+
+      try {
+        dictionary.close();
+      } catch(final IOException e) {
+        LOGGER.atWarning().withCause(e).log("Unable to close the journal dictionary.");
+      }
+    }
+  }
+
+  private Object intercept(final String provider, final ProviderCall call) throws Throwable {
+
+    final UUID account = call.account();
+    if(account == null) {
+      return batch(provider, call);
+    }
+
+    final JournalEntry.Operation operation = switch(call.name()) {
+      case "deposit" -> JournalEntry.Operation.DEPOSIT;
+      case "withdraw" -> JournalEntry.Operation.WITHDRAW;
+      case "set" -> JournalEntry.Operation.SET;
+      default -> null;
+    };
+
+    //deposit/withdraw/set(plugin, account, [world, [currency,]] amount)
+    final Object[] args = call.args();
+    if(operation == null || !(args[args.length - 1] instanceof final BigDecimal amount)) {
+      return call.proceed();
+    }
+
+    final String plugin = call.pluginName();
+    final String world = (args.length > 3)? string(args, 2) : null;
+    final String currency = (args.length > 4)? string(args, 3) : null;
+    final BigDecimal previous = (operation == JournalEntry.Operation.SET)?
+                                previous(call, plugin, account, world, currency) : null;
+
+    final Object result;
+    try {
+      result = call.proceed();
+    } catch(final Throwable t) {
+
+      append(operation, provider, plugin, account, world, currency, amount, previous, null, false);
+      throw t;
+    }
+
+    if(result instanceof final EconomyResponse response) {
+      append(operation, provider, plugin, account, world, currency, amount, previous, response.balance,
+             response.transactionSuccess());
+    }
+    return result;
+  }
+
+  private Object batch(final String provider, final ProviderCall call) throws Throwable {
+
+    final Object[] args = call.args();
+    switch(call.name()) {
+
+      case "depositAll", "withdrawAll" -> {
+
+        //depositAll/withdrawAll(plugin, amounts, world, currency)
+        final JournalEntry.Operation operation = (call.name().equals("depositAll"))?
+                                                 JournalEntry.Operation.DEPOSIT : JournalEntry.Operation.WITHDRAW;
+        final Map<?, ?> amounts = call.arg(1, Map.class);
+        final String plugin = call.pluginName();
+        final String world = string(args, 2);
+        final String currency = string(args, 3);
+
+        Map<?, ?> responses = Map.of();
+        try {
+
+          final Object result = call.proceed();
+          if(result instanceof final Map<?, ?> map) {
+            responses = map;
+          }
+          return result;
+        } finally {
+
+          for(final Map.Entry<?, ?> entry : amounts.entrySet()) {
+            if(entry.getKey() instanceof final UUID account && entry.getValue() instanceof final BigDecimal amount) {
+
+              final EconomyResponse response = (responses.get(account) instanceof final EconomyResponse found)? found : null;
+              append(operation, provider, plugin, account, world, currency, amount, null,
+                     (response == null)? null : response.balance, response != null && response.transactionSuccess());
+            }
+          }
+        }
+      }
+      case "setBalances" -> {
+
+        //setBalances(plugin, balances), answering the accounts that failed.
+        final Map<?, ?> balances = call.arg(1, Map.class);
+        final String plugin = call.pluginName();
+        final Map<ContextBalance, BigDecimal> previous = new HashMap<>();
+        if(capturePrevious) {
+
+          final Economy below = call.below(Economy.class);
+          forEach(balances, (account, balance)->{
+
+            final BigDecimal before = previous(below, plugin, account, balance.world(), balance.currency());
+            if(before != null) {
+              previous.put(balance, before);
+            }
+          });
+        }
+
+        Set<?> failures = null;
+        try {
+
+          final Object result = call.proceed();
+          failures = (result instanceof final Set<?> set)? set : Set.of();
+          return result;
+        } finally {
+
+          final Set<?> failed = failures;
+          forEach(balances, (account, balance)->append(JournalEntry.Operation.SET, provider, plugin, account,
+                                                       balance.world(), balance.currency(), balance.amount(),
+                                                       previous.get(balance), null,
+                                                       failed != null && !failed.contains(account)));
+        }
+      }
+      default -> {
+        return call.proceed();
+      }
+    }
+  }
+
+  /**
+   * Reads the balance a set is about to replace through the layers below the journal, so balances
+   * a write-behind buffer still holds count.
+   */
+  @Nullable
+  private BigDecimal previous(final ProviderCall call, final @Nullable String plugin, final UUID account,
+                              final @Nullable String world, final @Nullable String currency) {
+
+    if(!capturePrevious) {
+      return null;
+    }
+    return previous(call.below(Economy.class), plugin, account, world, currency);
+  }
+
+  @Nullable
+  private BigDecimal previous(final Economy economy, final @Nullable String plugin, final UUID account,
+                              final @Nullable String world, final @Nullable String currency) {
+
+    try {
+      return Balances.balance(economy, (plugin == null)? "VaultUnlocked" : plugin, account, world, currency);
+    } catch(final Exception e) {
+      return null;
+    }
+  }
+
+  private static void forEach(final Map<?, ?> balances, final BalanceVisitor visitor) {
+
+    for(final Map.Entry<?, ?> entry : balances.entrySet()) {
+      if(entry.getKey() instanceof final UUID account && entry.getValue() instanceof final Collection<?> list) {
+        for(final Object balance : list) {
+          if(balance instanceof final ContextBalance context) {
+            visitor.visit(account, context);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Interns a name into the dictionary, durably recording names seen for the first time before any
+   * record refers to them.
+   *
+   * @return the id of the name, 0 for {@code null}, or -1 if a new name could not be recorded.
+   */
+  private int id(final @Nullable String name) {
+
+    if(name == null) {
+      return 0;
+    }
+
+    final Integer id = ids.get(name);
+    if(id != null) {
+      return id;
+    }
+
+    synchronized(ids) {
+
+      final Integer raced = ids.get(name);
+      if(raced != null) {
+        return raced;
+      }
+
+      final int next = ids.size() + 1;
+      try {
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(next);
+        out.writeUTF(name);
+
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        while(buffer.hasRemaining()) {
+          dictionary.write(buffer);
+        }
+        dictionary.force(false);
+      } catch(final IOException e) {
+
+        LOGGER.atWarning().withCause(e).log("Unable to record '" + name + "' in the journal dictionary.");
+        return -1;
+      }
+
+      ids.put(name, next);
+      return next;
+    }
+  }
+
+  private synchronized boolean rotate(final Segment full) {
+
+    if(current != full) {
+      return true;
+    }
+
+    if(closed) {
+      return false;
+    }
+
+    try {
+
+      current = open(full.sequence + 1);
+      retiring.add(full);
+      expire();
+      return true;
+    } catch(final IOException e) {
+
+      LOGGER.atWarning().withCause(e).log("Unable to open a new journal segment, entries will be dropped.");
+      return false;
+    }
+  }
+
+  private Segment open(final long sequence) throws IOException {
+
+    final Path file = directory.resolve(JournalReader.name(sequence));
+    try(final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                                                     StandardOpenOption.WRITE)) {
+
+      //the mapping stays valid after the channel is closed.
+      return new Segment(sequence, channel.map(FileChannel.MapMode.READ_WRITE, 0, (long)segmentRecords * RECORD_SIZE),
+                         segmentRecords);
+    }
+  }
+
+  private void expire() {
+
+    if(retentionMillis <= 0) {
+      return;
+    }
+
+    final long cutoff = System.currentTimeMillis() - retentionMillis;
+    try {
+      for(final Path segment : JournalReader.segments(directory)) {
+        if(JournalReader.sequence(segment) < current.sequence && Files.getLastModifiedTime(segment).toMillis() < cutoff) {
+          Files.deleteIfExists(segment);
+        }
+      }
+    } catch(final IOException e) {
+      LOGGER.atWarning().withCause(e).log("Unable to remove expired journal segments.");
+    }
+  }
+
+  static void decimal(final ByteBuffer buffer, final int offset, final int scaleOffset, final BigDecimal amount) {
+
+    BigDecimal value = (amount.precision() > PRECISION.getPrecision())? amount.round(PRECISION) : amount;
+    if(value.scale() > Short.MAX_VALUE || value.scale() < Short.MIN_VALUE) {
+      value = value.setScale(Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value.scale())), RoundingMode.HALF_EVEN);
+    }
+
+    final BigInteger unscaled = value.unscaledValue();
+    final long high = (unscaled.bitLength() < 64)? ((unscaled.signum() < 0)? -1L : 0L) : unscaled.shiftRight(64).longValue();
+    buffer.putShort(scaleOffset, (short)value.scale());
+    buffer.putLong(offset, high);
+    buffer.putLong(offset + 8, unscaled.longValue());
+  }
+
+  @Nullable
+  private static String string(final Object[] args, final int index) {
+
+    return (args.length > index && args[index] instanceof final String value)? value : null;
+  }
+
+  @FunctionalInterface
+  private interface BalanceVisitor {
+
+    void visit(UUID account, ContextBalance balance);
+  }
+
+  private static final class Segment {
+
+    private final long sequence;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final AtomicInteger next = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+
+    private volatile boolean dirty = false;
+
+    private Segment(final long sequence, final MappedByteBuffer buffer, final int capacity) {
+
+      this.sequence = sequence;
+      this.buffer = buffer;
+      this.capacity = capacity;
+    }
+  }
+
+  /**
+   * A point-in-time view of a {@link TransactionJournal}.
+   *
+   * @param appended the number of entries appended.
+   * @param dropped the number of entries that could not be appended.
+   * @param syncs the number of times the current segment was forced to disk.
+   * @param segment the sequence number of the current segment.
+   */
+  public record Stats(long appended, long dropped, long syncs, long segment) {
+
+    /**
+     * Formats these statistics as a single human-readable line.
+     *
+     * @return the formatted statistics.
+     */
+    public String describe() {
+
+      return String.format("appended=%d dropped=%d syncs=%d segment=%d", appended, dropped, syncs, segment);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package net.cfh.vault.metrics;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CallMetrics holds the call count, error count and latency histogram of a single provider method,
+ * either overall or for a single calling plugin.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class CallMetrics {
+
+  private final LongAdder calls = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LatencyHistogram latency = new LatencyHistogram();
+
+  /**
+   * Records a single call.
+   *
+   * @param nanos the call's latency in nanoseconds.
+   * @param error whether the call threw.
+   */
+  public void record(final long nanos, final boolean error) {
+
+    calls.increment();
+    if(error) {
+      errors.increment();
+    }
+    latency.record(nanos);
+  }
+
+  /**
+   * Retrieves the number of recorded calls.
+   *
+   * @return the call count.
+   */
+  public long calls() {
+
+    return calls.sum();
+  }
+
+  /**
+   * Retrieves the number of recorded calls that threw.
+   *
+   * @return the error count.
+   */
+  public long errors() {
+
+    return errors.sum();
+  }
+
+  /**
+   * Retrieves the latency histogram of the recorded calls.
+   *
+   * @return the latency histogram.
+   */
+  public LatencyHistogram latency() {
+
+    return latency;
+  }
+}
@@ -0,0 +1,212 @@
+package net.cfh.vault.metrics;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LatencyHistogram is a concurrent, log-linear histogram of nanosecond latencies in the spirit of
+ * HdrHistogram. Every power of two is split into sixteen linear sub-buckets, which bounds the
+ * relative error of any reported percentile to about six percent while covering the full range of
+ * a {@code long} in a fixed array. Recording a value only touches preallocated counters and never
+ * allocates.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 4;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+  private final LongAdder count = new LongAdder();
+  private final LongAdder total = new LongAdder();
+  private final AtomicLong max = new AtomicLong();
+
+  /**
+   * Records a single latency.
+   *
+   * @param nanos the latency in nanoseconds.
+   */
+  public void record(final long nanos) {
+
+    final long value = Math.max(0, nanos);
+    counts.incrementAndGet(index(value));
+    count.increment();
+    total.add(value);
+    if(value > max.get()) {
+      max.accumulateAndGet(value, Math::max);
+    }
+  }
+
+  /**
+   * Adds every value recorded in another histogram to this one.
+   *
+   * @param other the histogram to add.
+   */
+  public void add(final LatencyHistogram other) {
+
+    for(int i = 0; i < BUCKETS; i++) {
+
+      final long bucket = other.counts.get(i);
+      if(bucket > 0) {
+        counts.addAndGet(i, bucket);
+      }
+    }
+    count.add(other.count.sum());
+    total.add(other.total.sum());
+    max.accumulateAndGet(other.max.get(), Math::max);
+  }
+
+  /**
+   * Creates a summary of the values recorded so far.
+   *
+   * @return the current {@link Summary}.
+   */
+  public Summary summary() {
+
+    final long[] copy = new long[BUCKETS];
+    long recorded = 0;
+    for(int i = 0; i < BUCKETS; i++) {
+      copy[i] = counts.get(i);
+      recorded += copy[i];
+    }
+
+    final long sum = total.sum();
+    return new Summary(recorded, (recorded == 0)? 0 : sum / recorded, percentile(copy, recorded, 0.50),
+                       percentile(copy, recorded, 0.90), percentile(copy, recorded, 0.99),
+                       percentile(copy, recorded, 0.999), max.get());
+  }
+
+  /**
+   * Copies the per-bucket counts into the specified array so that two copies taken some time apart
+   * can be diffed with {@link #percentile(long[], long[], double)}. Only reads the counters, so it
+   * never contends with {@link #record(long)}.
+   *
+   * @param into the array to copy into, or null to allocate one.
+   * @return the array holding the copied counts.
+   */
+  public long[] buckets(final long[] into) {
+
+    final long[] copy = (into == null || into.length < BUCKETS)? new long[BUCKETS] : into;
+    for(int i = 0; i < BUCKETS; i++) {
+      copy[i] = counts.get(i);
+    }
+    return copy;
+  }
+
+  /**
+   * Calculates a percentile of only the values recorded between two copies taken with
+   * {@link #buckets(long[])}.
+   *
+   * @param current the later copy.
+   * @param previous the earlier copy.
+   * @param percentile the percentile, between 0 and 1.
+   * @return the percentile in nanoseconds, or 0 if nothing was recorded in between.
+   */
+  public static long percentile(final long[] current, final long[] previous, final double percentile) {
+
+    long recorded = 0;
+    for(int i = 0; i < BUCKETS; i++) {
+      recorded += current[i] - previous[i];
+    }
+
+    if(recorded <= 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long)Math.ceil(recorded * percentile));
+    long seen = 0;
+    for(int i = 0; i < BUCKETS; i++) {
+
+      seen += current[i] - previous[i];
+      if(seen >= rank) {
+        return upperBound(i);
+      }
+    }
+    return upperBound(BUCKETS - 1);
+  }
+
+  private static long percentile(final long[] counts, final long recorded, final double percentile) {
+
+    if(recorded == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long)Math.ceil(recorded * percentile));
+    long seen = 0;
+    for(int i = 0; i < counts.length; i++) {
+
+      seen += counts[i];
+      if(seen >= rank) {
+        return upperBound(i);
+      }
+    }
+    return upperBound(counts.length - 1);
+  }
+
+  static int index(final long value) {
+
+    if(value < SUB_BUCKETS) {
+      return (int)value;
+    }
+
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int shift = exponent - SUB_BUCKET_BITS;
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + (int)((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long lowerBound(final int index) {
+
+    if(index < SUB_BUCKETS) {
+      return index;
+    }
+
+    final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    final int sub = index % SUB_BUCKETS;
+    return (long)(SUB_BUCKETS + sub) << (exponent - SUB_BUCKET_BITS);
+  }
+
+  static long upperBound(final int index) {
+
+    if(index < SUB_BUCKETS) {
+      return index;
+    }
+
+    final int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+    return lowerBound(index) + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+  }
+
+  /**
+   * A summary of the latencies recorded in a {@link LatencyHistogram}, in nanoseconds.
+   *
+   * @param count the number of recorded values.
+   * @param mean the mean value.
+   * @param p50 the median.
+   * @param p90 the 90th percentile.
+   * @param p99 the 99th percentile.
+   * @param p999 the 99.9th percentile.
+   * @param max the largest recorded value.
+   */
+  public record Summary(long count, long mean, long p50, long p90, long p99, long p999, long max) {
+  }
+}
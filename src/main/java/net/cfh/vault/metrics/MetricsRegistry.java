@@ -0,0 +1,134 @@
+package net.cfh.vault.metrics;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.milkbowl.vault2.chat.ChatUnlocked;
+import net.milkbowl.vault2.economy.Economy;
+import net.milkbowl.vault2.permission.PermissionUnlocked;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * MetricsRegistry holds the {@link ServiceMetrics} of the economy, permission and chat services and
+ * exports them as snapshot files.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class MetricsRegistry {
+
+  private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+  private final ServiceMetrics<Economy> economy = new ServiceMetrics<>("economy", Economy::getName, true);
+  private final ServiceMetrics<PermissionUnlocked> permission = new ServiceMetrics<>("permission", PermissionUnlocked::getName, false);
+  private final ServiceMetrics<ChatUnlocked> chat = new ServiceMetrics<>("chat", ChatUnlocked::getName, false);
+
+  /**
+   * Retrieves the metrics of the economy service.
+   *
+   * @return the economy {@link ServiceMetrics}.
+   */
+  public ServiceMetrics<Economy> economy() {
+    return economy;
+  }
+
+  /**
+   * Retrieves the metrics of the permission service.
+   *
+   * @return the permission {@link ServiceMetrics}.
+   */
+  public ServiceMetrics<PermissionUnlocked> permission() {
+    return permission;
+  }
+
+  /**
+   * Retrieves the metrics of the chat service.
+   *
+   * @return the chat {@link ServiceMetrics}.
+   */
+  public ServiceMetrics<ChatUnlocked> chat() {
+    return chat;
+  }
+
+  /**
+   * Retrieves every row of every service, with the method totals ordered by the total time spent in
+   * them, slowest first.
+   *
+   * @return the current rows.
+   */
+  public List<ServiceMetrics.Row> rows() {
+
+    final List<ServiceMetrics.Row> rows = new ArrayList<>();
+    rows.addAll(economy.rows());
+    rows.addAll(permission.rows());
+    rows.addAll(chat.rows());
+    rows.sort(Comparator.comparingLong((ServiceMetrics.Row row)->{
+
+      final LatencyHistogram.Summary summary = row.metrics().latency().summary();
+      return summary.count() * summary.mean();
+    }).reversed());
+    return rows;
+  }
+
+  /**
+   * Writes a snapshot of every row to a new CSV file in the specified directory.
+   *
+   * @param directory the directory to write the snapshot to.
+   * @return the written file.
+   * @throws IOException if the snapshot could not be written.
+   */
+  public Path export(final @NotNull Path directory) throws IOException {
+
+    Files.createDirectories(directory);
+    final Path file = directory.resolve("metrics-" + LocalDateTime.now().format(FILE_TIME) + ".csv");
+    try(final BufferedWriter writer = Files.newBufferedWriter(file)) {
+
+      writer.write("service,provider,method,plugin,calls,errors,mean_ns,p50_ns,p90_ns,p99_ns,p999_ns,max_ns");
+      writer.newLine();
+      for(final ServiceMetrics.Row row : rows()) {
+
+        final LatencyHistogram.Summary summary = row.metrics().latency().summary();
+        writer.write(String.join(",", csv(row.service()), csv(row.provider()), csv(row.method()),
+                                 csv((row.plugin() == null)? "*" : row.plugin()),
+                                 String.valueOf(row.metrics().calls()), String.valueOf(row.metrics().errors()),
+                                 String.valueOf(summary.mean()), String.valueOf(summary.p50()),
+                                 String.valueOf(summary.p90()), String.valueOf(summary.p99()),
+                                 String.valueOf(summary.p999()), String.valueOf(summary.max())));
+        writer.newLine();
+      }
+    }
+    return file;
+  }
+
+  private static String csv(final String value) {
+
+    if(value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+      return value;
+    }
+    return '"' + value.replace("\"", "\"\"") + '"';
+  }
+}
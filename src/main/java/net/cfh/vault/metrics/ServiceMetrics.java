@@ -0,0 +1,182 @@
+package net.cfh.vault.metrics;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderInterceptor;
+import net.cfh.vault.facade.ProviderLayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * ServiceMetrics instruments the active provider of one service type, recording call counts, error
+ * counts and latency histograms per provider and method. For the economy, whose 2.x API passes the
+ * calling plugin's name as the first argument, every method is additionally broken down by plugin.
+ * As that name is whatever the caller passes, each method tracks at most {@value #MAX_PLUGINS}
+ * plugins, and calls from any further plugin are recorded together under {@value #OTHER_PLUGINS}.
+ *
+ * <p>Metrics are keyed by provider name, so they survive the provider being switched or
+ * re-registered. Once a method has been seen, recording a call only performs lookups on existing
+ * map entries and updates preallocated counters.</p>
+ *
+ * @param <T> the provider type.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class ServiceMetrics<T> implements ProviderLayer<T> {
+
+  public static final String LAYER = "metrics";
+
+  /**
+   * The maximum number of plugins each method is broken down by.
+   */
+  public static final int MAX_PLUGINS = 32;
+
+  /**
+   * The plugin name calls are recorded under once a method tracks {@link #MAX_PLUGINS} plugins.
+   */
+  public static final String OTHER_PLUGINS = "(other)";
+
+  private final String service;
+  private final Function<T, String> nameFunction;
+  private final boolean byPlugin;
+  private final Map<String, Map<Method, MethodMetrics>> providers = new ConcurrentHashMap<>();
+
+  /**
+   * Creates new service metrics.
+   *
+   * @param service the name of the service, such as {@code economy}.
+   * @param nameFunction the function used to obtain a provider's name.
+   * @param byPlugin whether calls are broken down by the plugin name passed as their first argument.
+   */
+  public ServiceMetrics(final @NotNull String service, final @NotNull Function<T, String> nameFunction,
+                        final boolean byPlugin) {
+
+    this.service = service;
+    this.nameFunction = nameFunction;
+    this.byPlugin = byPlugin;
+  }
+
+  @Override
+  public @NotNull ProviderInterceptor create(final @NotNull T provider) {
+
+    final Map<Method, MethodMetrics> methods = providers.computeIfAbsent(nameFunction.apply(provider),
+                                                                         name->new ConcurrentHashMap<>());
+    return call->intercept(methods, call);
+  }
+
+  private Object intercept(final Map<Method, MethodMetrics> methods, final ProviderCall call) throws Throwable {
+
+    MethodMetrics metrics = methods.get(call.method());
+    if(metrics == null) {
+      metrics = methods.computeIfAbsent(call.method(), MethodMetrics::new);
+    }
+
+    final long start = System.nanoTime();
+    boolean error = true;
+    try {
+
+      final Object result = call.proceed();
+      error = false;
+      return result;
+    } finally {
+      metrics.record((byPlugin)? call.pluginName() : null, System.nanoTime() - start, error);
+    }
+  }
+
+  /**
+   * Retrieves the name of the instrumented service.
+   *
+   * @return the service name.
+   */
+  public String service() {
+
+    return service;
+  }
+
+  /**
+   * Creates a row per provider and method, plus a row per calling plugin where calls are broken
+   * down by plugin.
+   *
+   * @return the current rows.
+   */
+  public List<Row> rows() {
+
+    final List<Row> rows = new ArrayList<>();
+    for(final Map.Entry<String, Map<Method, MethodMetrics>> provider : providers.entrySet()) {
+      for(final MethodMetrics method : provider.getValue().values()) {
+
+        rows.add(new Row(service, provider.getKey(), method.label, null, method.total));
+        for(final Map.Entry<String, CallMetrics> plugin : method.plugins.entrySet()) {
+          rows.add(new Row(service, provider.getKey(), method.label, plugin.getKey(), plugin.getValue()));
+        }
+      }
+    }
+    return Collections.unmodifiableList(rows);
+  }
+
+  /**
+   * A single row of metrics.
+   *
+   * @param service the service name.
+   * @param provider the provider name.
+   * @param method the method, including its parameter count.
+   * @param plugin the calling plugin, {@link #OTHER_PLUGINS} for the calls of plugins beyond
+   *               {@link #MAX_PLUGINS}, or {@code null} for the totals of the method.
+   * @param metrics the recorded metrics.
+   */
+  public record Row(String service, String provider, String method, @Nullable String plugin, CallMetrics metrics) {
+  }
+
+  private static final class MethodMetrics {
+
+    private final String label;
+    private final CallMetrics total = new CallMetrics();
+    private final Map<String, CallMetrics> plugins = new ConcurrentHashMap<>();
+
+    private MethodMetrics(final Method method) {
+
+      this.label = method.getName() + "/" + method.getParameterCount();
+    }
+
+    private void record(final @Nullable String plugin, final long nanos, final boolean error) {
+
+      total.record(nanos, error);
+      if(plugin != null) {
+
+        CallMetrics metrics = plugins.get(plugin);
+        if(metrics == null) {
+
+          //each histogram is a few kilobytes, so don't let arbitrary names grow the map without bound.
+          final String key = (plugins.size() < MAX_PLUGINS)? plugin : OTHER_PLUGINS;
+          metrics = plugins.computeIfAbsent(key, name->new CallMetrics());
+        }
+        metrics.record(nanos, error);
+      }
+    }
+  }
+}
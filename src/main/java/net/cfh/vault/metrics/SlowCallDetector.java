@@ -0,0 +1,397 @@
+package net.cfh.vault.metrics;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import com.hypixel.hytale.logger.HytaleLogger;
+import net.cfh.vault.facade.ProviderCall;
+import net.cfh.vault.facade.ProviderLayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * SlowCallDetector watches provider calls made on server and world threads, whose names are
+ * matched against a configurable pattern, and reports the ones that take longer than a threshold.
+ *
+ * <p>A call is reported twice over: a watchdog samples the stack of a watched thread while it is
+ * still blocked inside a provider, which shows where the provider is waiting, and a call that
+ * finishes over the threshold without having been sampled is reported with the stack of its
+ * caller. Reports are rate limited per plugin and method as well as globally, and suppressed
+ * reports are only counted, so a misbehaving provider can't turn the detector into a hotspot.</p>
+ *
+ * <p>Calls made on threads that don't match the pattern only pay for a thread-local lookup and a
+ * comparison of the thread's name.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class SlowCallDetector implements AutoCloseable {
+
+  public static final String LAYER = "slow-calls";
+
+  private static final HytaleLogger LOGGER = HytaleLogger.forEnclosingClass();
+  private static final long WINDOW_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+  private final Pattern threads;
+  private final long thresholdNanos;
+  private final long reportIntervalNanos;
+  private final int maxReportsPerMinute;
+  private final int stackDepth;
+
+  private final ThreadLocal<Slot> slots = ThreadLocal.withInitial(()->new Slot(Thread.currentThread()));
+  private final Map<Thread, Slot> watched = new ConcurrentHashMap<>();
+  private final Map<Site, AtomicLong> sites = new ConcurrentHashMap<>();
+  private final Map<Site, LongAdder> siteSuppressed = new ConcurrentHashMap<>();
+  private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+  private final AtomicInteger windowReports = new AtomicInteger();
+  private final ScheduledExecutorService watchdog;
+
+  private final LongAdder slow = new LongAdder();
+  private final LongAdder blocked = new LongAdder();
+  private final LongAdder reported = new LongAdder();
+  private final LongAdder suppressed = new LongAdder();
+
+  /**
+   * Creates a new detector and starts its watchdog.
+   *
+   * @param threads the pattern the names of watched threads must match.
+   * @param thresholdMillis how long a call may take before it is reported, in milliseconds.
+   * @param reportIntervalMillis how often the same plugin and method may be reported, in milliseconds.
+   * @param maxReportsPerMinute the maximum number of reports logged per minute across every call.
+   * @param stackDepth the maximum number of stack frames included in a report.
+   */
+  public SlowCallDetector(final @NotNull Pattern threads, final long thresholdMillis, final long reportIntervalMillis,
+                          final int maxReportsPerMinute, final int stackDepth) {
+
+    this.threads = threads;
+    this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, thresholdMillis));
+    this.reportIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, reportIntervalMillis));
+    this.maxReportsPerMinute = Math.max(1, maxReportsPerMinute);
+    this.stackDepth = Math.max(1, stackDepth);
+
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable->{
+      final Thread thread = new Thread(runnable, "VaultUnlocked-Watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    final long interval = Math.max(5, thresholdMillis / 2);
+    this.watchdog.scheduleWithFixedDelay(this::scan, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Creates the layer that watches the calls of one service type.
+   *
+   * @param service the name of the service, such as {@code economy}.
+   * @param nameFunction the function used to obtain a provider's name.
+   * @param byPlugin whether the plugin name passed as the first argument is included in reports.
+   * @param <T> the provider type.
+   * @return the layer to install on the service's registry.
+   */
+  public <T> ProviderLayer<T> layer(final @NotNull String service, final @NotNull Function<T, String> nameFunction,
+                                    final boolean byPlugin) {
+
+    return provider->{
+      final String name = nameFunction.apply(provider);
+      return call->intercept(service, name, byPlugin, call);
+    };
+  }
+
+  private Object intercept(final String service, final String provider, final boolean byPlugin,
+                           final ProviderCall call) throws Throwable {
+
+    final Slot slot = slots.get();
+
+    //nested calls are part of the outermost call on this thread, which is the one being timed.
+    if(slot.depth > 0 || !slot.watched()) {
+      return call.proceed();
+    }
+
+    slot.begin(service, provider, (byPlugin)? call.pluginName() : null, call.method());
+    try {
+      return call.proceed();
+    } finally {
+
+      final long elapsed = slot.end();
+      if(elapsed >= thresholdNanos) {
+        completed(slot, elapsed);
+      }
+    }
+  }
+
+  private void completed(final Slot slot, final long elapsed) {
+
+    slow.increment();
+
+    //the watchdog already reported this call while it was blocked.
+    if(slot.flagged) {
+      return;
+    }
+
+    final Site site = new Site(slot.service, slot.provider, slot.plugin, slot.method);
+    final long skipped = permit(site);
+    if(skipped < 0) {
+      return;
+    }
+
+    final StringBuilder message = new StringBuilder(String.format("Slow %s call: %s called %s.%s on thread '%s' which took %.1fms (threshold %dms%s). Caller:",
+                                                                  site.service(), describe(site.plugin()), site.provider(),
+                                                                  label(site.method()), slot.thread.getName(),
+                                                                  elapsed / 1_000_000.0, TimeUnit.NANOSECONDS.toMillis(thresholdNanos),
+                                                                  suppressedNote(skipped)));
+    appendStack(message, new Throwable().getStackTrace(), true);
+    LOGGER.atWarning().log(message.toString());
+  }
+
+  private void scan() {
+
+    try {
+
+      final long now = System.nanoTime();
+      for(final Iterator<Slot> iterator = watched.values().iterator(); iterator.hasNext();) {
+
+        final Slot slot = iterator.next();
+        if(!slot.thread.isAlive()) {
+          iterator.remove();
+          continue;
+        }
+
+        final long started = slot.started;
+        if(started == 0 || slot.flagged || now - started < thresholdNanos) {
+          continue;
+        }
+
+        final Site site = new Site(slot.service, slot.provider, slot.plugin, slot.method);
+
+        //re-check the call is still the one we read the details of.
+        if(slot.started != started) {
+          continue;
+        }
+        slot.flagged = true;
+        blocked.increment();
+
+        final long skipped = permit(site);
+        if(skipped < 0) {
+          continue;
+        }
+
+        final StackTraceElement[] stack = slot.thread.getStackTrace();
+        final StringBuilder message = new StringBuilder(String.format("Blocked %s call: %s has been waiting %.1fms in %s.%s on thread '%s' (threshold %dms%s). Sampled stack:",
+                                                                      site.service(), describe(site.plugin()),
+                                                                      (now - started) / 1_000_000.0, site.provider(),
+                                                                      label(site.method()), slot.thread.getName(),
+                                                                      TimeUnit.NANOSECONDS.toMillis(thresholdNanos),
+                                                                      suppressedNote(skipped)));
+        appendStack(message, stack, false);
+        LOGGER.atWarning().log(message.toString());
+      }
+    } catch(final Exception e) {
+      LOGGER.atWarning().withCause(e).log("Slow call watchdog failed to scan watched threads.");
+    }
+  }
+
+  /**
+   * Applies the per-site and global rate limits to a report.
+   *
+   * @return the number of reports suppressed for the site since its last report, or -1 if this
+   * report is suppressed too.
+   */
+  private long permit(final Site site) {
+
+    final long now = System.nanoTime();
+    final AtomicLong next = sites.computeIfAbsent(site, key->new AtomicLong(now));
+    final long allowed = next.get();
+    if(now - allowed < 0 || !next.compareAndSet(allowed, now + reportIntervalNanos) || !global(now)) {
+
+      suppressed.increment();
+      siteSuppressed.computeIfAbsent(site, key->new LongAdder()).increment();
+      return -1;
+    }
+
+    reported.increment();
+    final LongAdder skipped = siteSuppressed.get(site);
+    return (skipped == null)? 0 : skipped.sumThenReset();
+  }
+
+  private boolean global(final long now) {
+
+    final long start = windowStart.get();
+    if(now - start >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+      windowReports.set(0);
+    }
+    return windowReports.incrementAndGet() <= maxReportsPerMinute;
+  }
+
+  private void appendStack(final StringBuilder message, final StackTraceElement[] stack, final boolean skipInternal) {
+
+    int index = 0;
+
+    //skip the detector, the facade and the proxy so the first frame shown is the caller.
+    if(skipInternal) {
+      while(index < stack.length && internal(stack[index].getClassName())) {
+        index++;
+      }
+    }
+
+    final int end = Math.min(stack.length, index + stackDepth);
+    for(; index < end; index++) {
+      message.append("\n\tat ").append(stack[index]);
+    }
+
+    if(end < stack.length) {
+      message.append("\n\t... ").append(stack.length - end).append(" more");
+    }
+  }
+
+  private static boolean internal(final String className) {
+
+    return className.startsWith("net.cfh.vault.") || className.startsWith("jdk.proxy")
+           || className.startsWith("java.lang.reflect.") || className.startsWith("jdk.internal.reflect.")
+           || className.startsWith("java.lang.Thread");
+  }
+
+  private static String describe(final @Nullable String plugin) {
+
+    return (plugin == null)? "A plugin" : "Plugin '" + plugin + "'";
+  }
+
+  private static String label(final Method method) {
+
+    return method.getName() + "/" + method.getParameterCount();
+  }
+
+  private static String suppressedNote(final long skipped) {
+
+    return (skipped == 0)? "" : ", " + skipped + " similar reports suppressed";
+  }
+
+  /**
+   * Retrieves the current statistics of this detector.
+   *
+   * @return the current {@link Stats}.
+   */
+  public Stats stats() {
+
+    return new Stats(slow.sum(), blocked.sum(), reported.sum(), suppressed.sum());
+  }
+
+  /**
+   * Stops the watchdog.
+   */
+  @Override
+  public void close() {
+
+    watchdog.shutdownNow();
+  }
+
+  private record Site(String service, String provider, @Nullable String plugin, Method method) {
+  }
+
+  private final class Slot {
+
+    private final Thread thread;
+
+    //only touched by the owning thread.
+    private String name;
+    private boolean matches;
+    private boolean registered;
+    private int depth;
+
+    //published to the watchdog by the write to started.
+    private String service;
+    private String provider;
+    private String plugin;
+    private Method method;
+    private volatile boolean flagged;
+    private volatile long started;
+
+    private Slot(final Thread thread) {
+
+      this.thread = thread;
+    }
+
+    private boolean watched() {
+
+      final String current = thread.getName();
+      if(!current.equals(name)) {
+
+        name = current;
+        matches = threads.matcher(current).matches();
+      }
+      return matches;
+    }
+
+    private void begin(final String service, final String provider, final @Nullable String plugin, final Method method) {
+
+      if(!registered) {
+
+        watched.put(thread, this);
+        registered = true;
+      }
+
+      depth++;
+      this.service = service;
+      this.provider = provider;
+      this.plugin = plugin;
+      this.method = method;
+      flagged = false;
+      started = System.nanoTime();
+    }
+
+    private long end() {
+
+      final long elapsed = System.nanoTime() - started;
+      started = 0;
+      depth--;
+      return elapsed;
+    }
+  }
+
+  /**
+   * A point-in-time view of a {@link SlowCallDetector}'s counters.
+   *
+   * @param slow the number of watched calls that finished over the threshold.
+   * @param blocked the number of watched calls the watchdog caught while still over the threshold.
+   * @param reported the number of reports logged.
+   * @param suppressed the number of reports suppressed by rate limiting.
+   */
+  public record Stats(long slow, long blocked, long reported, long suppressed) {
+
+    /**
+     * Formats these statistics as a single human-readable line.
+     *
+     * @return the formatted statistics.
+     */
+    public String describe() {
+
+      return String.format("slow=%d blocked=%d reported=%d suppressed=%d", slow, blocked, reported, suppressed);
+    }
+  }
+}
@@ -0,0 +1,220 @@
+package net.cfh.vault.metrics;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.cache.CacheStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * StatsSampler turns the cumulative counters kept by {@link MetricsRegistry} and the caches into
+ * live rates. Each {@link #sample()} diffs the counters against the previous sample, which yields
+ * the calls per second and the p50/p99 latency of every provider method, and the hit rate of every
+ * cache, over the last window alone. Sampling only reads the striped counters and histogram
+ * buckets, so it never contends with the calls being recorded, and the result is published as an
+ * immutable {@link Snapshot} that commands can read at any time.
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class StatsSampler {
+
+  private final MetricsRegistry metrics;
+  private final Map<String, Supplier<CacheStats>> caches = new LinkedHashMap<>();
+  private final Map<String, MethodState> methods = new HashMap<>();
+  private final Map<String, CacheStats> previousCaches = new HashMap<>();
+
+  private volatile Snapshot latest = new Snapshot(0, List.of(), List.of());
+  private long lastSample = System.nanoTime();
+
+  /**
+   * Creates a sampler.
+   *
+   * @param metrics the metrics to sample, or null if metrics are disabled and only caches are sampled.
+   */
+  public StatsSampler(final @Nullable MetricsRegistry metrics) {
+
+    this.metrics = metrics;
+  }
+
+  /**
+   * Adds a cache whose hit rate should be sampled.
+   *
+   * @param name the display name of the cache.
+   * @param stats the supplier of the cache's current statistics.
+   */
+  public synchronized void cache(final @NotNull String name, final @NotNull Supplier<CacheStats> stats) {
+
+    caches.put(name, stats);
+  }
+
+  /**
+   * Takes a sample, publishing the rates seen since the previous one. Intended to be called on a
+   * fixed schedule.
+   */
+  public synchronized void sample() {
+
+    final long now = System.nanoTime();
+    final long windowNanos = Math.max(1, now - lastSample);
+    lastSample = now;
+
+    final List<MethodRate> rates = new ArrayList<>();
+    if(metrics != null) {
+      for(final ServiceMetrics.Row row : metrics.rows()) {
+
+        if(row.plugin() != null) {
+          continue;
+        }
+
+        final String key = row.service() + ':' + row.provider() + ':' + row.method();
+        MethodState state = methods.get(key);
+        if(state == null) {
+          state = new MethodState();
+          methods.put(key, state);
+        }
+
+        final long calls = row.metrics().calls();
+        final long errors = row.metrics().errors();
+        state.current = row.metrics().latency().buckets(state.current);
+        if(state.previous == null) {
+          state.previous = new long[state.current.length];
+        }
+
+        final long windowCalls = calls - state.calls;
+        if(windowCalls > 0) {
+          rates.add(new MethodRate(row.service(), row.provider(), row.method(), perSecond(windowCalls, windowNanos),
+                                   perSecond(errors - state.errors, windowNanos),
+                                   LatencyHistogram.percentile(state.current, state.previous, 0.50),
+                                   LatencyHistogram.percentile(state.current, state.previous, 0.99)));
+        }
+
+        //swap the copies so the next sample reuses the older array rather than allocating.
+        final long[] previous = state.previous;
+        state.previous = state.current;
+        state.current = previous;
+        state.calls = calls;
+        state.errors = errors;
+      }
+      rates.sort(Comparator.comparingDouble(MethodRate::perSecond).reversed());
+    }
+
+    final List<CacheRate> cacheRates = new ArrayList<>();
+    for(final Map.Entry<String, Supplier<CacheStats>> cache : caches.entrySet()) {
+
+      final CacheStats stats = cache.getValue().get();
+      final CacheStats previous = previousCaches.put(cache.getKey(), stats);
+      final long hits = stats.hits() - ((previous == null)? 0 : previous.hits());
+      final long misses = stats.misses() - ((previous == null)? 0 : previous.misses());
+      cacheRates.add(new CacheRate(cache.getKey(), perSecond(hits + misses, windowNanos),
+                                   (hits + misses == 0)? 0.0 : (double)hits / (hits + misses), stats));
+    }
+
+    latest = new Snapshot(windowNanos / 1_000_000, Collections.unmodifiableList(rates),
+                          Collections.unmodifiableList(cacheRates));
+  }
+
+  /**
+   * Retrieves the result of the most recent sample.
+   *
+   * @return the latest {@link Snapshot}.
+   */
+  public Snapshot latest() {
+
+    return latest;
+  }
+
+  private static double perSecond(final long count, final long windowNanos) {
+
+    return count * 1_000_000_000.0 / windowNanos;
+  }
+
+  private static final class MethodState {
+
+    private long calls;
+    private long errors;
+    private long[] previous;
+    private long[] current;
+  }
+
+  /**
+   * The rates published by a single sample.
+   *
+   * @param windowMillis the length of the sampled window, or 0 if no sample has been taken yet.
+   * @param methods the provider methods called during the window, busiest first.
+   * @param caches the sampled caches.
+   */
+  public record Snapshot(long windowMillis, List<MethodRate> methods, List<CacheRate> caches) {
+  }
+
+  /**
+   * The live throughput and latency of a single provider method.
+   *
+   * @param service the service name.
+   * @param provider the provider name.
+   * @param method the method, including its parameter count.
+   * @param perSecond the calls per second during the window.
+   * @param errorsPerSecond the failed calls per second during the window.
+   * @param p50 the median latency during the window, in nanoseconds.
+   * @param p99 the 99th percentile latency during the window, in nanoseconds.
+   */
+  public record MethodRate(String service, String provider, String method, double perSecond,
+                           double errorsPerSecond, long p50, long p99) {
+
+    /**
+     * Formats this rate as a single human-readable line.
+     *
+     * @return the formatted rate.
+     */
+    public String describe() {
+
+      return String.format("%s %s.%s %.1f/s errors=%.1f/s p50=%.3fms p99=%.3fms", service, provider, method,
+                           perSecond, errorsPerSecond, p50 / 1_000_000.0, p99 / 1_000_000.0);
+    }
+  }
+
+  /**
+   * The live hit rate of a single cache.
+   *
+   * @param name the display name of the cache.
+   * @param lookupsPerSecond the lookups per second during the window.
+   * @param hitRate the fraction of lookups answered from the cache during the window.
+   * @param total the cumulative statistics of the cache.
+   */
+  public record CacheRate(String name, double lookupsPerSecond, double hitRate, CacheStats total) {
+
+    /**
+     * Formats this rate as a single human-readable line.
+     *
+     * @return the formatted rate.
+     */
+    public String describe() {
+
+      return String.format("%.1f lookups/s rate=%.1f%% (overall %.1f%%) size=%d", lookupsPerSecond, hitRate * 100,
+                           total.hitRate() * 100, total.size());
+    }
+  }
+}
@@ -0,0 +1,66 @@
+package net.cfh.vault.permission;
+
+/*
+    This file is part of Vault.
+
+    Vault is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Lesser General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    Vault is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Lesser General Public License for more details.
+
+    You should have received a copy of the GNU Lesser General Public License
+    along with Vault.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+import net.cfh.vault.cache.InvocationCacheLayer;
+import net.cfh.vault.cache.MethodTable;
+import net.milkbowl.vault2.permission.PermissionUnlocked;
+
+import java.util.Set;
+
+/**
+ * PermissionCache caches the lookups made through the active {@link PermissionUnlocked} facade,
+ * per subject and per call, so that permission and group checks in hot paths such as interaction
+ * and movement handlers don't reach a remote permission store every time.
+ *
+ * <p>Lookups and mutations are the methods listed in {@link #METHODS}, and cached as described by
+ * {@link InvocationCacheLayer}. Any other method, including one a newer API adds, is never cached.
+ * Lookups are served for a fixed time and never refreshed in the background.</p>
+ *
+ * @author creatorfromhell
+ * @since 2.19.0
+ */
+public class PermissionCache extends InvocationCacheLayer<PermissionUnlocked> {
+
+  public static final String LAYER = "permission-cache";
+
+  /**
+   * The lookup and mutation methods of {@link PermissionUnlocked}.
+   */
+  public static final MethodTable METHODS = new MethodTable(Set.of("has", "playerHas", "groupHas", "inGroup",
+                                                                   "playerInGroup", "getGroups",
+                                                                   "getPlayerGroups", "getPrimaryGroup"),
+                                                            Set.of("set", "unset", "setTransient",
+                                                                   "unsetTransient", "playerAdd",
+                                                                   "playerRemove", "playerAddTransient",
+                                                                   "playerRemoveTransient", "groupAdd",
+                                                                   "groupRemove", "addGroup", "removeGroup",
+                                                                   "playerAddGroup", "playerRemoveGroup",
+                                                                   "createGroup", "deleteGroup"));
+
+  /**
+   * Creates a new permission cache.
+   *
+   * @param maxSubjects the maximum number of subjects held.
+   * @param ttlMillis how long a cached lookup is served for, in milliseconds.
+   */
+  public PermissionCache(final int maxSubjects, final long ttlMillis) {
+
+    super(PermissionUnlocked.class, METHODS, maxSubjects, ttlMillis, ttlMillis, null);
+  }
+}